@@ -2,18 +2,30 @@
 package org.osmdroid.mtp;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
 import org.osmdroid.mtp.adt.OSMTileInfo;
 import org.osmdroid.mtp.download.DownloadManager;
-import org.osmdroid.mtp.util.DbCreator;
-import org.osmdroid.mtp.util.FolderDeleter;
+import org.osmdroid.mtp.download.ProgressJournal;
+import org.osmdroid.mtp.download.TileIterator;
+import org.osmdroid.mtp.sink.DatabaseTileSink;
+import org.osmdroid.mtp.sink.FolderTileSink;
+import org.osmdroid.mtp.reader.DatabaseTileReader;
+import org.osmdroid.mtp.reader.FolderTileReader;
+import org.osmdroid.mtp.reader.GEMFTileReader;
+import org.osmdroid.mtp.reader.MBTilesTileReader;
+import org.osmdroid.mtp.reader.TileConverter;
+import org.osmdroid.mtp.reader.TileReader;
+import org.osmdroid.mtp.reader.ZipTileReader;
+import org.osmdroid.mtp.sink.GEMFTileSink;
+import org.osmdroid.mtp.sink.MBTilesTileSink;
+import org.osmdroid.mtp.sink.TileSink;
+import org.osmdroid.mtp.sink.ZipTileSink;
 import org.osmdroid.mtp.util.FolderFileCounter;
-import org.osmdroid.mtp.util.FolderZipper;
 import org.osmdroid.mtp.util.Util;
-import org.osmdroid.util.GEMFFile;
 
 public class OSMMapTilePackager {
     // ===========================================================
@@ -22,6 +34,7 @@ public class OSMMapTilePackager {
 
     private static final int THREADCOUNT_DEFAULT = 2;
     private static boolean FORCE = false;
+    private static boolean STORED = false;
 
     // ===========================================================
     // Fields
@@ -38,9 +51,12 @@ public class OSMMapTilePackager {
 
         /* Parsing will only start if this variable was set. */
         FORCE = false;
+        STORED = false;
         String serverURL = null;
         String destinationFile = null;
         String tempFolder = null;
+        String inputFile = null;
+        String name = null;
         String fileAppendix = "";
         Double north = null;
         Double south = null;
@@ -48,7 +64,9 @@ public class OSMMapTilePackager {
         Double west = null;
         Integer maxzoom = null;
         int minzoom = 0;
-        int threadCount = THREADCOUNT_DEFAULT;
+        Integer threadCount = null;
+        Integer hostLimit = null;
+        String journalFile = null;
 
         try{
             for (int i = 0; i < args.length; i += 2) {
@@ -65,12 +83,27 @@ public class OSMMapTilePackager {
                     }else{
                         FORCE  = true;
                     }
+                }else if(args[i].equals("-stored")){
+                    i--;
+                    STORED = true;
                 }else if(args[i].equals("-d")){
                     if(i >= args.length){
                         printUsageAndExit();
                     }else{
                         destinationFile = args[i+1];
                     }
+                }else if(args[i].equals("-i")){
+                    if(i >= args.length){
+                        printUsageAndExit();
+                    }else{
+                        inputFile = args[i+1];
+                    }
+                }else if(args[i].equals("-name")){
+                    if(i >= args.length){
+                        printUsageAndExit();
+                    }else{
+                        name = args[i+1];
+                    }
                 }else if(args[i].equals("-fa")){
                     if(i >= args.length){
                         printUsageAndExit();
@@ -83,6 +116,18 @@ public class OSMMapTilePackager {
                     }else{
                         threadCount = Integer.parseInt(args[i+1]);
                     }
+                }else if(args[i].equals("-hostlimit")){
+                    if(i >= args.length){
+                        printUsageAndExit();
+                    }else{
+                        hostLimit = Integer.parseInt(args[i+1]);
+                    }
+                }else if(args[i].equals("-journal")){
+                    if(i >= args.length){
+                        printUsageAndExit();
+                    }else{
+                        journalFile = args[i+1];
+                    }
                 }else if(args[i].equals("-zmin")){
                     if(i >= args.length){
                         printUsageAndExit();
@@ -131,55 +176,61 @@ public class OSMMapTilePackager {
             printUsageAndExit();
         }
 
-        if (tempFolder == null) {
-			printUsageAndExit();
-		}
+        /* Without a URL the input archive, or the temp folder, is converted into the destination-file. */
+        if (serverURL == null) {
+            final String input = inputFile != null ? inputFile : tempFolder;
+            if (input == null || destinationFile == null || !new File(input).exists()) {
+                printUsageAndExit();
+            }
+            runConverting(input, destinationFile, name, threadCount != null ? threadCount : Runtime.getRuntime().availableProcessors());
+            return;
+        }
 
-        if (serverURL == null && !new File(tempFolder).exists()) {
+        /* Downloads go straight into the destination-file, or into the temp folder if there's none. */
+        if (tempFolder == null && destinationFile == null) {
 			printUsageAndExit();
 		}
 
-        if(north == null || south == null || east == null || west == null) {
+        if(north == null || south == null || east == null || west == null || maxzoom == null) {
 			printUsageAndExit();
 		}
 
-        run(serverURL, destinationFile, tempFolder, threadCount, fileAppendix, minzoom, maxzoom, north, south, east, west);
+        if (name == null) {
+            name = tempFolder != null ? new File(tempFolder).getName() : getBaseName(destinationFile);
+        }
+
+        if (threadCount == null) {
+            threadCount = THREADCOUNT_DEFAULT;
+        }
+
+        if (hostLimit == null) {
+            hostLimit = threadCount;
+        }
+
+        if (journalFile == null) {
+            journalFile = new File(destinationFile != null ? destinationFile : tempFolder).getAbsolutePath() + ".journal";
+        }
+
+        run(serverURL, destinationFile, tempFolder, name, threadCount, hostLimit, journalFile, fileAppendix, minzoom, maxzoom, north, south, east, west);
     }
 
-    private static void run(final String pServerURL, final String pDestinationFile, final String pTempFolder, final int pThreadCount, final String pFileAppendix, final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
+    private static void run(final String pServerURL, final String pDestinationFile, final String pTempFolder, final String pName, final int pThreadCount, final int pHostLimit, final String pJournalFile, final String pFileAppendix, final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
 
-    	if (pServerURL != null) {
-        	System.out.println("---------------------------");
-        	final int expectedFileCount = runFileExpecter(pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
+        System.out.println("---------------------------");
+        final long expectedFileCount = runFileExpecter(pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
 
-        	System.out.println("---------------------------");
-        	runDownloading(pServerURL, pTempFolder, pThreadCount, pFileAppendix, pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
+        System.out.println("---------------------------");
+        runDownloading(pServerURL, pDestinationFile, pTempFolder, pName, pThreadCount, pHostLimit, pJournalFile, pFileAppendix, pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
 
+        if (pDestinationFile == null) {
             System.out.println("---------------------------");
             runFileExistenceChecker(expectedFileCount, pTempFolder, pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
-    	}
-
-        if (pDestinationFile != null) {
-            System.out.println("---------------------------");
-            if(pDestinationFile.endsWith(".zip")) {
-				runZipToFile(pTempFolder, pDestinationFile);
-			} else if (pDestinationFile.endsWith(".gemf")) {
-				runCreateGEMFFile(pTempFolder, pDestinationFile);
-			} else {
-				runCreateDb(pTempFolder, pDestinationFile);
-			}
-
-	        System.out.println("---------------------------");
-
-	        if (pServerURL != null) {
-	        	runCleanup(pTempFolder);
-	        }
         }
 
         System.out.println("---------------------------");
     }
 
-    private static void runFileExistenceChecker(final int pExpectedFileCount, final String pTempFolder, final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
+    private static void runFileExistenceChecker(final long pExpectedFileCount, final String pTempFolder, final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
 
         abortIfUserIsNotSure("This will check if the actual filecount is the same as the expected (" + pExpectedFileCount + ").");
 
@@ -197,8 +248,11 @@ public class OSMMapTilePackager {
     private static void printUsageAndExit() {
         System.out.println("Usage:\n" +
                 "-u\t[OSM-style tile URL: http://_URL_/%d/%d/%d.png]\n" +
-                "-t\t[Temporary Folder]\n" +
-                "-d\t[Destination-file: C:\\mappack.zip]\n" +
+                "-t\t[Temporary Folder, to download into or to package. Not needed to download into a Destination-file]\n" +
+                "-i\t[Input-file to convert into the Destination-file instead of downloading: .zip, .gemf, .sqlite or .mbtiles]\n" +
+                "-d\t[Destination-file: C:\\mappack.zip, .gemf, .sqlite or .mbtiles]\n" +
+                "-name\t[Name of the tile source in the Destination-file. Default: name of the Temporary Folder, of the Input-file's tile source or of the Destination-file]\n" +
+                "-stored\t[Store the tiles of a zip uncompressed, for faster reading]\n" +
                 "-zmin\t[Minimum zoomLevel to download. Default: 0]\n" +
                 "-zmax\t[Maximum zoomLevel to download]\n" +
                 "-fa\t[Filename-Appendix. Default: \"\"]\n" +
@@ -206,7 +260,9 @@ public class OSMMapTilePackager {
                 "-s\t[South Latitude]\n" +
                 "-e\t[East Longitude]\n" +
                 "-w\t[West Longitude]\n" +
-                "-nthreads\t[Number of Download-Threads. Default: 2]\n"
+                "-nthreads\t[Number of Download-Threads. Default: 2, or the number of processors to convert]\n" +
+                "-hostlimit\t[Number of Download-Threads per host. Default: all of them]\n" +
+                "-journal\t[File to resume an interrupted download from. Default: [Destination-file or Temporary Folder].journal]\n"
         );
         System.exit(0);
     }
@@ -223,96 +279,162 @@ public class OSMMapTilePackager {
     // Methods
     // ===========================================================
 
-    private static void runCreateGEMFFile(final String pTempFolder, final String pDestinationFile) {
-    	try {
-            System.out.println("Creating GEMF archive from " + pTempFolder + " to " + pDestinationFile + " ...");
-            final List<File> sourceFolders = new ArrayList<File>();
-            sourceFolders.add(new File(pTempFolder));
-            final GEMFFile file = new GEMFFile(pDestinationFile, sourceFolders);
-            System.out.println(" done.");
-        } catch (final Exception e) {
-            e.printStackTrace();
-    	}
+    /**
+     * Create the sink of a destination-file, by its extension.
+     *
+     * @param pAppend add to an existing file, if the sink can
+     */
+    private static TileSink createSink(final String pDestinationFile, final String pName, final String pExtension, final List<GEMFTileSink.Range> pRanges, final boolean pAppend) throws IOException {
+        final File file = new File(pDestinationFile);
+        if (pDestinationFile.endsWith(".zip")) {
+            return new ZipTileSink(file, pName, pExtension, STORED, pAppend);
+        } else if (pDestinationFile.endsWith(".gemf")) {
+            return new GEMFTileSink(file, pName, pRanges, pAppend);
+        } else if (pDestinationFile.endsWith(".mbtiles")) {
+            return new MBTilesTileSink(file, pName, pExtension, pAppend);
+        } else {
+            return new DatabaseTileSink(file, pName, pAppend);
+        }
     }
 
-    private static void runZipToFile(final String pTempFolder, final String pDestinationFile) {
-        try {
-            System.out.print("Zipping files to " + pDestinationFile + " ...");
-            FolderZipper.zipFolderToFile(new File(pDestinationFile), new File(pTempFolder));
-            System.out.println(" done.");
-        } catch (final Exception e) {
-            e.printStackTrace();
+    /**
+     * Create the reader of an input-file or folder, by its extension.
+     */
+    private static TileReader createReader(final String pInput) throws IOException {
+        final File file = new File(pInput);
+        if (file.isDirectory()) {
+            return new FolderTileReader(file);
+        } else if (pInput.endsWith(".zip")) {
+            return new ZipTileReader(file);
+        } else if (pInput.endsWith(".gemf")) {
+            return new GEMFTileReader(file);
+        } else if (pInput.endsWith(".mbtiles")) {
+            return new MBTilesTileReader(file);
+        } else {
+            return new DatabaseTileReader(file);
         }
     }
 
-    private static void runCreateDb(final String pTempFolder, final String pDestinationFile) {
-        try {
-            System.out.print("Putting files into db : " + pDestinationFile + " ...");
-            DbCreator.putFolderToDb(new File(pDestinationFile), new File(pTempFolder));
-            System.out.println(" done.");
-        } catch (final Exception e) {
-            e.printStackTrace();
+    private static List<GEMFTileSink.Range> getRanges(final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
+        final List<GEMFTileSink.Range> ranges = new ArrayList<GEMFTileSink.Range>();
+        for(int z = pMinZoom; z <= pMaxZoom; z++){
+            final OSMTileInfo upperLeft = Util.getMapTileFromCoordinates(pNorth, pWest, z);
+            final OSMTileInfo lowerRight = Util.getMapTileFromCoordinates(pSouth, pEast, z);
+            if (upperLeft.x <= lowerRight.x && upperLeft.y <= lowerRight.y) {
+                ranges.add(new GEMFTileSink.Range(z, upperLeft.x, lowerRight.x, upperLeft.y, lowerRight.y));
+            }
         }
+        return ranges;
     }
 
-    private static void runCleanup(final String pTempFolder){
-        abortIfUserIsNotSure("This will delete the temp folder: " + pTempFolder + " !");
+    private static String getBaseName(final String pFile) {
+        final String name = new File(pFile).getName();
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
 
-        /* deleteDirecto*/
-        System.out.print("Deleting temp folder ...");
-        FolderDeleter.deleteFolder(new File(pTempFolder));
-        System.out.println(" done.");
+    private static void runConverting(final String pInput, final String pDestinationFile, final String pName, final int pThreadCount) {
+        System.out.println("---------------------------");
+        try {
+            final TileReader reader = createReader(pInput);
+            try {
+                final String name = pName != null ? pName : reader.getName() != null ? reader.getName() : getBaseName(pDestinationFile);
+                final String extension = reader.getExtension();
+                final long tileCount = reader.getTileCount();
+                System.out.println("Converting " + tileCount + " tiles of " + name + " from " + pInput + " into " + pDestinationFile + " with " + pThreadCount + " threads ...");
+                final List<GEMFTileSink.Range> ranges = pDestinationFile.endsWith(".gemf") ? reader.getRanges() : null;
+                final TileSink sink = createSink(pDestinationFile, name, extension, ranges, false);
+                try {
+                    new TileConverter(reader, sink, pThreadCount).convert(tileCount);
+                } finally {
+                    sink.close();
+                }
+                System.out.println(" done.");
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        } catch (final InterruptedException e) {
+            e.printStackTrace();
+        }
+        System.out.println("---------------------------");
     }
 
-    private static void runDownloading(final String pBaseURL, final String pTempFolder, final int pThreadCount, final String pFileAppendix, final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
-        final String pTempBaseURL = pTempFolder
+    private static void runDownloading(final String pBaseURL, final String pDestinationFile, final String pTempFolder, final String pName, final int pThreadCount, final int pHostLimit, final String pJournalFile, final String pFileAppendix, final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
+        final String extension = pBaseURL.substring(pBaseURL.lastIndexOf('.')) + pFileAppendix;
+        final String pTempBaseURL = pTempFolder == null ? null : (pTempFolder
         + File.separator + "%d"
         + File.separator + "%d"
         + File.separator + "%d"
-        + pBaseURL.substring(pBaseURL.lastIndexOf('.'))
-        + pFileAppendix
+        + extension)
         .replace(File.separator + File.separator, File.separator);
 
-        final DownloadManager dm = new DownloadManager(pBaseURL, pTempBaseURL, pThreadCount);
-
-        /* For each zoomLevel. */
-        for(int z = pMinZoom; z <= pMaxZoom; z++){
-            final OSMTileInfo upperLeft = Util.getMapTileFromCoordinates(pNorth, pWest, z);
-            final OSMTileInfo lowerRight = Util.getMapTileFromCoordinates(pSouth, pEast, z);
+        /* The journal is for this URL, destination and area, another job starts over. */
+        final String job = pBaseURL + " " + (pDestinationFile != null ? pDestinationFile + " " + pName : pTempBaseURL) + " " + pMinZoom + "-" + pMaxZoom + " "
+                + pNorth + " " + pSouth + " " + pEast + " " + pWest;
+        final ProgressJournal journal;
+        try {
+            journal = new ProgressJournal(new File(pJournalFile), job);
+        } catch (final IOException e) {
+            System.err.println("Can't open journal " + pJournalFile + " : " + e);
+            return;
+        }
+        final boolean resume = journal.getDoneCount() > 0;
+        if (resume) {
+            System.out.println("Resuming from " + pJournalFile + ", " + journal.getDoneCount() + " tiles are done.");
+        }
 
-            System.out.print("ZoomLevel: " + z + " ");
-            for(int x = upperLeft.x; x <= lowerRight.x; x++){
-                for(int y = upperLeft.y; y <= lowerRight.y; y++){
-                    dm.add(new OSMTileInfo(x,y,z));
-                }
-            }
-            try{
-                dm.waitEmpty();
-                System.out.println(" done.");
-            } catch (final InterruptedException e) {
-                e.printStackTrace();
+        final TileSink sink;
+        try {
+            sink = pDestinationFile != null
+                    ? createSink(pDestinationFile, pName, extension, getRanges(pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest), resume)
+                    : new FolderTileSink(pTempBaseURL);
+            if (resume) {
+                /* A zip or GEMF archive has the tiles that were written after the last flush of the journal too. */
+                sink.scan(new TileReader.Visitor() {
+                    @Override
+                    public void visit(final OSMTileInfo pTile, final byte[] pData) throws IOException {
+                        final long index = TileIterator.getIndex(pTile, pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
+                        if (index >= 0) {
+                            journal.markDone(index);
+                        }
+                    }
+                });
+                System.out.println(journal.getDoneCount() + " tiles are in " + (pDestinationFile != null ? pDestinationFile : pTempFolder) + ".");
             }
+        } catch (final IOException e) {
+            System.err.println("Can't create " + pDestinationFile + " : " + e);
+            return;
         }
+
+        final DownloadManager dm = new DownloadManager(pBaseURL, sink, pThreadCount, pHostLimit, journal);
+        final long tileCount = TileIterator.getTileCount(pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
         try {
-            System.out.print("Awaiting termination of all threads ...");
-            dm.waitFinished();
+            System.out.println("Downloading ...");
+            dm.download(new TileIterator(pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest), tileCount);
             System.out.println(" done.");
         } catch (final InterruptedException e) {
             e.printStackTrace();
         }
+
+        try {
+            if (dm.getNotFoundCount() > 0) {
+                System.out.println(dm.getNotFoundCount() + " tiles aren't on the server.");
+            }
+            if (!dm.finish()) {
+                System.out.println((dm.getFailedCount() > 0 ? dm.getFailedCount() + " tiles failed, run" : "Run") + " again to resume from " + pJournalFile);
+            } else if (dm.getFailedCount() > 0) {
+                System.out.println(dm.getFailedCount() + " tiles failed.");
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    private static int runFileExpecter(final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
+    private static long runFileExpecter(final int pMinZoom, final int pMaxZoom, final double pNorth, final double pSouth, final double pEast, final double pWest) {
         /* Calculate file-count. */
-        int fileCnt = 0;
-        for(int z = pMinZoom; z <= pMaxZoom; z++){
-            final OSMTileInfo upperLeft = Util.getMapTileFromCoordinates(pNorth, pWest, z);
-            final OSMTileInfo lowerRight = Util.getMapTileFromCoordinates(pSouth, pEast, z);
-
-            final int dx = lowerRight.x - upperLeft.x + 1;
-            final int dy = lowerRight.y - upperLeft.y + 1;
-            fileCnt += dx * dy;
-        }
+        final long fileCnt = TileIterator.getTileCount(pMinZoom, pMaxZoom, pNorth, pSouth, pEast, pWest);
 
         abortIfUserIsNotSure("This will download: " + fileCnt + " Maptiles!");
 
@@ -1,147 +1,465 @@
 // Created by plusminus on 9:34:16 PM - Mar 5, 2009
 package org.osmdroid.mtp.download;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Queue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.TileSink;
 import org.osmdroid.tileprovider.util.StreamUtils;
 
+/**
+ * Downloads the tiles of a {@link TileIterator} into a {@link TileSink}, as a pipeline: the
+ * calling thread enumerates the tiles lazily across all zoom levels and queues them, and the
+ * download threads take the next tile whenever they're free, so none of them waits for the others
+ * between zoom levels. The number of queued, downloading and retrying tiles is bounded, so memory
+ * use doesn't depend on the size of the job.
+ *
+ * A tile that fails is retried after a delay that doubles with every attempt, up to a limit, and
+ * given up after {@link #MAX_ATTEMPTS}. A tile that the server doesn't have is done at once,
+ * without putting anything, since sparse sources have no tiles for large areas. Tiles that are
+ * done are recorded in a {@link ProgressJournal}, and skipped when the job runs again. The sink
+ * and then the journal are flushed every {@link #CHECKPOINT_MILLIS} while no tile is being put,
+ * so that the journal never has a tile that the sink might lose.
+ */
 public class DownloadManager {
 	// ===========================================================
 	// Constants
 	// ===========================================================
 
+	public static final int MAX_ATTEMPTS = 8;
+	private static final long RETRY_DELAY_MILLIS = 1000;
+	private static final long MAX_RETRY_DELAY_MILLIS = 60 * 1000;
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+	private static final int READ_TIMEOUT_MILLIS = 60 * 1000;
+	private static final String USER_AGENT = "osmdroid-packager";
+
+	/** Tiles per download thread that may be queued or retrying at once */
+	private static final int PENDING_PER_THREAD = 64;
+
+	private static final long POLL_MILLIS = 100;
+	private static final long CHECKPOINT_MILLIS = 10 * 1000;
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
 
-	private final ExecutorService mThreadPool;
+	private final String mBaseURL;
+	private final TileSink mSink;
+	private final ProgressJournal mJournal;
+	private final int mThreadCount;
 
-	private final Queue<OSMTileInfo> mQueue = new LinkedBlockingQueue<OSMTileInfo>();
+	/** Limits the connections to each host */
+	private final int mHostLimit;
+	private final Map<String, Semaphore> mHostPermits = new HashMap<String, Semaphore>();
 
-	private final String mBaseURL;
-	private final String mDestinationURL;
+	private final BlockingQueue<Task> mQueue = new LinkedBlockingQueue<Task>();
+	private final DelayQueue<Task> mRetries = new DelayQueue<Task>();
+	private final Semaphore mPendingPermits;
+	private final AtomicInteger mPending = new AtomicInteger();
+	private volatile boolean mEnumerated;
+
+	private final AtomicLong mDownloaded = new AtomicLong();
+	private final AtomicLong mNotFound = new AtomicLong();
+	private final AtomicLong mFailed = new AtomicLong();
+	private final AtomicLong mRetried = new AtomicLong();
+	private volatile long mSkipped;
+
+	/** Whether every tile was enumerated and is done or given up */
+	private volatile boolean mComplete;
+
+	private final Random mRandom = new Random();
+
+	/** Held to put a tile, and exclusively to flush the sink and the journal */
+	private final ReadWriteLock mCheckpointLock = new ReentrantReadWriteLock();
 
 	// ===========================================================
 	// Constructors
 	// ===========================================================
 
-	public DownloadManager(final String pBaseURL, final String pDestinationURL, final int mThreads) {
+	/**
+	 * @param pBaseURL
+	 *            the URL of a tile, formatted with the zoom level, x and y
+	 * @param pThreadCount
+	 *            the number of download threads
+	 * @param pHostLimit
+	 *            the number of download threads that may connect to one host at once
+	 * @param pJournal
+	 *            the journal of the job, or null to download every tile
+	 */
+	public DownloadManager(final String pBaseURL, final TileSink pSink, final int pThreadCount,
+			final int pHostLimit, final ProgressJournal pJournal) {
 		this.mBaseURL = pBaseURL;
-		this.mDestinationURL = pDestinationURL;
-		this.mThreadPool = Executors.newFixedThreadPool(mThreads);
+		this.mSink = pSink;
+		this.mThreadCount = Math.max(1, pThreadCount);
+		this.mHostLimit = Math.max(1, pHostLimit);
+		this.mJournal = pJournal;
+		this.mPendingPermits = new Semaphore(this.mThreadCount * PENDING_PER_THREAD);
 	}
 
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
 
-	public synchronized void add(final OSMTileInfo pTileInfo){
-		this.mQueue.add(pTileInfo);
-		spawnNewThread();
+	public long getDownloadedCount() {
+		return mDownloaded.get();
 	}
 
-	private synchronized OSMTileInfo getNext(){
-		final OSMTileInfo tile = this.mQueue.poll();
+	/** The tiles that the server doesn't have, they count as done */
+	public long getNotFoundCount() {
+		return mNotFound.get();
+	}
 
-		final int remaining = this.mQueue.size();
-		if(remaining % 10 == 0 && remaining > 0) {
-			System.out.print("(" + remaining +")");
-		} else {
-			System.out.print(".");
+	/** The tiles that were given up, they're downloaded again when the job runs again */
+	public long getFailedCount() {
+		return mFailed.get();
+	}
+
+	/** The number of times that a tile was retried */
+	public long getRetriedCount() {
+		return mRetried.get();
+	}
+
+	/** The tiles that the journal has as done */
+	public long getSkippedCount() {
+		return mSkipped;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Download the tiles, and return when all of them are done or given up. If the calling thread
+	 * is interrupted no more tiles are queued, and the ones that are queued are finished first, so
+	 * that the journal records them.
+	 *
+	 * @param pTileCount
+	 *            the number of tiles, for the progress reports
+	 */
+	public void download(final TileIterator pTiles, final long pTileCount)
+			throws InterruptedException {
+		final Thread[] threads = new Thread[mThreadCount];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new DownloadThread();
+			threads[i].setName("DownloadThread-" + i);
+			threads[i].start();
 		}
+		final Thread reporter = new ReportThread(pTileCount);
+		reporter.start();
+
+		try {
+			while (pTiles.hasNext()) {
+				final OSMTileInfo tile = pTiles.next();
+				final long index = pTiles.getIndex();
+				if (mJournal != null && mJournal.isDone(index)) {
+					mSkipped++;
+					continue;
+				}
+				mPendingPermits.acquire();
+				mPending.incrementAndGet();
+				mQueue.put(new Task(tile, index));
+			}
+			mComplete = true;
+		} finally {
+			mEnumerated = true;
+			for (final Thread thread : threads) {
+				joinUninterruptibly(thread);
+			}
+			reporter.interrupt();
+			joinUninterruptibly(reporter);
+			checkpoint();
+			report(pTileCount);
+		}
+	}
 
-		this.notify();
-		return tile;
+	/**
+	 * Close the sink, and then the journal. The journal is deleted if the job is complete, that
+	 * is if the download wasn't interrupted and no tile was given up. Otherwise it's kept, so that
+	 * running the job again resumes it.
+	 *
+	 * @return whether the job is complete
+	 */
+	public boolean finish() throws IOException {
+		mSink.close();
+		final boolean complete = mComplete && mFailed.get() == 0;
+		if (mJournal != null) {
+			if (complete) {
+				mJournal.delete();
+			} else {
+				mJournal.close();
+			}
+		}
+		return complete;
 	}
 
-	public synchronized void waitEmpty() throws InterruptedException {
-		while(this.mQueue.size() > 0){
-			this.wait();
+	private static void joinUninterruptibly(final Thread pThread) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				pThread.join();
+				break;
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
-	public void waitFinished() throws InterruptedException {
-		waitEmpty();
-		this.mThreadPool.shutdown();
-		this.mThreadPool.awaitTermination(6, TimeUnit.HOURS);
+	private void process(final Task pTask) throws InterruptedException {
+		final String url = String.format(mBaseURL, pTask.mTile.zoom, pTask.mTile.x,
+				pTask.mTile.y);
+		pTask.mAttempts++;
+		final byte[] data;
+		try {
+			data = download(url);
+		} catch (final TileNotFoundException e) {
+			mNotFound.incrementAndGet();
+			done(pTask, true);
+			return;
+		} catch (final IOException e) {
+			if (pTask.mAttempts >= MAX_ATTEMPTS) {
+				System.err.println("Giving up on '" + pTask.mTile + "' from URL: " + url + " : "
+						+ e);
+				done(pTask, false);
+			} else {
+				pTask.setDelay(getRetryDelay(pTask.mAttempts, e));
+				mRetried.incrementAndGet();
+				mRetries.put(pTask);
+			}
+			return;
+		}
+
+		mCheckpointLock.readLock().lock();
+		try {
+			mSink.put(pTask.mTile, data);
+			mDownloaded.incrementAndGet();
+			done(pTask, true);
+		} catch (final IOException e) {
+			System.err.println("Error writing: '" + pTask.mTile + "' : " + e);
+			done(pTask, false);
+		} finally {
+			mCheckpointLock.readLock().unlock();
+		}
 	}
 
-	// ===========================================================
-	// Methods from SuperClass/Interfaces
-	// ===========================================================
+	private void done(final Task pTask, final boolean pSuccess) {
+		if (pSuccess) {
+			if (mJournal != null) {
+				try {
+					mJournal.markDone(pTask.mIndex);
+				} catch (final IOException e) {
+					System.err.println("Error writing journal: " + e);
+				}
+			}
+		} else {
+			mFailed.incrementAndGet();
+		}
+		mPending.decrementAndGet();
+		mPendingPermits.release();
+	}
 
-	// ===========================================================
-	// Methods
-	// ===========================================================
+	private byte[] download(final String pURL) throws IOException, InterruptedException {
+		final URL url = new URL(pURL);
+		final Semaphore permits = getHostPermits(url.getHost());
+		permits.acquire();
+		InputStream in = null;
+		try {
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+			connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+			connection.setRequestProperty("User-Agent", USER_AGENT);
+			final int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+				throw new TileNotFoundException(status);
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new HttpException(status, connection.getHeaderField("Retry-After"));
+			}
+			in = connection.getInputStream();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(
+					Math.max(connection.getContentLength(), StreamUtils.IO_BUFFER_SIZE));
+			StreamUtils.copy(in, out);
+			return out.toByteArray();
+		} finally {
+			StreamUtils.closeStream(in);
+			permits.release();
+		}
+	}
+
+	private synchronized Semaphore getHostPermits(final String pHost) {
+		Semaphore permits = mHostPermits.get(pHost);
+		if (permits == null) {
+			permits = new Semaphore(mHostLimit);
+			mHostPermits.put(pHost, permits);
+		}
+		return permits;
+	}
 
-	private void spawnNewThread() {
-		this.mThreadPool.execute(new DownloadRunner());
+	/**
+	 * Double the delay with every attempt up to a limit, with some jitter so that tiles that
+	 * failed together aren't retried together. A server that asks to retry later gets at least
+	 * the delay it asks for, within the limit.
+	 */
+	private long getRetryDelay(final int pAttempts, final IOException pException) {
+		long delay = Math.min(MAX_RETRY_DELAY_MILLIS, RETRY_DELAY_MILLIS << Math.min(pAttempts - 1,
+				16));
+		if (pException instanceof HttpException) {
+			delay = Math.max(delay, Math.min(MAX_RETRY_DELAY_MILLIS,
+					((HttpException) pException).mRetryAfterMillis));
+		}
+		synchronized (mRandom) {
+			return delay / 2 + (long) (mRandom.nextDouble() * delay / 2);
+		}
+	}
+
+	private void checkpoint() {
+		mCheckpointLock.writeLock().lock();
+		try {
+			mSink.flush();
+			if (mJournal != null) {
+				mJournal.flush();
+			}
+		} catch (final IOException e) {
+			System.err.println("Error writing journal: " + e);
+		} finally {
+			mCheckpointLock.writeLock().unlock();
+		}
+	}
+
+	private void report(final long pTileCount) {
+		final long done = mSkipped + mDownloaded.get() + mNotFound.get();
+		System.out.println(done + "/" + pTileCount + " tiles done (" + mSkipped + " before, "
+				+ mNotFound.get() + " not found), " + mFailed.get() + " failed, " + mRetried.get()
+				+ " retries, " + mRetries.size() + " waiting to retry");
 	}
 
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
 
+	private static class Task implements Delayed {
+		final OSMTileInfo mTile;
+		final long mIndex;
+		int mAttempts;
+		long mRetryTime;
 
-	private class DownloadRunner implements Runnable {
-
-		private OSMTileInfo mTileInfo;
-		private File mDestinationFile;
+		Task(final OSMTileInfo pTile, final long pIndex) {
+			mTile = pTile;
+			mIndex = pIndex;
+		}
 
-		public DownloadRunner() {
+		void setDelay(final long pDelayMillis) {
+			mRetryTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pDelayMillis);
 		}
 
-		private void init(final OSMTileInfo pTileInfo) {
-			this.mTileInfo = pTileInfo;
-			/* Create destination file. */
-			final String filename = String.format(DownloadManager.this.mDestinationURL, this.mTileInfo.zoom, this.mTileInfo.x, this.mTileInfo.y);
-			this.mDestinationFile = new File(filename);
+		@Override
+		public long getDelay(final TimeUnit pUnit) {
+			return pUnit.convert(mRetryTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
 
-			final File parent = this.mDestinationFile.getParentFile();
-			parent.mkdirs();
+		@Override
+		public int compareTo(final Delayed pOther) {
+			final long difference = mRetryTime - ((Task) pOther).mRetryTime;
+			return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
 		}
+	}
+
+	private class DownloadThread extends Thread {
 
 		@Override
 		public void run() {
-			InputStream in = null;
-			OutputStream out = null;
+			try {
+				while (true) {
+					// tiles that are due to be retried first, so that they don't wait for the
+					// whole queue
+					Task task = mRetries.poll();
+					if (task == null) {
+						task = mQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					}
+					if (task != null) {
+						try {
+							process(task);
+						} catch (final RuntimeException e) {
+							System.err.println("Error downloading: '" + task.mTile + "' : " + e);
+							done(task, false);
+						}
+					} else if (mEnumerated && mPending.get() == 0) {
+						return;
+					}
+				}
+			} catch (final InterruptedException e) {
+				// stop
+			}
+		}
+	}
 
-			init(DownloadManager.this.getNext());
+	private class ReportThread extends Thread {
 
-			if (mDestinationFile.exists()) {
-				return; // TODO issue 70 - make this an option
-			}
+		private final long mTileCount;
 
-			final String finalURL = String.format(DownloadManager.this.mBaseURL, this.mTileInfo.zoom, this.mTileInfo.x, this.mTileInfo.y);
+		ReportThread(final long pTileCount) {
+			mTileCount = pTileCount;
+			setDaemon(true);
+		}
 
+		@Override
+		public void run() {
 			try {
-				in = new BufferedInputStream(new URL(finalURL).openStream(), StreamUtils.IO_BUFFER_SIZE);
+				while (true) {
+					Thread.sleep(CHECKPOINT_MILLIS);
+					checkpoint();
+					report(mTileCount);
+				}
+			} catch (final InterruptedException e) {
+				// stop
+			}
+		}
+	}
 
-				final FileOutputStream fileOut = new FileOutputStream(this.mDestinationFile);
-				out = new BufferedOutputStream(fileOut, StreamUtils.IO_BUFFER_SIZE);
+	private static class HttpException extends IOException {
+		private static final long serialVersionUID = 1L;
 
-				StreamUtils.copy(in, out);
+		final long mRetryAfterMillis;
 
-				out.flush();
-			} catch (final Exception e) {
-				System.err.println("Error downloading: '" + this.mTileInfo + "' from URL: " + finalURL + " : " + e);
-				DownloadManager.this.add(this.mTileInfo); // try again later
-			} finally {
-				StreamUtils.closeStream(in);
-				StreamUtils.closeStream(out);
+		HttpException(final int pStatus, final String pRetryAfter) {
+			super("HTTP status " + pStatus);
+			long retryAfter = 0;
+			if (pRetryAfter != null) {
+				try {
+					retryAfter = Long.parseLong(pRetryAfter.trim()) * 1000;
+				} catch (final NumberFormatException e) {
+					// an HTTP date, use the usual delay
+				}
 			}
+			mRetryAfterMillis = retryAfter;
+		}
+	}
+
+	private static class TileNotFoundException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		TileNotFoundException(final int pStatus) {
+			super("HTTP status " + pStatus);
 		}
 	}
 }
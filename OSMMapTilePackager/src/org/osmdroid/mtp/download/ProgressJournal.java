@@ -0,0 +1,190 @@
+package org.osmdroid.mtp.download;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+
+import org.osmdroid.tileprovider.util.StreamUtils;
+
+/**
+ * Remembers which tiles of a job are done, by their index in the {@link TileIterator} order, so
+ * that an interrupted job resumes where it stopped. The indexes of the tiles that are done are
+ * kept in memory until the journal is flushed, which the {@link DownloadManager} does right after
+ * flushing the sink, and then appended to a file, so that the file never has a tile that the sink
+ * might lose. The file is read into a bit set when the job is started again. A record that was
+ * only half written when the job stopped is dropped.
+ */
+public class ProgressJournal {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int MAGIC = 0x4F534D4A; // OSMJ
+	private static final int INDEX_SIZE = 4;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mFile;
+	private final BitSet mDone = new BitSet();
+	private int mDoneCount;
+	private final DataOutputStream mOut;
+
+	/** The indexes that were marked done since the last flush */
+	private int[] mUnflushed = new int[1024];
+	private int mUnflushedCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * Open the journal of a job, or start a new one if the file doesn't exist or belongs to
+	 * another job.
+	 *
+	 * @param pJob
+	 *            describes the job, such as its URL and area, so that a journal isn't resumed by
+	 *            a different job
+	 */
+	public ProgressJournal(final File pFile, final String pJob) throws IOException {
+		mFile = pFile;
+		long length = pFile.exists() ? read(pJob) : -1;
+		if (length < 0) {
+			final DataOutputStream out = new DataOutputStream(new FileOutputStream(pFile));
+			try {
+				out.writeInt(MAGIC);
+				out.writeUTF(pJob);
+			} finally {
+				StreamUtils.closeStream(out);
+			}
+			length = pFile.length();
+		}
+
+		// drop a half written record before appending
+		final RandomAccessFile file = new RandomAccessFile(pFile, "rw");
+		try {
+			file.setLength(length);
+		} finally {
+			file.close();
+		}
+		mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pFile, true),
+				StreamUtils.IO_BUFFER_SIZE));
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public File getFile() {
+		return mFile;
+	}
+
+	public synchronized int getDoneCount() {
+		return mDoneCount;
+	}
+
+	public synchronized boolean isDone(final long pIndex) {
+		return pIndex <= Integer.MAX_VALUE && mDone.get((int) pIndex);
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Record that a tile is done. It's only written to the file when the journal is flushed.
+	 */
+	public synchronized void markDone(final long pIndex) throws IOException {
+		if (pIndex > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many tiles for a journal: " + pIndex);
+		}
+		if (!mDone.get((int) pIndex)) {
+			mDone.set((int) pIndex);
+			mDoneCount++;
+			if (mUnflushedCount == mUnflushed.length) {
+				final int[] unflushed = new int[mUnflushedCount * 2];
+				System.arraycopy(mUnflushed, 0, unflushed, 0, mUnflushedCount);
+				mUnflushed = unflushed;
+			}
+			mUnflushed[mUnflushedCount++] = (int) pIndex;
+		}
+	}
+
+	/**
+	 * Write the tiles that were marked done since the last flush to the file. Call it once the
+	 * sink has made them durable.
+	 */
+	public synchronized void flush() throws IOException {
+		for (int i = 0; i < mUnflushedCount; i++) {
+			mOut.writeInt(mUnflushed[i]);
+		}
+		mOut.flush();
+		mUnflushedCount = 0;
+	}
+
+	/**
+	 * Close the file. The tiles that were marked done since the last flush aren't written.
+	 */
+	public synchronized void close() throws IOException {
+		mOut.close();
+	}
+
+	/**
+	 * Close and delete the journal, once the job is complete.
+	 */
+	public synchronized void delete() throws IOException {
+		close();
+		mFile.delete();
+	}
+
+	/**
+	 * @return the length of the valid part of the file, or -1 if it belongs to another job
+	 */
+	private long read(final String pJob) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(mFile), StreamUtils.IO_BUFFER_SIZE));
+		try {
+			try {
+				if (in.readInt() != MAGIC || !in.readUTF().equals(pJob)) {
+					return -1;
+				}
+			} catch (final EOFException e) {
+				return -1;
+			}
+			long length = getHeaderLength(pJob);
+			try {
+				while (true) {
+					final int index = in.readInt();
+					if (index >= 0 && !mDone.get(index)) {
+						mDone.set(index);
+						mDoneCount++;
+					}
+					length += INDEX_SIZE;
+				}
+			} catch (final EOFException e) {
+				return length;
+			}
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+	}
+
+	private static long getHeaderLength(final String pJob) throws IOException {
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(header);
+		out.writeInt(MAGIC);
+		out.writeUTF(pJob);
+		out.close();
+		return header.size();
+	}
+}
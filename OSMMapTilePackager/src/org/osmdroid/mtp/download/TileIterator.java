@@ -0,0 +1,139 @@
+package org.osmdroid.mtp.download;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.util.Util;
+
+/**
+ * Enumerates the tiles of an area from the minimum to the maximum zoom level, by zoom level, x
+ * and y, without keeping them in memory. The order is always the same for the same area, so the
+ * index of a tile in it identifies the tile within a job.
+ */
+public class TileIterator implements Iterator<OSMTileInfo> {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mMaxZoom;
+	private final double mNorth;
+	private final double mSouth;
+	private final double mEast;
+	private final double mWest;
+
+	private int mZoom;
+	private OSMTileInfo mUpperLeft;
+	private OSMTileInfo mLowerRight;
+	private int mX;
+	private int mY;
+
+	/** The index of the tile that {@link #next()} returned last */
+	private long mIndex = -1;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public TileIterator(final int pMinZoom, final int pMaxZoom, final double pNorth,
+			final double pSouth, final double pEast, final double pWest) {
+		mMaxZoom = pMaxZoom;
+		mNorth = pNorth;
+		mSouth = pSouth;
+		mEast = pEast;
+		mWest = pWest;
+		startZoomLevel(pMinZoom);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public long getIndex() {
+		return mIndex;
+	}
+
+	/**
+	 * Count the tiles of an area without enumerating them.
+	 */
+	public static long getTileCount(final int pMinZoom, final int pMaxZoom, final double pNorth,
+			final double pSouth, final double pEast, final double pWest) {
+		long count = 0;
+		for (int z = pMinZoom; z <= pMaxZoom; z++) {
+			final OSMTileInfo upperLeft = Util.getMapTileFromCoordinates(pNorth, pWest, z);
+			final OSMTileInfo lowerRight = Util.getMapTileFromCoordinates(pSouth, pEast, z);
+			count += (long) Math.max(0, lowerRight.x - upperLeft.x + 1)
+					* Math.max(0, lowerRight.y - upperLeft.y + 1);
+		}
+		return count;
+	}
+
+	/**
+	 * The index of a tile in the order of the iterator of an area, without enumerating them.
+	 *
+	 * @return the index, or -1 if the tile isn't in the area
+	 */
+	public static long getIndex(final OSMTileInfo pTile, final int pMinZoom, final int pMaxZoom,
+			final double pNorth, final double pSouth, final double pEast, final double pWest) {
+		if (pTile.zoom < pMinZoom || pTile.zoom > pMaxZoom) {
+			return -1;
+		}
+		final OSMTileInfo upperLeft = Util.getMapTileFromCoordinates(pNorth, pWest, pTile.zoom);
+		final OSMTileInfo lowerRight = Util.getMapTileFromCoordinates(pSouth, pEast, pTile.zoom);
+		if (pTile.x < upperLeft.x || pTile.x > lowerRight.x || pTile.y < upperLeft.y
+				|| pTile.y > lowerRight.y) {
+			return -1;
+		}
+		return getTileCount(pMinZoom, pTile.zoom - 1, pNorth, pSouth, pEast, pWest)
+				+ (long) (pTile.x - upperLeft.x) * (lowerRight.y - upperLeft.y + 1)
+				+ pTile.y - upperLeft.y;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public boolean hasNext() {
+		while (mZoom <= mMaxZoom) {
+			if (mX <= mLowerRight.x && mY <= mLowerRight.y) {
+				return true;
+			}
+			if (mX < mLowerRight.x && mUpperLeft.y <= mLowerRight.y) {
+				mX++;
+				mY = mUpperLeft.y;
+			} else {
+				startZoomLevel(mZoom + 1);
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public OSMTileInfo next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		mIndex++;
+		return new OSMTileInfo(mX, mY++, mZoom);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	private void startZoomLevel(final int pZoom) {
+		mZoom = pZoom;
+		if (pZoom <= mMaxZoom) {
+			mUpperLeft = Util.getMapTileFromCoordinates(mNorth, mWest, pZoom);
+			mLowerRight = Util.getMapTileFromCoordinates(mSouth, mEast, pZoom);
+			mX = mUpperLeft.x;
+			mY = mUpperLeft.y;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package org.osmdroid.mtp.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.DatabaseTileSink;
+import org.osmdroid.mtp.sink.GEMFTileSink;
+
+/**
+ * Reads the tiles of an SQLite database with osmdroid's schema, as {@link DatabaseTileSink} writes
+ * it, for the provider with the most tiles. The database doesn't record the extension of the
+ * tiles, it's guessed from the first one.
+ */
+public class DatabaseTileReader extends SQLiteTileReader {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String mProvider;
+	private final long mTileCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public DatabaseTileReader(final File pFile) throws IOException {
+		super(pFile);
+		try {
+			final ResultSet result = mConnection.createStatement().executeQuery(
+					"SELECT provider, count(*) FROM tiles GROUP BY provider ORDER BY 2 DESC");
+			try {
+				if (!result.next()) {
+					throw new IOException("No tiles in " + pFile);
+				}
+				mProvider = result.getString(1);
+				mTileCount = result.getLong(2);
+			} finally {
+				result.getStatement().close();
+			}
+		} catch (final SQLException e) {
+			close();
+			throw new IOException("Error reading " + pFile + ": " + e);
+		} catch (final IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	@Override
+	public String getName() {
+		return mProvider;
+	}
+
+	@Override
+	public String getExtension() throws IOException {
+		return TileConverter.getExtension((byte[]) queryValue(
+				"SELECT tile FROM tiles WHERE provider = ? LIMIT 1", mProvider));
+	}
+
+	@Override
+	public long getTileCount() {
+		return mTileCount;
+	}
+
+	@Override
+	public List<GEMFTileSink.Range> getRanges() throws IOException {
+		final RangeCollector ranges = new RangeCollector();
+		try {
+			final PreparedStatement statement = mConnection
+					.prepareStatement("SELECT key FROM tiles WHERE provider = ?");
+			try {
+				statement.setString(1, mProvider);
+				final ResultSet result = statement.executeQuery();
+				while (result.next()) {
+					final OSMTileInfo tile = DatabaseTileSink.getTile(result.getLong(1));
+					ranges.add(tile.zoom, tile.x, tile.y);
+				}
+				result.close();
+			} finally {
+				statement.close();
+			}
+		} catch (final SQLException e) {
+			throw new IOException("Error reading " + mFile + ": " + e);
+		}
+		return ranges.getRanges();
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void scan(final Visitor pVisitor) throws IOException {
+		try {
+			final PreparedStatement statement = mConnection
+					.prepareStatement("SELECT key, tile FROM tiles WHERE provider = ?");
+			try {
+				statement.setString(1, mProvider);
+				final ResultSet result = statement.executeQuery();
+				while (result.next()) {
+					pVisitor.visit(DatabaseTileSink.getTile(result.getLong(1)),
+							result.getBytes(2));
+				}
+				result.close();
+			} finally {
+				statement.close();
+			}
+		} catch (final SQLException e) {
+			throw new IOException("Error reading " + mFile + ": " + e);
+		}
+	}
+
+	@Override
+	public byte[] read(final OSMTileInfo pTile) throws IOException {
+		return (byte[]) queryValue("SELECT tile FROM tiles WHERE key = ? AND provider = ?",
+				DatabaseTileSink.getKey(pTile), mProvider);
+	}
+}
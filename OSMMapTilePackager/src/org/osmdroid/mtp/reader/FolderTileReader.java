@@ -0,0 +1,190 @@
+package org.osmdroid.mtp.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.GEMFTileSink;
+
+/**
+ * Reads the tiles of a folder laid out like "Mapnik/15/16624/12443.png", as the packager
+ * downloads them. The name of the folder is the name of the tile source, and the extension of
+ * the first tile is the extension of all of them.
+ */
+public class FolderTileReader implements TileReader {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mFolder;
+	private String mExtension;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public FolderTileReader(final File pFolder) {
+		mFolder = pFolder;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	@Override
+	public String getName() {
+		return mFolder.getName();
+	}
+
+	/**
+	 * @return the extension of the first tile, such as ".png.andnav", or "" if there are none
+	 */
+	@Override
+	public synchronized String getExtension() {
+		if (mExtension == null) {
+			mExtension = "";
+			search: for (final File z : getNumberedFiles(mFolder)) {
+				for (final File x : getNumberedFiles(z)) {
+					for (final File y : getNumberedFiles(x)) {
+						mExtension = y.getName().substring(getNumberLength(y.getName()));
+						break search;
+					}
+				}
+			}
+		}
+		return mExtension;
+	}
+
+	@Override
+	public long getTileCount() {
+		final String extension = getExtension();
+		long count = 0;
+		for (final File z : getNumberedFiles(mFolder)) {
+			for (final File x : getNumberedFiles(z)) {
+				for (final File y : getNumberedFiles(x)) {
+					if (isTile(y, extension)) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public List<GEMFTileSink.Range> getRanges() {
+		final String extension = getExtension();
+		final RangeCollector ranges = new RangeCollector();
+		for (final File z : getNumberedFiles(mFolder)) {
+			for (final File x : getNumberedFiles(z)) {
+				for (final File y : getNumberedFiles(x)) {
+					if (!isTile(y, extension)) {
+						continue;
+					}
+					ranges.add(getNumber(z.getName()), getNumber(x.getName()),
+							getNumber(y.getName()));
+				}
+			}
+		}
+		return ranges.getRanges();
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	/**
+	 * Pass the tiles with the extension of the first one, they're read in {@link #read}.
+	 */
+	@Override
+	public void scan(final Visitor pVisitor) throws IOException {
+		final String extension = getExtension();
+		for (final File z : getNumberedFiles(mFolder)) {
+			for (final File x : getNumberedFiles(z)) {
+				for (final File y : getNumberedFiles(x)) {
+					if (isTile(y, extension)) {
+						pVisitor.visit(new OSMTileInfo(getNumber(x.getName()),
+								getNumber(y.getName()), getNumber(z.getName())), null);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public byte[] read(final OSMTileInfo pTile) throws IOException {
+		final File file = new File(mFolder, pTile.zoom + File.separator + pTile.x
+				+ File.separator + pTile.y + getExtension());
+		final byte[] data = new byte[(int) file.length()];
+		final FileInputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (final FileNotFoundException e) {
+			return null;
+		}
+		try {
+			int read = 0;
+			while (read < data.length) {
+				final int count = in.read(data, read, data.length - read);
+				if (count < 0) {
+					throw new IOException("File changed while reading: " + file);
+				}
+				read += count;
+			}
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+
+	@Override
+	public void close() {
+		// nothing is kept open
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Whether the file is a number with the extension, like the tiles that are read.
+	 */
+	private static boolean isTile(final File pFile, final String pExtension) {
+		final String name = pFile.getName();
+		return name.length() == getNumberLength(name) + pExtension.length()
+				&& name.endsWith(pExtension);
+	}
+
+	/**
+	 * @return the files in the folder whose names start with a number
+	 */
+	private static List<File> getNumberedFiles(final File pFolder) {
+		final List<File> files = new ArrayList<File>();
+		final File[] children = pFolder.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				final int length = getNumberLength(child.getName());
+				if (length > 0 && length < 10) {
+					files.add(child);
+				}
+			}
+		}
+		return files;
+	}
+
+	private static int getNumberLength(final String pName) {
+		int length = 0;
+		while (length < pName.length() && Character.isDigit(pName.charAt(length))) {
+			length++;
+		}
+		return length;
+	}
+
+	private static int getNumber(final String pName) {
+		return Integer.parseInt(pName.substring(0, getNumberLength(pName)));
+	}
+}
@@ -0,0 +1,136 @@
+package org.osmdroid.mtp.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.GEMFTileSink;
+import org.osmdroid.util.MappedGEMFFile;
+
+/**
+ * Reads the tiles of a GEMF archive through a {@link MappedGEMFFile}. The tiles of its ranges are
+ * passed without looking them up, and read by the threads of the converter straight from the
+ * mapped files. GEMF doesn't record the extension of the tiles, it's guessed from the first one.
+ */
+public class GEMFTileReader implements TileReader {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final MappedGEMFFile mGEMFFile;
+	private final int mSource;
+
+	/** zoom level, xMin, xMax, yMin and yMax of each range of the source */
+	private final List<int[]> mRanges;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public GEMFTileReader(final File pFile) throws IOException {
+		mGEMFFile = new MappedGEMFFile(pFile);
+		int source = -1;
+		long sourceCount = -1;
+		for (final int candidate : mGEMFFile.getSources().keySet()) {
+			final long count = getTileCount(mGEMFFile.getRanges(candidate));
+			if (count > sourceCount) {
+				source = candidate;
+				sourceCount = count;
+			}
+		}
+		if (source < 0) {
+			mGEMFFile.close();
+			throw new IOException("No tile sources in " + pFile);
+		}
+		mSource = source;
+		mRanges = mGEMFFile.getRanges(source);
+		mGEMFFile.selectSource(source);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	@Override
+	public String getName() {
+		return mGEMFFile.getSources().get(mSource);
+	}
+
+	@Override
+	public String getExtension() throws IOException {
+		for (final int[] range : mRanges) {
+			for (int x = range[1]; x <= range[2]; x++) {
+				for (int y = range[3]; y <= range[4]; y++) {
+					final byte[] data = read(new OSMTileInfo(x, y, range[0]));
+					if (data != null) {
+						return TileConverter.getExtension(data);
+					}
+				}
+			}
+		}
+		return TileConverter.getExtension(null);
+	}
+
+	/**
+	 * @return the number of tiles of the ranges, some of which may be empty
+	 */
+	@Override
+	public long getTileCount() {
+		return getTileCount(mRanges);
+	}
+
+	@Override
+	public List<GEMFTileSink.Range> getRanges() {
+		final RangeCollector ranges = new RangeCollector();
+		for (final int[] range : mRanges) {
+			ranges.add(range[0], range[1], range[3]);
+			ranges.add(range[0], range[2], range[4]);
+		}
+		return ranges.getRanges();
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void scan(final Visitor pVisitor) throws IOException {
+		for (final int[] range : mRanges) {
+			for (int x = range[1]; x <= range[2]; x++) {
+				for (int y = range[3]; y <= range[4]; y++) {
+					pVisitor.visit(new OSMTileInfo(x, y, range[0]), null);
+				}
+			}
+		}
+	}
+
+	@Override
+	public byte[] read(final OSMTileInfo pTile) {
+		final ByteBuffer buffer = mGEMFFile.getByteBuffer(pTile.x, pTile.y, pTile.zoom);
+		if (buffer == null) {
+			return null;
+		}
+		final byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		return data;
+	}
+
+	@Override
+	public void close() throws IOException {
+		mGEMFFile.close();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	private static long getTileCount(final List<int[]> pRanges) {
+		long count = 0;
+		for (final int[] range : pRanges) {
+			count += (long) (range[2] - range[1] + 1) * (range[4] - range[3] + 1);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,128 @@
+package org.osmdroid.mtp.reader;
+
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_TILE_COLUMN;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_TILE_DATA;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_TILE_ROW;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_ZOOM_LEVEL;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.TABLE_TILES;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.GEMFTileSink;
+import org.osmdroid.mtp.sink.MBTilesTileSink;
+
+/**
+ * Reads the tiles of an MBTiles file. The rows of MBTiles count from the bottom, they're flipped
+ * to the rows of osmdroid. The name and the extension of the tiles come from the metadata, if
+ * it has them.
+ */
+public class MBTilesTileReader extends SQLiteTileReader {
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MBTilesTileReader(final File pFile) throws IOException {
+		super(pFile);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	@Override
+	public String getName() {
+		try {
+			return (String) queryValue("SELECT value FROM metadata WHERE name = 'name'");
+		} catch (final IOException e) {
+			// no metadata
+			return null;
+		}
+	}
+
+	@Override
+	public String getExtension() throws IOException {
+		String format = null;
+		try {
+			format = (String) queryValue("SELECT value FROM metadata WHERE name = 'format'");
+		} catch (final IOException e) {
+			// no metadata
+		}
+		if (format != null && format.length() > 0) {
+			return "." + (format.equals("jpeg") ? "jpg" : format);
+		}
+		return TileConverter.getExtension((byte[]) queryValue("SELECT " + COL_TILES_TILE_DATA
+				+ " FROM " + TABLE_TILES + " LIMIT 1"));
+	}
+
+	@Override
+	public long getTileCount() throws IOException {
+		return ((Number) queryValue("SELECT count(*) FROM " + TABLE_TILES)).longValue();
+	}
+
+	@Override
+	public List<GEMFTileSink.Range> getRanges() throws IOException {
+		final List<GEMFTileSink.Range> ranges = new ArrayList<GEMFTileSink.Range>();
+		try {
+			final Statement statement = mConnection.createStatement();
+			try {
+				final ResultSet result = statement.executeQuery("SELECT " + COL_TILES_ZOOM_LEVEL
+						+ ", min(" + COL_TILES_TILE_COLUMN + "), max(" + COL_TILES_TILE_COLUMN
+						+ "), min(" + COL_TILES_TILE_ROW + "), max(" + COL_TILES_TILE_ROW
+						+ ") FROM " + TABLE_TILES + " GROUP BY " + COL_TILES_ZOOM_LEVEL);
+				while (result.next()) {
+					final int z = result.getInt(1);
+					ranges.add(new GEMFTileSink.Range(z, result.getInt(2), result.getInt(3),
+							MBTilesTileSink.flipRow(z, result.getInt(5)),
+							MBTilesTileSink.flipRow(z, result.getInt(4))));
+				}
+				result.close();
+			} finally {
+				statement.close();
+			}
+		} catch (final SQLException e) {
+			throw new IOException("Error reading " + mFile + ": " + e);
+		}
+		return ranges;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void scan(final Visitor pVisitor) throws IOException {
+		try {
+			final Statement statement = mConnection.createStatement();
+			try {
+				final ResultSet result = statement.executeQuery("SELECT " + COL_TILES_ZOOM_LEVEL
+						+ ", " + COL_TILES_TILE_COLUMN + ", " + COL_TILES_TILE_ROW + ", "
+						+ COL_TILES_TILE_DATA + " FROM " + TABLE_TILES);
+				while (result.next()) {
+					final int z = result.getInt(1);
+					pVisitor.visit(new OSMTileInfo(result.getInt(2), MBTilesTileSink.flipRow(z,
+							result.getInt(3)), z), result.getBytes(4));
+				}
+				result.close();
+			} finally {
+				statement.close();
+			}
+		} catch (final SQLException e) {
+			throw new IOException("Error reading " + mFile + ": " + e);
+		}
+	}
+
+	@Override
+	public byte[] read(final OSMTileInfo pTile) throws IOException {
+		return (byte[]) queryValue("SELECT " + COL_TILES_TILE_DATA + " FROM " + TABLE_TILES
+				+ " WHERE " + COL_TILES_ZOOM_LEVEL + " = ? AND " + COL_TILES_TILE_COLUMN
+				+ " = ? AND " + COL_TILES_TILE_ROW + " = ?", pTile.zoom, pTile.x,
+				MBTilesTileSink.flipRow(pTile.zoom, pTile.y));
+	}
+}
@@ -0,0 +1,50 @@
+package org.osmdroid.mtp.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osmdroid.mtp.sink.GEMFTileSink;
+
+/**
+ * Collects the smallest range of each zoom level that holds the tiles added to it.
+ */
+class RangeCollector {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** The xMin, xMax, yMin and yMax of each zoom level, or null */
+	private int[][] mBounds = new int[0][];
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	void add(final int pZoom, final int pX, final int pY) {
+		if (pZoom >= mBounds.length) {
+			final int[][] bounds = new int[pZoom + 1][];
+			System.arraycopy(mBounds, 0, bounds, 0, mBounds.length);
+			mBounds = bounds;
+		}
+		final int[] bounds = mBounds[pZoom];
+		if (bounds == null) {
+			mBounds[pZoom] = new int[] { pX, pX, pY, pY };
+		} else {
+			bounds[0] = Math.min(bounds[0], pX);
+			bounds[1] = Math.max(bounds[1], pX);
+			bounds[2] = Math.min(bounds[2], pY);
+			bounds[3] = Math.max(bounds[3], pY);
+		}
+	}
+
+	List<GEMFTileSink.Range> getRanges() {
+		final List<GEMFTileSink.Range> ranges = new ArrayList<GEMFTileSink.Range>();
+		for (int z = 0; z < mBounds.length; z++) {
+			final int[] bounds = mBounds[z];
+			if (bounds != null) {
+				ranges.add(new GEMFTileSink.Range(z, bounds[0], bounds[1], bounds[2], bounds[3]));
+			}
+		}
+		return ranges;
+	}
+}
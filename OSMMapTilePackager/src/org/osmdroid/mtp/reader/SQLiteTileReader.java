@@ -0,0 +1,87 @@
+package org.osmdroid.mtp.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The connection of a reader of an SQLite database. Tiles are read fastest in the order of the
+ * table, so the readers pass the data of each tile while scanning.
+ */
+abstract class SQLiteTileReader implements TileReader {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	protected final File mFile;
+	protected final Connection mConnection;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	SQLiteTileReader(final File pFile) throws IOException {
+		mFile = pFile;
+		// SQLite would create an empty database
+		if (!pFile.isFile()) {
+			throw new IOException("No such file: " + pFile);
+		}
+		try {
+			Class.forName("org.sqlite.JDBC");
+			mConnection = DriverManager.getConnection("jdbc:sqlite:" + pFile);
+		} catch (final ClassNotFoundException e) {
+			throw new IOException("No SQLite JDBC driver: " + e);
+		} catch (final SQLException e) {
+			throw new IOException("Error opening " + pFile + ": " + e);
+		}
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void close() throws IOException {
+		try {
+			mConnection.close();
+		} catch (final SQLException e) {
+			throw new IOException("Error closing " + mFile + ": " + e);
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Run a query with the arguments and return the first column of its first row, as bytes for
+	 * a blob.
+	 *
+	 * @return the value, or null if there are no rows
+	 */
+	protected synchronized Object queryValue(final String pQuery, final Object... pArguments)
+			throws IOException {
+		try {
+			final PreparedStatement statement = mConnection.prepareStatement(pQuery);
+			try {
+				for (int i = 0; i < pArguments.length; i++) {
+					statement.setObject(i + 1, pArguments[i]);
+				}
+				final ResultSet result = statement.executeQuery();
+				try {
+					return result.next() ? result.getObject(1) : null;
+				} finally {
+					result.close();
+				}
+			} finally {
+				statement.close();
+			}
+		} catch (final SQLException e) {
+			throw new IOException("Error reading " + mFile + ": " + e);
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package org.osmdroid.mtp.reader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.TileSink;
+
+/**
+ * Copies the tiles of a {@link TileReader} into a {@link TileSink}, as a pipeline: the calling
+ * thread scans the tiles and queues them, and the copy threads read the tiles that were queued
+ * without their data and put them into the sink. So reading from mapped archives, compressing
+ * zip entries and writing run on all cores at once, while a database is still read in one pass.
+ * The queue is bounded, so memory use doesn't depend on the number of tiles.
+ */
+public class TileConverter {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Tiles per copy thread that may be queued at once */
+	private static final int QUEUED_PER_THREAD = 64;
+
+	private static final long REPORT_MILLIS = 10 * 1000;
+
+	/** Tells a copy thread that the scan is over */
+	private static final Task END = new Task(null, null);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final TileReader mReader;
+	private final TileSink mSink;
+	private final int mThreadCount;
+	private final BlockingQueue<Task> mQueue;
+
+	private final AtomicLong mCopied = new AtomicLong();
+	private final AtomicLong mMissing = new AtomicLong();
+	private volatile IOException mError;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pThreadCount
+	 *            the number of copy threads
+	 */
+	public TileConverter(final TileReader pReader, final TileSink pSink, final int pThreadCount) {
+		mReader = pReader;
+		mSink = pSink;
+		mThreadCount = Math.max(1, pThreadCount);
+		mQueue = new ArrayBlockingQueue<Task>(mThreadCount * QUEUED_PER_THREAD);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public long getCopiedCount() {
+		return mCopied.get();
+	}
+
+	/** The tiles that were scanned but that the reader doesn't have, like empty GEMF records */
+	public long getMissingCount() {
+		return mMissing.get();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Copy the tiles, and return when all of them are in the sink. The sink isn't closed. If a
+	 * tile can't be read or put the copy stops.
+	 *
+	 * @param pTileCount
+	 *            the number of tiles, for the progress reports
+	 */
+	public void convert(final long pTileCount) throws IOException, InterruptedException {
+		final Thread[] threads = new Thread[mThreadCount];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new CopyThread();
+			threads[i].setName("CopyThread-" + i);
+			threads[i].start();
+		}
+		final long startTime = System.currentTimeMillis();
+		final Thread reporter = new ReportThread(pTileCount, startTime);
+		reporter.start();
+
+		try {
+			mReader.scan(new TileReader.Visitor() {
+				@Override
+				public void visit(final OSMTileInfo pTile, final byte[] pData) throws IOException {
+					if (mError != null) {
+						throw mError;
+					}
+					try {
+						mQueue.put(new Task(pTile, pData));
+					} catch (final InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+			});
+		} finally {
+			for (int i = 0; i < threads.length; i++) {
+				mQueue.put(END);
+			}
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+			reporter.interrupt();
+			reporter.join();
+		}
+		if (mError != null) {
+			throw mError;
+		}
+		final long millis = System.currentTimeMillis() - startTime;
+		System.out.println(mCopied.get() + " tiles copied, " + mMissing.get() + " missing, in "
+				+ millis / 1000 + " s, " + getRate(mCopied.get(), millis) + " tiles/s");
+	}
+
+	/**
+	 * Guess the extension of tiles from the data of one, for archives that don't record it.
+	 */
+	static String getExtension(final byte[] pData) {
+		if (pData != null && pData.length >= 2 && (pData[0] & 0xff) == 0xff
+				&& (pData[1] & 0xff) == 0xd8) {
+			return ".jpg";
+		}
+		return ".png";
+	}
+
+	private void copy(final Task pTask) throws IOException {
+		final byte[] data = pTask.mData != null ? pTask.mData : mReader.read(pTask.mTile);
+		if (data == null) {
+			mMissing.incrementAndGet();
+			return;
+		}
+		mSink.put(pTask.mTile, data);
+		mCopied.incrementAndGet();
+	}
+
+	/**
+	 * Print the progress, with the rate since the last report and since the start.
+	 */
+	private void report(final long pTileCount, final long pStartTime, final long pLastCopied,
+			final long pLastTime) {
+		final long now = System.currentTimeMillis();
+		final long copied = mCopied.get();
+		System.out.println(copied + "/" + pTileCount + " tiles copied, " + mMissing.get()
+				+ " missing, " + getRate(copied - pLastCopied, now - pLastTime) + " tiles/s now, "
+				+ getRate(copied, now - pStartTime) + " tiles/s overall");
+	}
+
+	private static long getRate(final long pCount, final long pMillis) {
+		return pMillis > 0 ? pCount * 1000 / pMillis : 0;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class Task {
+		final OSMTileInfo mTile;
+		final byte[] mData;
+
+		Task(final OSMTileInfo pTile, final byte[] pData) {
+			mTile = pTile;
+			mData = pData;
+		}
+	}
+
+	private class CopyThread extends Thread {
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Task task = mQueue.take();
+					if (task == END) {
+						return;
+					}
+					// after an error the queue is only drained, until the scan stops
+					if (mError == null) {
+						try {
+							copy(task);
+						} catch (final IOException e) {
+							System.err.println("Error copying: '" + task.mTile + "' : " + e);
+							mError = e;
+						} catch (final RuntimeException e) {
+							System.err.println("Error copying: '" + task.mTile + "' : " + e);
+							mError = new IOException(e);
+						}
+					}
+				}
+			} catch (final InterruptedException e) {
+				// stop
+			}
+		}
+	}
+
+	private class ReportThread extends Thread {
+
+		private final long mTileCount;
+		private final long mStartTime;
+
+		ReportThread(final long pTileCount, final long pStartTime) {
+			mTileCount = pTileCount;
+			mStartTime = pStartTime;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long lastCopied = 0;
+			long lastTime = mStartTime;
+			try {
+				while (true) {
+					Thread.sleep(REPORT_MILLIS);
+					report(mTileCount, mStartTime, lastCopied, lastTime);
+					lastCopied = mCopied.get();
+					lastTime = System.currentTimeMillis();
+				}
+			} catch (final InterruptedException e) {
+				// stop
+			}
+		}
+	}
+}
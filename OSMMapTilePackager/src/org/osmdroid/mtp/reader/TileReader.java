@@ -0,0 +1,66 @@
+package org.osmdroid.mtp.reader;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.GEMFTileSink;
+
+/**
+ * Reads the tiles of one tile source of an archive or a folder, to convert them with a
+ * {@link TileConverter}. An archive with several tile sources is read for the one with the most
+ * tiles.
+ */
+public interface TileReader {
+
+	/**
+	 * @return the name of the tile source, or null if the archive doesn't name it
+	 */
+	String getName();
+
+	/**
+	 * @return the extension of the tiles, such as ".png"
+	 */
+	String getExtension() throws IOException;
+
+	/**
+	 * @return the number of tiles, or a bound on it for archives that only know the ranges of
+	 *         their tiles
+	 */
+	long getTileCount() throws IOException;
+
+	/**
+	 * @return the smallest range of each zoom level that holds its tiles
+	 */
+	List<GEMFTileSink.Range> getRanges() throws IOException;
+
+	/**
+	 * Go through the tiles in the calling thread. A reader that can read any tile cheaply, such
+	 * as a mapped archive, only passes the tile, and {@link #read(OSMTileInfo)} reads it in
+	 * another thread. A reader that reads tiles fastest in order passes their data too.
+	 */
+	void scan(Visitor pVisitor) throws IOException;
+
+	/**
+	 * Read a tile that {@link #scan(Visitor)} passed without its data. Several threads may call
+	 * this at once.
+	 *
+	 * @return the data of the tile, or null if there is no such tile
+	 */
+	byte[] read(OSMTileInfo pTile) throws IOException;
+
+	void close() throws IOException;
+
+	/**
+	 * Gets the tiles of {@link TileReader#scan(Visitor)}.
+	 */
+	public interface Visitor {
+
+		/**
+		 * @param pData
+		 *            the data of the tile, or null to read it with
+		 *            {@link TileReader#read(OSMTileInfo)}
+		 */
+		void visit(OSMTileInfo pTile, byte[] pData) throws IOException;
+	}
+}
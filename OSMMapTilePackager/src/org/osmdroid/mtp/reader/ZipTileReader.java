@@ -0,0 +1,124 @@
+package org.osmdroid.mtp.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.sink.GEMFTileSink;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.MappedZipFile;
+
+/**
+ * Reads the tiles of a zip archive through a {@link MappedZipFile}. The tiles are passed in the
+ * order of its index and read by the threads of the converter, stored tiles straight from the
+ * mapped file.
+ */
+public class ZipTileReader implements TileReader {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final MappedZipFile mZipFile;
+
+	/** Such as "Mapnik/.png", see {@link MappedZipFile#parseTile(String, int[])} */
+	private final String mSource;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public ZipTileReader(final File pFile) throws IOException {
+		mZipFile = new MappedZipFile(pFile);
+		String source = null;
+		for (final String candidate : mZipFile.getSources()) {
+			if (source == null
+					|| mZipFile.getTileCount(candidate) > mZipFile.getTileCount(source)) {
+				source = candidate;
+			}
+		}
+		if (source == null) {
+			mZipFile.close();
+			throw new IOException("No tiles in " + pFile);
+		}
+		mSource = source;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	@Override
+	public String getName() {
+		final String name = mSource.substring(0, mSource.lastIndexOf('/'));
+		return name.length() > 0 ? name : null;
+	}
+
+	@Override
+	public String getExtension() {
+		return mSource.substring(mSource.lastIndexOf('/') + 1);
+	}
+
+	@Override
+	public long getTileCount() {
+		return mZipFile.getTileCount(mSource);
+	}
+
+	@Override
+	public List<GEMFTileSink.Range> getRanges() {
+		final RangeCollector ranges = new RangeCollector();
+		final int count = mZipFile.getTileCount(mSource);
+		for (int i = 0; i < count; i++) {
+			final long key = mZipFile.getTileKey(mSource, i);
+			ranges.add(MapTile.getZoomLevel(key), MapTile.getX(key), MapTile.getY(key));
+		}
+		return ranges.getRanges();
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void scan(final Visitor pVisitor) throws IOException {
+		final int count = mZipFile.getTileCount(mSource);
+		for (int i = 0; i < count; i++) {
+			final long key = mZipFile.getTileKey(mSource, i);
+			pVisitor.visit(new OSMTileInfo(MapTile.getX(key), MapTile.getY(key),
+					MapTile.getZoomLevel(key)), null);
+		}
+	}
+
+	@Override
+	public byte[] read(final OSMTileInfo pTile) throws IOException {
+		final ByteBuffer buffer = mZipFile.getByteBuffer(mSource, pTile.zoom, pTile.x, pTile.y);
+		if (buffer != null) {
+			final byte[] data = new byte[buffer.remaining()];
+			buffer.get(data);
+			return data;
+		}
+
+		// compressed
+		final InputStream in = mZipFile.getInputStream(mSource, pTile.zoom, pTile.x, pTile.y);
+		if (in == null) {
+			return null;
+		}
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(
+					StreamUtils.IO_BUFFER_SIZE);
+			StreamUtils.copy(in, out);
+			return out.toByteArray();
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		mZipFile.close();
+	}
+}
@@ -0,0 +1,165 @@
+package org.osmdroid.mtp.sink;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+
+/**
+ * Writes tiles to an SQLite database with osmdroid's schema, one row per tile keyed by the zoom
+ * level, x and y of the tile and named by the tile source. The rows are inserted in batches and
+ * committed in large transactions, so that SQLite doesn't sync the file for every tile.
+ */
+public class DatabaseTileSink implements TileSink {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Rows per call to executeBatch */
+	private static final int BATCH_SIZE = 1000;
+
+	/** Rows per transaction, a job that is resumed may also commit in between */
+	private static final int TRANSACTION_SIZE = 50000;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String mName;
+	private final Connection mConnection;
+	private final PreparedStatement mInsert;
+	private int mBatched;
+	private int mUncommitted;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pName
+	 *            the name of the tile source, the provider of each row
+	 * @param pAppend
+	 *            add to the tiles of an existing database, to resume an interrupted job, instead
+	 *            of replacing it
+	 */
+	public DatabaseTileSink(final File pFile, final String pName, final boolean pAppend)
+			throws IOException {
+		mName = pName;
+		if (!pAppend) {
+			pFile.delete();
+		}
+		try {
+			Class.forName("org.sqlite.JDBC");
+			mConnection = DriverManager.getConnection("jdbc:sqlite:" + pFile);
+			final Statement statement = mConnection.createStatement();
+			try {
+				// a crash of the packager can't lose committed tiles, only a crash of the system
+				statement.execute("PRAGMA synchronous = OFF");
+				statement.execute("CREATE TABLE IF NOT EXISTS tiles "
+						+ "(key INTEGER PRIMARY KEY, provider TEXT, tile BLOB)");
+			} finally {
+				statement.close();
+			}
+			mConnection.setAutoCommit(false);
+			mInsert = mConnection
+					.prepareStatement("INSERT OR REPLACE INTO tiles VALUES (?, ?, ?)");
+		} catch (final ClassNotFoundException e) {
+			throw new IOException("No SQLite JDBC driver: " + e);
+		} catch (final SQLException e) {
+			throw new IOException("Error opening " + pFile + ": " + e);
+		}
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public synchronized void put(final OSMTileInfo pTile, final byte[] pData) throws IOException {
+		try {
+			mInsert.setLong(1, getKey(pTile));
+			mInsert.setString(2, mName);
+			mInsert.setBytes(3, pData);
+			mInsert.addBatch();
+			if (++mBatched >= BATCH_SIZE) {
+				executeBatch();
+			}
+			if (++mUncommitted >= TRANSACTION_SIZE) {
+				commit();
+			}
+		} catch (final SQLException e) {
+			throw new IOException("Error inserting " + pTile + ": " + e);
+		}
+	}
+
+	@Override
+	public void scan(final TileReader.Visitor pVisitor) {
+		// the journal has the tiles that are done, a tile that is put again replaces its row
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		try {
+			commit();
+		} catch (final SQLException e) {
+			throw new IOException("Error committing: " + e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			commit();
+			mInsert.close();
+			mConnection.close();
+		} catch (final SQLException e) {
+			throw new IOException("Error closing: " + e);
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * The key of the tile in osmdroid's schema.
+	 */
+	public static long getKey(final OSMTileInfo pTile) {
+		final long z = pTile.zoom;
+		return (((z << z) + pTile.x) << z) + pTile.y;
+	}
+
+	/**
+	 * The tile of a key, see {@link #getKey(OSMTileInfo)}. The zoom level is the only one whose
+	 * key shifted right by twice the zoom level is the zoom level itself.
+	 */
+	public static OSMTileInfo getTile(final long pKey) {
+		int z = 0;
+		while (z < 31 && pKey >>> (2 * z) != z) {
+			z++;
+		}
+		final long mask = (1L << z) - 1;
+		return new OSMTileInfo((int) (pKey >>> z & mask), (int) (pKey & mask), z);
+	}
+
+	private void executeBatch() throws SQLException {
+		if (mBatched > 0) {
+			mInsert.executeBatch();
+			mBatched = 0;
+		}
+	}
+
+	private void commit() throws SQLException {
+		executeBatch();
+		if (mUncommitted > 0) {
+			mConnection.commit();
+			mUncommitted = 0;
+		}
+	}
+}
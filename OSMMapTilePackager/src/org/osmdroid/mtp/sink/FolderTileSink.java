@@ -0,0 +1,61 @@
+package org.osmdroid.mtp.sink;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+
+/**
+ * Writes each tile to its own file, named by a pattern such as "tiles/%d/%d/%d.png" that is
+ * formatted with the zoom level, x and y of the tile.
+ */
+public class FolderTileSink implements TileSink {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String mFilePattern;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public FolderTileSink(final String pFilePattern) {
+		mFilePattern = pFilePattern;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void put(final OSMTileInfo pTile, final byte[] pData) throws IOException {
+		final File file = new File(String.format(mFilePattern, pTile.zoom, pTile.x, pTile.y));
+		final File parent = file.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(pData);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public void scan(final TileReader.Visitor pVisitor) {
+		// the journal has the tiles that are done, a tile that is put again replaces its file
+	}
+
+	@Override
+	public void flush() {
+		// every tile is written when it's put
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,313 @@
+package org.osmdroid.mtp.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+
+/**
+ * Writes tiles to a GEMF archive as they come. The ranges of the archive, one per zoom level, are
+ * known before the first tile, so the header is written first with a record for every tile of the
+ * ranges. The tiles are appended after it in the order they come and their records are filled in,
+ * so memory use doesn't depend on the number of tiles. A tile that never comes keeps an empty
+ * record. Like {@link org.osmdroid.util.GEMFFile} the data is split into files of at most 1 GB,
+ * named like "tiles.gemf-1". An archive that an interrupted job left is resumed by appending to
+ * its last file, once the records of the tiles whose data wasn't written are emptied.
+ *
+ * Reference: https://sites.google.com/site/abudden/android-map-store
+ */
+public class GEMFTileSink implements TileSink {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final long FILE_SIZE_LIMIT = 1 * 1024 * 1024 * 1024; // 1GB
+
+	private static final int VERSION = 4;
+	private static final int TILE_SIZE = 256;
+
+	private static final int U32_SIZE = 4;
+	private static final int U64_SIZE = 8;
+	private static final int RANGE_SIZE = U32_SIZE * 6 + U64_SIZE;
+	private static final int TILE_RECORD_SIZE = U64_SIZE + U32_SIZE;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String mLocation;
+
+	/** The range of each zoom level, or null */
+	private final Range[] mRanges;
+
+	/** The first file, to fill in the records */
+	private final RandomAccessFile mHeaderFile;
+	private final FileChannel mHeaderChannel;
+	private final ByteBuffer mRecord = ByteBuffer.allocate(TILE_RECORD_SIZE);
+
+	private OutputStream mOut;
+	private int mFileIndex;
+	/** The offset of the current file in the archive, and the position in the file */
+	private long mFileOffset;
+	private long mPosition;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pName
+	 *            the name of the tile source in the archive
+	 * @param pRanges
+	 *            at most one range per zoom level
+	 * @param pAppend
+	 *            append to the tiles of an archive with the same name and ranges that an
+	 *            interrupted job left, instead of replacing it
+	 */
+	public GEMFTileSink(final File pFile, final String pName, final List<Range> pRanges,
+			final boolean pAppend) throws IOException {
+		mLocation = pFile.getPath();
+		int maxZoom = -1;
+		for (final Range range : pRanges) {
+			maxZoom = Math.max(maxZoom, range.mZoom);
+		}
+		mRanges = new Range[maxZoom + 1];
+		for (final Range range : pRanges) {
+			if (mRanges[range.mZoom] != null) {
+				throw new IllegalArgumentException("Two ranges for zoom level " + range.mZoom);
+			}
+			mRanges[range.mZoom] = range;
+		}
+
+		final byte[] name = pName.getBytes("UTF-8");
+		long offset = U32_SIZE * 3 + U32_SIZE * 2 + name.length + U32_SIZE + pRanges.size()
+				* RANGE_SIZE;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(VERSION);
+		header.writeInt(TILE_SIZE);
+		header.writeInt(1);
+		header.writeInt(0);
+		header.writeInt(name.length);
+		header.write(name);
+		header.writeInt(pRanges.size());
+		for (final Range range : pRanges) {
+			range.mOffset = offset;
+			header.writeInt(range.mZoom);
+			header.writeInt(range.mXMin);
+			header.writeInt(range.mXMax);
+			header.writeInt(range.mYMin);
+			header.writeInt(range.mYMax);
+			header.writeInt(0);
+			header.writeLong(range.mOffset);
+			offset += range.getTileCount() * TILE_RECORD_SIZE;
+		}
+		header.close();
+
+		final boolean resume = pAppend && pFile.length() >= offset
+				&& hasHeader(pFile, bytes.toByteArray());
+		if (!resume) {
+			// remove the files of an earlier archive
+			int file = 1;
+			while (new File(mLocation + "-" + file).delete()) {
+				file++;
+			}
+			final OutputStream out = new FileOutputStream(pFile);
+			try {
+				bytes.writeTo(out);
+			} finally {
+				out.close();
+			}
+		}
+
+		// the records are zero, an empty tile, until the tile comes
+		mHeaderFile = new RandomAccessFile(pFile, "rw");
+		mHeaderChannel = mHeaderFile.getChannel();
+		if (resume) {
+			mPosition = pFile.length();
+			while (new File(mLocation + "-" + (mFileIndex + 1)).exists()) {
+				mFileIndex++;
+				mFileOffset += mPosition;
+				mPosition = new File(mLocation + "-" + mFileIndex).length();
+			}
+			try {
+				readRecords(null);
+			} catch (final IOException e) {
+				mHeaderFile.close();
+				throw e;
+			}
+		} else {
+			mHeaderFile.setLength(offset);
+			mPosition = offset;
+		}
+		mOut = new BufferedOutputStream(new FileOutputStream(mFileIndex == 0 ? mLocation
+				: mLocation + "-" + mFileIndex, true), 64 * 1024);
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public synchronized void put(final OSMTileInfo pTile, final byte[] pData) throws IOException {
+		final Range range = pTile.zoom >= 0 && pTile.zoom < mRanges.length ? mRanges[pTile.zoom]
+				: null;
+		if (range == null || !range.contains(pTile.x, pTile.y)) {
+			throw new IOException("Not in the ranges of the archive: " + pTile);
+		}
+
+		if (mPosition > 0 && mPosition + pData.length > FILE_SIZE_LIMIT) {
+			mOut.close();
+			mFileIndex++;
+			mFileOffset += mPosition;
+			mPosition = 0;
+			mOut = new BufferedOutputStream(new FileOutputStream(mLocation + "-" + mFileIndex),
+					64 * 1024);
+		}
+		mOut.write(pData);
+
+		writeRecord(range.mOffset
+				+ ((long) (pTile.x - range.mXMin) * range.getHeight() + pTile.y - range.mYMin)
+				* TILE_RECORD_SIZE, mFileOffset + mPosition, pData.length);
+		mPosition += pData.length;
+	}
+
+	/**
+	 * Go through the tiles of the archive that was appended to.
+	 */
+	@Override
+	public synchronized void scan(final TileReader.Visitor pVisitor) throws IOException {
+		readRecords(pVisitor);
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		// the archive isn't readable before it's closed, a record may be written before its data
+		mOut.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			mOut.close();
+		} finally {
+			mHeaderFile.close();
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	private static boolean hasHeader(final File pFile, final byte[] pHeader) throws IOException {
+		final byte[] header = new byte[pHeader.length];
+		final DataInputStream in = new DataInputStream(new FileInputStream(pFile));
+		try {
+			in.readFully(header);
+		} finally {
+			in.close();
+		}
+		return Arrays.equals(header, pHeader);
+	}
+
+	private void writeRecord(final long pRecordOffset, final long pOffset, final int pLength)
+			throws IOException {
+		mRecord.clear();
+		mRecord.putLong(pOffset);
+		mRecord.putInt(pLength);
+		mRecord.flip();
+		while (mRecord.hasRemaining()) {
+			mHeaderChannel.write(mRecord, pRecordOffset + mRecord.position());
+		}
+	}
+
+	/**
+	 * Go through the records of the tiles, and empty those whose data ends past the end of the
+	 * archive because the job was interrupted before it was written.
+	 *
+	 * @param pVisitor
+	 *            gets the tiles whose data was written, or null
+	 */
+	private void readRecords(final TileReader.Visitor pVisitor) throws IOException {
+		final long length = mFileOffset + mPosition;
+		for (final Range range : mRanges) {
+			if (range == null) {
+				continue;
+			}
+			final int height = (int) range.getHeight();
+			final ByteBuffer column = ByteBuffer.allocate(height * TILE_RECORD_SIZE);
+			for (int x = range.mXMin; x <= range.mXMax; x++) {
+				final long columnOffset = range.mOffset + (long) (x - range.mXMin) * height
+						* TILE_RECORD_SIZE;
+				column.clear();
+				while (column.hasRemaining()) {
+					if (mHeaderChannel.read(column, columnOffset + column.position()) < 0) {
+						throw new IOException("The records of " + mLocation + " are truncated");
+					}
+				}
+				for (int i = 0; i < height; i++) {
+					final long offset = column.getLong(i * TILE_RECORD_SIZE);
+					final int size = column.getInt(i * TILE_RECORD_SIZE + U64_SIZE);
+					if (size == 0) {
+						continue;
+					}
+					if (offset + size > length) {
+						writeRecord(columnOffset + i * TILE_RECORD_SIZE, 0, 0);
+					} else if (pVisitor != null) {
+						pVisitor.visit(new OSMTileInfo(x, range.mYMin + i, range.mZoom), null);
+					}
+				}
+			}
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * The tiles from xMin to xMax and from yMin to yMax, inclusive, of a zoom level.
+	 */
+	public static class Range {
+		final int mZoom;
+		final int mXMin;
+		final int mXMax;
+		final int mYMin;
+		final int mYMax;
+		long mOffset;
+
+		public Range(final int pZoom, final int pXMin, final int pXMax, final int pYMin,
+				final int pYMax) {
+			mZoom = pZoom;
+			mXMin = pXMin;
+			mXMax = pXMax;
+			mYMin = pYMin;
+			mYMax = pYMax;
+		}
+
+		boolean contains(final int pX, final int pY) {
+			return pX >= mXMin && pX <= mXMax && pY >= mYMin && pY <= mYMax;
+		}
+
+		long getHeight() {
+			return mYMax - mYMin + 1;
+		}
+
+		long getTileCount() {
+			return (long) (mXMax - mXMin + 1) * getHeight();
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package org.osmdroid.mtp.sink;
+
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_TILE_COLUMN;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_TILE_DATA;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_TILE_ROW;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.COL_TILES_ZOOM_LEVEL;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.INDEX_TILES;
+import static org.osmdroid.tileprovider.modules.MBTilesFileArchive.TABLE_TILES;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+
+/**
+ * Writes tiles to an MBTiles file, which osmdroid reads with
+ * {@link org.osmdroid.tileprovider.modules.MBTilesFileArchive}. The rows of MBTiles count from
+ * the bottom, so the rows of the tiles are flipped. Like {@link DatabaseTileSink} the rows are
+ * inserted in batches and committed in large transactions. The unique index of the tiles is
+ * created when the sink is closed, which is much faster than updating it for every tile, and the
+ * metadata is written then, with the zoom levels and the bounds of the tiles in the file.
+ *
+ * Reference: https://github.com/mapbox/mbtiles-spec
+ */
+public class MBTilesTileSink implements TileSink {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Rows per call to executeBatch */
+	private static final int BATCH_SIZE = 1000;
+
+	/** Rows per transaction, a job that is resumed may also commit in between */
+	private static final int TRANSACTION_SIZE = 50000;
+
+	private static final String VERSION = "1.1";
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mFile;
+	private final String mName;
+	private final String mFormat;
+	private final boolean mAppend;
+	private final Connection mConnection;
+	private final PreparedStatement mInsert;
+	private int mBatched;
+	private int mUncommitted;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pName
+	 *            the name of the tile source, for the metadata
+	 * @param pExtension
+	 *            the extension of the tiles, such as ".png", for the format in the metadata
+	 * @param pAppend
+	 *            add to the tiles of an existing file, to resume an interrupted job, instead of
+	 *            replacing it
+	 */
+	public MBTilesTileSink(final File pFile, final String pName, final String pExtension,
+			final boolean pAppend) throws IOException {
+		mFile = pFile;
+		mName = pName;
+		mFormat = getFormat(pExtension);
+		mAppend = pAppend;
+		if (!pAppend) {
+			pFile.delete();
+		}
+		try {
+			Class.forName("org.sqlite.JDBC");
+			mConnection = DriverManager.getConnection("jdbc:sqlite:" + pFile);
+			final Statement statement = mConnection.createStatement();
+			try {
+				// a crash of the packager can't lose committed tiles, only a crash of the system
+				statement.execute("PRAGMA synchronous = OFF");
+				statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE_TILES + " ("
+						+ COL_TILES_ZOOM_LEVEL + " INTEGER, " + COL_TILES_TILE_COLUMN
+						+ " INTEGER, " + COL_TILES_TILE_ROW + " INTEGER, " + COL_TILES_TILE_DATA
+						+ " BLOB)");
+				statement.execute("CREATE TABLE IF NOT EXISTS metadata (name TEXT, value TEXT)");
+			} finally {
+				statement.close();
+			}
+			mConnection.setAutoCommit(false);
+			// the same as INSERT until there's an index, when a finished file is added to
+			mInsert = mConnection.prepareStatement("INSERT OR REPLACE INTO " + TABLE_TILES
+					+ " VALUES (?, ?, ?, ?)");
+		} catch (final ClassNotFoundException e) {
+			throw new IOException("No SQLite JDBC driver: " + e);
+		} catch (final SQLException e) {
+			throw new IOException("Error opening " + pFile + ": " + e);
+		}
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public synchronized void put(final OSMTileInfo pTile, final byte[] pData) throws IOException {
+		try {
+			mInsert.setInt(1, pTile.zoom);
+			mInsert.setInt(2, pTile.x);
+			mInsert.setInt(3, flipRow(pTile.zoom, pTile.y));
+			mInsert.setBytes(4, pData);
+			mInsert.addBatch();
+			if (++mBatched >= BATCH_SIZE) {
+				executeBatch();
+			}
+			if (++mUncommitted >= TRANSACTION_SIZE) {
+				commit();
+			}
+		} catch (final SQLException e) {
+			throw new IOException("Error inserting " + pTile + ": " + e);
+		}
+	}
+
+	@Override
+	public void scan(final TileReader.Visitor pVisitor) {
+		// the journal has the tiles that are done, a tile that is put again replaces its row
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		try {
+			commit();
+		} catch (final SQLException e) {
+			throw new IOException("Error committing: " + e);
+		}
+	}
+
+	/**
+	 * Create the index and write the metadata. A resumed job may have put some tiles twice, since
+	 * the last checkpoint before it was interrupted, the last of them is kept.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			commit();
+			mInsert.close();
+			final Statement statement = mConnection.createStatement();
+			try {
+				if (mAppend && !hasIndex(statement)) {
+					statement.execute("DELETE FROM " + TABLE_TILES + " WHERE rowid NOT IN "
+							+ "(SELECT max(rowid) FROM " + TABLE_TILES + " GROUP BY "
+							+ COL_TILES_ZOOM_LEVEL + ", " + COL_TILES_TILE_COLUMN + ", "
+							+ COL_TILES_TILE_ROW + ")");
+				}
+				statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_TILES + " ON "
+						+ TABLE_TILES + " (" + COL_TILES_ZOOM_LEVEL + ", " + COL_TILES_TILE_COLUMN
+						+ ", " + COL_TILES_TILE_ROW + ")");
+				statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS name ON metadata (name)");
+				writeMetadata(statement);
+			} finally {
+				statement.close();
+			}
+			mConnection.commit();
+			mConnection.close();
+		} catch (final SQLException e) {
+			throw new IOException("Error closing " + mFile + ": " + e);
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * MBTiles rows count from the bottom (TMS), map tiles count from the top (Google Tiling Spec).
+	 * Flipping is its own inverse.
+	 */
+	public static int flipRow(final int pZoomLevel, final int pY) {
+		return (1 << pZoomLevel) - 1 - pY;
+	}
+
+	/**
+	 * @return the format of the metadata, such as "png", for an extension such as ".png.andnav"
+	 */
+	private static String getFormat(final String pExtension) {
+		final String[] parts = pExtension.split("\\.");
+		final String format = parts.length > 1 ? parts[1].toLowerCase() : "png";
+		return format.equals("jpeg") ? "jpg" : format;
+	}
+
+	private static boolean hasIndex(final Statement pStatement) throws SQLException {
+		final ResultSet result = pStatement.executeQuery("SELECT count(*) FROM sqlite_master "
+				+ "WHERE type = 'index' AND name = '" + INDEX_TILES + "'");
+		try {
+			return result.next() && result.getInt(1) > 0;
+		} finally {
+			result.close();
+		}
+	}
+
+	/**
+	 * Write the metadata of the tiles in the file, the bounds are those of its largest zoom level.
+	 */
+	private void writeMetadata(final Statement pStatement) throws SQLException {
+		int minZoom = 0;
+		int maxZoom = 0;
+		String bounds = "-180.0,-85.0511,180.0,85.0511";
+		ResultSet result = pStatement.executeQuery("SELECT min(" + COL_TILES_ZOOM_LEVEL
+				+ "), max(" + COL_TILES_ZOOM_LEVEL + "), count(*) FROM " + TABLE_TILES);
+		try {
+			if (result.next() && result.getLong(3) > 0) {
+				minZoom = result.getInt(1);
+				maxZoom = result.getInt(2);
+			}
+		} finally {
+			result.close();
+		}
+		result = pStatement.executeQuery("SELECT min(" + COL_TILES_TILE_COLUMN + "), max("
+				+ COL_TILES_TILE_COLUMN + "), min(" + COL_TILES_TILE_ROW + "), max("
+				+ COL_TILES_TILE_ROW + "), count(*) FROM " + TABLE_TILES + " WHERE "
+				+ COL_TILES_ZOOM_LEVEL + " = " + maxZoom);
+		try {
+			if (result.next() && result.getLong(5) > 0) {
+				final int z = maxZoom;
+				bounds = getLongitude(result.getInt(1), z) + ","
+						+ getLatitude(flipRow(z, result.getInt(3)) + 1, z) + ","
+						+ getLongitude(result.getInt(2) + 1, z) + ","
+						+ getLatitude(flipRow(z, result.getInt(4)), z);
+			}
+		} finally {
+			result.close();
+		}
+
+		final PreparedStatement insert = mConnection
+				.prepareStatement("INSERT OR REPLACE INTO metadata VALUES (?, ?)");
+		try {
+			final String[][] metadata = { { "name", mName }, { "type", "baselayer" },
+					{ "version", VERSION }, { "description", mName }, { "format", mFormat },
+					{ "bounds", bounds }, { "minzoom", Integer.toString(minZoom) },
+					{ "maxzoom", Integer.toString(maxZoom) } };
+			for (final String[] entry : metadata) {
+				insert.setString(1, entry[0]);
+				insert.setString(2, entry[1]);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		} finally {
+			insert.close();
+		}
+	}
+
+	/**
+	 * @return the longitude of the left edge of the tile column
+	 */
+	private static double getLongitude(final int pX, final int pZoomLevel) {
+		return (double) pX / (1 << pZoomLevel) * 360 - 180;
+	}
+
+	/**
+	 * @return the latitude of the top edge of the tile row, counted from the top
+	 */
+	private static double getLatitude(final int pY, final int pZoomLevel) {
+		final double n = Math.PI - 2 * Math.PI * pY / (1 << pZoomLevel);
+		return Math.toDegrees(Math.atan(Math.sinh(n)));
+	}
+
+	private void executeBatch() throws SQLException {
+		if (mBatched > 0) {
+			mInsert.executeBatch();
+			mBatched = 0;
+		}
+	}
+
+	private void commit() throws SQLException {
+		executeBatch();
+		if (mUncommitted > 0) {
+			mConnection.commit();
+			mUncommitted = 0;
+		}
+	}
+}
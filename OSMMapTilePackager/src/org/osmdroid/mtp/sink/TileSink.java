@@ -0,0 +1,37 @@
+package org.osmdroid.mtp.sink;
+
+import java.io.IOException;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+
+/**
+ * Where the packager puts the tiles it downloads. Several download threads put tiles at once, in
+ * no particular order.
+ */
+public interface TileSink {
+
+	/**
+	 * Put a tile. Once this returns and the sink is flushed the tile counts as done, and it isn't
+	 * downloaded again when an interrupted job is resumed.
+	 */
+	void put(OSMTileInfo pTile, byte[] pData) throws IOException;
+
+	/**
+	 * Go through the tiles that the sink already had when it was created, such as those of a
+	 * partial archive that it appends to, before the first tile is put. A resumed job marks them
+	 * as done, so that a tile that was written after the last flush isn't downloaded again.
+	 */
+	void scan(TileReader.Visitor pVisitor) throws IOException;
+
+	/**
+	 * Make the tiles put so far durable, so that an interrupted job can resume after them. Tiles
+	 * aren't put while this runs.
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Finish writing, after the last tile.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,437 @@
+package org.osmdroid.mtp.sink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+import org.osmdroid.tileprovider.util.StreamUtils;
+
+/**
+ * Writes tiles to a zip archive as they come, named like "Mapnik/15/16624/12443.png". Unlike
+ * {@link java.util.zip.ZipOutputStream}, which keeps every entry in memory for the central
+ * directory, the central directory is written to a temporary file beside the archive and
+ * appended to it when it's closed, so memory use doesn't depend on the number of tiles. Tiles are
+ * compressed by the threads that put them, and archives with more than 65535 tiles or larger
+ * than 4 GB are written as zip64. An archive that an interrupted job left without its central
+ * directory is resumed by reading its entries back and writing their central headers again.
+ */
+public class ZipTileSink implements TileSink {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_END_SIZE = 56;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_EXTRA_SIZE = 12;
+
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+	private static final int VERSION = 20;
+	private static final int ZIP64_VERSION = 45;
+	private static final int UTF8_FLAG = 0x0800;
+
+	private static final long U16_MAX = 0xffff;
+	private static final long U32_MAX = 0xffffffffL;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mFile;
+	private final File mCentralDirectoryFile;
+	private final String mPrefix;
+	private final String mSuffix;
+	private final boolean mStored;
+	private final int mDosTime;
+	private final int mDosDate;
+
+	private final OutputStream mOut;
+	private final OutputStream mCentralDirectory;
+	/** The length of the entries that the archive had when it was opened */
+	private final long mResumedPosition;
+	private long mPosition;
+	private long mCentralDirectorySize;
+	private long mCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pName
+	 *            the name of the tile source, the folder of the tiles in the archive
+	 * @param pExtension
+	 *            the extension of the tiles, such as ".png"
+	 * @param pStored
+	 *            store the tiles uncompressed, which hardly makes them bigger since they're
+	 *            compressed images already, and lets osmdroid read them straight from the mapped
+	 *            archive
+	 * @param pAppend
+	 *            append to the entries of an archive that an interrupted job left, instead of
+	 *            replacing it
+	 */
+	public ZipTileSink(final File pFile, final String pName, final String pExtension,
+			final boolean pStored, final boolean pAppend) throws IOException {
+		mFile = pFile;
+		mCentralDirectoryFile = new File(pFile.getPath() + ".cd.tmp");
+		mPrefix = pName + "/";
+		mSuffix = pExtension;
+		mStored = pStored;
+
+		final Calendar now = Calendar.getInstance();
+		mDosTime = now.get(Calendar.HOUR_OF_DAY) << 11 | now.get(Calendar.MINUTE) << 5
+				| now.get(Calendar.SECOND) / 2;
+		mDosDate = (now.get(Calendar.YEAR) - 1980) << 9 | (now.get(Calendar.MONTH) + 1) << 5
+				| now.get(Calendar.DAY_OF_MONTH);
+
+		mCentralDirectory = new BufferedOutputStream(new FileOutputStream(mCentralDirectoryFile),
+				64 * 1024);
+		if (pAppend && pFile.exists()) {
+			try {
+				rebuild();
+			} catch (final IOException e) {
+				StreamUtils.closeStream(mCentralDirectory);
+				throw e;
+			}
+		}
+		mResumedPosition = mPosition;
+		mOut = new BufferedOutputStream(new FileOutputStream(pFile, pAppend), 64 * 1024);
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void put(final OSMTileInfo pTile, final byte[] pData) throws IOException {
+		final byte[] name = (mPrefix + pTile.zoom + "/" + pTile.x + "/" + pTile.y + mSuffix)
+				.getBytes("UTF-8");
+		final CRC32 crc = new CRC32();
+		crc.update(pData);
+
+		byte[] data = pData;
+		int length = pData.length;
+		int method = STORED;
+		if (!mStored) {
+			final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				deflater.setInput(pData);
+				deflater.finish();
+				final byte[] compressed = new byte[pData.length + pData.length / 1000 + 64];
+				final int compressedLength = deflater.deflate(compressed);
+				if (deflater.finished() && compressedLength < pData.length) {
+					data = compressed;
+					length = compressedLength;
+					method = DEFLATED;
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+
+		final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		header.putInt(LOCAL_HEADER_SIGNATURE);
+		header.putShort((short) VERSION);
+		header.putShort((short) UTF8_FLAG);
+		header.putShort((short) method);
+		header.putShort((short) mDosTime);
+		header.putShort((short) mDosDate);
+		header.putInt((int) crc.getValue());
+		header.putInt(length);
+		header.putInt(pData.length);
+		header.putShort((short) name.length);
+		header.putShort((short) 0);
+
+		synchronized (this) {
+			final long offset = mPosition;
+			mOut.write(header.array());
+			mOut.write(name);
+			mOut.write(data, 0, length);
+			mPosition += LOCAL_HEADER_SIZE + name.length + length;
+			writeCentralHeader(name, method, (int) crc.getValue(), length, pData.length, offset);
+			mCount++;
+		}
+	}
+
+	/**
+	 * Go through the entries of the archive that was appended to.
+	 */
+	@Override
+	public void scan(final TileReader.Visitor pVisitor) throws IOException {
+		final EntryReader entries = new EntryReader(mFile);
+		try {
+			while (entries.mEnd < mResumedPosition && entries.next()) {
+				final OSMTileInfo tile = getTile(new String(entries.mName, "UTF-8"));
+				if (tile != null) {
+					pVisitor.visit(tile, null);
+				}
+			}
+		} finally {
+			entries.close();
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		// the archive isn't readable before it's closed, but its entries are complete
+		mOut.flush();
+		mCentralDirectory.flush();
+	}
+
+	/**
+	 * Append the central directory and its end records.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			mCentralDirectory.close();
+			final long centralDirectoryOffset = mPosition;
+			final InputStream in = new BufferedInputStream(new FileInputStream(
+					mCentralDirectoryFile), StreamUtils.IO_BUFFER_SIZE);
+			try {
+				StreamUtils.copy(in, mOut);
+			} finally {
+				StreamUtils.closeStream(in);
+			}
+			mPosition += mCentralDirectorySize;
+
+			final boolean zip64 = mCount >= U16_MAX || mCentralDirectorySize >= U32_MAX
+					|| centralDirectoryOffset >= U32_MAX;
+			if (zip64) {
+				final long zip64End = mPosition;
+				final ByteBuffer end = ByteBuffer.allocate(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				end.putInt(ZIP64_END_SIGNATURE);
+				end.putLong(ZIP64_END_SIZE - 12);
+				end.putShort((short) ZIP64_VERSION);
+				end.putShort((short) ZIP64_VERSION);
+				end.putInt(0);
+				end.putInt(0);
+				end.putLong(mCount);
+				end.putLong(mCount);
+				end.putLong(mCentralDirectorySize);
+				end.putLong(centralDirectoryOffset);
+				end.putInt(ZIP64_LOCATOR_SIGNATURE);
+				end.putInt(0);
+				end.putLong(zip64End);
+				end.putInt(1);
+				mOut.write(end.array());
+			}
+
+			final ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(END_SIGNATURE);
+			end.putShort((short) 0);
+			end.putShort((short) 0);
+			end.putShort((short) Math.min(mCount, U16_MAX));
+			end.putShort((short) Math.min(mCount, U16_MAX));
+			end.putInt((int) Math.min(mCentralDirectorySize, U32_MAX));
+			end.putInt((int) Math.min(centralDirectoryOffset, U32_MAX));
+			end.putShort((short) 0);
+			mOut.write(end.array());
+		} finally {
+			mOut.close();
+			mCentralDirectoryFile.delete();
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	public File getFile() {
+		return mFile;
+	}
+
+	/**
+	 * Read the entries of an archive to write their central headers again, and drop what follows
+	 * the last complete one, such as a half written entry or the central directory of an archive
+	 * that was closed.
+	 */
+	private void rebuild() throws IOException {
+		final EntryReader entries = new EntryReader(mFile);
+		try {
+			while (entries.next()) {
+				writeCentralHeader(entries.mName, entries.mMethod, entries.mCrc,
+						(int) entries.mCompressedSize, (int) entries.mSize, entries.mOffset);
+				mCount++;
+			}
+			mPosition = entries.mEnd;
+		} finally {
+			entries.close();
+		}
+
+		final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		try {
+			file.setLength(mPosition);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * @return the tile of an entry name, or null if it isn't a tile of this archive
+	 */
+	private OSMTileInfo getTile(final String pName) {
+		if (!pName.startsWith(mPrefix) || !pName.endsWith(mSuffix)) {
+			return null;
+		}
+		final String[] parts = pName.substring(mPrefix.length(),
+				pName.length() - mSuffix.length()).split("/");
+		if (parts.length != 3) {
+			return null;
+		}
+		try {
+			return new OSMTileInfo(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+					Integer.parseInt(parts[0]));
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void writeCentralHeader(final byte[] pName, final int pMethod, final int pCrc,
+			final int pCompressedSize, final int pSize, final long pOffset) throws IOException {
+		final boolean zip64 = pOffset >= U32_MAX;
+		final int extraLength = zip64 ? ZIP64_EXTRA_SIZE : 0;
+		final ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + extraLength).order(
+				ByteOrder.LITTLE_ENDIAN);
+		header.putInt(CENTRAL_HEADER_SIGNATURE);
+		header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+		header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+		header.putShort((short) UTF8_FLAG);
+		header.putShort((short) pMethod);
+		header.putShort((short) mDosTime);
+		header.putShort((short) mDosDate);
+		header.putInt(pCrc);
+		header.putInt(pCompressedSize);
+		header.putInt(pSize);
+		header.putShort((short) pName.length);
+		header.putShort((short) extraLength);
+		header.putShort((short) 0); // comment
+		header.putShort((short) 0); // disk
+		header.putShort((short) 0); // internal attributes
+		header.putInt(0); // external attributes
+		header.putInt((int) Math.min(pOffset, U32_MAX));
+		if (zip64) {
+			header.putShort((short) ZIP64_EXTRA_ID);
+			header.putShort((short) 8);
+			header.putLong(pOffset);
+		}
+		mCentralDirectory.write(header.array(), 0, CENTRAL_HEADER_SIZE);
+		mCentralDirectory.write(pName);
+		mCentralDirectory.write(header.array(), CENTRAL_HEADER_SIZE, extraLength);
+		mCentralDirectorySize += CENTRAL_HEADER_SIZE + pName.length + extraLength;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * Reads the local headers of an archive in order, up to the first entry that isn't complete.
+	 */
+	private static class EntryReader {
+		private final InputStream mIn;
+		private final long mLength;
+		private final byte[] mHeader = new byte[LOCAL_HEADER_SIZE];
+
+		/** The offset of the entry that was read last, and the offset of its end */
+		long mOffset;
+		long mEnd;
+
+		byte[] mName;
+		int mMethod;
+		int mCrc;
+		long mCompressedSize;
+		long mSize;
+
+		EntryReader(final File pFile) throws IOException {
+			mLength = pFile.length();
+			mIn = new BufferedInputStream(new FileInputStream(pFile), StreamUtils.IO_BUFFER_SIZE);
+		}
+
+		/**
+		 * @return whether there's another complete entry
+		 */
+		boolean next() throws IOException {
+			if (!readFully(mHeader)) {
+				return false;
+			}
+			final ByteBuffer header = ByteBuffer.wrap(mHeader).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+				return false;
+			}
+			final byte[] name = new byte[header.getShort(26) & 0xffff];
+			final int extraLength = header.getShort(28) & 0xffff;
+			final long compressedSize = header.getInt(18) & U32_MAX;
+			final long end = mEnd + LOCAL_HEADER_SIZE + name.length + extraLength + compressedSize;
+			// skip() doesn't stop at the end of a file
+			if (end > mLength || !readFully(name) || !skipFully(extraLength + compressedSize)) {
+				return false;
+			}
+
+			mName = name;
+			mMethod = header.getShort(8) & 0xffff;
+			mCrc = header.getInt(14);
+			mCompressedSize = compressedSize;
+			mSize = header.getInt(22) & U32_MAX;
+			mOffset = mEnd;
+			mEnd = end;
+			return true;
+		}
+
+		void close() {
+			StreamUtils.closeStream(mIn);
+		}
+
+		private boolean readFully(final byte[] pBuffer) throws IOException {
+			int read = 0;
+			while (read < pBuffer.length) {
+				final int count = mIn.read(pBuffer, read, pBuffer.length - read);
+				if (count < 0) {
+					return false;
+				}
+				read += count;
+			}
+			return true;
+		}
+
+		private boolean skipFully(final long pCount) throws IOException {
+			long remaining = pCount;
+			while (remaining > 0) {
+				final long skipped = mIn.skip(remaining);
+				if (skipped > 0) {
+					remaining -= skipped;
+				} else if (mIn.read() >= 0) {
+					remaining--;
+				} else {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package org.osmdroid.mtp.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+import org.osmdroid.mtp.sink.TileSink;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Downloads the tiles of an area from a local server that doesn't have some of them and fails
+ * once for another, interrupts the job and resumes it.
+ */
+public class DownloadManagerTest {
+
+	private static final int MIN_ZOOM = 0;
+	private static final int MAX_ZOOM = 5;
+	private static final double NORTH = 60;
+	private static final double SOUTH = -60;
+	private static final double EAST = 170;
+	private static final double WEST = -170;
+
+	/** The tile that fails once */
+	private static final String FLAKY_TILE = "/5/10/12.png";
+
+	/** The run is interrupted when the sink has this many tiles */
+	private static final int INTERRUPT_AFTER = 50;
+
+	private HttpServer mServer;
+	private String mBaseUrl;
+	private final ConcurrentHashMap<String, AtomicInteger> mRequests =
+			new ConcurrentHashMap<String, AtomicInteger>();
+	private File mJournalFile;
+
+	@Before
+	public void startServer() throws IOException {
+		mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		mServer.createContext("/", new HttpHandler() {
+			public void handle(final HttpExchange pExchange) throws IOException {
+				final String path = pExchange.getRequestURI().getPath();
+				final AtomicInteger requests = new AtomicInteger();
+				final AtomicInteger previous = mRequests.putIfAbsent(path, requests);
+				final int count = (previous != null ? previous : requests).incrementAndGet();
+
+				final byte[] tile = path.getBytes("UTF-8");
+				if (isMissing(path)) {
+					pExchange.sendResponseHeaders(404, -1);
+				} else if (path.equals(FLAKY_TILE) && count == 1) {
+					pExchange.sendResponseHeaders(503, -1);
+				} else {
+					// a kept-alive connection waits for a delayed ACK before every response
+					pExchange.getResponseHeaders().add("Connection", "close");
+					pExchange.sendResponseHeaders(200, tile.length);
+					final OutputStream out = pExchange.getResponseBody();
+					out.write(tile);
+					out.close();
+				}
+				pExchange.close();
+			}
+		});
+		mServer.start();
+		mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/%d/%d/%d.png";
+		mJournalFile = File.createTempFile("download", ".journal");
+		mJournalFile.delete();
+	}
+
+	@After
+	public void stopServer() {
+		mServer.stop(0);
+		mJournalFile.delete();
+	}
+
+	/** A sparse source, without every fourth column of the highest zoom level */
+	private static boolean isMissing(final String pPath) {
+		final String[] parts = pPath.split("/");
+		return Integer.parseInt(parts[1]) == MAX_ZOOM && Integer.parseInt(parts[2]) % 4 == 0;
+	}
+
+	private static String getPath(final OSMTileInfo pTile) {
+		return "/" + pTile.zoom + "/" + pTile.x + "/" + pTile.y + ".png";
+	}
+
+	private static TileIterator getTiles() {
+		return new TileIterator(MIN_ZOOM, MAX_ZOOM, NORTH, SOUTH, EAST, WEST);
+	}
+
+	@Test
+	public void test_resume() throws Exception {
+		final long tileCount = TileIterator.getTileCount(MIN_ZOOM, MAX_ZOOM, NORTH, SOUTH, EAST,
+				WEST);
+		long missingCount = 0;
+		for (final TileIterator tiles = getTiles(); tiles.hasNext();) {
+			if (isMissing(getPath(tiles.next()))) {
+				missingCount++;
+			}
+		}
+		assertTrue(missingCount > 0);
+		final MemorySink sink = new MemorySink(Thread.currentThread());
+
+		// the first run is interrupted
+		ProgressJournal journal = new ProgressJournal(mJournalFile, mBaseUrl);
+		DownloadManager manager = new DownloadManager(mBaseUrl, sink, 1, 1, journal);
+		try {
+			manager.download(getTiles(), tileCount);
+			fail("the download is interrupted");
+		} catch (final InterruptedException e) {
+			// expected
+		}
+		assertFalse("an interrupted job isn't complete", manager.finish());
+		assertTrue("the journal is kept", mJournalFile.exists());
+
+		// the journal only has tiles that the sink flushed
+		journal = new ProgressJournal(mJournalFile, mBaseUrl);
+		final int doneCount = journal.getDoneCount();
+		assertTrue(doneCount >= INTERRUPT_AFTER);
+		for (final TileIterator tiles = getTiles(); tiles.hasNext();) {
+			final String path = getPath(tiles.next());
+			if (journal.isDone(tiles.getIndex())) {
+				assertTrue(path, sink.isFlushed(path) || isMissing(path));
+			}
+		}
+		sink.lose();
+
+		// the second run resumes, retries the tile that fails and passes over the missing ones
+		manager = new DownloadManager(mBaseUrl, sink, 2, 2, journal);
+		manager.download(getTiles(), tileCount);
+		assertEquals(doneCount, manager.getSkippedCount());
+		assertEquals(0, manager.getFailedCount());
+		assertEquals(1, manager.getRetriedCount());
+		assertEquals(2, mRequests.get(FLAKY_TILE).get());
+		assertEquals(tileCount, manager.getSkippedCount() + manager.getDownloadedCount()
+				+ manager.getNotFoundCount());
+		assertTrue("a complete job deletes its journal", manager.finish());
+		assertFalse(mJournalFile.exists());
+
+		assertEquals(tileCount - missingCount, sink.getFlushedCount());
+		for (final TileIterator tiles = getTiles(); tiles.hasNext();) {
+			final String path = getPath(tiles.next());
+			assertTrue(path, isMissing(path) || sink.isFlushed(path));
+			if (!isMissing(path)) {
+				assertTrue("downloaded once: " + path, mRequests.get(path).get() == 1
+						|| path.equals(FLAKY_TILE));
+			}
+		}
+	}
+
+	/**
+	 * Keeps the tiles in memory. Tiles that were put since the last flush are lost when the job
+	 * stops, as in a sink that commits in batches.
+	 */
+	private static class MemorySink implements TileSink {
+
+		private final Thread mInterrupt;
+		private final Map<String, byte[]> mPut = new HashMap<String, byte[]>();
+		private final Map<String, byte[]> mFlushed = new HashMap<String, byte[]>();
+		private int mPutCount;
+
+		MemorySink(final Thread pInterrupt) {
+			mInterrupt = pInterrupt;
+		}
+
+		public synchronized void put(final OSMTileInfo pTile, final byte[] pData) {
+			mPut.put(getPath(pTile), pData);
+			if (++mPutCount == INTERRUPT_AFTER) {
+				mInterrupt.interrupt();
+			}
+		}
+
+		public void scan(final TileReader.Visitor pVisitor) {
+		}
+
+		public synchronized void flush() {
+			mFlushed.putAll(mPut);
+			mPut.clear();
+		}
+
+		public synchronized void close() {
+			flush();
+		}
+
+		synchronized void lose() {
+			mPut.clear();
+		}
+
+		/** Whether the tile was flushed, with the data that the server sent for it */
+		synchronized boolean isFlushed(final String pPath) {
+			final byte[] data = mFlushed.get(pPath);
+			return data != null && new String(data).equals(pPath);
+		}
+
+		synchronized int getFlushedCount() {
+			return mFlushed.size();
+		}
+	}
+}
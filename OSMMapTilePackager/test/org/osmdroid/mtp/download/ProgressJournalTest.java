@@ -0,0 +1,105 @@
+package org.osmdroid.mtp.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProgressJournalTest {
+
+	private static final String JOB = "http://localhost/%d/%d/%d.png 0-5";
+
+	private File mFile;
+
+	@Before
+	public void createFile() throws IOException {
+		mFile = File.createTempFile("journal", ".journal");
+		mFile.delete();
+	}
+
+	@After
+	public void deleteFile() {
+		mFile.delete();
+	}
+
+	@Test
+	public void test_resume() throws IOException {
+		final ProgressJournal journal = new ProgressJournal(mFile, JOB);
+		journal.markDone(3);
+		journal.markDone(7);
+		journal.markDone(3);
+		assertEquals(2, journal.getDoneCount());
+		journal.flush();
+		journal.close();
+
+		final ProgressJournal resumed = new ProgressJournal(mFile, JOB);
+		assertEquals(2, resumed.getDoneCount());
+		assertTrue(resumed.isDone(3));
+		assertTrue(resumed.isDone(7));
+		assertFalse(resumed.isDone(4));
+		resumed.close();
+	}
+
+	@Test
+	public void test_unflushed_not_written() throws IOException {
+		final ProgressJournal journal = new ProgressJournal(mFile, JOB);
+		journal.markDone(1);
+		journal.flush();
+		for (int i = 2; i < 5000; i++) {
+			journal.markDone(i);
+		}
+
+		// as if the job stopped before the sink was flushed
+		ProgressJournal resumed = new ProgressJournal(mFile, JOB);
+		assertEquals("only the flushed tile is on disk", 1, resumed.getDoneCount());
+		resumed.close();
+
+		journal.flush();
+		journal.markDone(5000);
+		journal.close();
+		resumed = new ProgressJournal(mFile, JOB);
+		assertEquals("closing doesn't write unflushed tiles", 4999, resumed.getDoneCount());
+		resumed.close();
+	}
+
+	@Test
+	public void test_half_record_dropped() throws IOException {
+		final ProgressJournal journal = new ProgressJournal(mFile, JOB);
+		journal.markDone(1);
+		journal.flush();
+		journal.close();
+		final FileOutputStream out = new FileOutputStream(mFile, true);
+		out.write(new byte[] { 0, 0 });
+		out.close();
+
+		ProgressJournal resumed = new ProgressJournal(mFile, JOB);
+		assertEquals(1, resumed.getDoneCount());
+		resumed.markDone(2);
+		resumed.flush();
+		resumed.close();
+		resumed = new ProgressJournal(mFile, JOB);
+		assertEquals("records after the dropped one are read", 2, resumed.getDoneCount());
+		assertTrue(resumed.isDone(2));
+		resumed.close();
+	}
+
+	@Test
+	public void test_other_job_starts_over() throws IOException {
+		final ProgressJournal journal = new ProgressJournal(mFile, JOB);
+		journal.markDone(1);
+		journal.flush();
+		journal.close();
+
+		final ProgressJournal other = new ProgressJournal(mFile, JOB + " other");
+		assertEquals(0, other.getDoneCount());
+		other.delete();
+		assertFalse(mFile.exists());
+	}
+}
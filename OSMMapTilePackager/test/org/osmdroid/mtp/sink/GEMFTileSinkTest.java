@@ -0,0 +1,87 @@
+package org.osmdroid.mtp.sink;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+import org.osmdroid.util.MappedGEMFFile;
+
+public class GEMFTileSinkTest {
+
+	private File mFile;
+
+	@Before
+	public void createFile() throws IOException {
+		mFile = File.createTempFile("tiles", ".gemf");
+	}
+
+	@After
+	public void deleteFile() {
+		mFile.delete();
+	}
+
+	@Test
+	public void test_resume() throws IOException {
+		// an interrupted job leaves the record of a tile whose data it didn't write
+		final GEMFTileSink interrupted = new GEMFTileSink(mFile, "Test", getRanges(), false);
+		interrupted.put(new OSMTileInfo(0, 0, 1), getData(1));
+		interrupted.put(new OSMTileInfo(0, 1, 1), getData(2));
+		interrupted.flush();
+		interrupted.put(new OSMTileInfo(1, 1, 1), getData(4));
+
+		final GEMFTileSink resumed = new GEMFTileSink(mFile, "Test", getRanges(), true);
+		final List<String> scanned = new ArrayList<String>();
+		resumed.scan(new TileReader.Visitor() {
+			@Override
+			public void visit(final OSMTileInfo pTile, final byte[] pData) {
+				scanned.add(pTile.zoom + "/" + pTile.x + "/" + pTile.y);
+			}
+		});
+		assertEquals(2, scanned.size());
+		assertEquals("1/0/0", scanned.get(0));
+		assertEquals("1/0/1", scanned.get(1));
+		resumed.put(new OSMTileInfo(1, 0, 1), getData(3));
+		resumed.close();
+
+		final MappedGEMFFile gemf = new MappedGEMFFile(mFile);
+		try {
+			assertArrayEquals(getData(1), read(gemf, 0, 0));
+			assertArrayEquals(getData(2), read(gemf, 0, 1));
+			assertArrayEquals(getData(3), read(gemf, 1, 0));
+			assertNull(gemf.getByteBuffer(1, 1, 1));
+		} finally {
+			gemf.close();
+		}
+	}
+
+	private static List<GEMFTileSink.Range> getRanges() {
+		return Collections.singletonList(new GEMFTileSink.Range(1, 0, 1, 0, 1));
+	}
+
+	private static byte[] getData(final int pTile) {
+		final byte[] data = new byte[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 7 * pTile);
+		}
+		return data;
+	}
+
+	private static byte[] read(final MappedGEMFFile pGEMF, final int pX, final int pY) {
+		final ByteBuffer buffer = pGEMF.getByteBuffer(pX, pY, 1);
+		final byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		return data;
+	}
+}
@@ -0,0 +1,97 @@
+package org.osmdroid.mtp.sink;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.mtp.adt.OSMTileInfo;
+import org.osmdroid.mtp.reader.TileReader;
+import org.osmdroid.tileprovider.util.StreamUtils;
+
+public class ZipTileSinkTest {
+
+	private File mFile;
+
+	@Before
+	public void createFile() throws IOException {
+		mFile = File.createTempFile("tiles", ".zip");
+	}
+
+	@After
+	public void deleteFile() {
+		mFile.delete();
+	}
+
+	@Test
+	public void test_resume() throws IOException {
+		// an interrupted job leaves the entries it flushed and half of the next one
+		final ZipTileSink interrupted = new ZipTileSink(mFile, "Test", ".png", false, false);
+		interrupted.put(new OSMTileInfo(0, 0, 1), getData(1));
+		interrupted.put(new OSMTileInfo(0, 1, 1), getData(2));
+		interrupted.flush();
+		final FileOutputStream out = new FileOutputStream(mFile, true);
+		try {
+			out.write(new byte[] { 0x50, 0x4b, 0x03, 0x04, 20, 0 });
+		} finally {
+			out.close();
+		}
+
+		final ZipTileSink resumed = new ZipTileSink(mFile, "Test", ".png", false, true);
+		final List<String> scanned = new ArrayList<String>();
+		resumed.scan(new TileReader.Visitor() {
+			@Override
+			public void visit(final OSMTileInfo pTile, final byte[] pData) {
+				scanned.add(pTile.zoom + "/" + pTile.x + "/" + pTile.y);
+			}
+		});
+		assertEquals(2, scanned.size());
+		assertEquals("1/0/0", scanned.get(0));
+		assertEquals("1/0/1", scanned.get(1));
+		resumed.put(new OSMTileInfo(1, 0, 1), getData(3));
+		resumed.close();
+
+		final ZipFile zip = new ZipFile(mFile);
+		try {
+			assertEquals(3, zip.size());
+			assertArrayEquals(getData(1), read(zip, "Test/1/0/0.png"));
+			assertArrayEquals(getData(2), read(zip, "Test/1/0/1.png"));
+			assertArrayEquals(getData(3), read(zip, "Test/1/1/0.png"));
+		} finally {
+			zip.close();
+		}
+	}
+
+	private static byte[] getData(final int pTile) {
+		final byte[] data = new byte[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 7 * pTile);
+		}
+		return data;
+	}
+
+	private static byte[] read(final ZipFile pZip, final String pName) throws IOException {
+		final ZipEntry entry = pZip.getEntry(pName);
+		final InputStream in = pZip.getInputStream(entry);
+		try {
+			final byte[] data = new byte[(int) entry.getSize()];
+			int read = 0;
+			while (read < data.length) {
+				read += in.read(data, read, data.length - read);
+			}
+			return data;
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+	}
+}
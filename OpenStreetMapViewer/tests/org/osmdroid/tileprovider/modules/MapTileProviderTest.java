@@ -32,6 +32,15 @@ public class MapTileProviderTest extends AndroidTestCase {
 		public void mapTileRequestFailed(final MapTileRequestState aState) {
 		}
 
+		@Override
+		public void mapTileRequestExpiredTile(final MapTileRequestState aState,
+				final Drawable aDrawable) {
+		}
+
+		@Override
+		public void mapTileRequestRevalidated(final MapTileRequestState aState) {
+		}
+
 		@Override
 		public boolean useDataConnection() {
 			return false;
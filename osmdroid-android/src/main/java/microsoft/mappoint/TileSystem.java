@@ -123,6 +123,73 @@ public final class TileSystem {
 		return out;
 	}
 
+	/**
+	 * Converts an array of points from latitude/longitude E6 into pixel XY coordinates at a
+	 * specified level of detail, without creating any objects.
+	 * 
+	 * @param latLongE6
+	 *            Latitude and longitude E6 of each point, one after the other
+	 * @param offset
+	 *            Index in latLongE6 of the latitude of the first point
+	 * @param count
+	 *            Number of points
+	 * @param levelOfDetail
+	 *            Level of detail, from 1 (lowest detail) to 23 (highest detail)
+	 * @param out
+	 *            Array receiving the X and Y coordinates of each point, one after the other.
+	 *            It may be latLongE6 itself.
+	 * @param outOffset
+	 *            Index in out of the X coordinate of the first point
+	 */
+	public static void LatLongToPixelXY(final int[] latLongE6, final int offset, final int count,
+			final int levelOfDetail, final int[] out, final int outOffset) {
+		final int mapSize = MapSize(levelOfDetail);
+		for (int i = 0; i < count; i++) {
+			final double latitude = Clip(latLongE6[offset + i * 2] / 1E6, MinLatitude,
+					MaxLatitude);
+			final double longitude = Clip(latLongE6[offset + i * 2 + 1] / 1E6, MinLongitude,
+					MaxLongitude);
+			LatLongToPixelXY(latitude, longitude, mapSize, out, outOffset + i * 2);
+		}
+	}
+
+	/**
+	 * Converts an array of points from latitude/longitude WGS-84 coordinates (in degrees) into
+	 * pixel XY coordinates at a specified level of detail, without creating any objects.
+	 * 
+	 * @param latLong
+	 *            Latitude and longitude of each point, one after the other
+	 * @param offset
+	 *            Index in latLong of the latitude of the first point
+	 * @param count
+	 *            Number of points
+	 * @param levelOfDetail
+	 *            Level of detail, from 1 (lowest detail) to 23 (highest detail)
+	 * @param out
+	 *            Array receiving the X and Y coordinates of each point, one after the other
+	 * @param outOffset
+	 *            Index in out of the X coordinate of the first point
+	 */
+	public static void LatLongToPixelXY(final double[] latLong, final int offset, final int count,
+			final int levelOfDetail, final int[] out, final int outOffset) {
+		final int mapSize = MapSize(levelOfDetail);
+		for (int i = 0; i < count; i++) {
+			final double latitude = Clip(latLong[offset + i * 2], MinLatitude, MaxLatitude);
+			final double longitude = Clip(latLong[offset + i * 2 + 1], MinLongitude, MaxLongitude);
+			LatLongToPixelXY(latitude, longitude, mapSize, out, outOffset + i * 2);
+		}
+	}
+
+	private static void LatLongToPixelXY(final double latitude, final double longitude,
+			final int mapSize, final int[] out, final int outOffset) {
+		final double x = (longitude + 180) / 360;
+		final double sinLatitude = Math.sin(latitude * Math.PI / 180);
+		final double y = 0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI);
+
+		out[outOffset] = (int) Clip(x * mapSize + 0.5, 0, mapSize - 1);
+		out[outOffset + 1] = (int) Clip(y * mapSize + 0.5, 0, mapSize - 1);
+	}
+
 	/**
 	 * Converts a pixel from pixel XY coordinates at a specified level of detail into
 	 * latitude/longitude WGS-84 coordinates (in degrees).
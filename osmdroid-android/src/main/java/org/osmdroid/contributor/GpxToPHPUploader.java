@@ -5,7 +5,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -32,7 +32,7 @@ public class GpxToPHPUploader {
 	private GpxToPHPUploader() {
 	}
 
-	public static void uploadAsync(final ArrayList<RecordedGeoPoint> recordedGeoPoints) {
+	public static void uploadAsync(final List<RecordedGeoPoint> recordedGeoPoints) {
 		new Thread(new Runnable() {
 			
 			public void run() {
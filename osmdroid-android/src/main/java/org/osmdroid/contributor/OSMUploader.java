@@ -16,8 +16,8 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 import org.osmdroid.contributor.util.RecordedGeoPoint;
 import org.osmdroid.contributor.util.RecordedRouteGPXFormatter;
@@ -76,7 +76,7 @@ public class OSMUploader implements OpenStreetMapContributorConstants {
 	 *            the InputStream containing the gpx-data.
 	 * @throws IOException
 	 */
-	public static void uploadAsync(final ArrayList<RecordedGeoPoint> recordedGeoPoints) {
+	public static void uploadAsync(final List<RecordedGeoPoint> recordedGeoPoints) {
 		uploadAsync(DEFAULT_DESCRIPTION, DEFAULT_TAGS, true, recordedGeoPoints);
 	}
 
@@ -96,7 +96,7 @@ public class OSMUploader implements OpenStreetMapContributorConstants {
 	 * @throws IOException
 	 */
 	public static void uploadAsync(final String description, final String tags,
-			final boolean addDateTags, final ArrayList<RecordedGeoPoint> recordedGeoPoints) {
+			final boolean addDateTags, final List<RecordedGeoPoint> recordedGeoPoints) {
 		uploadAsync(OSM_USERNAME, OSM_PASSWORD, description, tags, addDateTags, recordedGeoPoints,
 				pseudoFileNameFormat.format(new GregorianCalendar().getTime()) + "_" + OSM_USERNAME
 						+ ".gpx");
@@ -124,7 +124,7 @@ public class OSMUploader implements OpenStreetMapContributorConstants {
 	 */
 	public static void uploadAsync(final String username, final String password,
 			final String description, final String tags, final boolean addDateTags,
-			final ArrayList<RecordedGeoPoint> recordedGeoPoints, final String pseudoFileName) {
+			final List<RecordedGeoPoint> recordedGeoPoints, final String pseudoFileName) {
 		if (username == null || username.length() == 0)
 			return;
 		if (password == null || password.length() == 0)
@@ -211,7 +211,7 @@ public class OSMUploader implements OpenStreetMapContributorConstants {
 
 	public static void upload(final String username, final String password,
 			final String description, final String tags, final boolean addDateTags,
-			final ArrayList<RecordedGeoPoint> recordedGeoPoints, final String pseudoFileName)
+			final List<RecordedGeoPoint> recordedGeoPoints, final String pseudoFileName)
 			throws IOException {
 		uploadAsync(username, password, description, tags, addDateTags, recordedGeoPoints,
 				pseudoFileName);
@@ -1,10 +1,12 @@
 // Created by plusminus on 12:28:16 - 21.09.2008
 package org.osmdroid.contributor;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.List;
 
 import org.osmdroid.contributor.util.RecordedGeoPoint;
 import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.GeoPointBuffer;
 
 import android.location.Location;
 
@@ -22,7 +24,30 @@ public class RouteRecorder {
 	// Fields
 	// ===========================================================
 
-	protected final ArrayList<RecordedGeoPoint> mRecords = new ArrayList<RecordedGeoPoint>();
+	/** The recorded points with their time stamps */
+	private final GeoPointBuffer mRecords = new GeoPointBuffer(true);
+
+	/** The number of satellites of each recorded point */
+	private int[] mNumSatellites = new int[64];
+
+	/** A read-only view of the recorded points */
+	private final List<RecordedGeoPoint> mRecordedGeoPoints =
+			new AbstractList<RecordedGeoPoint>() {
+		@Override
+		public RecordedGeoPoint get(final int pIndex) {
+			if (pIndex < 0 || pIndex >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + pIndex + ", Size: " + size());
+			}
+			return new RecordedGeoPoint(mRecords.getLatitudeE6(pIndex),
+					mRecords.getLongitudeE6(pIndex), mRecords.getTimeStamp(pIndex),
+					mNumSatellites[pIndex]);
+		}
+
+		@Override
+		public int size() {
+			return mRecords.size();
+		}
+	};
 
 	// ===========================================================
 	// Constructors
@@ -32,10 +57,25 @@ public class RouteRecorder {
 	// Getter & Setter
 	// ===========================================================
 
-	public ArrayList<RecordedGeoPoint> getRecordedGeoPoints() {
+	/**
+	 * @return a read-only view of the recorded points, which grows as more are recorded. The
+	 *         points are created as they're read.
+	 */
+	public List<RecordedGeoPoint> getRecordedGeoPoints() {
+		return this.mRecordedGeoPoints;
+	}
+
+	/**
+	 * @return the points recorded so far, without copying them
+	 */
+	public GeoPointBuffer getRecords() {
 		return this.mRecords;
 	}
 
+	public int getNumSatellites(final int aIndex) {
+		return this.mNumSatellites[aIndex];
+	}
+
 	// ===========================================================
 	// Methods from SuperClass/Interfaces
 	// ===========================================================
@@ -45,14 +85,23 @@ public class RouteRecorder {
 	// ===========================================================
 
 	public void add(final Location aLocation, final int aNumSatellites) {
-		this.mRecords
-				.add(new RecordedGeoPoint((int) (aLocation.getLatitude() * 1E6), (int) (aLocation
-						.getLongitude() * 1E6), System.currentTimeMillis(), aNumSatellites));
+		add((int) (aLocation.getLatitude() * 1E6), (int) (aLocation.getLongitude() * 1E6),
+				aNumSatellites);
 	}
 
 	public void add(final GeoPoint aGeoPoint, final int aNumSatellites) {
-		this.mRecords.add(new RecordedGeoPoint(aGeoPoint.getLatitudeE6(), aGeoPoint
-				.getLongitudeE6(), System.currentTimeMillis(), aNumSatellites));
+		add(aGeoPoint.getLatitudeE6(), aGeoPoint.getLongitudeE6(), aNumSatellites);
+	}
+
+	private void add(final int aLatitudeE6, final int aLongitudeE6, final int aNumSatellites) {
+		final int index = this.mRecords.size();
+		if (index == this.mNumSatellites.length) {
+			final int[] numSatellites = new int[index * 2];
+			System.arraycopy(this.mNumSatellites, 0, numSatellites, 0, index);
+			this.mNumSatellites = numSatellites;
+		}
+		this.mNumSatellites[index] = aNumSatellites;
+		this.mRecords.add(aLatitudeE6, aLongitudeE6, System.currentTimeMillis());
 	}
 
 	// ===========================================================
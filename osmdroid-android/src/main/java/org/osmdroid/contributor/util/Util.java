@@ -2,8 +2,8 @@
 package org.osmdroid.contributor.util;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
 
 import org.osmdroid.contributor.util.constants.OpenStreetMapContributorConstants;
@@ -57,7 +57,7 @@ public class Util implements OpenStreetMapContributorConstants {
 	}
 
 	public static boolean isSufficienDataForUpload(
-			final ArrayList<RecordedGeoPoint> recordedGeoPoints) {
+			final List<RecordedGeoPoint> recordedGeoPoints) {
 		if (recordedGeoPoints == null)
 			return false;
 
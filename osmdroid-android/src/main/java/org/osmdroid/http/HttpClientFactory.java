@@ -1,7 +1,19 @@
 package org.osmdroid.http;
 
+import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
 
 /**
  * Factory class for creating an instance of {@link HttpClient}.
@@ -16,18 +28,68 @@ import org.apache.http.impl.client.DefaultHttpClient;
  *     public HttpClient createHttpClient() {
  *         return new OkApacheClient();
  *     }
+ *     public HttpClient createSharedHttpClient(int pMaxConnectionsPerHost) {
+ *         return new OkApacheClient();
+ *     }
+ *     public void shutdownSharedHttpClient(HttpClient pHttpClient) {
+ *     }
  * });
  * </code>
+ * <p>
+ * The tile downloaders share a single pooled client, see {@link #acquireSharedHttpClient()}.
+ * Connections to each host are kept alive and limited to
+ * {@link #setMaxConnectionsPerHost(int)}, so tile sources that rotate between several base URLs
+ * get that many connections to each of their hosts. Connecting, reading and waiting for a pooled
+ * connection all time out, so that a stalled connection can't hold up a download thread and one
+ * of the connections to its host forever.
  */
 public class HttpClientFactory {
 
+	/** Default per host limit, conforming to the OSM tile usage policy */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+
+	private static final int MAX_TOTAL_CONNECTIONS = 20;
+
+	/** Timeouts of the shared client, in milliseconds */
+	private static final int CONNECTION_TIMEOUT = 15000;
+	private static final int SOCKET_TIMEOUT = 30000;
+	private static final long POOL_TIMEOUT = 30000;
+
 	private static IHttpClientFactory mFactoryInstance = new IHttpClientFactory() {
-		
+
 		public HttpClient createHttpClient() {
 			return new DefaultHttpClient();
 		}
+
+		public HttpClient createSharedHttpClient(final int pMaxConnectionsPerHost) {
+			final HttpParams params = new BasicHttpParams();
+			ConnManagerParams.setMaxTotalConnections(params, MAX_TOTAL_CONNECTIONS);
+			ConnManagerParams.setMaxConnectionsPerRoute(params,
+					new ConnPerRouteBean(pMaxConnectionsPerHost));
+			ConnManagerParams.setTimeout(params, POOL_TIMEOUT);
+			HttpConnectionParams.setConnectionTimeout(params, CONNECTION_TIMEOUT);
+			HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT);
+			HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+
+			final SchemeRegistry schemeRegistry = new SchemeRegistry();
+			schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+			return new DefaultHttpClient(new ThreadSafeClientConnManager(params, schemeRegistry),
+					params);
+		}
+
+		public void shutdownSharedHttpClient(final HttpClient pHttpClient) {
+			pHttpClient.getConnectionManager().shutdown();
+		}
 	};
 
+	private static final Object mSharedLock = new Object();
+	private static HttpClient mSharedHttpClient;
+	private static IHttpClientFactory mSharedHttpClientFactory;
+	private static int mSharedHttpClientUsers;
+	private static int mMaxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
 	public static void setFactoryInstance(final IHttpClientFactory aHttpClientFactory) {
 		mFactoryInstance = aHttpClientFactory;
 	}
@@ -36,4 +98,48 @@ public class HttpClientFactory {
 		return mFactoryInstance.createHttpClient();
 	}
 
+	/**
+	 * Set the maximum number of concurrent connections to a single host. This takes effect the
+	 * next time the shared client is created.
+	 */
+	public static void setMaxConnectionsPerHost(final int pMaxConnectionsPerHost) {
+		synchronized (mSharedLock) {
+			mMaxConnectionsPerHost = pMaxConnectionsPerHost;
+		}
+	}
+
+	/**
+	 * Get the shared, pooled client, creating it if necessary. Every call must be balanced by a
+	 * call to {@link #releaseSharedHttpClient()}.
+	 */
+	public static HttpClient acquireSharedHttpClient() {
+		synchronized (mSharedLock) {
+			if (mSharedHttpClient == null) {
+				mSharedHttpClientFactory = mFactoryInstance;
+				mSharedHttpClient = mSharedHttpClientFactory
+						.createSharedHttpClient(mMaxConnectionsPerHost);
+			}
+			mSharedHttpClientUsers++;
+			return mSharedHttpClient;
+		}
+	}
+
+	/**
+	 * Release a reference to the shared client. When there are no more users its connection pool
+	 * is shut down.
+	 */
+	public static void releaseSharedHttpClient() {
+		synchronized (mSharedLock) {
+			if (mSharedHttpClientUsers == 0) {
+				return;
+			}
+			mSharedHttpClientUsers--;
+			if (mSharedHttpClientUsers == 0) {
+				mSharedHttpClientFactory.shutdownSharedHttpClient(mSharedHttpClient);
+				mSharedHttpClient = null;
+				mSharedHttpClientFactory = null;
+			}
+		}
+	}
+
 }
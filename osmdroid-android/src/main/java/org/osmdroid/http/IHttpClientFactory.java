@@ -10,7 +10,24 @@ public interface IHttpClientFactory {
 
     /**
      * Create an instance of {@link HttpClient}.
+     * The caller owns the instance and may shut it down when it's done.
      */
     HttpClient createHttpClient();
 
+    /**
+     * Create a thread-safe {@link HttpClient} that keeps connections alive and pools them per
+     * host. A single instance is shared by all the tile downloaders, so callers must not shut it
+     * down or change its parameters.
+     *
+     * @param pMaxConnectionsPerHost
+     *            the maximum number of concurrent connections to a single host
+     */
+    HttpClient createSharedHttpClient(int pMaxConnectionsPerHost);
+
+    /**
+     * Release the pooled connections of a client created by {@link #createSharedHttpClient(int)}.
+     * Called when the last user of the shared client has detached.
+     */
+    void shutdownSharedHttpClient(HttpClient pHttpClient);
+
 }
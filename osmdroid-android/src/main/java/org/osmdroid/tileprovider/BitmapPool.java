@@ -1,31 +1,90 @@
 package org.osmdroid.tileprovider;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Build;
 
+/**
+ * A pool of mutable bitmaps that can be reused when decoding or rescaling tiles. Bitmaps are kept
+ * in free lists keyed by width, height and {@link Bitmap.Config}, so taking and returning a bitmap
+ * of a given shape is O(1). The pool is bounded by a byte ceiling and trims the bitmaps that were
+ * returned longest ago when it grows beyond it.
+ */
 public class BitmapPool {
-	final LinkedList<Bitmap> mPool = new LinkedList<Bitmap>();
 
-	private static BitmapPool sInstance;
+	/** Default ceiling for the pooled bitmaps, sixteen 256x256 ARGB_8888 tiles */
+	public static final long DEFAULT_MAXIMUM_POOL_BYTES = 16L * 256 * 256 * 4;
 
-	public static BitmapPool getInstance() {
-		if (sInstance == null)
-			sInstance = new BitmapPool();
+	private static final BitmapPool sInstance = new BitmapPool();
+
+	/** Free lists per bitmap shape, every node is also linked in the global order below */
+	private final HashMap<Key, ArrayDeque<Node>> mFreeLists = new HashMap<Key, ArrayDeque<Node>>();
+	/** Reused for lookups so that taking a bitmap doesn't allocate a key */
+	private final Key mLookupKey = new Key();
+
+	/** Oldest and newest returned bitmaps */
+	private Node mOldest;
+	private Node mNewest;
+
+	private long mPoolBytes;
+	private long mMaximumPoolBytes = DEFAULT_MAXIMUM_POOL_BYTES;
 
+	private long mHitCount;
+	private long mMissCount;
+	private long mEvictionCount;
+
+	public static BitmapPool getInstance() {
 		return sInstance;
 	}
 
 	public void returnDrawableToPool(ReusableBitmapDrawable drawable) {
 		Bitmap b = drawable.tryRecycle();
-		if (b != null && b.isMutable())
-			synchronized (mPool) {
-				mPool.addLast(b);
+		if (b != null && b.isMutable()) {
+			returnBitmapToPool(b);
+		}
+	}
+
+	public void returnBitmapToPool(final Bitmap pBitmap) {
+		if (pBitmap.isRecycled()) {
+			return;
+		}
+		final Node node = new Node(pBitmap);
+		synchronized (this) {
+			ArrayDeque<Node> freeList = mFreeLists.get(node.mKey);
+			if (freeList == null) {
+				freeList = new ArrayDeque<Node>();
+				mFreeLists.put(node.mKey, freeList);
 			}
+			freeList.addLast(node);
+			linkNewest(node);
+			mPoolBytes += node.mBytes;
+			trimToSize(mMaximumPoolBytes);
+		}
 	}
 
+	/**
+	 * Set up the options so that the decoder reuses a pooled bitmap of the expected size. Only a
+	 * bitmap of exactly that shape is handed out, because older platforms refuse to decode into a
+	 * bitmap of a different size.
+	 */
+	public void applyReusableOptions(final BitmapFactory.Options aBitmapOptions, final int aWidth,
+			final int aHeight, final Bitmap.Config aConfig) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			aBitmapOptions.inBitmap = obtainSizedBitmapFromPool(aWidth, aHeight, aConfig);
+			aBitmapOptions.inPreferredConfig = aConfig;
+			aBitmapOptions.inSampleSize = 1;
+			aBitmapOptions.inMutable = true;
+		}
+	}
+
+	/**
+	 * @deprecated the pool can't know what size the decoded bitmap will be, use
+	 *             {@link #applyReusableOptions(BitmapFactory.Options, int, int, Bitmap.Config)}
+	 */
+	@Deprecated
 	public void applyReusableOptions(final BitmapFactory.Options aBitmapOptions) {
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
 			aBitmapOptions.inBitmap = obtainBitmapFromPool();
@@ -34,47 +93,176 @@ public class BitmapPool {
 		}
 	}
 
+	/**
+	 * Get the most recently returned bitmap regardless of its size.
+	 */
 	public Bitmap obtainBitmapFromPool() {
-		synchronized (mPool) {
-			if (mPool.isEmpty()) {
-				return null;
-			} else {
-				final Bitmap bitmap = mPool.removeFirst();
-				if (bitmap.isRecycled()) {
-					return obtainBitmapFromPool(); // recurse
-				} else {
-					return bitmap;
+		synchronized (this) {
+			while (mNewest != null) {
+				final Node node = mNewest;
+				mFreeLists.get(node.mKey).pollLast();
+				unlink(node);
+				if (!node.mBitmap.isRecycled()) {
+					mHitCount++;
+					return node.mBitmap;
 				}
 			}
+			mMissCount++;
+			return null;
 		}
 	}
 
 	public Bitmap obtainSizedBitmapFromPool(final int aWidth, final int aHeight) {
-		synchronized (mPool) {
-			if (mPool.isEmpty()) {
-				return null;
-			} else {
-				for (final Bitmap bitmap : mPool) {
-					if (bitmap.isRecycled()) {
-						mPool.remove(bitmap);
-						return obtainSizedBitmapFromPool(aWidth, aHeight); // recurse to prevent ConcurrentModificationException
-					} else if (bitmap.getWidth() == aWidth && bitmap.getHeight() == aHeight) {
-						mPool.remove(bitmap);
-						return bitmap;
+		return obtainSizedBitmapFromPool(aWidth, aHeight, Bitmap.Config.ARGB_8888);
+	}
+
+	public Bitmap obtainSizedBitmapFromPool(final int aWidth, final int aHeight,
+			final Bitmap.Config aConfig) {
+		synchronized (this) {
+			mLookupKey.set(aWidth, aHeight, aConfig);
+			final ArrayDeque<Node> freeList = mFreeLists.get(mLookupKey);
+			if (freeList != null) {
+				Node node;
+				while ((node = freeList.pollLast()) != null) {
+					unlink(node);
+					if (!node.mBitmap.isRecycled()) {
+						mHitCount++;
+						return node.mBitmap;
 					}
 				}
 			}
+			mMissCount++;
+			return null;
 		}
+	}
+
+	/**
+	 * Set the maximum number of bytes held by the pool, trimming it if necessary.
+	 */
+	public void setMaximumPoolBytes(final long pMaximumPoolBytes) {
+		synchronized (this) {
+			mMaximumPoolBytes = pMaximumPoolBytes;
+			trimToSize(pMaximumPoolBytes);
+		}
+	}
+
+	public synchronized long getMaximumPoolBytes() {
+		return mMaximumPoolBytes;
+	}
+
+	public synchronized long getPoolBytes() {
+		return mPoolBytes;
+	}
 
-		return null;
+	/** Number of requests that were served from the pool */
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/** Number of requests that found no suitable bitmap in the pool */
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/** Number of bitmaps that were recycled to keep the pool under its ceiling */
+	public synchronized long getEvictionCount() {
+		return mEvictionCount;
 	}
 
 	public void clearBitmapPool() {
-		synchronized (sInstance.mPool) {
-			while (!sInstance.mPool.isEmpty()) {
-				Bitmap bitmap = sInstance.mPool.remove();
-				bitmap.recycle();
+		synchronized (this) {
+			while (mOldest != null) {
+				final Node node = mOldest;
+				unlink(node);
+				node.mBitmap.recycle();
 			}
+			mFreeLists.clear();
+		}
+	}
+
+	/**
+	 * Recycle the bitmaps that were returned longest ago until the pool fits in the given size.
+	 * Must be called while holding the lock.
+	 */
+	private void trimToSize(final long pMaximumPoolBytes) {
+		while (mPoolBytes > pMaximumPoolBytes && mOldest != null) {
+			final Node node = mOldest;
+			// the oldest node overall is also the oldest of its own free list
+			mFreeLists.get(node.mKey).pollFirst();
+			unlink(node);
+			node.mBitmap.recycle();
+			mEvictionCount++;
+		}
+	}
+
+	private void linkNewest(final Node pNode) {
+		pNode.mOlder = mNewest;
+		pNode.mNewer = null;
+		if (mNewest == null) {
+			mOldest = pNode;
+		} else {
+			mNewest.mNewer = pNode;
+		}
+		mNewest = pNode;
+	}
+
+	private void unlink(final Node pNode) {
+		if (pNode.mOlder == null) {
+			mOldest = pNode.mNewer;
+		} else {
+			pNode.mOlder.mNewer = pNode.mNewer;
+		}
+		if (pNode.mNewer == null) {
+			mNewest = pNode.mOlder;
+		} else {
+			pNode.mNewer.mOlder = pNode.mOlder;
+		}
+		pNode.mOlder = null;
+		pNode.mNewer = null;
+		mPoolBytes -= pNode.mBytes;
+	}
+
+	private static final class Key {
+		int mWidth;
+		int mHeight;
+		Bitmap.Config mConfig;
+
+		void set(final int pWidth, final int pHeight, final Bitmap.Config pConfig) {
+			mWidth = pWidth;
+			mHeight = pHeight;
+			mConfig = pConfig;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key rhs = (Key) obj;
+			return mWidth == rhs.mWidth && mHeight == rhs.mHeight && mConfig == rhs.mConfig;
+		}
+
+		@Override
+		public int hashCode() {
+			int code = mWidth;
+			code = 31 * code + mHeight;
+			code = 31 * code + (mConfig == null ? 0 : mConfig.ordinal());
+			return code;
+		}
+	}
+
+	private static final class Node {
+		final Bitmap mBitmap;
+		final Key mKey;
+		final long mBytes;
+		Node mOlder;
+		Node mNewer;
+
+		Node(final Bitmap pBitmap) {
+			mBitmap = pBitmap;
+			mKey = new Key();
+			mKey.set(pBitmap.getWidth(), pBitmap.getHeight(), pBitmap.getConfig());
+			mBytes = (long) pBitmap.getRowBytes() * pBitmap.getHeight();
 		}
 	}
 }
@@ -0,0 +1,48 @@
+package org.osmdroid.tileprovider;
+
+import org.osmdroid.tileprovider.LRUMapTileCache.TileRemovedListener;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * A cache of the drawables of tiles in memory, shared by the tile loader threads and the UI
+ * thread. {@link MapTileCache} holds a number of tiles, {@link SegmentedMapTileCache} holds a
+ * number of bytes.
+ */
+public interface IMapTileCache {
+
+	/**
+	 * Make sure that at least the specified number of tiles fit in the cache.
+	 */
+	void ensureCapacity(int aCapacity);
+
+	TileRemovedListener getTileRemovedListener();
+
+	void setTileRemovedListener(TileRemovedListener pTileRemovedListener);
+
+	Drawable getMapTile(MapTile aTile);
+
+	/**
+	 * Get a tile by its key (see {@link MapTile#getKey(int, int, int)}).
+	 */
+	Drawable getMapTile(long pTileKey);
+
+	void putTile(MapTile aTile, Drawable aDrawable);
+
+	/**
+	 * Put the tile in the cache unless it's already there, in one step, so that a tile that's put
+	 * at the same time isn't replaced.
+	 *
+	 * @return whether the tile was put. If it wasn't, the cache doesn't hold the drawable.
+	 */
+	boolean putTileIfAbsent(MapTile aTile, Drawable aDrawable);
+
+	boolean containsTile(MapTile aTile);
+
+	/**
+	 * Whether the tile with the key (see {@link MapTile#getKey(int, int, int)}) is in the cache.
+	 */
+	boolean containsTile(long pTileKey);
+
+	void clear();
+}
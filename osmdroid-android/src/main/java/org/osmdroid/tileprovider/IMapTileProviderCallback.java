@@ -30,6 +30,15 @@ public interface IMapTileProviderCallback {
 	 */
 	void mapTileRequestExpiredTile(MapTileRequestState aState, final Drawable aDrawable);
 
+	/**
+	 * The expired tile that was returned earlier for this request has been revalidated and is
+	 * still current, so there's no new drawable.
+	 * 
+	 * @param aState
+	 *            a state object
+	 */
+	void mapTileRequestRevalidated(MapTileRequestState aState);
+
 	/**
 	 * Returns true if the network connection should be used, false if not.
 	 *
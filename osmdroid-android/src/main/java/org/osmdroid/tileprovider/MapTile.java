@@ -1,19 +1,28 @@
 package org.osmdroid.tileprovider;
 
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.util.LongHashMap;
 import org.osmdroid.views.overlay.TilesOverlay;
 
 /**
  * A map tile is distributed using the observer pattern. The tile is delivered by a tile provider
  * (i.e. a descendant of {@link MapTileModuleProviderBase} or
  * {@link MapTileProviderBase} to a consumer of tiles (e.g. descendant of
- * {@link TilesOverlay}). Tiles are typically images (e.g. png or jpeg).
+ * {@link TilesOverlay}). Tiles are typically images (e.g. png or jpeg).<br />
+ * <br />
+ * A tile can also be identified by a long key with the zoom level, x and y packed into it (see
+ * {@link #getKey(int, int, int)}), which code that runs on every frame can use to look tiles up
+ * without making a MapTile each time.
  */
 public class MapTile {
 
 	public static final int MAPTILE_SUCCESS_ID = 0;
 	public static final int MAPTILE_FAIL_ID = MAPTILE_SUCCESS_ID + 1;
 
+	/** The number of bits of x and y in a key */
+	private static final int KEY_BITS = 29;
+	private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
 	// This class must be immutable because it's used as the key in the cache hash map
 	// (ie all the fields are final).
 	private final int x;
@@ -38,6 +47,41 @@ public class MapTile {
 		return y;
 	}
 
+	/**
+	 * @return the tile's key, see {@link #getKey(int, int, int)}
+	 */
+	public long getKey() {
+		return getKey(zoomLevel, x, y);
+	}
+
+	/**
+	 * Pack a tile into a long, with the zoom level in the top bits and then 29 bits each of x and
+	 * y, which is enough for zoom level 29. Equal tiles have equal keys.
+	 */
+	public static long getKey(final int pZoomLevel, final int pX, final int pY) {
+		return ((long) pZoomLevel << (2 * KEY_BITS)) | ((pX & KEY_MASK) << KEY_BITS)
+				| (pY & KEY_MASK);
+	}
+
+	public static int getZoomLevel(final long pKey) {
+		return (int) (pKey >>> (2 * KEY_BITS));
+	}
+
+	public static int getX(final long pKey) {
+		return (int) ((pKey >>> KEY_BITS) & KEY_MASK);
+	}
+
+	public static int getY(final long pKey) {
+		return (int) (pKey & KEY_MASK);
+	}
+
+	/**
+	 * @return the tile with the key
+	 */
+	public static MapTile fromKey(final long pKey) {
+		return new MapTile(getZoomLevel(pKey), getX(pKey), getY(pKey));
+	}
+
 	@Override
 	public String toString() {
 		return "/" + zoomLevel + "/" + x + "/" + y;
@@ -57,10 +101,7 @@ public class MapTile {
 
 	@Override
 	public int hashCode() {
-		int code = 17;
-		code *= 37 + zoomLevel;
-		code *= 37 + x;
-		code *= 37 + y;
-		return code;
+		// spread over all the bits so that neighbouring tiles don't collide
+		return LongHashMap.hash(getKey());
 	}
 }
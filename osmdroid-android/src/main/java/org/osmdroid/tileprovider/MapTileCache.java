@@ -1,16 +1,18 @@
 // Created by plusminus on 17:58:57 - 25.09.2008
 package org.osmdroid.tileprovider;
 
+import org.osmdroid.tileprovider.LRUMapTileCache.TileRemovedListener;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 
 import android.graphics.drawable.Drawable;
 
 /**
- * 
+ * An {@link IMapTileCache} that holds a number of tiles and drops the least recently used ones.
+ *
  * @author Nicolas Gramlich
  * 
  */
-public class MapTileCache implements OpenStreetMapTileProviderConstants {
+public class MapTileCache implements IMapTileCache, OpenStreetMapTileProviderConstants {
 	// ===========================================================
 	// Constants
 	// ===========================================================
@@ -48,12 +50,32 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 		}
 	}
 
+	public TileRemovedListener getTileRemovedListener() {
+		synchronized (mCachedTilesLockObject) {
+			return mCachedTiles.getTileRemovedListener();
+		}
+	}
+
+	public void setTileRemovedListener(final TileRemovedListener pTileRemovedListener) {
+		synchronized (mCachedTilesLockObject) {
+			mCachedTiles.setTileRemovedListener(pTileRemovedListener);
+		}
+	}
+
 	public Drawable getMapTile(final MapTile aTile) {
 		synchronized (mCachedTilesLockObject) {
 			return this.mCachedTiles.get(aTile);
 		}
 	}
 
+	/**
+	 * Get a tile by its key (see {@link MapTile#getKey(int, int, int)}). This implementation
+	 * makes a MapTile for the lookup; {@link SegmentedMapTileCache} doesn't.
+	 */
+	public Drawable getMapTile(final long pTileKey) {
+		return getMapTile(MapTile.fromKey(pTileKey));
+	}
+
 	public void putTile(final MapTile aTile, final Drawable aDrawable) {
 		if (aDrawable != null) {
 			synchronized (mCachedTilesLockObject) {
@@ -62,6 +84,25 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 		}
 	}
 
+	/**
+	 * Put the tile in the cache unless it's already there, in one step, so that a tile that's put
+	 * at the same time isn't replaced.
+	 *
+	 * @return whether the tile was put. If it wasn't, the cache doesn't hold the drawable.
+	 */
+	public boolean putTileIfAbsent(final MapTile aTile, final Drawable aDrawable) {
+		if (aDrawable == null) {
+			return false;
+		}
+		synchronized (mCachedTilesLockObject) {
+			if (this.mCachedTiles.containsKey(aTile)) {
+				return false;
+			}
+			this.mCachedTiles.put(aTile, aDrawable);
+			return true;
+		}
+	}
+
 	// ===========================================================
 	// Methods from SuperClass/Interfaces
 	// ===========================================================
@@ -76,6 +117,13 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 		}
 	}
 
+	/**
+	 * Whether the tile with the key (see {@link MapTile#getKey(int, int, int)}) is in the cache.
+	 */
+	public boolean containsTile(final long pTileKey) {
+		return containsTile(MapTile.fromKey(pTileKey));
+	}
+
 	public void clear() {
 		synchronized (mCachedTilesLockObject) {
 			this.mCachedTiles.clear();
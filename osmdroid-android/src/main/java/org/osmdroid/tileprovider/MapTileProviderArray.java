@@ -1,12 +1,15 @@
 package org.osmdroid.tileprovider;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.WeakHashMap;
 
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.MyMath;
 //////import org.slf4j.Logger;
 //////import org.slf4j.LoggerFactory;
 
@@ -30,12 +33,19 @@ import android.graphics.drawable.Drawable;
  */
 public class MapTileProviderArray extends MapTileProviderBase {
 
+	/** The maximum number of tiles requested by one call to {@link #prefetchTiles} */
+	private static final int MAXIMUM_PREFETCH_TILES = 64;
+
 	protected final HashMap<MapTile, MapTileRequestState> mWorking;
 
 	//private static final Logger logger = LoggerFactory.getLogger(MapTileProviderArray.class);
 
 	protected final List<MapTileModuleProviderBase> mTileProviderList;
 
+	/** The region of interest of each caller, by the caller */
+	private final WeakHashMap<Object, MapTileRegion> mInterestRegions =
+			new WeakHashMap<Object, MapTileRegion>();
+
 	/**
 	 * Creates an {@link MapTileProviderArray} with no tile providers.
 	 *
@@ -86,11 +96,23 @@ public class MapTileProviderArray extends MapTileProviderBase {
 			return tile;
 		} else {
 			boolean alreadyInProgress = false;
+			MapTileRequestState prefetch = null;
 			synchronized (mWorking) {
-				alreadyInProgress = mWorking.containsKey(pTile);
+				final MapTileRequestState working = mWorking.get(pTile);
+				alreadyInProgress = working != null;
+				if (working != null && working.isPrefetch()) {
+					prefetch = working;
+				}
 			}
 
-			if (!alreadyInProgress) {
+			if (prefetch != null) {
+				// the tile is needed now, so it mustn't wait behind the visible tiles any more
+				prefetch.setPrefetch(false);
+				final MapTileModuleProviderBase provider = prefetch.getCurrentProvider();
+				if (provider != null) {
+					provider.promoteMapTileAsync(prefetch);
+				}
+			} else if (!alreadyInProgress) {
 				/*if (DEBUG_TILE_PROVIDERS) {
 					//logger.debug("MapTileProviderArray.getMapTile() requested but not in cache, trying from async providers: "
 							+ pTile);
@@ -125,6 +147,132 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		}
 	}
 
+	@Override
+	public Drawable getMapTile(final long pTileKey) {
+		final Drawable tile = mTileCache.getMapTile(pTileKey);
+		if (tile != null && !ExpirableBitmapDrawable.isDrawableExpired(tile)) {
+			return tile;
+		}
+		return getMapTile(MapTile.fromKey(pTileKey));
+	}
+
+	@Override
+	public void setInterestRegion(final Object pOwner, final int pZoomLevel, final int pLeft,
+			final int pTop, final int pRight, final int pBottom) {
+		final ArrayList<MapTileRegion> regions;
+		synchronized (mInterestRegions) {
+			final MapTileRegion previous = mInterestRegions.get(pOwner);
+			if (previous != null && previous.equals(pZoomLevel, pLeft, pTop, pRight, pBottom)) {
+				return;
+			}
+			mInterestRegions.put(pOwner, new MapTileRegion(pZoomLevel, pLeft, pTop, pRight,
+					pBottom));
+			regions = new ArrayList<MapTileRegion>(mInterestRegions.values());
+		}
+
+		final ArrayList<MapTileRequestState> dropped = new ArrayList<MapTileRequestState>();
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.setInterestRegions(regions, dropped);
+			}
+		}
+
+		// forget about the dropped requests so that they can be made again when they scroll back
+		forget(dropped);
+	}
+
+	@Override
+	public void clearInterestRegion(final Object pOwner) {
+		synchronized (mInterestRegions) {
+			mInterestRegions.remove(pOwner);
+		}
+	}
+
+	private void forget(final List<MapTileRequestState> pDropped) {
+		if (!pDropped.isEmpty()) {
+			synchronized (mWorking) {
+				for (final MapTileRequestState state : pDropped) {
+					if (mWorking.get(state.getMapTile()) == state) {
+						mWorking.remove(state.getMapTile());
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void prefetchTiles(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		cancelPrefetch();
+		if (pZoomLevel < getMinimumZoomLevel() || pZoomLevel > getMaximumZoomLevel()) {
+			return;
+		}
+
+		// the closest tiles to the center, requested farthest first so that the center is newest
+		final int worldTiles = 1 << pZoomLevel;
+		final int width = Math.min(pRight - pLeft + 1, worldTiles);
+		final int height = Math.min(pBottom - pTop + 1, worldTiles);
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		final long[] tiles = new long[width * height];
+		int count = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				// twice the distance in tiles from the center, squared
+				final long dx = 2 * x - (width - 1);
+				final long dy = 2 * y - (height - 1);
+				tiles[count++] = ((dx * dx + dy * dy) << 32) | (y * width + x);
+			}
+		}
+		Arrays.sort(tiles);
+
+		final MapTileModuleProviderBase[] providers;
+		synchronized (mTileProviderList) {
+			providers = mTileProviderList.toArray(
+					new MapTileModuleProviderBase[mTileProviderList.size()]);
+		}
+		for (int i = Math.min(count, MAXIMUM_PREFETCH_TILES) - 1; i >= 0; i--) {
+			final int index = (int) tiles[i];
+			final MapTile tile = new MapTile(pZoomLevel,
+					MyMath.mod(pLeft + index % width, worldTiles),
+					MyMath.mod(pTop + index / width, worldTiles));
+			final Drawable cached = mTileCache.getMapTile(tile);
+			if (cached != null && !ExpirableBitmapDrawable.isDrawableExpired(cached)) {
+				continue;
+			}
+
+			final MapTileRequestState state = new MapTileRequestState(tile, providers, this);
+			state.setPrefetch(true);
+			synchronized (mWorking) {
+				if (mWorking.containsKey(tile)) {
+					continue;
+				}
+				mWorking.put(tile, state);
+			}
+
+			final MapTileModuleProviderBase provider = findNextAppropriateProvider(state);
+			if (provider != null) {
+				provider.loadMapTileAsync(state);
+			} else {
+				synchronized (mWorking) {
+					mWorking.remove(tile);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void cancelPrefetch() {
+		final ArrayList<MapTileRequestState> dropped = new ArrayList<MapTileRequestState>();
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.cancelPrefetch(dropped);
+			}
+		}
+		forget(dropped);
+	}
+
 	@Override
 	public void mapTileRequestCompleted(final MapTileRequestState aState, final Drawable aDrawable) {
 		synchronized (mWorking) {
@@ -133,6 +281,14 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		super.mapTileRequestCompleted(aState, aDrawable);
 	}
 
+	@Override
+	public void mapTileRequestRevalidated(final MapTileRequestState aState) {
+		synchronized (mWorking) {
+			mWorking.remove(aState.getMapTile());
+		}
+		super.mapTileRequestRevalidated(aState);
+	}
+
 	@Override
 	public void mapTileRequestFailed(final MapTileRequestState aState) {
 		final MapTileModuleProviderBase nextProvider = findNextAppropriateProvider(aState);
@@ -1,11 +1,17 @@
 // Created by plusminus on 21:46:22 - 25.09.2008
 package org.osmdroid.tileprovider;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import microsoft.mappoint.TileSystem;
 
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.modules.ConfigurablePriorityThreadFactory;
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.util.TileLooper;
@@ -38,12 +44,18 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 	//private static final Logger logger = LoggerFactory.getLogger(MapTileProviderBase.class);
 
-	protected final MapTileCache mTileCache;
+	protected final IMapTileCache mTileCache;
 	protected Handler mTileRequestCompleteHandler;
 	protected boolean mUseDataConnection = true;
 
 	private ITileSource mTileSource;
 
+	/** Scales the cached tiles to a new zoom level in the background, a zoom change at a time */
+	private ThreadPoolExecutor mRescaleExecutor;
+
+	/** Incremented for every zoom change, so that scaling for an earlier one stops */
+	private final AtomicInteger mRescaleGeneration = new AtomicInteger();
+
 	/**
 	 * Attempts to get a Drawable that represents a {@link MapTile}. If the tile is not immediately
 	 * available this will return null and attempt to get the tile from known tile sources for
@@ -55,6 +67,14 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	 */
 	public abstract Drawable getMapTile(MapTile pTile);
 
+	/**
+	 * Get a tile by its key (see {@link MapTile#getKey(int, int, int)}). This implementation makes
+	 * a MapTile; {@link MapTileProviderArray} only does when the tile isn't in the cache.
+	 */
+	public Drawable getMapTile(final long pTileKey) {
+		return getMapTile(MapTile.fromKey(pTileKey));
+	}
+
 	public abstract void detach();
 
 	/**
@@ -92,10 +112,11 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	}
 
 	/**
-	 * Creates a {@link MapTileCache} to be used to cache tiles in memory.
+	 * Creates an {@link IMapTileCache} to be used to cache tiles in memory. By default this is a
+	 * {@link SegmentedMapTileCache} that is bounded by decoded bitmap bytes.
 	 */
-	public MapTileCache createTileCache() {
-		return new MapTileCache();
+	public IMapTileCache createTileCache() {
+		return new SegmentedMapTileCache();
 	}
 
 	public MapTileProviderBase(final ITileSource pTileSource) {
@@ -124,9 +145,7 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		putTileIntoCache(pState, pDrawable);
 
 		// tell our caller we've finished and it should update its view
-		if (mTileRequestCompleteHandler != null) {
-			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_SUCCESS_ID);
-		}
+		sendTileSuccess(pState.getMapTile());
 
 		if (DEBUG_TILE_PROVIDERS) {
 			//logger.debug("MapTileProviderBase.mapTileRequestCompleted(): " + pState.getMapTile());
@@ -167,15 +186,48 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		putExpiredTileIntoCache(pState, pDrawable);
 
 		// tell our caller we've finished and it should update its view
-		if (mTileRequestCompleteHandler != null) {
-			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_SUCCESS_ID);
-		}
+		sendTileSuccess(pState.getMapTile());
 
 		if (DEBUG_TILE_PROVIDERS) {
 			//logger.debug("MapTileProviderBase.mapTileRequestExpiredTile(): " + pState.getMapTile());
 		}
 	}
 
+	/**
+	 * Called by implementation class methods indicating that the expired tile they were asked to
+	 * refresh hasn't changed. The cached tile is no longer marked as expired, and a
+	 * MAPTILE_SUCCESS_ID message is sent.
+	 *
+	 * @param pState
+	 *            the map tile request state object
+	 */
+	
+	public void mapTileRequestRevalidated(final MapTileRequestState pState) {
+		final Drawable drawable = mTileCache.getMapTile(pState.getMapTile());
+		if (drawable instanceof ExpirableBitmapDrawable
+				&& ExpirableBitmapDrawable.isDrawableExpired(drawable)) {
+			drawable.setState(new int[0]);
+		}
+
+		// tell our caller we've finished and it should update its view
+		sendTileSuccess(pState.getMapTile());
+
+		if (DEBUG_TILE_PROVIDERS) {
+			//logger.debug("MapTileProviderBase.mapTileRequestRevalidated(): " + pState.getMapTile());
+		}
+	}
+
+	/**
+	 * Send a MAPTILE_SUCCESS_ID message with the tile that changed as its obj, so that a consumer
+	 * that keeps what it has drawn can redraw just that tile.
+	 */
+	protected void sendTileSuccess(final MapTile pTile) {
+		final Handler handler = mTileRequestCompleteHandler;
+		if (handler != null) {
+			handler.sendMessage(handler.obtainMessage(MapTile.MAPTILE_SUCCESS_ID, pTile));
+		}
+	}
+
 	protected void putTileIntoCache(MapTileRequestState pState, Drawable pDrawable) {
 		final MapTile tile = pState.getMapTile();
 		if (pDrawable != null) {
@@ -183,10 +235,15 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		}
 	}
 
+	/**
+	 * Put an expired tile into the cache unless the tile is already there. A drawable that isn't
+	 * put is given back to the {@link BitmapPool}, as nobody else holds it.
+	 */
 	protected void putExpiredTileIntoCache(MapTileRequestState pState, Drawable pDrawable) {
 		final MapTile tile = pState.getMapTile();
-		if (pDrawable != null && !mTileCache.containsTile(tile)) {
-			mTileCache.putTile(tile, pDrawable);
+		if (pDrawable != null && !mTileCache.putTileIfAbsent(tile, pDrawable)
+				&& pDrawable instanceof ReusableBitmapDrawable) {
+			BitmapPool.getInstance().returnDrawableToPool((ReusableBitmapDrawable) pDrawable);
 		}
 	}
 
@@ -198,7 +255,59 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		mTileCache.ensureCapacity(pCapacity);
 	}
 
+	/**
+	 * Tell the provider which tiles are currently visible so that it can drop pending requests
+	 * for tiles that have scrolled out of view and load the remaining ones from the center
+	 * outwards. The tile coordinates are inclusive and may lie outside of the world. Callers that
+	 * share the provider with another overlay should use
+	 * {@link #setInterestRegion(Object, int, int, int, int, int)} instead.
+	 */
+	public void setInterestRegion(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		setInterestRegion(this, pZoomLevel, pLeft, pTop, pRight, pBottom);
+	}
+
+	/**
+	 * Like {@link #setInterestRegion(int, int, int, int, int)} for one of several callers that
+	 * share the provider, such as a {@link org.osmdroid.views.overlay.TilesOverlay} and a
+	 * {@link org.osmdroid.views.overlay.MinimapOverlay}. The provider keeps the region of each
+	 * caller and only drops requests that are outside of all of them. The default implementation
+	 * does nothing.
+	 *
+	 * @param pOwner
+	 *            the caller, which replaces its previous region
+	 */
+	public void setInterestRegion(final Object pOwner, final int pZoomLevel, final int pLeft,
+			final int pTop, final int pRight, final int pBottom) {
+	}
+
+	/**
+	 * Forget the region of the caller, for instance because its overlay was removed. The default
+	 * implementation does nothing.
+	 */
+	public void clearInterestRegion(final Object pOwner) {
+	}
+
+	/**
+	 * Start loading tiles that aren't visible yet but are expected to be soon, such as the
+	 * destination of a fling or an animation. The requests are made at a low priority that never
+	 * holds up the visible tiles, and replace the ones of the previous call. The tile coordinates
+	 * are inclusive and may lie outside of the world. The default implementation does nothing.
+	 */
+	public void prefetchTiles(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+	}
+
+	/**
+	 * Drop the prefetch requests that haven't started loading, because the gesture they were made
+	 * for changed. The default implementation does nothing.
+	 */
+	public void cancelPrefetch() {
+	}
+
 	public void clearTileCache() {
+		// tiles that are still being scaled belong to what was cleared
+		mRescaleGeneration.incrementAndGet();
 		mTileCache.clear();
 	}
 
@@ -222,19 +331,21 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	}
 
 	/**
-	 * Recreate the cache using scaled versions of the tiles currently in it
+	 * Recreate the cache using scaled versions of the tiles currently in it. This only decides
+	 * which tiles are needed; they're scaled in the background, from the center of the view port
+	 * outwards, and each one is put in the cache as soon as it's ready with a MAPTILE_SUCCESS_ID
+	 * message. Scaling stops when the zoom level changes again.
 	 * @param pNewZoomLevel the zoom level that we need now
 	 * @param pOldZoomLevel the previous zoom level that we should get the tiles to rescale
 	 * @param pViewPort the view port we need tiles for
 	 */
 	public void rescaleCache(final int pNewZoomLevel, final int pOldZoomLevel, final Rect pViewPort) {
 
+		final int generation = mRescaleGeneration.incrementAndGet();
 		if (pNewZoomLevel == pOldZoomLevel) {
 			return;
 		}
 
-		final long startMs = System.currentTimeMillis();
-
 		//logger.info("rescale tile cache from "+ pOldZoomLevel + " to " + pNewZoomLevel);
 
 		final int tileSize = getTileSource().getTileSizePixels();
@@ -243,182 +354,261 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		viewPort.offset(worldSize_2, worldSize_2);
 
 		final ScaleTileLooper tileLooper = pNewZoomLevel > pOldZoomLevel
-				? new ZoomInTileLooper(pOldZoomLevel)
-				: new ZoomOutTileLooper(pOldZoomLevel);
+				? new ZoomInTileLooper(pOldZoomLevel, generation)
+				: new ZoomOutTileLooper(pOldZoomLevel, generation);
 		tileLooper.loop(null, pNewZoomLevel, tileSize, viewPort);
-
-		final long endMs = System.currentTimeMillis();
-		//logger.info("Finished rescale in " + (endMs - startMs) + "ms");
+		if (tileLooper.hasTiles()) {
+			getRescaleExecutor().execute(tileLooper);
+		}
 	}
 
-	private abstract class ScaleTileLooper extends TileLooper {
+	private synchronized ThreadPoolExecutor getRescaleExecutor() {
+		if (mRescaleExecutor == null) {
+			mRescaleExecutor = new ThreadPoolExecutor(0, 1, ONE_MINUTE, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ConfigurablePriorityThreadFactory(
+							Thread.NORM_PRIORITY, "rescaleCache"));
+		}
+		return mRescaleExecutor;
+	}
 
-		/** new (scaled) tiles to add to cache
-		  * NB first generate all and then put all in cache,
-		  * otherwise the ones we need will be pushed out */
-		protected final HashMap<MapTile, Bitmap> mNewTiles;
+	/**
+	 * Collects the tiles of the view port that aren't in the cache, then, when run, scales them
+	 * from the tiles of the old zoom level. The canvas and rectangles are reused for every tile.
+	 */
+	private abstract class ScaleTileLooper extends TileLooper implements Runnable {
 
 		protected final int mOldZoomLevel;
+		private final int mGeneration;
 		protected int mDiff;
 		protected int mTileSize_2;
-		protected Rect mSrcRect;
-		protected Rect mDestRect;
+		protected int mTileSizePx;
+		protected final Rect mSrcRect;
+		protected final Rect mDestRect;
 		protected Paint mDebugPaint;
+		protected Canvas mCanvas;
+
+		/** The number of tiles in the view port, cached or not */
+		private int mViewPortTileCount;
+
+		/** The tiles to scale, and their distances from the center as distance << 32 | index */
+		private final ArrayList<MapTile> mTiles = new ArrayList<MapTile>();
+		private long[] mOrder = new long[16];
 
-		public ScaleTileLooper(final int pOldZoomLevel) {
+		public ScaleTileLooper(final int pOldZoomLevel, final int pGeneration) {
 			mOldZoomLevel = pOldZoomLevel;
-			mNewTiles = new HashMap<MapTile, Bitmap>();
+			mGeneration = pGeneration;
 			mSrcRect = new Rect();
 			mDestRect = new Rect();
-			mDebugPaint = new Paint();
 		}
 
 		
 		public void initialiseLoop(final int pZoomLevel, final int pTileSizePx) {
 			mDiff = Math.abs(pZoomLevel - mOldZoomLevel);
 			mTileSize_2 = pTileSizePx >> mDiff;
+			mTileSizePx = pTileSizePx;
 		}
 
 		
 		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final MapTile pTile, final int pX, final int pY) {
+			handleTile(pCanvas, pTileSizePx, pTile.getKey(), pX, pY);
+		}
 
-			// Get tile from cache.
-			// If it's found then no need to created scaled version.
-			// If not found (null) them we've initiated a new request for it,
-			// and now we'll create a scaled version until the request completes.
-			final Drawable requestedTile = getMapTile(pTile);
-			if (requestedTile == null) {
-				try {
-					handleTile(pTileSizePx, pTile, pX, pY);
-				} catch(final OutOfMemoryError e) {
-					//logger.error("OutOfMemoryError rescaling cache");
+		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey,
+				final int pX, final int pY) {
+			mViewPortTileCount++;
+
+			// If the tile is in the cache then no need to create a scaled version.
+			// The tiles that aren't will be requested when they're drawn, and the scaled
+			// versions are shown until the requests complete.
+			if (!mTileCache.containsTile(pTileKey)) {
+				final int dx = 2 * pX + 1 - mUpperLeft.x - mLowerRight.x;
+				final int dy = 2 * pY + 1 - mUpperLeft.y - mLowerRight.y;
+				if (mTiles.size() == mOrder.length) {
+					final long[] order = new long[mOrder.length * 2];
+					System.arraycopy(mOrder, 0, order, 0, mOrder.length);
+					mOrder = order;
 				}
+				mOrder[mTiles.size()] = (long) (dx * dx + dy * dy) << 32 | mTiles.size();
+				mTiles.add(MapTile.fromKey(pTileKey));
 			}
 		}
 
 		
 		public void finaliseLoop() {
-			// now add the new ones, pushing out the old ones
-			while (!mNewTiles.isEmpty()) {
-				final MapTile tile = mNewTiles.keySet().iterator().next();
-				final Bitmap bitmap = mNewTiles.remove(tile);
-				final ExpirableBitmapDrawable drawable = new ReusableBitmapDrawable(bitmap);
-				drawable.setState(new int[] { ExpirableBitmapDrawable.EXPIRED });
-				Drawable existingTile = mTileCache.getMapTile(tile);
-				if (existingTile == null || ExpirableBitmapDrawable.isDrawableExpired(existingTile))
+			// center first
+			Arrays.sort(mOrder, 0, mTiles.size());
+		}
+
+		public boolean hasTiles() {
+			return !mTiles.isEmpty();
+		}
+
+		
+		public void run() {
+			mCanvas = new Canvas();
+			if (DEBUGMODE) {
+				mDebugPaint = new Paint();
+				mDebugPaint.setTextSize(40);
+			}
+			// room for the tiles of the old zoom level that the scaled ones are drawn from and for
+			// all of the scaled ones, so that putting a tile doesn't push out one that's still
+			// needed or was just scaled
+			mTileCache.ensureCapacity(2 * mViewPortTileCount);
+			for (int i = 0; i < mTiles.size(); i++) {
+				if (mRescaleGeneration.get() != mGeneration) {
+					// the zoom level changed again
+					return;
+				}
+
+				final MapTile tile = mTiles.get((int) mOrder[i]);
+				if (mTileCache.containsTile(tile)) {
+					continue;
+				}
+				Bitmap bitmap = null;
+				try {
+					bitmap = handleTile(tile);
+				} catch(final OutOfMemoryError e) {
+					//logger.error("OutOfMemoryError rescaling cache");
+				}
+				if (bitmap != null) {
+					final ExpirableBitmapDrawable drawable = new ReusableBitmapDrawable(bitmap);
+					drawable.setState(new int[] { ExpirableBitmapDrawable.EXPIRED });
 					putExpiredTileIntoCache(new MapTileRequestState(tile,
 							new MapTileModuleProviderBase[0], null), drawable);
+					sendTileSuccess(tile);
+				}
+			}
+		}
+
+		/**
+		 * Try to get a bitmap from the pool, otherwise allocate a new one, and draw into it.
+		 */
+		protected Bitmap obtainBitmap() {
+			Bitmap bitmap = BitmapPool.getInstance().obtainSizedBitmapFromPool(
+					mTileSizePx, mTileSizePx);
+			if (bitmap == null)
+				bitmap = Bitmap.createBitmap(mTileSizePx, mTileSizePx,
+					Bitmap.Config.ARGB_8888);
+			mCanvas.setBitmap(bitmap);
+			return bitmap;
+		}
+
+		/**
+		 * Draw part of a cached tile of the old zoom level into {@link #mCanvas}.
+		 *
+		 * @return false if the tile isn't cached or its bitmap has been reused
+		 */
+		protected boolean drawOldTile(final long pOldTileKey, final Rect pSrcRect,
+				final Rect pDestRect) {
+			final Drawable oldDrawable = mTileCache.getMapTile(pOldTileKey);
+			if (!(oldDrawable instanceof BitmapDrawable)) {
+				return false;
+			}
+			final boolean isReusable = oldDrawable instanceof ReusableBitmapDrawable;
+			if (isReusable)
+				((ReusableBitmapDrawable) oldDrawable).beginUsingDrawable();
+			try {
+				if (!isReusable || ((ReusableBitmapDrawable) oldDrawable).isBitmapValid()) {
+					final Bitmap oldBitmap = ((BitmapDrawable) oldDrawable).getBitmap();
+					if (oldBitmap != null) {
+						mCanvas.drawBitmap(oldBitmap, pSrcRect, pDestRect, null);
+						return true;
+					}
+				}
+			} finally {
+				if (isReusable)
+					((ReusableBitmapDrawable) oldDrawable).finishUsingDrawable();
+			}
+			return false;
+		}
+
+		/**
+		 * Mark a scaled tile in debug mode.
+		 */
+		protected void finishBitmap(final MapTile pTile) {
+			if (DEBUGMODE) {
+				//logger.debug("Created scaled tile: " + pTile);
+				mCanvas.drawText("scaled", 50, 50, mDebugPaint);
 			}
 		}
 
-		protected abstract void handleTile(int pTileSizePx, MapTile pTile, int pX, int pY);
+		/**
+		 * @return the scaled tile, or null if there's nothing to scale it from
+		 */
+		protected abstract Bitmap handleTile(MapTile pTile);
 	}
 
 	private class ZoomInTileLooper extends ScaleTileLooper {
-		public ZoomInTileLooper(final int pOldZoomLevel) {
-			super(pOldZoomLevel);
+		public ZoomInTileLooper(final int pOldZoomLevel, final int pGeneration) {
+			super(pOldZoomLevel, pGeneration);
 		}
 		
-		public void handleTile(final int pTileSizePx, final MapTile pTile, final int pX, final int pY) {
+		protected Bitmap handleTile(final MapTile pTile) {
 			// get the correct fraction of the tile from cache and scale up
 
-			final MapTile oldTile = new MapTile(mOldZoomLevel, pTile.getX() >> mDiff, pTile.getY() >> mDiff);
-			final Drawable oldDrawable = mTileCache.getMapTile(oldTile);
-
-			if (oldDrawable instanceof BitmapDrawable) {
-				final int xx = (pX % (1 << mDiff)) * mTileSize_2;
-				final int yy = (pY % (1 << mDiff)) * mTileSize_2;
-				mSrcRect.set(xx, yy, xx + mTileSize_2, yy + mTileSize_2);
-				mDestRect.set(0, 0, pTileSizePx, pTileSizePx);
-
-				// Try to get a bitmap from the pool, otherwise allocate a new one
-				Bitmap bitmap = BitmapPool.getInstance().obtainSizedBitmapFromPool(
-						pTileSizePx, pTileSizePx);
-				if (bitmap == null)
-					bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx,
-						Bitmap.Config.ARGB_8888);
-
-				final Canvas canvas = new Canvas(bitmap);
-				final boolean isReusable = oldDrawable instanceof ReusableBitmapDrawable;
-				boolean success = false;
-				if (isReusable)
-					((ReusableBitmapDrawable) oldDrawable).beginUsingDrawable();
-				try {
-					if (!isReusable || ((ReusableBitmapDrawable) oldDrawable).isBitmapValid()) {
-						final Bitmap oldBitmap = ((BitmapDrawable) oldDrawable).getBitmap();
-						canvas.drawBitmap(oldBitmap, mSrcRect, mDestRect, null);
-						success = true;
-						if (DEBUGMODE) {
-							//logger.debug("Created scaled tile: " + pTile);
-							mDebugPaint.setTextSize(40);
-							canvas.drawText("scaled", 50, 50, mDebugPaint);
-						}
-					}
-				} finally {
-					if (isReusable)
-						((ReusableBitmapDrawable) oldDrawable).finishUsingDrawable();
-				}
-				if (success)
-					mNewTiles.put(pTile, bitmap);
+			final long oldTile = MapTile.getKey(mOldZoomLevel, pTile.getX() >> mDiff,
+					pTile.getY() >> mDiff);
+			if (!mTileCache.containsTile(oldTile)) {
+				return null;
 			}
+
+			final int mask = (1 << mDiff) - 1;
+			final int xx = (pTile.getX() & mask) * mTileSize_2;
+			final int yy = (pTile.getY() & mask) * mTileSize_2;
+			mSrcRect.set(xx, yy, xx + mTileSize_2, yy + mTileSize_2);
+			mDestRect.set(0, 0, mTileSizePx, mTileSizePx);
+
+			final Bitmap bitmap = obtainBitmap();
+			if (!drawOldTile(oldTile, mSrcRect, mDestRect)) {
+				BitmapPool.getInstance().returnBitmapToPool(bitmap);
+				return null;
+			}
+			finishBitmap(pTile);
+			return bitmap;
 		}
 	}
 
 	private class ZoomOutTileLooper extends ScaleTileLooper {
 		private static final int MAX_ZOOM_OUT_DIFF = 4;
-		public ZoomOutTileLooper(final int pOldZoomLevel) {
-			super(pOldZoomLevel);
+		public ZoomOutTileLooper(final int pOldZoomLevel, final int pGeneration) {
+			super(pOldZoomLevel, pGeneration);
 		}
 		
-		protected void handleTile(final int pTileSizePx, final MapTile pTile, final int pX, final int pY) {
-
-			if (mDiff >= MAX_ZOOM_OUT_DIFF){
-				return;
+		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey,
+				final int pX, final int pY) {
+			if (mDiff < MAX_ZOOM_OUT_DIFF) {
+				super.handleTile(pCanvas, pTileSizePx, pTileKey, pX, pY);
 			}
+		}
+		
+		protected Bitmap handleTile(final MapTile pTile) {
 
 			// get many tiles from cache and make one tile from them
 			final int xx = pTile.getX() << mDiff;
 			final int yy = pTile.getY() << mDiff;
 			final int numTiles = 1 << mDiff;
 			Bitmap bitmap = null;
-			Canvas canvas = null;
 			for(int x = 0; x < numTiles; x++) {
 				for(int y = 0; y < numTiles; y++) {
-					final MapTile oldTile = new MapTile(mOldZoomLevel, xx + x, yy + y);
-					final Drawable oldDrawable = mTileCache.getMapTile(oldTile);
-					if (oldDrawable instanceof BitmapDrawable) {
-						final Bitmap oldBitmap = ((BitmapDrawable)oldDrawable).getBitmap();
-						if (oldBitmap != null) {
-							if (bitmap == null) {
-								// Try to get a bitmap from the pool, otherwise allocate a new one
-								bitmap = BitmapPool.getInstance().obtainSizedBitmapFromPool(
-										pTileSizePx, pTileSizePx);
-								if (bitmap == null)
-									bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx,
-										Bitmap.Config.ARGB_8888);
-								canvas = new Canvas(bitmap);
-								canvas.drawColor(Color.LTGRAY);
-							}
-							mDestRect.set(
-									x * mTileSize_2, y * mTileSize_2,
-									(x + 1) * mTileSize_2, (y + 1) * mTileSize_2);
-							if (oldBitmap != null) {
-								canvas.drawBitmap(oldBitmap, null, mDestRect, null);
-								mTileCache.mCachedTiles.remove(oldBitmap);
-							}
-						}
+					final long oldTile = MapTile.getKey(mOldZoomLevel, xx + x, yy + y);
+					if (!mTileCache.containsTile(oldTile)) {
+						continue;
+					}
+					if (bitmap == null) {
+						bitmap = obtainBitmap();
+						mCanvas.drawColor(Color.LTGRAY);
 					}
+					mDestRect.set(
+							x * mTileSize_2, y * mTileSize_2,
+							(x + 1) * mTileSize_2, (y + 1) * mTileSize_2);
+					drawOldTile(oldTile, null, mDestRect);
 				}
 			}
 
 			if (bitmap != null) {
-				mNewTiles.put(pTile, bitmap);
-				if (DEBUGMODE) {
-					//logger.debug("Created scaled tile: " + pTile);
-					mDebugPaint.setTextSize(40);
-					canvas.drawText("scaled", 50, 50, mDebugPaint);
-				}
+				finishBitmap(pTile);
 			}
+			return bitmap;
 		}
 	}
 
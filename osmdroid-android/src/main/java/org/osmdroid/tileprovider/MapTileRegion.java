@@ -0,0 +1,120 @@
+package org.osmdroid.tileprovider;
+
+import org.osmdroid.util.MyMath;
+
+/**
+ * An immutable rectangle of tiles at a zoom level, typically the tiles that are currently visible.
+ * The tile coordinates are inclusive and may lie outside of the world (as they do in
+ * {@link org.osmdroid.util.TileLooper}); tiles are matched modulo the world size.
+ */
+public final class MapTileRegion {
+
+	private final int mZoomLevel;
+	private final int mLeft;
+	private final int mTop;
+	private final int mRight;
+	private final int mBottom;
+
+	public MapTileRegion(final int pZoomLevel, final int pLeft, final int pTop, final int pRight,
+			final int pBottom) {
+		mZoomLevel = pZoomLevel;
+		mLeft = pLeft;
+		mTop = pTop;
+		mRight = pRight;
+		mBottom = pBottom;
+	}
+
+	public int getZoomLevel() {
+		return mZoomLevel;
+	}
+
+	public int getLeft() {
+		return mLeft;
+	}
+
+	public int getTop() {
+		return mTop;
+	}
+
+	public int getRight() {
+		return mRight;
+	}
+
+	public int getBottom() {
+		return mBottom;
+	}
+
+	public boolean equals(final int pZoomLevel, final int pLeft, final int pTop, final int pRight,
+			final int pBottom) {
+		return mZoomLevel == pZoomLevel && mLeft == pLeft && mTop == pTop && mRight == pRight
+				&& mBottom == pBottom;
+	}
+
+	public boolean contains(final MapTile pTile) {
+		if (pTile.getZoomLevel() != mZoomLevel) {
+			return false;
+		}
+		final int worldTiles = 1 << mZoomLevel;
+		return inRange(pTile.getX(), mLeft, mRight, worldTiles)
+				&& inRange(pTile.getY(), mTop, mBottom, worldTiles);
+	}
+
+	/**
+	 * Gets the squared distance in tiles from the center of the region to the tile, or
+	 * {@link Double#MAX_VALUE} if the tile is at another zoom level.
+	 */
+	public double getDistanceSquared(final MapTile pTile) {
+		if (pTile.getZoomLevel() != mZoomLevel) {
+			return Double.MAX_VALUE;
+		}
+		final int worldTiles = 1 << mZoomLevel;
+		final double dx = delta(pTile.getX(), (mLeft + mRight) / 2.0, worldTiles);
+		final double dy = delta(pTile.getY(), (mTop + mBottom) / 2.0, worldTiles);
+		return dx * dx + dy * dy;
+	}
+
+	private static boolean inRange(final int pValue, final int pLow, final int pHigh,
+			final int pWorldTiles) {
+		if (pHigh - pLow + 1 >= pWorldTiles) {
+			return true;
+		}
+		return MyMath.mod(pValue - pLow, pWorldTiles) <= pHigh - pLow;
+	}
+
+	private static double delta(final int pValue, final double pCenter, final int pWorldTiles) {
+		double delta = (pValue - pCenter) % pWorldTiles;
+		if (delta > pWorldTiles / 2.0) {
+			delta -= pWorldTiles;
+		} else if (delta < -pWorldTiles / 2.0) {
+			delta += pWorldTiles;
+		}
+		return delta;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof MapTileRegion)) {
+			return false;
+		}
+		final MapTileRegion rhs = (MapTileRegion) obj;
+		return equals(rhs.mZoomLevel, rhs.mLeft, rhs.mTop, rhs.mRight, rhs.mBottom);
+	}
+
+	@Override
+	public int hashCode() {
+		int code = mZoomLevel;
+		code = 31 * code + mLeft;
+		code = 31 * code + mTop;
+		code = 31 * code + mRight;
+		code = 31 * code + mBottom;
+		return code;
+	}
+
+	@Override
+	public String toString() {
+		return "/" + mZoomLevel + "/[" + mLeft + "," + mTop + "]-[" + mRight + "," + mBottom + "]";
+	}
+}
@@ -12,6 +12,8 @@ public class MapTileRequestState {
 	private final MapTile mMapTile;
 	private final IMapTileProviderCallback mCallback;
 	private MapTileModuleProviderBase mCurrentProvider;
+	private volatile boolean mPrefetch;
+	private volatile boolean mExpired;
 
 	public MapTileRequestState(final MapTile mapTile,
 			final MapTileModuleProviderBase[] providers,
@@ -42,4 +44,28 @@ public class MapTileRequestState {
 	public MapTileModuleProviderBase getCurrentProvider() {
 		return mCurrentProvider;
 	}
+
+	/**
+	 * Whether the tile isn't needed yet but is expected to be soon, so that loading it may wait
+	 * for the tiles that are needed now.
+	 */
+	public boolean isPrefetch() {
+		return mPrefetch;
+	}
+
+	public void setPrefetch(final boolean pPrefetch) {
+		mPrefetch = pPrefetch;
+	}
+
+	/**
+	 * Whether a provider found the tile but it has expired, so that the next providers should
+	 * revalidate it rather than only load it.
+	 */
+	public boolean isExpired() {
+		return mExpired;
+	}
+
+	public void setExpired(final boolean pExpired) {
+		mExpired = pExpired;
+	}
 }
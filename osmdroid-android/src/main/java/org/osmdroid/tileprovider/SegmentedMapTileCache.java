@@ -0,0 +1,378 @@
+package org.osmdroid.tileprovider;
+
+import java.util.ArrayList;
+
+import org.osmdroid.tileprovider.LRUMapTileCache.TileRemovedListener;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+
+/**
+ * An {@link IMapTileCache} that is bounded by the number of bytes held by the decoded tiles rather
+ * than by the number of tiles like {@link MapTileCache}, so tile sources with large tiles use
+ * memory correctly.<br />
+ * <br />
+ * Reads are lock-free: {@link #getMapTile(MapTile)} is a plain {@link LongHashMap} lookup by the
+ * tile's key that only marks the entry as referenced, and {@link #getMapTile(long)} doesn't even
+ * need a MapTile. Writers serialize on a single lock and evict using a segmented
+ * LRU approximated with second-chance (CLOCK) queues. New tiles enter a probationary segment and
+ * are promoted to the protected segment only if they were read again before reaching the head of
+ * the queue, so a one-off scan (e.g. a fling across the map) cannot flush the tiles that are
+ * actually being viewed.
+ */
+public class SegmentedMapTileCache implements IMapTileCache,
+		OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Percentage of the byte budget that may be held by the protected segment */
+	private static final int PROTECTED_PERCENTAGE = 80;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final Object mCachedTilesLockObject = new Object();
+
+	/** The entries by tile key, changed only under mCachedTilesLockObject */
+	private final LongHashMap<Entry> mEntries;
+
+	/** The two segments, guarded by mCachedTilesLockObject */
+	private final EntryQueue mProbation = new EntryQueue();
+	private final EntryQueue mProtected = new EntryQueue();
+
+	private long mUsedBytes;
+	private long mProtectedBytes;
+
+	private final long mMinimumBytes;
+	private volatile int mRequestedTileCount;
+	private volatile long mLargestTileBytes = CACHE_MAPTILE_BYTES_ESTIMATE;
+
+	private volatile TileRemovedListener mTileRemovedListener;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public SegmentedMapTileCache() {
+		this(CACHE_MAPTILECOUNT_DEFAULT * CACHE_MAPTILE_BYTES_ESTIMATE);
+	}
+
+	/**
+	 * @param aMinimumCacheBytes
+	 *            Minimum amount of decoded tile bytes to be held within. The budget grows beyond
+	 *            this when {@link #ensureCapacity(int)} asks for more tiles than fit in it.
+	 */
+	public SegmentedMapTileCache(final long aMinimumCacheBytes) {
+		mMinimumBytes = aMinimumCacheBytes;
+		mEntries = new LongHashMap<Entry>(CACHE_MAPTILECOUNT_DEFAULT * 4);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * Make sure that at least the specified number of tiles fit in the cache. The tile count is
+	 * converted into bytes using the largest tile seen so far.
+	 */
+	public void ensureCapacity(final int aCapacity) {
+		if (aCapacity > mRequestedTileCount) {
+			mRequestedTileCount = aCapacity;
+		}
+	}
+
+	/**
+	 * @return the current byte budget of this cache
+	 */
+	public long getMaximumCacheBytes() {
+		return Math.max(mMinimumBytes, mRequestedTileCount * mLargestTileBytes);
+	}
+
+	/**
+	 * @return the number of bytes currently held by the cached tiles
+	 */
+	public long getUsedCacheBytes() {
+		synchronized (mCachedTilesLockObject) {
+			return mUsedBytes;
+		}
+	}
+
+	public TileRemovedListener getTileRemovedListener() {
+		return mTileRemovedListener;
+	}
+
+	public void setTileRemovedListener(final TileRemovedListener pTileRemovedListener) {
+		mTileRemovedListener = pTileRemovedListener;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	public Drawable getMapTile(final MapTile aTile) {
+		return getMapTile(aTile.getKey());
+	}
+
+	public Drawable getMapTile(final long pTileKey) {
+		final Entry entry = mEntries.get(pTileKey);
+		if (entry == null) {
+			return null;
+		}
+		entry.mReferenced = true;
+		return entry.mDrawable;
+	}
+
+	public void putTile(final MapTile aTile, final Drawable aDrawable) {
+		put(aTile, aDrawable, false);
+	}
+
+	public boolean putTileIfAbsent(final MapTile aTile, final Drawable aDrawable) {
+		return put(aTile, aDrawable, true);
+	}
+
+	public boolean containsTile(final MapTile aTile) {
+		return mEntries.containsKey(aTile.getKey());
+	}
+
+	public boolean containsTile(final long pTileKey) {
+		return mEntries.containsKey(pTileKey);
+	}
+
+	public void clear() {
+		final ArrayList<Entry> removed = new ArrayList<Entry>(mEntries.size());
+		synchronized (mCachedTilesLockObject) {
+			mEntries.getValues(removed);
+			mEntries.clear();
+			mProbation.clear();
+			mProtected.clear();
+			mUsedBytes = 0;
+			mProtectedBytes = 0;
+		}
+
+		for (final Entry entry : removed) {
+			onEntryRemoved(entry);
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * @return whether the tile was put, false if pIfAbsent is set and the tile is already cached
+	 */
+	private boolean put(final MapTile aTile, final Drawable aDrawable, final boolean pIfAbsent) {
+		if (aDrawable == null) {
+			return false;
+		}
+
+		final long bytes = sizeOf(aDrawable);
+		if (bytes > mLargestTileBytes) {
+			mLargestTileBytes = bytes;
+		}
+
+		final ArrayList<Entry> removed = new ArrayList<Entry>(2);
+		synchronized (mCachedTilesLockObject) {
+			if (pIfAbsent && mEntries.containsKey(aTile.getKey())) {
+				return false;
+			}
+			final Entry entry = new Entry(aTile, aDrawable, bytes);
+			final Entry previous = mEntries.put(aTile.getKey(), entry);
+			if (previous != null) {
+				unlink(previous);
+				if (previous.mDrawable != aDrawable) {
+					removed.add(previous);
+				}
+			}
+			mProbation.addLast(entry);
+			mUsedBytes += bytes;
+
+			evict(entry, removed);
+		}
+
+		for (final Entry entry : removed) {
+			onEntryRemoved(entry);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of bytes that a drawable holds in memory. Override this if you cache
+	 * drawables that are not backed by a {@link Bitmap}.
+	 */
+	protected long sizeOf(final Drawable pDrawable) {
+		if (pDrawable instanceof BitmapDrawable) {
+			final Bitmap bitmap = ((BitmapDrawable) pDrawable).getBitmap();
+			if (bitmap != null) {
+				return (long) bitmap.getRowBytes() * bitmap.getHeight();
+			}
+		}
+		final int width = pDrawable.getIntrinsicWidth();
+		final int height = pDrawable.getIntrinsicHeight();
+		if (width > 0 && height > 0) {
+			return (long) width * height * 4;
+		}
+		return CACHE_MAPTILE_BYTES_ESTIMATE;
+	}
+
+	/**
+	 * Evict entries until the cache fits in its budget. Must be called holding
+	 * mCachedTilesLockObject. The newest entry is never evicted, even if it alone exceeds the
+	 * budget.
+	 */
+	private void evict(final Entry pNewest, final ArrayList<Entry> pRemoved) {
+		final long maximumBytes = getMaximumCacheBytes();
+		final long maximumProtectedBytes = maximumBytes * PROTECTED_PERCENTAGE / 100;
+
+		// bound the number of second chances so that concurrent readers can't keep us spinning
+		int secondChances = mEntries.size();
+
+		while (mUsedBytes > maximumBytes && mEntries.size() > 1) {
+			Entry candidate = mProbation.first();
+			if (candidate == pNewest) {
+				candidate = candidate.mNext;
+			}
+			if (candidate == null) {
+				// everything else is protected, so the coldest protected tile goes on probation
+				demote(mProtected.first());
+				continue;
+			}
+
+			if (candidate.mReferenced && secondChances-- > 0) {
+				candidate.mReferenced = false;
+				promote(candidate);
+				while (mProtectedBytes > maximumProtectedBytes) {
+					demote(mProtected.first());
+				}
+				continue;
+			}
+
+			unlink(candidate);
+			mEntries.remove(candidate.mTile.getKey());
+			pRemoved.add(candidate);
+		}
+	}
+
+	private void promote(final Entry pEntry) {
+		unlink(pEntry);
+		pEntry.mProtected = true;
+		mProtected.addLast(pEntry);
+		mUsedBytes += pEntry.mBytes;
+		mProtectedBytes += pEntry.mBytes;
+	}
+
+	private void demote(final Entry pEntry) {
+		unlink(pEntry);
+		pEntry.mReferenced = false;
+		mProbation.addLast(pEntry);
+		mUsedBytes += pEntry.mBytes;
+	}
+
+	private void unlink(final Entry pEntry) {
+		if (pEntry.mProtected) {
+			mProtected.remove(pEntry);
+			mProtectedBytes -= pEntry.mBytes;
+			pEntry.mProtected = false;
+		} else {
+			mProbation.remove(pEntry);
+		}
+		mUsedBytes -= pEntry.mBytes;
+	}
+
+	/**
+	 * Notify the listener and give the bitmap back. Called outside of the lock.
+	 */
+	private void onEntryRemoved(final Entry pEntry) {
+		final TileRemovedListener listener = mTileRemovedListener;
+		if (listener != null) {
+			listener.onTileRemoved(pEntry.mTile);
+		}
+		final Drawable drawable = pEntry.mDrawable;
+		// Only recycle if we are running on a project less than 2.3.3 Gingerbread.
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
+			if (drawable instanceof BitmapDrawable) {
+				final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+				if (bitmap != null) {
+					bitmap.recycle();
+				}
+			}
+		}
+		if (drawable instanceof ReusableBitmapDrawable) {
+			BitmapPool.getInstance().returnDrawableToPool((ReusableBitmapDrawable) drawable);
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static final class Entry {
+		final MapTile mTile;
+		final Drawable mDrawable;
+		final long mBytes;
+
+		/** Set by readers without locking, cleared by the evicting writer */
+		volatile boolean mReferenced;
+
+		/** The remaining fields are guarded by mCachedTilesLockObject */
+		boolean mProtected;
+		Entry mPrevious;
+		Entry mNext;
+
+		Entry(final MapTile pTile, final Drawable pDrawable, final long pBytes) {
+			mTile = pTile;
+			mDrawable = pDrawable;
+			mBytes = pBytes;
+		}
+	}
+
+	/**
+	 * An intrusive doubly-linked list with O(1) append and removal.
+	 */
+	private static final class EntryQueue {
+		private Entry mFirst;
+		private Entry mLast;
+
+		Entry first() {
+			return mFirst;
+		}
+
+		void addLast(final Entry pEntry) {
+			pEntry.mPrevious = mLast;
+			pEntry.mNext = null;
+			if (mLast == null) {
+				mFirst = pEntry;
+			} else {
+				mLast.mNext = pEntry;
+			}
+			mLast = pEntry;
+		}
+
+		void remove(final Entry pEntry) {
+			if (pEntry.mPrevious == null) {
+				mFirst = pEntry.mNext;
+			} else {
+				pEntry.mPrevious.mNext = pEntry.mNext;
+			}
+			if (pEntry.mNext == null) {
+				mLast = pEntry.mPrevious;
+			} else {
+				pEntry.mNext.mPrevious = pEntry.mPrevious;
+			}
+			pEntry.mPrevious = null;
+			pEntry.mNext = null;
+		}
+
+		void clear() {
+			mFirst = null;
+			mLast = null;
+		}
+	}
+}
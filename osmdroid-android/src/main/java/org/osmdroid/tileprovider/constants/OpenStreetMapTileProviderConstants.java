@@ -35,12 +35,24 @@ public interface OpenStreetMapTileProviderConstants {
 	/** add an extension to files on sdcard so that gallery doesn't index them */
 	public static final String TILE_PATH_EXTENSION = ".tile";
 
+	/**
+	 * Database used by {@link org.osmdroid.tileprovider.modules.SqlTileWriter}. The extension
+	 * keeps it from being opened as an archive.
+	 */
+	public static final File TILE_DATABASE_FILE = new File(OSMDROID_PATH, "cache.db");
+
 	/**
 	 * Initial tile cache size. The size will be increased as required by calling {@link
 	 * LRUMapTileCache.ensureCapacity(int)} The tile cache will always be at least 3x3.
 	 */
 	public static final int CACHE_MAPTILECOUNT_DEFAULT = 9;
 
+	/**
+	 * Estimated size in bytes of a decoded tile (256x256 ARGB_8888), used by
+	 * {@link org.osmdroid.tileprovider.SegmentedMapTileCache} until real tiles have been seen.
+	 */
+	public static final int CACHE_MAPTILE_BYTES_ESTIMATE = 256 * 256 * 4;
+
 	/**
 	 * number of tile download threads, conforming to OSM policy:
 	 * http://wiki.openstreetmap.org/wiki/Tile_usage_policy
@@ -0,0 +1,225 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.osmdroid.tileprovider.util.StreamUtils;
+//////import org.slf4j.Logger;
+//////import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link TileCoverage} of each tile source in an archive. It's kept in a file beside the
+ * archive, so that the archive is only scanned the first time it's used, and scanned again when
+ * its size or modification time changes. If the file can't be written the coverage is still kept
+ * in memory while the archive is open.
+ *
+ * The coverage is read or scanned on a background thread as soon as the archive is opened, one
+ * archive at a time, so that the tile loaders never wait for it. Until it's there the archive
+ * can't tell which tiles it has and is probed for each of them.
+ */
+public class ArchiveCoverage {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	//private static final Logger logger = LoggerFactory.getLogger(ArchiveCoverage.class);
+
+	/** Appended to the name of the archive for the name of the coverage file */
+	public static final String FILE_EXTENSION = ".coverage";
+
+	private static final int MAGIC = 0x4F534D43; // OSMC
+	private static final int VERSION = 1;
+
+	/** Reads and scans the archives one at a time, so that they don't compete for the disk */
+	private static final ExecutorService sExecutor = new ThreadPoolExecutor(0, 1, 60,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ConfigurablePriorityThreadFactory(Thread.MIN_PRIORITY, "ArchiveCoverage"));
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final File mArchive;
+	private final File mFile;
+	private final Scanner mScanner;
+
+	/** The coverage of each tile source, null until it's loaded */
+	private volatile Map<String, TileCoverage> mCoverages;
+
+	/** Whether scanning the archive failed, so that it isn't tried again */
+	private boolean mFailed;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public ArchiveCoverage(final File pArchive, final Scanner pScanner) {
+		mArchive = pArchive;
+		mFile = new File(pArchive.getPath() + FILE_EXTENSION);
+		mScanner = pScanner;
+
+		sExecutor.execute(new Runnable() {
+			public void run() {
+				load();
+			}
+		});
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Get the coverage of a tile source. This never waits for the coverage to be loaded.
+	 *
+	 * @return the coverage, {@link TileCoverage#EMPTY} if the archive has no tiles of the source,
+	 *         or null if the coverage isn't loaded yet or the archive couldn't be scanned
+	 */
+	public TileCoverage get(final String pName) {
+		final Map<String, TileCoverage> coverages = mCoverages;
+		if (coverages == null) {
+			return null;
+		}
+		final TileCoverage coverage = coverages.get(pName);
+		return coverage != null ? coverage : TileCoverage.EMPTY;
+	}
+
+	/**
+	 * Get the builder of a tile source, for scanners.
+	 */
+	public static TileCoverage.Builder getBuilder(final Map<String, TileCoverage.Builder> pBuilders,
+			final String pName) {
+		TileCoverage.Builder builder = pBuilders.get(pName);
+		if (builder == null) {
+			builder = new TileCoverage.Builder();
+			pBuilders.put(pName, builder);
+		}
+		return builder;
+	}
+
+	/**
+	 * Read or scan the coverage, unless it's already loaded or scanning failed. The background
+	 * thread does this when the archive is opened.
+	 */
+	synchronized Map<String, TileCoverage> load() {
+		if (mCoverages != null || mFailed) {
+			return mCoverages;
+		}
+
+		final long length = mArchive.length();
+		final long lastModified = mArchive.lastModified();
+		Map<String, TileCoverage> coverages = null;
+		if (mFile.exists()) {
+			try {
+				coverages = read(length, lastModified);
+			} catch (final IOException e) {
+				//logger.warn("Error reading coverage: " + mFile, e);
+			}
+		}
+
+		if (coverages == null) {
+			final HashMap<String, TileCoverage.Builder> builders =
+					new HashMap<String, TileCoverage.Builder>();
+			try {
+				mScanner.scan(builders);
+			} catch (final Exception e) {
+				//logger.warn("Error scanning archive: " + mArchive, e);
+				mFailed = true;
+				return null;
+			}
+			coverages = new HashMap<String, TileCoverage>();
+			for (final Map.Entry<String, TileCoverage.Builder> entry : builders.entrySet()) {
+				coverages.put(entry.getKey(), entry.getValue().build());
+			}
+			try {
+				write(coverages, length, lastModified);
+			} catch (final IOException e) {
+				//logger.warn("Error writing coverage: " + mFile, e);
+			}
+		}
+
+		mCoverages = coverages;
+		return coverages;
+	}
+
+	/**
+	 * @return the coverages, or null if the file is for another version of the archive
+	 */
+	private Map<String, TileCoverage> read(final long pLength, final long pLastModified)
+			throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(mFile), StreamUtils.IO_BUFFER_SIZE));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != pLength
+					|| in.readLong() != pLastModified) {
+				return null;
+			}
+			final int count = in.readInt();
+			final HashMap<String, TileCoverage> coverages = new HashMap<String, TileCoverage>();
+			for (int i = 0; i < count; i++) {
+				final String name = in.readUTF();
+				coverages.put(name, TileCoverage.read(in));
+			}
+			return coverages;
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+	}
+
+	/**
+	 * Write the coverages to a temporary file and rename it, so that a coverage file is never
+	 * half written.
+	 */
+	private void write(final Map<String, TileCoverage> pCoverages, final long pLength,
+			final long pLastModified) throws IOException {
+		final File temporary = new File(mFile.getPath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temporary), StreamUtils.IO_BUFFER_SIZE));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(pLength);
+			out.writeLong(pLastModified);
+			out.writeInt(pCoverages.size());
+			for (final Map.Entry<String, TileCoverage> entry : pCoverages.entrySet()) {
+				out.writeUTF(entry.getKey());
+				entry.getValue().write(out);
+			}
+		} finally {
+			StreamUtils.closeStream(out);
+		}
+		if (!temporary.renameTo(mFile)) {
+			temporary.delete();
+			throw new IOException("Can't rename " + temporary);
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	public interface Scanner {
+
+		/**
+		 * Add every tile of the archive to the builder of its tile source, which
+		 * {@link ArchiveCoverage#getBuilder(Map, String)} returns.
+		 *
+		 * @throws Exception
+		 *             if the archive can't be read, then it's probed for every tile instead
+		 */
+		void scan(Map<String, TileCoverage.Builder> pBuilders) throws Exception;
+	}
+}
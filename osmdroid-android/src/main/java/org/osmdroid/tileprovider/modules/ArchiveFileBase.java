@@ -0,0 +1,98 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+/**
+ * An {@link IArchiveFile} that can also look up tiles in batches and tell which tiles it holds.
+ * The default implementations only use {@link #getInputStream(ITileSource, MapTile)}, so an
+ * archive that extends this class overrides what it can do better. Archives that only implement
+ * {@link IArchiveFile} are wrapped with {@link #wrap(IArchiveFile)}.
+ */
+public abstract class ArchiveFileBase implements IArchiveFile {
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Get the input streams for several tiles with as few lookups as possible. This is used when
+	 * many tiles are missing at once, for example when an archive is first shown. The default
+	 * gets them one by one.
+	 *
+	 * @param pTiles
+	 *            the requested tiles
+	 * @param pResult
+	 *            receives the input stream of each requested tile that the archive contains. The
+	 *            caller is responsible for closing them.
+	 */
+	public void getInputStreams(final ITileSource pTileSource, final Collection<MapTile> pTiles,
+			final Map<MapTile, InputStream> pResult) {
+		for (final MapTile tile : pTiles) {
+			final InputStream in = getInputStream(pTileSource, tile);
+			if (in != null) {
+				pResult.put(tile, in);
+			}
+		}
+	}
+
+	/**
+	 * Whether the archive might contain the tile, answered from an index in memory without
+	 * reading the archive, so that a tile that isn't there costs nothing to look for. The default
+	 * can't tell.
+	 *
+	 * @return false if the archive surely doesn't contain the tile, true if it does or if the
+	 *         archive can't tell
+	 */
+	public boolean mightContainTile(final ITileSource pTileSource, final MapTile pTile) {
+		return true;
+	}
+
+	/**
+	 * Get the tiles of the tile source that the archive holds, from an index in memory, so that
+	 * the provider can send each tile straight to the archive that has it. The default can't tell.
+	 *
+	 * @return the coverage, or null if the archive can't tell or doesn't know yet, then it's
+	 *         asked {@link #mightContainTile(ITileSource, MapTile)} for each tile instead
+	 */
+	public TileCoverage getCoverage(final ITileSource pTileSource) {
+		return null;
+	}
+
+	/**
+	 * @return the archive itself if it extends this class, otherwise an adapter that gets its
+	 *         tiles one by one
+	 */
+	public static ArchiveFileBase wrap(final IArchiveFile pArchive) {
+		if (pArchive instanceof ArchiveFileBase) {
+			return (ArchiveFileBase) pArchive;
+		}
+		return new Adapter(pArchive);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class Adapter extends ArchiveFileBase {
+
+		private final IArchiveFile mArchive;
+
+		Adapter(final IArchiveFile pArchive) {
+			mArchive = pArchive;
+		}
+
+		public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
+			return mArchive.getInputStream(pTileSource, pTile);
+		}
+
+		@Override
+		public String toString() {
+			return mArchive.toString();
+		}
+	}
+}
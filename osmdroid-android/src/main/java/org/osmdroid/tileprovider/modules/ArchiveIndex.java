@@ -0,0 +1,188 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.Arrays;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+/**
+ * Routes a tile to the archive that holds it. The coverages of the archives for a tile source are
+ * merged into one list of sorted, disjoint runs of {@link MapTile#getKey()} keys, each with the
+ * position of the first archive that has its tiles, so finding the archive of a tile is one binary
+ * search however many archives there are. Archives that can't tell which tiles they hold aren't
+ * in the runs and are asked for each tile, in their place in the order.
+ */
+final class ArchiveIndex {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final ArchiveFileBase[] mArchives;
+	private final ITileSource mTileSource;
+
+	/** Whether the coverage of the archive at the same position is in the runs */
+	private final boolean[] mIndexed;
+	private final boolean mComplete;
+
+	/** The first key of each run, sorted, the last key of the same run and the archive it's in */
+	private final long[] mStarts;
+	private final long[] mEnds;
+	private final int[] mArchiveIndexes;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	ArchiveIndex(final ArchiveFileBase[] pArchives, final ITileSource pTileSource) {
+		mArchives = pArchives;
+		mTileSource = pTileSource;
+		mIndexed = new boolean[pArchives.length];
+
+		final TileCoverage[] coverages = new TileCoverage[pArchives.length];
+		boolean complete = true;
+		int boundaryCount = 0;
+		for (int i = 0; i < pArchives.length; i++) {
+			coverages[i] = pArchives[i].getCoverage(pTileSource);
+			mIndexed[i] = coverages[i] != null;
+			if (coverages[i] != null) {
+				boundaryCount += 2 * coverages[i].getRunCount();
+			} else {
+				complete = false;
+			}
+		}
+		mComplete = complete;
+
+		// the archives that hold a key only change at the start of a run or right after its end,
+		// so the keys between two neighbouring boundaries all go to the same archive
+		final long[] boundaries = new long[boundaryCount];
+		int count = 0;
+		for (final TileCoverage coverage : coverages) {
+			for (int run = 0; coverage != null && run < coverage.getRunCount(); run++) {
+				boundaries[count++] = coverage.getRunStart(run);
+				boundaries[count++] = coverage.getRunEnd(run) + 1;
+			}
+		}
+		Arrays.sort(boundaries);
+
+		final long[] starts = new long[boundaryCount];
+		final long[] ends = new long[boundaryCount];
+		final int[] archiveIndexes = new int[boundaryCount];
+		count = 0;
+		for (int i = 0; i + 1 < boundaryCount; i++) {
+			final long start = boundaries[i];
+			final long end = boundaries[i + 1] - 1;
+			if (end < start) {
+				continue;
+			}
+			int archive = 0;
+			while (archive < coverages.length
+					&& (coverages[archive] == null || !coverages[archive].contains(start))) {
+				archive++;
+			}
+			if (archive == coverages.length) {
+				continue;
+			}
+			if (count > 0 && archiveIndexes[count - 1] == archive
+					&& ends[count - 1] + 1 == start) {
+				ends[count - 1] = end;
+			} else {
+				starts[count] = start;
+				ends[count] = end;
+				archiveIndexes[count] = archive;
+				count++;
+			}
+		}
+		mStarts = new long[count];
+		mEnds = new long[count];
+		mArchiveIndexes = new int[count];
+		System.arraycopy(starts, 0, mStarts, 0, count);
+		System.arraycopy(ends, 0, mEnds, 0, count);
+		System.arraycopy(archiveIndexes, 0, mArchiveIndexes, 0, count);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	ITileSource getTileSource() {
+		return mTileSource;
+	}
+
+	int getArchiveCount() {
+		return mArchives.length;
+	}
+
+	ArchiveFileBase getArchive(final int pIndex) {
+		return mArchives[pIndex];
+	}
+
+	int getRunCount() {
+		return mStarts.length;
+	}
+
+	/**
+	 * Whether the coverage of every archive is in the runs, so that a tile never has to be looked
+	 * for in more than one archive.
+	 */
+	boolean isComplete() {
+		return mComplete;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Whether the index was built for these archives, compared by identity, and tile source.
+	 */
+	boolean isFor(final ArchiveFileBase[] pArchives, final ITileSource pTileSource) {
+		return mArchives == pArchives && mTileSource == pTileSource;
+	}
+
+	/**
+	 * Whether an archive that couldn't tell which tiles it holds can tell now, so that the index
+	 * should be built again.
+	 */
+	boolean isStale() {
+		for (int i = 0; !mComplete && i < mArchives.length; i++) {
+			if (!mIndexed[i] && mArchives[i].getCoverage(mTileSource) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the position of the first archive whose coverage has the tile, or -1 if none has
+	 *         it, not counting the archives that can't tell
+	 */
+	int find(final MapTile pTile) {
+		final int zoomLevel = pTile.getZoomLevel();
+		if (zoomLevel < 0 || zoomLevel >= 64 || pTile.getX() < 0 || pTile.getY() < 0) {
+			return -1;
+		}
+		final long key = MapTile.getKey(zoomLevel, pTile.getX(), pTile.getY());
+		int run = Arrays.binarySearch(mStarts, key);
+		if (run < 0) {
+			// the run that starts before the key
+			run = -run - 2;
+			if (run < 0 || key > mEnds[run]) {
+				return -1;
+			}
+		}
+		return mArchiveIndexes[run];
+	}
+
+	/**
+	 * Whether the archive at the position might hold the tile. Archives in the runs only hold the
+	 * tiles that were routed to them, the others are asked.
+	 *
+	 * @param pFound
+	 *            what {@link #find(MapTile)} returned for the tile
+	 */
+	boolean mightContain(final int pIndex, final int pFound, final MapTile pTile) {
+		return mIndexed[pIndex] ? pIndex == pFound
+				: mArchives[pIndex].mightContainTile(mTileSource, pTile);
+	}
+}
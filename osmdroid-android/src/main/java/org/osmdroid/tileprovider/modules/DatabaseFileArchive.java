@@ -3,6 +3,10 @@ package org.osmdroid.tileprovider.modules;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -13,37 +17,137 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 
-public class DatabaseFileArchive implements IArchiveFile {
+public class DatabaseFileArchive extends ArchiveFileBase {
 
 	//private static final Logger logger = LoggerFactory.getLogger(DatabaseFileArchive.class);
 
+	//	TABLE tiles (key INTEGER PRIMARY KEY, provider TEXT, tile BLOB);
+	public final static String TABLE_TILES = "tiles";
+	public final static String COL_TILES_KEY = "key";
+	public final static String COL_TILES_PROVIDER = "provider";
+	public final static String COL_TILES_TILE = "tile";
+
+	/** The index that {@link #createIndex(File)} adds to archives whose key isn't the row id */
+	public final static String INDEX_TILES = "tiles_key";
+
+	/** The highest zoom level whose keys addTile can take apart */
+	private final static int MAXIMUM_ZOOM_LEVEL = 28;
+
+	/** The number of keys that are looked up with one query */
+	private final static int BATCH_SIZE = 32;
+
+	// The queries never change, so SQLite compiles them once per database and reuses them
+	private final static String SQL_TILE = "SELECT " + COL_TILES_TILE + " FROM " + TABLE_TILES
+			+ " WHERE " + COL_TILES_KEY + " = ? AND " + COL_TILES_PROVIDER + " = ?";
+	private final static String SQL_TILES;
+	static {
+		final StringBuilder sql = new StringBuilder("SELECT ").append(COL_TILES_KEY).append(", ")
+				.append(COL_TILES_TILE).append(" FROM ").append(TABLE_TILES).append(" WHERE ")
+				.append(COL_TILES_PROVIDER).append(" = ? AND ").append(COL_TILES_KEY)
+				.append(" IN (?");
+		for (int i = 1; i < BATCH_SIZE; i++) {
+			sql.append(", ?");
+		}
+		SQL_TILES = sql.append(')').toString();
+	}
+
+	// Without an index every query scans the table, so a batch is read with a single scan
+	private final static String SQL_TILE_RANGE = "SELECT " + COL_TILES_KEY + ", " + COL_TILES_TILE
+			+ " FROM " + TABLE_TILES + " WHERE " + COL_TILES_PROVIDER + " = ? AND " + COL_TILES_KEY
+			+ " BETWEEN ? AND ?";
+
+	private final static String SQL_KEYS = "SELECT " + COL_TILES_PROVIDER + ", " + COL_TILES_KEY
+			+ " FROM " + TABLE_TILES;
+
 	private final SQLiteDatabase mDatabase;
 
-	private DatabaseFileArchive(final SQLiteDatabase pDatabase) {
+	/** Whether lookups by key can use an index */
+	private final boolean mIndexed;
+
+	/** The tiles of each provider */
+	private final ArchiveCoverage mCoverage;
+
+	private DatabaseFileArchive(final File pFile, final SQLiteDatabase pDatabase) {
 		mDatabase = pDatabase;
+		mIndexed = DatabaseIndexUtils.isIndexed(pDatabase, TABLE_TILES, COL_TILES_KEY);
+		mCoverage = new ArchiveCoverage(pFile, new ArchiveCoverage.Scanner() {
+			public void scan(final Map<String, TileCoverage.Builder> pBuilders) {
+				final Cursor cur = mDatabase.rawQuery(SQL_KEYS, null);
+				try {
+					while (cur.moveToNext()) {
+						final String provider = cur.getString(0);
+						if (provider != null) {
+							addTile(ArchiveCoverage.getBuilder(pBuilders, provider),
+									cur.getLong(1));
+						}
+					}
+				} finally {
+					cur.close();
+				}
+			}
+		});
 	}
 
 	public static DatabaseFileArchive getDatabaseFileArchive(final File pFile) throws SQLiteException {
-		return new DatabaseFileArchive(SQLiteDatabase.openOrCreateDatabase(pFile, null));
+		return new DatabaseFileArchive(pFile, SQLiteDatabase.openOrCreateDatabase(pFile, null));
 	}
 
-	
+	/**
+	 * Add an index on the key to an archive whose key isn't the row id, so that tiles are found
+	 * without scanning the whole table. Opening an archive never does this, as it writes to the
+	 * file and can take long for a large one: call it off the UI thread, when the user asks for
+	 * it. An archive that is already open uses the index once it's opened again.
+	 *
+	 * @return whether the key is indexed now
+	 */
+	public static boolean createIndex(final File pFile) throws SQLiteException {
+		final SQLiteDatabase database = SQLiteDatabase.openDatabase(pFile.getAbsolutePath(),
+				null, SQLiteDatabase.OPEN_READWRITE);
+		try {
+			return DatabaseIndexUtils.isIndexed(database, TABLE_TILES, COL_TILES_KEY)
+					|| DatabaseIndexUtils.createIndex(database, INDEX_TILES, TABLE_TILES,
+							COL_TILES_KEY);
+		} finally {
+			database.close();
+		}
+	}
+
+	/**
+	 * The key of a tile, the same as the one the packager and {@link SqlTileWriter} use.
+	 */
+	private static long getIndex(final MapTile pTile) {
+		final long x = (long) pTile.getX();
+		final long y = (long) pTile.getY();
+		final long z = (long) pTile.getZoomLevel();
+		return ((z << z) + x << z) + y;
+	}
+
+	/**
+	 * Add the tile of a key to a coverage. The keys of zoom level z are the 4^z from z * 4^z on,
+	 * so the zoom level is the last one whose first key isn't past the key.
+	 */
+	private static void addTile(final TileCoverage.Builder pBuilder, final long pIndex) {
+		int z = 0;
+		while (z < MAXIMUM_ZOOM_LEVEL && pIndex >= (long) (z + 1) << 2 * (z + 1)) {
+			z++;
+		}
+		final long offset = pIndex - ((long) z << 2 * z);
+		if (offset >= 0) {
+			pBuilder.add(z, (int) (offset >>> z), (int) (offset & ((1L << z) - 1)));
+		}
+	}
+
+
 	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
 		try {
-			InputStream ret = null;
-			final String[] tile = {"tile"};
-			final long x = (long) pTile.getX();
-			final long y = (long) pTile.getY();
-			final long z = (long) pTile.getZoomLevel();
-			final long index = ((z << z) + x << z) + y;
-			final Cursor cur = mDatabase.query("tiles", tile, "key = " + index + " and provider = '" + pTileSource.name() + "'", null, null, null, null);
-			if(cur.getCount() != 0) {
-				cur.moveToFirst();
-				ret = new ByteArrayInputStream(cur.getBlob(0));
-			}
-			cur.close();
-			if(ret != null) {
-				return ret;
+			final String[] args = { Long.toString(getIndex(pTile)), pTileSource.name() };
+			final Cursor cur = mDatabase.rawQuery(SQL_TILE, args);
+			try {
+				if (cur.moveToFirst()) {
+					return new ByteArrayInputStream(cur.getBlob(0));
+				}
+			} finally {
+				cur.close();
 			}
 		} catch(final Throwable e) {
 			//logger.warn("Error getting db stream: " + pTile, e);
@@ -52,9 +156,105 @@ public class DatabaseFileArchive implements IArchiveFile {
 		return null;
 	}
 
+
+	public void getInputStreams(final ITileSource pTileSource, final Collection<MapTile> pTiles,
+			final Map<MapTile, InputStream> pResult) {
+		if (!mIndexed) {
+			getInputStreamsByRange(pTileSource, pTiles, pResult);
+			return;
+		}
+
+		final HashMap<Long, MapTile> keys = new HashMap<Long, MapTile>(pTiles.size() * 2);
+		final String[] args = new String[BATCH_SIZE + 1];
+		args[0] = pTileSource.name();
+
+		final Iterator<MapTile> iterator = pTiles.iterator();
+		while (iterator.hasNext()) {
+			keys.clear();
+			int count = 0;
+			while (count < BATCH_SIZE && iterator.hasNext()) {
+				final MapTile tile = iterator.next();
+				final long index = getIndex(tile);
+				keys.put(index, tile);
+				args[++count] = Long.toString(index);
+			}
+			// repeat the last key, so that every batch uses the same query
+			for (int i = count + 1; i <= BATCH_SIZE; i++) {
+				args[i] = args[count];
+			}
+
+			try {
+				final Cursor cur = mDatabase.rawQuery(SQL_TILES, args);
+				try {
+					while (cur.moveToNext()) {
+						final MapTile tile = keys.get(cur.getLong(0));
+						if (tile != null && !pResult.containsKey(tile)) {
+							pResult.put(tile, new ByteArrayInputStream(cur.getBlob(1)));
+						}
+					}
+				} finally {
+					cur.close();
+				}
+			} catch(final Throwable e) {
+				//logger.warn("Error getting db streams", e);
+			}
+		}
+	}
+
+
+	/**
+	 * Read the tiles with one query over the range of their keys, which scans the table once
+	 * instead of once for every batch.
+	 */
+	private void getInputStreamsByRange(final ITileSource pTileSource,
+			final Collection<MapTile> pTiles, final Map<MapTile, InputStream> pResult) {
+		final HashMap<Long, MapTile> keys = new HashMap<Long, MapTile>(pTiles.size() * 2);
+		long minimum = Long.MAX_VALUE;
+		long maximum = Long.MIN_VALUE;
+		for (final MapTile tile : pTiles) {
+			final long index = getIndex(tile);
+			keys.put(index, tile);
+			minimum = Math.min(minimum, index);
+			maximum = Math.max(maximum, index);
+		}
+		if (keys.isEmpty()) {
+			return;
+		}
+
+		try {
+			final String[] args = { pTileSource.name(), Long.toString(minimum),
+					Long.toString(maximum) };
+			final Cursor cur = mDatabase.rawQuery(SQL_TILE_RANGE, args);
+			try {
+				while (cur.moveToNext()) {
+					final MapTile tile = keys.get(cur.getLong(0));
+					if (tile != null && !pResult.containsKey(tile)) {
+						pResult.put(tile, new ByteArrayInputStream(cur.getBlob(1)));
+					}
+				}
+			} finally {
+				cur.close();
+			}
+		} catch(final Throwable e) {
+			//logger.warn("Error getting db streams", e);
+		}
+	}
+
+
+	public boolean mightContainTile(final ITileSource pTileSource, final MapTile pTile) {
+		final TileCoverage coverage = mCoverage.get(pTileSource.name());
+		return coverage == null || coverage.contains(pTile);
+	}
+
 	
+	public TileCoverage getCoverage(final ITileSource pTileSource) {
+		return mCoverage.get(pTileSource.name());
+	}
+
+
 	public String toString() {
-		return "DatabaseFileArchive [mDatabase=" + mDatabase.getPath() + "]";
+		return "DatabaseFileArchive [mDatabase=" + mDatabase.getPath() + ", mIndexed=" + mIndexed
+				+ "]";
 	}
 
 }
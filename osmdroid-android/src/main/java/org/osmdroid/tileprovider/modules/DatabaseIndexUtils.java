@@ -0,0 +1,130 @@
+package org.osmdroid.tileprovider.modules;
+
+//////import org.slf4j.Logger;
+//////import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Finds out whether a tile table of a database archive can be searched by its key columns, so
+ * that the archives can choose their queries, and adds the standard index when asked to.
+ */
+final class DatabaseIndexUtils {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	//private static final Logger logger = LoggerFactory.getLogger(DatabaseIndexUtils.class);
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	private DatabaseIndexUtils() {
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Whether lookups by the given columns can use an index: the table is the row id alias of the
+	 * first column, or an index starts with all of the columns. A view counts as indexed, because
+	 * its lookups are up to the indexes of its tables.
+	 *
+	 * @return whether the columns are indexed, or true if the database couldn't be inspected, so
+	 *         that it's queried as usual and isn't changed
+	 */
+	static boolean isIndexed(final SQLiteDatabase pDatabase, final String pTable,
+			final String... pColumns) {
+		Cursor cursor = null;
+		try {
+			cursor = pDatabase.rawQuery("SELECT type FROM sqlite_master WHERE name = ?",
+					new String[] { pTable });
+			if (cursor.moveToFirst() && "view".equals(cursor.getString(0))) {
+				return true;
+			}
+			cursor.close();
+
+			// INTEGER PRIMARY KEY makes the column the row id
+			if (pColumns.length == 1) {
+				cursor = pDatabase.rawQuery("PRAGMA table_info(" + pTable + ")", null);
+				int primaryKeys = 0;
+				boolean integerKey = false;
+				while (cursor.moveToNext()) {
+					if (cursor.getInt(cursor.getColumnIndex("pk")) > 0) {
+						primaryKeys++;
+						integerKey = pColumns[0].equalsIgnoreCase(cursor.getString(cursor
+								.getColumnIndex("name")))
+								&& "INTEGER".equalsIgnoreCase(cursor.getString(cursor
+										.getColumnIndex("type")));
+					}
+				}
+				cursor.close();
+				if (primaryKeys == 1 && integerKey) {
+					return true;
+				}
+			}
+
+			cursor = pDatabase.rawQuery("PRAGMA index_list(" + pTable + ")", null);
+			final int nameColumn = cursor.getColumnIndex("name");
+			while (cursor.moveToNext()) {
+				if (startsWith(pDatabase, cursor.getString(nameColumn), pColumns)) {
+					return true;
+				}
+			}
+			return false;
+		} catch (final Throwable e) {
+			//logger.warn("Error inspecting the indexes of " + pTable, e);
+			return true;
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+	}
+
+	private static boolean startsWith(final SQLiteDatabase pDatabase, final String pIndex,
+			final String[] pColumns) {
+		final Cursor cursor = pDatabase.rawQuery("PRAGMA index_info(\"" + pIndex + "\")", null);
+		try {
+			final int nameColumn = cursor.getColumnIndex("name");
+			for (final String column : pColumns) {
+				if (!cursor.moveToNext()
+						|| !column.equalsIgnoreCase(cursor.getString(nameColumn))) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Create an index on the given columns.
+	 *
+	 * @return whether the index was created
+	 */
+	static boolean createIndex(final SQLiteDatabase pDatabase, final String pIndex,
+			final String pTable, final String... pColumns) {
+		final StringBuilder sql = new StringBuilder("CREATE INDEX IF NOT EXISTS ").append(pIndex)
+				.append(" ON ").append(pTable).append(" (");
+		for (int i = 0; i < pColumns.length; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(pColumns[i]);
+		}
+		sql.append(')');
+		try {
+			pDatabase.execSQL(sql.toString());
+			return true;
+		} catch (final Throwable e) {
+			//logger.warn("Error creating index " + pIndex, e);
+			return false;
+		}
+	}
+}
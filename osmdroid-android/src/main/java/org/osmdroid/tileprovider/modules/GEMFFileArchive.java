@@ -4,17 +4,22 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
-import org.osmdroid.util.GEMFFile;
+import org.osmdroid.util.MappedGEMFFile;
 
-public class GEMFFileArchive implements IArchiveFile {
+public class GEMFFileArchive extends ArchiveFileBase {
 
-	private final GEMFFile mFile;
+	private final MappedGEMFFile mFile;
+
+	/** The ranges of the header as a coverage, built the first time it's asked for */
+	private volatile TileCoverage mCoverage;
 
 	private GEMFFileArchive(final File pFile) throws FileNotFoundException, IOException {
-		mFile = new GEMFFile(pFile);
+		mFile = new MappedGEMFFile(pFile);
 	}
 
 	public static GEMFFileArchive getGEMFFileArchive(final File pFile) throws FileNotFoundException, IOException {
@@ -27,6 +32,41 @@ public class GEMFFileArchive implements IArchiveFile {
 	}
 
 	
+	public void getInputStreams(final ITileSource pTileSource, final Collection<MapTile> pTiles,
+			final Map<MapTile, InputStream> pResult) {
+		// the index is already in memory, one lookup per tile is as cheap as it gets
+		for (final MapTile tile : pTiles) {
+			final InputStream in = getInputStream(pTileSource, tile);
+			if (in != null) {
+				pResult.put(tile, in);
+			}
+		}
+	}
+
+	
+	public boolean mightContainTile(final ITileSource pTileSource, final MapTile pTile) {
+		// the ranges in the header are the coverage, and they're indexed in memory
+		return mFile.contains(pTile.getX(), pTile.getY(), pTile.getZoomLevel());
+	}
+
+	
+	public TileCoverage getCoverage(final ITileSource pTileSource) {
+		TileCoverage coverage = mCoverage;
+		if (coverage == null) {
+			// a handful of ranges, so building it twice at once does no harm
+			final TileCoverage.Builder builder = new TileCoverage.Builder();
+			for (final Integer source : mFile.getSources().keySet()) {
+				for (final int[] range : mFile.getRanges(source)) {
+					builder.addRange(range[0], range[1], range[3], range[2], range[4]);
+				}
+			}
+			coverage = builder.build();
+			mCoverage = coverage;
+		}
+		return coverage;
+	}
+
+	
 	public String toString() {
 		return "GEMFFileArchive [mGEMFFile=" + mFile.getName() + "]";
 	}
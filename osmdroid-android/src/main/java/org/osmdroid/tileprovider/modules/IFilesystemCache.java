@@ -26,4 +26,36 @@ public interface IFilesystemCache {
 	 */
 	boolean saveFile(final ITileSource pTileSourceInfo, MapTile pTile,
 			final InputStream pStream);
+
+	/**
+	 * Save an InputStream as the specified tile, together with its HTTP caching information.
+	 * 
+	 * @param pTileSourceInfo
+	 *            a tile source
+	 * @param pTile
+	 *            a tile
+	 * @param pStream
+	 *            an InputStream
+	 * @param pMetadata
+	 *            the expiry time and validators of the tile, or null
+	 * @return
+	 */
+	boolean saveFile(final ITileSource pTileSourceInfo, MapTile pTile,
+			final InputStream pStream, TileCacheMetadata pMetadata);
+
+	/**
+	 * Get the HTTP caching information of a cached tile.
+	 * 
+	 * @return the metadata, or null if the tile isn't cached or was saved without any
+	 */
+	TileCacheMetadata getMetadata(final ITileSource pTileSourceInfo, MapTile pTile);
+
+	/**
+	 * Replace the HTTP caching information of a cached tile without rewriting the tile, after it
+	 * has been revalidated.
+	 * 
+	 * @return true if the tile is cached and its metadata was updated
+	 */
+	boolean updateMetadata(final ITileSource pTileSourceInfo, MapTile pTile,
+			TileCacheMetadata pMetadata);
 }
@@ -3,6 +3,11 @@ package org.osmdroid.tileprovider.modules;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -13,12 +18,18 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 
-public class MBTilesFileArchive implements IArchiveFile {
+public class MBTilesFileArchive extends ArchiveFileBase {
 
 	//private static final Logger logger = LoggerFactory.getLogger(MBTilesFileArchive.class);
 
 	private final SQLiteDatabase mDatabase;
 
+	/** Whether lookups by zoom level, column and row can use an index */
+	private final boolean mIndexed;
+
+	/** The tiles of the file, whatever the tile source, under the name "" */
+	private final ArchiveCoverage mCoverage;
+
 	//	TABLE tiles (zoom_level INTEGER, tile_column INTEGER, tile_row INTEGER, tile_data BLOB);
 	public final static String TABLE_TILES = "tiles";
 	public final static String COL_TILES_ZOOM_LEVEL = "zoom_level";
@@ -26,38 +37,107 @@ public class MBTilesFileArchive implements IArchiveFile {
 	public final static String COL_TILES_TILE_ROW = "tile_row";
 	public final static String COL_TILES_TILE_DATA = "tile_data";
 
-	private MBTilesFileArchive(final SQLiteDatabase pDatabase) {
+	/** The index that the MBTiles specification recommends */
+	public final static String INDEX_TILES = "tile_index";
+
+	// The queries never change, so SQLite compiles them once per database and reuses them
+	private final static String SQL_TILE = "SELECT " + COL_TILES_TILE_DATA + " FROM "
+			+ TABLE_TILES + " WHERE " + COL_TILES_ZOOM_LEVEL + " = ? AND " + COL_TILES_TILE_COLUMN
+			+ " = ? AND " + COL_TILES_TILE_ROW + " = ?";
+	private final static String SQL_TILES = "SELECT " + COL_TILES_TILE_COLUMN + ", "
+			+ COL_TILES_TILE_ROW + ", " + COL_TILES_TILE_DATA + " FROM " + TABLE_TILES + " WHERE "
+			+ COL_TILES_ZOOM_LEVEL + " = ? AND " + COL_TILES_TILE_COLUMN + " BETWEEN ? AND ? AND "
+			+ COL_TILES_TILE_ROW + " BETWEEN ? AND ?";
+	private final static String SQL_TILE_COORDINATES = "SELECT " + COL_TILES_ZOOM_LEVEL + ", "
+			+ COL_TILES_TILE_COLUMN + ", " + COL_TILES_TILE_ROW + " FROM " + TABLE_TILES;
+
+	/**
+	 * A batch is read with one query per zoom level over the bounding box of its tiles, unless the
+	 * box has more than this many tiles for each requested one and the tiles are indexed
+	 */
+	private final static int MAXIMUM_BOUNDING_BOX_WASTE = 2;
+
+	private MBTilesFileArchive(final File pFile, final SQLiteDatabase pDatabase,
+			final boolean pIndexed) {
 		mDatabase = pDatabase;
+		mIndexed = pIndexed;
+		mCoverage = new ArchiveCoverage(pFile, new ArchiveCoverage.Scanner() {
+			public void scan(final Map<String, TileCoverage.Builder> pBuilders) {
+				final TileCoverage.Builder builder = ArchiveCoverage.getBuilder(pBuilders, "");
+				final Cursor cur = mDatabase.rawQuery(SQL_TILE_COORDINATES, null);
+				try {
+					while (cur.moveToNext()) {
+						final int z = cur.getInt(0);
+						builder.add(z, cur.getInt(1), flipRow(z, cur.getInt(2)));
+					}
+				} finally {
+					cur.close();
+				}
+			}
+		});
 	}
 
+	/**
+	 * Open an MBTiles file, read-only. Whether the tiles table has an index decides how batches of
+	 * tiles are read, the file is never changed.
+	 */
 	public static MBTilesFileArchive getDatabaseFileArchive(final File pFile) throws SQLiteException {
-		return new MBTilesFileArchive(
-				SQLiteDatabase.openDatabase(
-						pFile.getAbsolutePath(),
-						null,
-						SQLiteDatabase.NO_LOCALIZED_COLLATORS | SQLiteDatabase.OPEN_READONLY));
+		final SQLiteDatabase database = openDatabase(pFile, SQLiteDatabase.OPEN_READONLY);
+		return new MBTilesFileArchive(pFile, database, DatabaseIndexUtils.isIndexed(database,
+				TABLE_TILES, COL_TILES_ZOOM_LEVEL, COL_TILES_TILE_COLUMN, COL_TILES_TILE_ROW));
 	}
 
-	
+	/**
+	 * Add the standard index to an MBTiles file that lacks it, so that tiles are found without
+	 * scanning the whole table. Opening a file never does this, as it writes to the file and can
+	 * take long for a large one: call it off the UI thread, when the user asks for it. Files made
+	 * by the packager are indexed already. An archive that is already open uses the index once
+	 * it's opened again.
+	 *
+	 * @return whether the tiles are indexed now
+	 */
+	public static boolean createIndex(final File pFile) throws SQLiteException {
+		final SQLiteDatabase database = openDatabase(pFile, SQLiteDatabase.OPEN_READWRITE);
+		try {
+			return DatabaseIndexUtils.isIndexed(database, TABLE_TILES, COL_TILES_ZOOM_LEVEL,
+					COL_TILES_TILE_COLUMN, COL_TILES_TILE_ROW)
+					|| DatabaseIndexUtils.createIndex(database, INDEX_TILES, TABLE_TILES,
+							COL_TILES_ZOOM_LEVEL, COL_TILES_TILE_COLUMN, COL_TILES_TILE_ROW);
+		} finally {
+			database.close();
+		}
+	}
+
+	private static SQLiteDatabase openDatabase(final File pFile, final int pFlags) {
+		return SQLiteDatabase.openDatabase(pFile.getAbsolutePath(), null,
+				SQLiteDatabase.NO_LOCALIZED_COLLATORS | pFlags);
+	}
+
+	/**
+	 * MBTiles rows count from the bottom (TMS), map tiles count from the top (Google Tiling Spec).
+	 * Flipping is its own inverse.
+	 */
+	private static int flipRow(final int pZoomLevel, final int pY) {
+		return (1 << pZoomLevel) - 1 - pY;
+	}
+
+
 	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
 		try {
-			InputStream ret = null;
-			final String[] tile = { COL_TILES_TILE_DATA };
-			final String[] xyz = {
-					  Integer.toString(pTile.getX())
-					, Double.toString(Math.pow(2, pTile.getZoomLevel()) - pTile.getY() - 1)  // Use Google Tiling Spec
-					, Integer.toString(pTile.getZoomLevel())
+			final int z = pTile.getZoomLevel();
+			final String[] zxy = {
+					  Integer.toString(z)
+					, Integer.toString(pTile.getX())
+					, Integer.toString(flipRow(z, pTile.getY()))
 			};
 
-			final Cursor cur = mDatabase.query(TABLE_TILES, tile, "tile_column=? and tile_row=? and zoom_level=?", xyz, null, null, null);
-
-			if(cur.getCount() != 0) {
-				cur.moveToFirst();
-				ret = new ByteArrayInputStream(cur.getBlob(0));
-			}
-			cur.close();
-			if(ret != null) {
-				return ret;
+			final Cursor cur = mDatabase.rawQuery(SQL_TILE, zxy);
+			try {
+				if (cur.moveToFirst()) {
+					return new ByteArrayInputStream(cur.getBlob(0));
+				}
+			} finally {
+				cur.close();
 			}
 		} catch(final Throwable e) {
 			//logger.warn("Error getting db stream: " + pTile, e);
@@ -66,9 +146,94 @@ public class MBTilesFileArchive implements IArchiveFile {
 		return null;
 	}
 
+
+	public void getInputStreams(final ITileSource pTileSource, final Collection<MapTile> pTiles,
+			final Map<MapTile, InputStream> pResult) {
+		final HashMap<Integer, ArrayList<MapTile>> zoomLevels =
+				new HashMap<Integer, ArrayList<MapTile>>();
+		for (final MapTile tile : pTiles) {
+			ArrayList<MapTile> tiles = zoomLevels.get(tile.getZoomLevel());
+			if (tiles == null) {
+				tiles = new ArrayList<MapTile>();
+				zoomLevels.put(tile.getZoomLevel(), tiles);
+			}
+			tiles.add(tile);
+		}
+
+		for (final Map.Entry<Integer, ArrayList<MapTile>> entry : zoomLevels.entrySet()) {
+			getInputStreams(entry.getKey(), entry.getValue(), pResult);
+		}
+	}
+
+	private void getInputStreams(final int pZoomLevel, final ArrayList<MapTile> pTiles,
+			final Map<MapTile, InputStream> pResult) {
+		int xMin = Integer.MAX_VALUE;
+		int xMax = Integer.MIN_VALUE;
+		int yMin = Integer.MAX_VALUE;
+		int yMax = Integer.MIN_VALUE;
+		for (final MapTile tile : pTiles) {
+			xMin = Math.min(xMin, tile.getX());
+			xMax = Math.max(xMax, tile.getX());
+			yMin = Math.min(yMin, tile.getY());
+			yMax = Math.max(yMax, tile.getY());
+		}
+
+		final long area = (long) (xMax - xMin + 1) * (yMax - yMin + 1);
+		if (mIndexed && (pTiles.size() == 1
+				|| area > (long) pTiles.size() * MAXIMUM_BOUNDING_BOX_WASTE)) {
+			// scattered tiles, the box would read too much. Without an index every query scans
+			// the table, so the box is always read with one query.
+			for (final MapTile tile : pTiles) {
+				final InputStream in = getInputStream(null, tile);
+				if (in != null) {
+					pResult.put(tile, in);
+				}
+			}
+			return;
+		}
+
+		try {
+			final String[] args = {
+					  Integer.toString(pZoomLevel)
+					, Integer.toString(xMin)
+					, Integer.toString(xMax)
+					, Integer.toString(flipRow(pZoomLevel, yMax))
+					, Integer.toString(flipRow(pZoomLevel, yMin))
+			};
+
+			final HashSet<MapTile> requested = new HashSet<MapTile>(pTiles);
+			final Cursor cur = mDatabase.rawQuery(SQL_TILES, args);
+			try {
+				while (cur.moveToNext()) {
+					final MapTile tile = new MapTile(pZoomLevel, cur.getInt(0), flipRow(pZoomLevel,
+							cur.getInt(1)));
+					if (requested.contains(tile) && !pResult.containsKey(tile)) {
+						pResult.put(tile, new ByteArrayInputStream(cur.getBlob(2)));
+					}
+				}
+			} finally {
+				cur.close();
+			}
+		} catch(final Throwable e) {
+			//logger.warn("Error getting db streams for zoom level: " + pZoomLevel, e);
+		}
+	}
+
+
+	public boolean mightContainTile(final ITileSource pTileSource, final MapTile pTile) {
+		final TileCoverage coverage = mCoverage.get("");
+		return coverage == null || coverage.contains(pTile);
+	}
+
 	
+	public TileCoverage getCoverage(final ITileSource pTileSource) {
+		return mCoverage.get("");
+	}
+
+
 	public String toString() {
-		return "DatabaseFileArchive [mDatabase=" + mDatabase.getPath() + "]";
+		return "DatabaseFileArchive [mDatabase=" + mDatabase.getPath() + ", mIndexed=" + mIndexed
+				+ "]";
 	}
 
 }
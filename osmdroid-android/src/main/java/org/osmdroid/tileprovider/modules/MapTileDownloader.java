@@ -12,6 +12,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -57,6 +58,10 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 	private final INetworkAvailablityCheck mNetworkAvailablityCheck;
 
+	/** The shared, pooled client. Acquired when the first tile is loaded, released on detach. */
+	private HttpClient mHttpClient;
+	private boolean mDetached;
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -95,10 +100,31 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 		return mTileSource.get();
 	}
 
+	private HttpClient getHttpClient() {
+		synchronized (mTileSource) {
+			if (mHttpClient == null && !mDetached) {
+				mHttpClient = HttpClientFactory.acquireSharedHttpClient();
+			}
+			return mHttpClient;
+		}
+	}
+
 	// ===========================================================
 	// Methods from SuperClass/Interfaces
 	// ===========================================================
 
+	@Override
+	public void detach() {
+		super.detach();
+		synchronized (mTileSource) {
+			mDetached = true;
+			if (mHttpClient != null) {
+				mHttpClient = null;
+				HttpClientFactory.releaseSharedHttpClient();
+			}
+		}
+	}
+
 	@Override
 	public boolean getUsesDataConnection() {
 		return true;
@@ -148,6 +174,9 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 	protected class TileLoader extends MapTileModuleProviderBase.TileLoader {
 
+		/** Set by loadTile when the server confirmed that the cached tile is still current */
+		private boolean mNotModified;
+
 		@Override
 		public Drawable loadTile(final MapTileRequestState aState) throws CantContinueException {
 
@@ -180,18 +209,43 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 					return null;
 				}
 
-				final HttpClient client = HttpClientFactory.createHttpClient();
+				final HttpClient client = getHttpClient();
+				if (client == null) {
+					return null;
+				}
+				// revalidate the cached tile if it has expired, a tile that wasn't found in the
+				// cache has no validators to read
+				final TileCacheMetadata cachedMetadata = mFilesystemCache != null
+						&& aState.isExpired() ? mFilesystemCache.getMetadata(tileSource, tile)
+						: null;
 				final HttpUriRequest head = new HttpGet(tileURLString);
+				if (cachedMetadata != null) {
+					cachedMetadata.addConditionalHeaders(head);
+				}
 				final HttpResponse response = client.execute(head);
+				final HttpEntity entity = response.getEntity();
 
 				// Check to see if we got success
 				final org.apache.http.StatusLine line = response.getStatusLine();
+				if (line.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && cachedMetadata != null) {
+					if (entity != null) {
+						entity.consumeContent();
+					}
+					// only the expiry time changes, the tile doesn't need to be saved or decoded
+					mFilesystemCache.updateMetadata(tileSource, tile, TileCacheMetadata
+							.fromResponse(response, cachedMetadata, System.currentTimeMillis()));
+					mNotModified = true;
+					return null;
+				}
 				if (line.getStatusCode() != 200) {
 					//logger.warn("Problem downloading MapTile: " + tile + " HTTP response: " + line);
+					// consume the body so that the connection goes back to the pool
+					if (entity != null) {
+						entity.consumeContent();
+					}
 					return null;
 				}
 
-				final HttpEntity entity = response.getEntity();
 				if (entity == null) {
 					//logger.warn("No content downloading MapTile: " + tile);
 					return null;
@@ -207,7 +261,8 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 				// Save the data to the filesystem cache
 				if (mFilesystemCache != null) {
-					mFilesystemCache.saveFile(tileSource, tile, byteStream);
+					mFilesystemCache.saveFile(tileSource, tile, byteStream, TileCacheMetadata
+							.fromResponse(response, null, System.currentTimeMillis()));
 					byteStream.reset();
 				}
 				final Drawable result = tileSource.getDrawable(byteStream);
@@ -247,5 +302,16 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 				BitmapPool.getInstance().returnDrawableToPool((ReusableBitmapDrawable) pDrawable);
 		}
 
+		@Override
+		protected void tileLoadedFailed(final MapTileRequestState pState) {
+			if (mNotModified) {
+				mNotModified = false;
+				removeTileFromQueues(pState.getMapTile());
+				pState.getCallback().mapTileRequestRevalidated(pState);
+			} else {
+				super.tileLoadedFailed(pState);
+			}
+		}
+
 	}
 }
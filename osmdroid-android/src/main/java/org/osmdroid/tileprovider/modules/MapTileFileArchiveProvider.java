@@ -4,6 +4,7 @@ package org.osmdroid.tileprovider.modules;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.osmdroid.tileprovider.IRegisterReceiver;
@@ -33,17 +34,34 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 	//private static final Logger logger = LoggerFactory.getLogger(MapTileFileArchiveProvider.class);
 
+	/** The maximum number of waiting tiles that are looked up together with a requested tile */
+	private static final int BATCH_SIZE = 32;
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
 
-	private final ArrayList<IArchiveFile> mArchiveFiles = new ArrayList<IArchiveFile>();
+	/** Replaced as a whole, so that the loader threads can go through it without locking */
+	private volatile ArchiveFileBase[] mArchiveFiles = new ArchiveFileBase[0];
+
+	/**
+	 * Routes the tiles of the tile source to the archives. It's built again when the archives or
+	 * the tile source change, or when the coverage of an archive has been loaded.
+	 */
+	private volatile ArchiveIndex mIndex;
 
 	private final AtomicReference<ITileSource> mTileSource = new AtomicReference<ITileSource>();
 
 	/** Disable the search of archives if specified in constructor */
 	private final boolean mSpecificArchivesProvided;
 
+	/**
+	 * The tiles that were looked up for waiting requests, with their input streams or null if no
+	 * archive has them. Guarded by itself, which is only held to get or put tiles, never while an
+	 * archive is read.
+	 */
+	private final HashMap<MapTile, InputStream> mPrefetched = new HashMap<MapTile, InputStream>();
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -64,9 +82,11 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 			findArchiveFiles();
 		} else {
 			mSpecificArchivesProvided = true;
-			for (int i = pArchives.length - 1; i >= 0; i--) {
-				mArchiveFiles.add(pArchives[i]);
+			final ArchiveFileBase[] archiveFiles = new ArchiveFileBase[pArchives.length];
+			for (int i = 0; i < pArchives.length; i++) {
+				archiveFiles[i] = ArchiveFileBase.wrap(pArchives[pArchives.length - 1 - i]);
 			}
+			mArchiveFiles = archiveFiles;
 		}
 
 	}
@@ -133,13 +153,14 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 	@Override
 	public void setTileSource(final ITileSource pTileSource) {
 		mTileSource.set(pTileSource);
+		clearPrefetched();
 	}
 
 	@Override
 	public void detach() {
-		while(!mArchiveFiles.isEmpty()) {
-			mArchiveFiles.remove(0);
-		}
+		mArchiveFiles = new ArchiveFileBase[0];
+		mIndex = null;
+		clearPrefetched();
 		super.detach();
 	}
 
@@ -149,31 +170,160 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 
 	private void findArchiveFiles() {
 
-		mArchiveFiles.clear();
+		final ArrayList<ArchiveFileBase> archiveFiles = new ArrayList<ArchiveFileBase>();
+		if (getSdCardAvailable()) {
+			// path should be optionally configurable
+			final File[] files = OSMDROID_PATH.listFiles();
+			if (files != null) {
+				for (final File file : files) {
+					final IArchiveFile archiveFile = ArchiveFileFactory.getArchiveFile(file);
+					if (archiveFile != null) {
+						archiveFiles.add(ArchiveFileBase.wrap(archiveFile));
+					}
+				}
+			}
+		}
+
+		mArchiveFiles = archiveFiles.toArray(new ArchiveFileBase[archiveFiles.size()]);
+		clearPrefetched();
+	}
+
+	private void clearPrefetched() {
+		synchronized (mPrefetched) {
+			for (final InputStream in : mPrefetched.values()) {
+				StreamUtils.closeStream(in);
+			}
+			mPrefetched.clear();
+		}
+	}
 
-		if (!getSdCardAvailable()) {
-			return;
+	/**
+	 * Get the index of the current archives for the tile source, and build it again if it's out
+	 * of date. Two threads may build it at the same time, which does no harm.
+	 */
+	private ArchiveIndex getIndex(final ITileSource pTileSource) {
+		final ArchiveFileBase[] archiveFiles = mArchiveFiles;
+		ArchiveIndex index = mIndex;
+		if (index == null || !index.isFor(archiveFiles, pTileSource) || index.isStale()) {
+			index = new ArchiveIndex(archiveFiles, pTileSource);
+			mIndex = index;
 		}
+		return index;
+	}
 
-		// path should be optionally configurable
-		final File[] files = OSMDROID_PATH.listFiles();
-		if (files != null) {
-			for (final File file : files) {
-				final IArchiveFile archiveFile = ArchiveFileFactory.getArchiveFile(file);
-				if (archiveFile != null) {
-					mArchiveFiles.add(archiveFile);
+	/**
+	 * Whether an archive might contain the tile. The index answers for the archives whose coverage
+	 * is known, so a tile that no archive has is turned away without reading any of them.
+	 */
+	private static boolean isArchived(final MapTile pTile, final ArchiveIndex pIndex) {
+		final int found = pIndex.find(pTile);
+		if (found >= 0) {
+			return true;
+		}
+		for (int i = 0; !pIndex.isComplete() && i < pIndex.getArchiveCount(); i++) {
+			if (pIndex.mightContain(i, found, pTile)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the input stream of a tile. If other requests are waiting then their tiles are looked up
+	 * at the same time, which the database archives do with a single query, and kept until their
+	 * requests get here. That way a screen full of missing tiles costs one lookup instead of one
+	 * per tile. Each archive is only asked for the tiles that the index routes to it.
+	 */
+	private InputStream getInputStream(final MapTile pTile, final ArchiveIndex pIndex) {
+		synchronized (mPrefetched) {
+			if (mPrefetched.containsKey(pTile)) {
+				return mPrefetched.remove(pTile);
+			}
+		}
+		if (!isArchived(pTile, pIndex)) {
+			return null;
+		}
+
+		final ArrayList<MapTile> tiles = new ArrayList<MapTile>(BATCH_SIZE + 1);
+		getWaitingTiles(tiles, BATCH_SIZE);
+		synchronized (mPrefetched) {
+			for (int i = tiles.size() - 1; i >= 0; i--) {
+				final MapTile tile = tiles.get(i);
+				if (tile.equals(pTile) || mPrefetched.containsKey(tile)) {
+					tiles.remove(i);
 				}
 			}
 		}
+		for (int i = tiles.size() - 1; i >= 0; i--) {
+			if (!isArchived(tiles.get(i), pIndex)) {
+				tiles.remove(i);
+			}
+		}
+		if (tiles.isEmpty()) {
+			return getArchiveInputStream(pTile, pIndex);
+		}
+		tiles.add(0, pTile);
+
+		final int[] routes = new int[tiles.size()];
+		for (int i = 0; i < routes.length; i++) {
+			routes[i] = pIndex.find(tiles.get(i));
+		}
+		final HashMap<MapTile, InputStream> found = new HashMap<MapTile, InputStream>();
+		final ArrayList<MapTile> contained = new ArrayList<MapTile>(tiles.size());
+		for (int archive = 0; archive < pIndex.getArchiveCount(); archive++) {
+			contained.clear();
+			for (int i = 0; i < routes.length; i++) {
+				final MapTile tile = tiles.get(i);
+				if (!found.containsKey(tile) && pIndex.mightContain(archive, routes[i], tile)) {
+					contained.add(tile);
+				}
+			}
+			if (contained.isEmpty()) {
+				continue;
+			}
+			pIndex.getArchive(archive).getInputStreams(pIndex.getTileSource(), contained, found);
+			if (found.size() == tiles.size()) {
+				break;
+			}
+		}
+		if (DEBUGMODE) {
+			//logger.debug("Found " + found.size() + " of " + tiles.size() + " tiles in archives");
+		}
+
+		synchronized (mPrefetched) {
+			// the tiles of requests that were dropped are never collected, so don't let them pile
+			// up
+			if (mPrefetched.size() + tiles.size() > TILE_FILESYSTEM_MAXIMUM_QUEUE_SIZE) {
+				clearPrefetched();
+			}
+			for (int i = 1; i < tiles.size(); i++) {
+				final MapTile tile = tiles.get(i);
+				// another thread may have looked the tile up too
+				StreamUtils.closeStream(mPrefetched.put(tile, found.get(tile)));
+			}
+		}
+		return found.get(pTile);
 	}
 
-	private synchronized InputStream getInputStream(final MapTile pTile,
-			final ITileSource tileSource) {
-		for (final IArchiveFile archiveFile : mArchiveFiles) {
-			final InputStream in = archiveFile.getInputStream(tileSource, pTile);
+	/**
+	 * Get the input stream of a tile from the archive that the index routes it to. The archives
+	 * that can't tell whether they have it are asked in their turn.
+	 */
+	private static InputStream getArchiveInputStream(final MapTile pTile,
+			final ArchiveIndex pIndex) {
+		final ITileSource tileSource = pIndex.getTileSource();
+		final int found = pIndex.find(pTile);
+		if (pIndex.isComplete()) {
+			return found >= 0 ? pIndex.getArchive(found).getInputStream(tileSource, pTile) : null;
+		}
+		for (int i = 0; i < pIndex.getArchiveCount(); i++) {
+			if (!pIndex.mightContain(i, found, pTile)) {
+				continue;
+			}
+			final InputStream in = pIndex.getArchive(i).getInputStream(tileSource, pTile);
 			if (in != null) {
 				if (DEBUGMODE) {
-					//logger.debug("Found tile " + pTile + " in " + archiveFile);
+					//logger.debug("Found tile " + pTile + " in " + pIndex.getArchive(i));
 				}
 				return in;
 			}
@@ -212,7 +362,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 					//logger.debug("Tile doesn't exist: " + pTile);
 				}
 
-				inputStream = getInputStream(pTile, tileSource);
+				inputStream = getInputStream(pTile, getIndex(tileSource));
 				if (inputStream != null) {
 					if (DEBUGMODE) {
 						//logger.debug("Use tile from archive: " + pTile);
@@ -151,10 +151,14 @@ public class MapTileFilesystemProvider extends MapTileFileStorageProviderBase {
 				try {
 					final Drawable drawable = tileSource.getDrawable(file.getPath());
 
-					// Check to see if file has expired
+					// Check to see if file has expired. Tiles that were saved with an expiry time
+					// use that, the others expire after the maximum cached file age.
 					final long now = System.currentTimeMillis();
 					final long lastModified = file.lastModified();
-					final boolean fileExpired = lastModified < now - mMaximumCachedFileAge;
+					final TileCacheMetadata metadata = TileCacheMetadata.read(file);
+					final boolean fileExpired = metadata != null ? metadata.isExpired(now,
+							lastModified, mMaximumCachedFileAge)
+							: lastModified < now - mMaximumCachedFileAge;
 
 					if (fileExpired) {
 						if (DEBUGMODE) {
@@ -1,15 +1,14 @@
 package org.osmdroid.tileprovider.modules;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 
 import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRegion;
 import org.osmdroid.tileprovider.MapTileRequestState;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -84,8 +83,7 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 	//private static final Logger logger = LoggerFactory.getLogger(MapTileModuleProviderBase.class);
 
 	protected final Object mQueueLockObject = new Object();
-	protected final HashMap<MapTile, MapTileRequestState> mWorking;
-	protected final LinkedHashMap<MapTile, MapTileRequestState> mPending;
+	protected final MapTileRequestQueue mPending;
 
 	public MapTileModuleProviderBase(int pThreadPoolSize, final int pPendingQueueSize) {
 		if (pPendingQueueSize < pThreadPoolSize) {
@@ -95,40 +93,12 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		mExecutor = Executors.newFixedThreadPool(pThreadPoolSize,
 				new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, getThreadGroupName()));
 
-		mWorking = new HashMap<MapTile, MapTileRequestState>();
-		mPending = new LinkedHashMap<MapTile, MapTileRequestState>(pPendingQueueSize + 2, 0.1f,
-				true) {
-
-			private static final long serialVersionUID = 6455337315681858866L;
-
-			
-			protected boolean removeEldestEntry(
-					final Map.Entry<MapTile, MapTileRequestState> pEldest) {
-				if (size() > pPendingQueueSize) {
-					MapTile result = null;
-
-					// get the oldest tile that isn't in the mWorking queue
-					Iterator<MapTile> iterator = mPending.keySet().iterator();
-
-					while (result == null && iterator.hasNext()) {
-						final MapTile tile = iterator.next();
-						if (!mWorking.containsKey(tile)) {
-							result = tile;
-						}
-					}
-
-					if (result != null) {
-						MapTileRequestState state = mPending.get(result);
-						removeTileFromQueues(result);
-						state.getCallback().mapTileRequestFailed(state);
-					}
-				}
-				return false;
-			}
-		};
+		// keep a worker free for the visible tiles when there's more than one
+		mPending = new MapTileRequestQueue(pPendingQueueSize, Math.max(1, pThreadPoolSize - 1));
 	}
 
 	public void loadMapTileAsync(final MapTileRequestState pState) {
+		final MapTileRequestState evicted;
 		synchronized (mQueueLockObject) {
 			if (DEBUG_TILE_PROVIDERS) {
 				//logger.debug("MapTileModuleProviderBase.loadMaptileAsync() on provider: "
@@ -140,8 +110,12 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 			}
 
 			// this will put the tile in the queue, or move it to the front of
-			// the queue if it's already present
-			mPending.put(pState.getMapTile(), pState);
+			// the queue if it's already present. If the queue is full then the
+			// oldest tile that isn't being worked on is dropped.
+			evicted = mPending.put(pState);
+		}
+		if (evicted != null) {
+			evicted.getCallback().mapTileRequestFailed(evicted);
 		}
 		try {
 			mExecutor.execute(getTileLoader());
@@ -150,10 +124,71 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		}
 	}
 
+	/**
+	 * Tell this provider which tiles are currently of interest. Pending requests for tiles outside
+	 * of all the regions are dropped without being passed on, and the remaining ones are served
+	 * from the center of their closest region outwards. Requests that are already being loaded are
+	 * not affected.
+	 *
+	 * @param pRegions
+	 *            the regions of interest, one for each overlay that draws the tiles of this
+	 *            provider
+	 * @param pDropped
+	 *            receives the requests that were dropped, so that the caller can forget about them
+	 */
+	public void setInterestRegions(final Collection<MapTileRegion> pRegions,
+			final List<MapTileRequestState> pDropped) {
+		synchronized (mQueueLockObject) {
+			mPending.retainRegions(pRegions, pDropped);
+		}
+	}
+
+	/**
+	 * Move the request for the tile to the normal lane if it's waiting as a prefetch request,
+	 * because the tile is needed now. Nothing happens if the request isn't in this provider's
+	 * queue, for instance because it's already being passed on to the next provider.
+	 *
+	 * @param pState
+	 *            the request, which is no longer a prefetch request
+	 */
+	public void promoteMapTileAsync(final MapTileRequestState pState) {
+		synchronized (mQueueLockObject) {
+			if (mPending.contains(pState.getMapTile())) {
+				mPending.put(pState);
+			}
+		}
+	}
+
+	/**
+	 * Drop the prefetch requests that are waiting for a worker.
+	 *
+	 * @param pDropped
+	 *            receives the requests that were dropped, so that the caller can forget about them
+	 */
+	public void cancelPrefetch(final List<MapTileRequestState> pDropped) {
+		synchronized (mQueueLockObject) {
+			mPending.clearPrefetch(pDropped);
+		}
+	}
+
+	/**
+	 * Get the tiles of the requests that are waiting for a worker, newest first. A worker can use
+	 * this to look up several tiles at once when that's cheaper than one at a time.
+	 *
+	 * @param pTiles
+	 *            receives the tiles
+	 * @param pMaximum
+	 *            the maximum number of tiles to add
+	 */
+	protected void getWaitingTiles(final Collection<MapTile> pTiles, final int pMaximum) {
+		synchronized (mQueueLockObject) {
+			mPending.getWaitingTiles(pTiles, pMaximum);
+		}
+	}
+
 	private void clearQueue() {
 		synchronized (mQueueLockObject) {
 			mPending.clear();
-			mWorking.clear();
 		}
 	}
 
@@ -172,7 +207,6 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 						+ getName() + " for tile: " + mapTile);
 			}*/
 			mPending.remove(mapTile);
-			mWorking.remove(mapTile);
 		}
 	}
 
@@ -205,34 +239,8 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		protected MapTileRequestState nextTile() {
 
 			synchronized (mQueueLockObject) {
-				MapTile result = null;
-
-				// get the most recently accessed tile
-				// - the last item in the iterator that's not already being
-				// processed
-				Iterator<MapTile> iterator = mPending.keySet().iterator();
-
-				// TODO this iterates the whole list, make this faster...
-				while (iterator.hasNext()) {
-					final MapTile tile = iterator.next();
-					if (!mWorking.containsKey(tile)) {
-						/*if (DEBUG_TILE_PROVIDERS) {
-							//logger.debug("TileLoader.nextTile() on provider: " + getName()
-									+ " found tile in working queue: " + tile);
-						}*/
-						result = tile;
-					}
-				}
-
-				if (result != null) {
-					/*if (DEBUG_TILE_PROVIDERS) {
-						//logger.debug("TileLoader.nextTile() on provider: " + getName()
-								+ " adding tile to working queue: " + result);
-					}*/
-					mWorking.put(result, mPending.get(result));
-				}
-
-				return (result != null ? mPending.get(result) : null);
+				// get the most recently requested tile that's not already being processed
+				return mPending.poll();
 			}
 		}
 
@@ -258,6 +266,7 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 						+ " with tile: " + pState.getMapTile());
 			}*/
 			removeTileFromQueues(pState.getMapTile());
+			pState.setExpired(true);
 			pState.getCallback().mapTileRequestExpiredTile(pState, pDrawable);
 		}
 
@@ -0,0 +1,364 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRegion;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.util.LongHashMap;
+
+/**
+ * The pending request queue of a {@link MapTileModuleProviderBase}. Requests are served newest
+ * first, and when the queue overflows the oldest request that isn't being worked on is evicted.
+ * Requests that have been handed to a worker stay in the queue (so that they count towards its
+ * size and aren't requested twice) until they are removed. Putting, polling and removing a
+ * request are O(1), {@link #retainRegions(Collection, List)} sorts the waiting requests in
+ * O(n log n) and {@link #clearPrefetch(List)} is O(n) in the number of prefetch requests.<br />
+ * <br />
+ * Prefetch requests (see {@link MapTileRequestState#isPrefetch()}) wait in a separate lane. They
+ * are only served when no other request is waiting, only a limited number of them are worked on
+ * at once, and they are evicted before any other request when the queue overflows, so they never
+ * hold up the tiles that are on the screen. Requesting a prefetched tile normally moves it to the
+ * normal lane.<br />
+ * <br />
+ * This class is not thread-safe, callers must synchronize on their queue lock.
+ */
+public class MapTileRequestQueue {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mCapacity;
+	private final int mMaximumPrefetchWorking;
+
+	/** All pending requests by tile key, waiting or working */
+	private final LongHashMap<Node> mIndex;
+
+	/** The waiting requests, linked from newest to oldest */
+	private final Lane mRequests = new Lane();
+
+	/** The waiting prefetch requests, linked from newest to oldest */
+	private final Lane mPrefetches = new Lane();
+
+	private int mWorkingCount;
+	private int mPrefetchWorkingCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pCapacity
+	 *            the maximum number of requests, including the ones that are being worked on
+	 */
+	public MapTileRequestQueue(final int pCapacity) {
+		this(pCapacity, pCapacity);
+	}
+
+	/**
+	 * @param pCapacity
+	 *            the maximum number of requests, including the ones that are being worked on
+	 * @param pMaximumPrefetchWorking
+	 *            the maximum number of prefetch requests that are worked on at once
+	 */
+	public MapTileRequestQueue(final int pCapacity, final int pMaximumPrefetchWorking) {
+		mCapacity = pCapacity;
+		mMaximumPrefetchWorking = pMaximumPrefetchWorking;
+		mIndex = new LongHashMap<Node>(pCapacity + 2);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int size() {
+		return mIndex.size();
+	}
+
+	public int getWorkingCount() {
+		return mWorkingCount;
+	}
+
+	public int getPrefetchWorkingCount() {
+		return mPrefetchWorkingCount;
+	}
+
+	public boolean contains(final MapTile pTile) {
+		return mIndex.containsKey(pTile.getKey());
+	}
+
+	public boolean isWorking(final MapTile pTile) {
+		final Node node = mIndex.get(pTile.getKey());
+		return node != null && node.mWorking;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Put the request in the queue, or move it to the front of its lane if the tile is already
+	 * waiting. A normal request for a tile that has a prefetch request takes over the prefetch
+	 * request, but a prefetch request never demotes a normal one.
+	 *
+	 * @return the request that was evicted because the queue overflowed, or null. The caller is
+	 *         responsible for failing it.
+	 */
+	public MapTileRequestState put(final MapTileRequestState pState) {
+		final MapTile tile = pState.getMapTile();
+		final boolean prefetch = pState.isPrefetch();
+		Node node = mIndex.get(tile.getKey());
+		if (node != null) {
+			if (node.mPrefetch || !prefetch) {
+				node.mState = pState;
+			}
+			if (node.mWorking) {
+				if (node.mPrefetch && !prefetch) {
+					node.mPrefetch = false;
+					mPrefetchWorkingCount--;
+				}
+			} else if (node.mPrefetch || !prefetch) {
+				unlink(node);
+				node.mPrefetch = prefetch;
+				linkNewest(node);
+			}
+			return null;
+		}
+
+		node = new Node(pState);
+		node.mPrefetch = prefetch;
+		mIndex.put(tile.getKey(), node);
+		linkNewest(node);
+
+		if (mIndex.size() > mCapacity) {
+			// prefetch requests go first, and a new prefetch request never evicts a normal one
+			final Node eldest = mPrefetches.mOldest != null ? mPrefetches.mOldest
+					: mRequests.mOldest;
+			if (eldest != null) {
+				unlink(eldest);
+				mIndex.remove(eldest.mState.getMapTile().getKey());
+				return eldest.mState;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Take the newest waiting request and mark it as working. Prefetch requests are only taken
+	 * when no other request is waiting and fewer than the maximum of them are being worked on.
+	 *
+	 * @return the request, or null if there are no waiting requests that may be worked on
+	 */
+	public MapTileRequestState poll() {
+		Node node = mRequests.mNewest;
+		if (node == null && mPrefetchWorkingCount < mMaximumPrefetchWorking) {
+			node = mPrefetches.mNewest;
+		}
+		if (node == null) {
+			return null;
+		}
+		unlink(node);
+		node.mWorking = true;
+		mWorkingCount++;
+		if (node.mPrefetch) {
+			mPrefetchWorkingCount++;
+		}
+		return node.mState;
+	}
+
+	/**
+	 * Get the tiles of the waiting requests, newest first and prefetch requests last, without
+	 * marking them as working.
+	 *
+	 * @param pTiles
+	 *            receives the tiles
+	 * @param pMaximum
+	 *            the maximum number of tiles to add
+	 */
+	public void getWaitingTiles(final Collection<MapTile> pTiles, final int pMaximum) {
+		int count = 0;
+		for (Node node = mRequests.mNewest; node != null && count < pMaximum; node = node.mOlder) {
+			pTiles.add(node.mState.getMapTile());
+			count++;
+		}
+		for (Node node = mPrefetches.mNewest; node != null && count < pMaximum;
+				node = node.mOlder) {
+			pTiles.add(node.mState.getMapTile());
+			count++;
+		}
+	}
+
+	/**
+	 * Remove the request for the tile, whether it's waiting or working.
+	 */
+	public void remove(final MapTile pTile) {
+		final Node node = mIndex.remove(pTile.getKey());
+		if (node != null) {
+			if (node.mWorking) {
+				mWorkingCount--;
+				if (node.mPrefetch) {
+					mPrefetchWorkingCount--;
+				}
+			} else {
+				unlink(node);
+			}
+		}
+	}
+
+	/**
+	 * Drop the waiting requests for tiles outside of the region and reorder the remaining waiting
+	 * requests so that the ones closest to the center of the region are served first. Requests
+	 * that are being worked on and prefetch requests are left alone.
+	 *
+	 * @param pRegion
+	 *            the region of interest
+	 * @param pDropped
+	 *            receives the requests that were dropped
+	 */
+	public void retainRegion(final MapTileRegion pRegion, final List<MapTileRequestState> pDropped) {
+		retainRegions(Collections.singletonList(pRegion), pDropped);
+	}
+
+	/**
+	 * Like {@link #retainRegion(MapTileRegion, List)} for several regions, such as those of
+	 * several overlays that share a tile provider. A request is kept if any of the regions
+	 * contains its tile, and served by its distance to the center of the closest one. Nothing is
+	 * dropped if there are no regions.
+	 *
+	 * @param pRegions
+	 *            the regions of interest
+	 * @param pDropped
+	 *            receives the requests that were dropped
+	 */
+	public void retainRegions(final Collection<MapTileRegion> pRegions,
+			final List<MapTileRequestState> pDropped) {
+		if (pRegions.isEmpty()) {
+			return;
+		}
+		final ArrayList<Node> retained = new ArrayList<Node>(mIndex.size());
+		Node node = mRequests.mNewest;
+		while (node != null) {
+			final Node older = node.mOlder;
+			final MapTile tile = node.mState.getMapTile();
+			double distance = Double.MAX_VALUE;
+			boolean contained = false;
+			for (final MapTileRegion region : pRegions) {
+				if (region.contains(tile)) {
+					contained = true;
+					distance = Math.min(distance, region.getDistanceSquared(tile));
+				}
+			}
+			if (contained) {
+				node.mDistance = distance;
+				retained.add(node);
+			} else {
+				unlink(node);
+				mIndex.remove(tile.getKey());
+				pDropped.add(node.mState);
+			}
+			node = older;
+		}
+
+		// relink the farthest first, so that the closest ends up being the newest
+		final Node[] nodes = retained.toArray(new Node[retained.size()]);
+		Arrays.sort(nodes, FARTHEST_FIRST);
+		mRequests.mNewest = null;
+		mRequests.mOldest = null;
+		for (final Node retainedNode : nodes) {
+			linkNewest(retainedNode);
+		}
+	}
+
+	/**
+	 * Drop all the waiting prefetch requests, for instance because the gesture they were made for
+	 * changed. Prefetch requests that are being worked on are left alone.
+	 *
+	 * @param pDropped
+	 *            receives the requests that were dropped
+	 */
+	public void clearPrefetch(final List<MapTileRequestState> pDropped) {
+		Node node = mPrefetches.mNewest;
+		while (node != null) {
+			final Node older = node.mOlder;
+			mIndex.remove(node.mState.getMapTile().getKey());
+			pDropped.add(node.mState);
+			node.mNewer = null;
+			node.mOlder = null;
+			node = older;
+		}
+		mPrefetches.mNewest = null;
+		mPrefetches.mOldest = null;
+	}
+
+	public void clear() {
+		mIndex.clear();
+		mRequests.mNewest = null;
+		mRequests.mOldest = null;
+		mPrefetches.mNewest = null;
+		mPrefetches.mOldest = null;
+		mWorkingCount = 0;
+		mPrefetchWorkingCount = 0;
+	}
+
+	private void linkNewest(final Node pNode) {
+		final Lane lane = pNode.mPrefetch ? mPrefetches : mRequests;
+		pNode.mNewer = null;
+		pNode.mOlder = lane.mNewest;
+		if (lane.mNewest == null) {
+			lane.mOldest = pNode;
+		} else {
+			lane.mNewest.mNewer = pNode;
+		}
+		lane.mNewest = pNode;
+	}
+
+	private void unlink(final Node pNode) {
+		final Lane lane = pNode.mPrefetch ? mPrefetches : mRequests;
+		if (pNode.mNewer == null) {
+			lane.mNewest = pNode.mOlder;
+		} else {
+			pNode.mNewer.mOlder = pNode.mOlder;
+		}
+		if (pNode.mOlder == null) {
+			lane.mOldest = pNode.mNewer;
+		} else {
+			pNode.mOlder.mNewer = pNode.mNewer;
+		}
+		pNode.mNewer = null;
+		pNode.mOlder = null;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static final Comparator<Node> FARTHEST_FIRST = new Comparator<Node>() {
+		public int compare(final Node lhs, final Node rhs) {
+			return Double.compare(rhs.mDistance, lhs.mDistance);
+		}
+	};
+
+	private static final class Node {
+		MapTileRequestState mState;
+		boolean mWorking;
+		boolean mPrefetch;
+		double mDistance;
+		Node mNewer;
+		Node mOlder;
+
+		Node(final MapTileRequestState pState) {
+			mState = pState;
+		}
+	}
+
+	private static final class Lane {
+		Node mNewest;
+		Node mOldest;
+	}
+}
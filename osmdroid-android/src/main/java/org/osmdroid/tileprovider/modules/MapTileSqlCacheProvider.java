@@ -0,0 +1,170 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
+import org.osmdroid.tileprovider.IRegisterReceiver;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+//////import org.slf4j.Logger;
+//////import org.slf4j.LoggerFactory;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * Provides the tiles cached by a {@link SqlTileWriter}. This is the counterpart of
+ * {@link MapTileFilesystemProvider} for the database cache: a tile is found with a single indexed
+ * query instead of a file lookup. The cache is closed when the provider is detached.
+ */
+public class MapTileSqlCacheProvider extends MapTileFileStorageProviderBase {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	//private static final Logger logger = LoggerFactory.getLogger(MapTileSqlCacheProvider.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final SqlTileWriter mCache;
+
+	private final long mMaximumCachedFileAge;
+
+	private final AtomicReference<ITileSource> mTileSource = new AtomicReference<ITileSource>();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MapTileSqlCacheProvider(final IRegisterReceiver pRegisterReceiver,
+			final ITileSource pTileSource, final SqlTileWriter pCache) {
+		this(pRegisterReceiver, pTileSource, pCache, DEFAULT_MAXIMUM_CACHED_FILE_AGE);
+	}
+
+	/**
+	 * @param pMaximumCachedFileAge
+	 *            how long tiles that were saved without an expiry time are fresh
+	 */
+	public MapTileSqlCacheProvider(final IRegisterReceiver pRegisterReceiver,
+			final ITileSource pTileSource, final SqlTileWriter pCache,
+			final long pMaximumCachedFileAge) {
+		super(pRegisterReceiver, NUMBER_OF_TILE_FILESYSTEM_THREADS,
+				TILE_FILESYSTEM_MAXIMUM_QUEUE_SIZE);
+		setTileSource(pTileSource);
+
+		mCache = pCache;
+		mMaximumCachedFileAge = pMaximumCachedFileAge;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public boolean getUsesDataConnection() {
+		return false;
+	}
+
+	@Override
+	protected String getName() {
+		return "SQL Cache Provider";
+	}
+
+	@Override
+	protected String getThreadGroupName() {
+		return "sqlcache";
+	}
+
+	@Override
+	protected Runnable getTileLoader() {
+		return new TileLoader();
+	}
+
+	@Override
+	public int getMinimumZoomLevel() {
+		ITileSource tileSource = mTileSource.get();
+		return tileSource != null ? tileSource.getMinimumZoomLevel() : MINIMUM_ZOOMLEVEL;
+	}
+
+	@Override
+	public int getMaximumZoomLevel() {
+		ITileSource tileSource = mTileSource.get();
+		return tileSource != null ? tileSource.getMaximumZoomLevel() : MAXIMUM_ZOOMLEVEL;
+	}
+
+	@Override
+	public void setTileSource(final ITileSource pTileSource) {
+		mTileSource.set(pTileSource);
+	}
+
+	@Override
+	public void detach() {
+		// once no other writer uses the database, writes the pending tiles, then ends the writer
+		// thread and closes the database
+		mCache.close();
+		super.detach();
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	protected class TileLoader extends MapTileModuleProviderBase.TileLoader {
+
+		@Override
+		public Drawable loadTile(final MapTileRequestState pState) throws CantContinueException {
+
+			ITileSource tileSource = mTileSource.get();
+			if (tileSource == null) {
+				return null;
+			}
+
+			final MapTile tile = pState.getMapTile();
+
+			// if there's no sdcard then don't do anything
+			if (!getSdCardAvailable()) {
+				if (DEBUGMODE) {
+					//logger.debug("No sdcard - do nothing for tile: " + tile);
+				}
+				return null;
+			}
+
+			final SqlTileWriter.CachedTile cachedTile = mCache.getTile(tileSource, tile);
+			if (cachedTile == null || cachedTile.getData() == null) {
+				return null;
+			}
+
+			try {
+				final Drawable drawable = tileSource.getDrawable(new ByteArrayInputStream(
+						cachedTile.getData()));
+				if (drawable == null) {
+					return null;
+				}
+
+				// Check to see if the tile has expired
+				final long now = System.currentTimeMillis();
+				final TileCacheMetadata metadata = cachedTile.getMetadata();
+				final boolean expired = metadata != null ? metadata.isExpired(now,
+						cachedTile.getSaved(), mMaximumCachedFileAge)
+						: cachedTile.getSaved() < now - mMaximumCachedFileAge;
+				if (expired) {
+					if (DEBUGMODE) {
+						//logger.debug("Tile expired: " + tile);
+					}
+					drawable.setState(new int[] {ExpirableBitmapDrawable.EXPIRED });
+				}
+
+				return drawable;
+			} catch (final LowMemoryException e) {
+				// low memory so empty the queue
+				//logger.warn("LowMemoryException downloading MapTile: " + tile + " : " + e);
+				throw new CantContinueException(e);
+			}
+		}
+	}
+}
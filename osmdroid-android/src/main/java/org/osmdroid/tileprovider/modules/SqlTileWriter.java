@@ -0,0 +1,734 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.StreamUtils;
+//////import org.slf4j.Logger;
+//////import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+/**
+ * An implementation of {@link IFilesystemCache} that stores all the tiles in a single SQLite
+ * database instead of a file per tile. Tiles are looked up by their primary key, and writes are
+ * batched in transactions on a background thread. When the tiles take up more than
+ * {@link #TILE_MAX_CACHE_SIZE_BYTES} the least recently used ones are deleted until they take up
+ * {@link #TILE_TRIM_CACHE_SIZE_BYTES}.<br />
+ * <br />
+ * The writers of a database file share one connection and one writer thread, so that two
+ * providers that are alive at the same time, e.g. while a MapView is recreated, don't lock each
+ * other out of the file. The database is closed when the last of them is closed.<br />
+ * <br />
+ * The table has the same layout as the databases read by {@link DatabaseFileArchive}, with
+ * additional columns for the expiry and last access time. Use it together with a
+ * {@link MapTileSqlCacheProvider} instead of a {@link TileWriter} and a
+ * {@link MapTileFilesystemProvider}:
+ * <code>
+ * final SqlTileWriter cache = new SqlTileWriter();
+ * final MapTileProviderArray provider = new MapTileProviderArray(tileSource, registerReceiver,
+ *         new MapTileModuleProviderBase[] {
+ *             new MapTileSqlCacheProvider(registerReceiver, tileSource, cache),
+ *             new MapTileDownloader(tileSource, cache, networkAvailabilityCheck) });
+ * </code>
+ */
+public class SqlTileWriter implements IFilesystemCache, OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	//private static final Logger logger = LoggerFactory.getLogger(SqlTileWriter.class);
+
+	public static final String TABLE = "tiles";
+	public static final String COLUMN_KEY = "key";
+	public static final String COLUMN_PROVIDER = "provider";
+	public static final String COLUMN_TILE = "tile";
+	public static final String COLUMN_EXPIRES = "expires";
+	public static final String COLUMN_ETAG = "etag";
+	public static final String COLUMN_LAST_MODIFIED = "last_modified";
+	public static final String COLUMN_SAVED = "saved";
+	public static final String COLUMN_LAST_ACCESS = "last_access";
+
+	/** The maximum number of writes in a transaction */
+	private static final int MAXIMUM_BATCH_SIZE = 64;
+
+	/** The number of tiles deleted per transaction when trimming */
+	private static final int TRIM_BATCH_SIZE = 256;
+
+	/** Only record the access to a tile if the last one is older than this */
+	private static final long ACCESS_TIME_RESOLUTION = ONE_HOUR;
+
+	private static final int WRITE_TILE = 0;
+	private static final int WRITE_METADATA = 1;
+	private static final int WRITE_ACCESS_TIME = 2;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** The database of each file that is in use, guarded by itself */
+	private static final HashMap<File, TileDatabase> sDatabases = new HashMap<File, TileDatabase>();
+
+	private final TileDatabase mTileDatabase;
+
+	private final AtomicBoolean mClosed = new AtomicBoolean();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public SqlTileWriter() {
+		this(TILE_DATABASE_FILE);
+	}
+
+	public SqlTileWriter(final File pDatabaseFile) {
+		mTileDatabase = acquire(pDatabaseFile.getAbsoluteFile());
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * Get the size of the tiles in the cache. This is -1 until the size has been calculated in the
+	 * background.
+	 *
+	 * @return size in bytes
+	 */
+	public long getUsedCacheSpace() {
+		return mTileDatabase.mUsedCacheSpace;
+	}
+
+	TileDatabase getTileDatabase() {
+		return mTileDatabase;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final InputStream pStream) {
+		return saveFile(pTileSource, pTile, pStream, null);
+	}
+
+	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final InputStream pStream, final TileCacheMetadata pMetadata) {
+		if (mClosed.get()) {
+			return false;
+		}
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try {
+			StreamUtils.copy(pStream, data);
+		} catch (final IOException e) {
+			return false;
+		}
+
+		final long now = System.currentTimeMillis();
+		mTileDatabase.enqueue(new Write(WRITE_TILE, pTileSource.name(), getIndex(pTile),
+				new CachedTile(data.toByteArray(), pMetadata, now), now));
+		return true;
+	}
+
+	public TileCacheMetadata getMetadata(final ITileSource pTileSource, final MapTile pTile) {
+		final String provider = pTileSource.name();
+		final long index = getIndex(pTile);
+		final Write pending = mTileDatabase.mPending.get(getPendingKey(provider, index));
+		if (pending != null) {
+			return pending.mTile.mMetadata;
+		}
+
+		final SQLiteDatabase database = mTileDatabase.getDatabase();
+		if (database == null) {
+			return null;
+		}
+		Cursor cursor = null;
+		try {
+			cursor = database.rawQuery("SELECT " + COLUMN_EXPIRES + "," + COLUMN_ETAG + ","
+					+ COLUMN_LAST_MODIFIED + " FROM " + TABLE + " WHERE " + COLUMN_KEY + "=? AND "
+					+ COLUMN_PROVIDER + "=?", new String[] { Long.toString(index), provider });
+			if (cursor.moveToFirst()) {
+				return readMetadata(cursor, 0);
+			}
+		} catch (final SQLiteException e) {
+			//logger.warn("Error reading tile metadata: " + pTile, e);
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+		return null;
+	}
+
+	public boolean updateMetadata(final ITileSource pTileSource, final MapTile pTile,
+			final TileCacheMetadata pMetadata) {
+		if (mClosed.get()) {
+			return false;
+		}
+		final String provider = pTileSource.name();
+		final long index = getIndex(pTile);
+		final long now = System.currentTimeMillis();
+		final Write pending = mTileDatabase.mPending.get(getPendingKey(provider, index));
+		if (pending != null && pending.mType == WRITE_TILE) {
+			// the tile hasn't been written yet, write it with the new metadata
+			mTileDatabase.enqueue(new Write(WRITE_TILE, provider, index, new CachedTile(
+					pending.mTile.mData, pMetadata, now), now));
+		} else {
+			mTileDatabase.enqueue(new Write(WRITE_METADATA, provider, index, new CachedTile(null,
+					pMetadata, now), now));
+		}
+		return true;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Get a tile from the cache.
+	 *
+	 * @return the tile, or null if it isn't in the cache
+	 */
+	public CachedTile getTile(final ITileSource pTileSource, final MapTile pTile) {
+		final String provider = pTileSource.name();
+		final long index = getIndex(pTile);
+		final Write pending = mTileDatabase.mPending.get(getPendingKey(provider, index));
+		if (pending != null && pending.mType == WRITE_TILE) {
+			return pending.mTile;
+		}
+
+		final SQLiteDatabase database = mTileDatabase.getDatabase();
+		if (database == null) {
+			return null;
+		}
+		final CachedTile tile;
+		final long lastAccess;
+		Cursor cursor = null;
+		try {
+			cursor = database.rawQuery("SELECT " + COLUMN_EXPIRES + "," + COLUMN_ETAG + ","
+					+ COLUMN_LAST_MODIFIED + "," + COLUMN_TILE + "," + COLUMN_SAVED + ","
+					+ COLUMN_LAST_ACCESS + " FROM " + TABLE + " WHERE " + COLUMN_KEY + "=? AND "
+					+ COLUMN_PROVIDER + "=?", new String[] { Long.toString(index), provider });
+			if (!cursor.moveToFirst()) {
+				return null;
+			}
+			if (pending != null) {
+				// the metadata has been revalidated but not written yet
+				tile = new CachedTile(cursor.getBlob(3), pending.mTile.mMetadata,
+						pending.mTile.mSaved);
+			} else {
+				tile = new CachedTile(cursor.getBlob(3), readMetadata(cursor, 0),
+						cursor.getLong(4));
+			}
+			lastAccess = cursor.getLong(5);
+		} catch (final SQLiteException e) {
+			//logger.warn("Error reading tile: " + pTile, e);
+			return null;
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+
+		final long now = System.currentTimeMillis();
+		if (lastAccess < now - ACCESS_TIME_RESOLUTION) {
+			mTileDatabase.mWriter.offer(new Write(WRITE_ACCESS_TIME, provider, index, null, now));
+		}
+		return tile;
+	}
+
+	/**
+	 * Stop using the database. Nothing can be saved afterwards. Once every writer of the database
+	 * file is closed, the pending tiles are written and the database is closed, in the background,
+	 * and tiles can only be read until then.
+	 */
+	public void close() {
+		if (!mClosed.compareAndSet(false, true)) {
+			return;
+		}
+		synchronized (sDatabases) {
+			if (--mTileDatabase.mUsers > 0) {
+				return;
+			}
+		}
+		mTileDatabase.mWriter.close();
+	}
+
+	/**
+	 * Get the database of the file, shared by all the writers of the file so that there is only one
+	 * connection and one writer thread writing to it.
+	 */
+	private static TileDatabase acquire(final File pDatabaseFile) {
+		synchronized (sDatabases) {
+			final TileDatabase previous = sDatabases.get(pDatabaseFile);
+			if (previous != null && previous.mUsers > 0) {
+				previous.mUsers++;
+				return previous;
+			}
+			// the previous database may still be writing what was queued before it was closed
+			final TileDatabase database = new TileDatabase(pDatabaseFile, previous);
+			database.mUsers = 1;
+			sDatabases.put(pDatabaseFile, database);
+			return database;
+		}
+	}
+
+	/**
+	 * The key of a tile, as used by {@link DatabaseFileArchive}.
+	 */
+	public static long getIndex(final MapTile pTile) {
+		final long x = pTile.getX();
+		final long y = pTile.getY();
+		final long z = pTile.getZoomLevel();
+		return ((z << z) + x << z) + y;
+	}
+
+	private static String getPendingKey(final String pProvider, final long pIndex) {
+		return pProvider + '/' + pIndex;
+	}
+
+	private static TileCacheMetadata readMetadata(final Cursor pCursor, final int pColumn) {
+		return new TileCacheMetadata(pCursor.getLong(pColumn), pCursor.getString(pColumn + 1),
+				pCursor.getString(pColumn + 2));
+	}
+
+	private static void bindMetadata(final SQLiteStatement pStatement, final int pIndex,
+			final TileCacheMetadata pMetadata) {
+		if (pMetadata == null) {
+			pStatement.bindLong(pIndex, TileCacheMetadata.EXPIRES_UNKNOWN);
+			pStatement.bindNull(pIndex + 1);
+			pStatement.bindNull(pIndex + 2);
+			return;
+		}
+		pStatement.bindLong(pIndex, pMetadata.getExpires());
+		if (pMetadata.getETag() != null) {
+			pStatement.bindString(pIndex + 1, pMetadata.getETag());
+		} else {
+			pStatement.bindNull(pIndex + 1);
+		}
+		if (pMetadata.getLastModified() != null) {
+			pStatement.bindString(pIndex + 2, pMetadata.getLastModified());
+		} else {
+			pStatement.bindNull(pIndex + 2);
+		}
+	}
+
+	private static long calculateUsedCacheSpace(final SQLiteDatabase pDatabase) {
+		Cursor cursor = null;
+		try {
+			cursor = pDatabase.rawQuery("SELECT SUM(LENGTH(" + COLUMN_TILE + ")) FROM " + TABLE,
+					null);
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		} catch (final SQLiteException e) {
+			return 0;
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * A tile read from the cache.
+	 */
+	public static class CachedTile {
+		private final byte[] mData;
+		private final TileCacheMetadata mMetadata;
+		private final long mSaved;
+
+		CachedTile(final byte[] pData, final TileCacheMetadata pMetadata, final long pSaved) {
+			mData = pData;
+			mMetadata = pMetadata;
+			mSaved = pSaved;
+		}
+
+		public byte[] getData() {
+			return mData;
+		}
+
+		/**
+		 * @return the expiry time and validators, or null if the tile was saved without them
+		 */
+		public TileCacheMetadata getMetadata() {
+			return mMetadata;
+		}
+
+		/**
+		 * @return the time in milliseconds when the tile was saved or last revalidated
+		 */
+		public long getSaved() {
+			return mSaved;
+		}
+	}
+
+	/**
+	 * The connection to a database file and the thread that writes to it.
+	 */
+	static final class TileDatabase {
+
+		private final File mDatabaseFile;
+
+		/** Guarded by this, like {@link #mDatabaseClosed} */
+		private SQLiteDatabase mDatabase;
+
+		/** Set once the writer has written everything that was queued and closed the database */
+		private boolean mDatabaseClosed;
+
+		/** The tiles and metadata that have been saved but not written yet, so they can be read */
+		final ConcurrentHashMap<String, Write> mPending = new ConcurrentHashMap<String, Write>();
+
+		final BatchWriter<Write> mWriter;
+
+		/** The database of the file that was closed before this one was opened, if any */
+		private TileDatabase mPrevious;
+
+		/** The number of writers that use the database, guarded by sDatabases */
+		int mUsers;
+
+		// used by the writer thread only
+		private SQLiteStatement mInsertTile;
+		private SQLiteStatement mUpdateMetadata;
+		private SQLiteStatement mUpdateAccessTime;
+		volatile long mUsedCacheSpace = -1;
+
+		TileDatabase(final File pDatabaseFile, final TileDatabase pPrevious) {
+			mDatabaseFile = pDatabaseFile;
+			mPrevious = pPrevious;
+
+			mWriter = new BatchWriter<Write>("SqlTileWriter", MAXIMUM_BATCH_SIZE) {
+				@Override
+				void write(final List<Write> pBatch) {
+					writeBatch(pBatch);
+				}
+
+				@Override
+				void finish() {
+					closeDatabase();
+				}
+			};
+			mWriter.start();
+		}
+
+		boolean isClosed() {
+			return mWriter.isClosed();
+		}
+
+		void enqueue(final Write pWrite) {
+			final String key = getPendingKey(pWrite.mProvider, pWrite.mIndex);
+			mPending.put(key, pWrite);
+			if (!mWriter.offer(pWrite)) {
+				mPending.remove(key, pWrite);
+			}
+		}
+
+		/**
+		 * @return the database, opened the first time, or null if it can't be opened or the writer
+		 *         has closed it
+		 */
+		synchronized SQLiteDatabase getDatabase() {
+			if (mDatabase == null && !mDatabaseClosed) {
+				try {
+					mDatabaseFile.getParentFile().mkdirs();
+					final SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(
+							mDatabaseFile, null);
+					if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+						// let the tile loaders read while the writer thread writes
+						database.enableWriteAheadLogging();
+					}
+					database.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (" + COLUMN_KEY
+							+ " INTEGER NOT NULL, " + COLUMN_PROVIDER + " TEXT NOT NULL, "
+							+ COLUMN_TILE + " BLOB, " + COLUMN_EXPIRES + " INTEGER, " + COLUMN_ETAG
+							+ " TEXT, " + COLUMN_LAST_MODIFIED + " TEXT, " + COLUMN_SAVED
+							+ " INTEGER, " + COLUMN_LAST_ACCESS + " INTEGER, PRIMARY KEY ("
+							+ COLUMN_KEY + ", " + COLUMN_PROVIDER + "))");
+					database.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_"
+							+ COLUMN_LAST_ACCESS + " ON " + TABLE + " (" + COLUMN_LAST_ACCESS
+							+ ")");
+					mDatabase = database;
+				} catch (final SQLiteException e) {
+					// no sdcard, try again later
+					//logger.warn("Error opening tile database", e);
+				}
+			}
+			return mDatabase;
+		}
+
+		private void writeBatch(final List<Write> pBatch) {
+			if (mPrevious != null) {
+				// only one connection writes to the file at a time
+				try {
+					mPrevious.mWriter.join(ONE_MINUTE);
+				} catch (final InterruptedException e) {
+					// closing, write anyway
+				}
+				mPrevious = null;
+			}
+			final SQLiteDatabase database = getDatabase();
+			if (database != null) {
+				write(database, pBatch);
+				if (mUsedCacheSpace < 0) {
+					mUsedCacheSpace = calculateUsedCacheSpace(database);
+				}
+				if (mUsedCacheSpace > TILE_MAX_CACHE_SIZE_BYTES) {
+					trim(database);
+				}
+			}
+			for (final Write write : pBatch) {
+				mPending.remove(getPendingKey(write.mProvider, write.mIndex), write);
+			}
+		}
+
+		private void closeDatabase() {
+			synchronized (this) {
+				if (mDatabase != null) {
+					mDatabase.close();
+					mDatabase = null;
+				}
+				mDatabaseClosed = true;
+			}
+			synchronized (sDatabases) {
+				if (sDatabases.get(mDatabaseFile) == this) {
+					sDatabases.remove(mDatabaseFile);
+				}
+			}
+		}
+
+		private void write(final SQLiteDatabase pDatabase, final List<Write> pBatch) {
+			try {
+				if (mInsertTile == null) {
+					mInsertTile = pDatabase.compileStatement("INSERT OR REPLACE INTO " + TABLE
+							+ " (" + COLUMN_KEY + "," + COLUMN_PROVIDER + "," + COLUMN_TILE + ","
+							+ COLUMN_EXPIRES + "," + COLUMN_ETAG + "," + COLUMN_LAST_MODIFIED + ","
+							+ COLUMN_SAVED + "," + COLUMN_LAST_ACCESS
+							+ ") VALUES (?,?,?,?,?,?,?,?)");
+					mUpdateMetadata = pDatabase.compileStatement("UPDATE " + TABLE + " SET "
+							+ COLUMN_EXPIRES + "=?," + COLUMN_ETAG + "=?," + COLUMN_LAST_MODIFIED
+							+ "=?," + COLUMN_SAVED + "=?," + COLUMN_LAST_ACCESS + "=? WHERE "
+							+ COLUMN_KEY + "=? AND " + COLUMN_PROVIDER + "=?");
+					mUpdateAccessTime = pDatabase.compileStatement("UPDATE " + TABLE + " SET "
+							+ COLUMN_LAST_ACCESS + "=? WHERE " + COLUMN_KEY + "=? AND "
+							+ COLUMN_PROVIDER + "=?");
+				}
+
+				pDatabase.beginTransaction();
+				try {
+					for (final Write write : pBatch) {
+						switch (write.mType) {
+						case WRITE_TILE:
+							mInsertTile.bindLong(1, write.mIndex);
+							mInsertTile.bindString(2, write.mProvider);
+							mInsertTile.bindBlob(3, write.mTile.mData);
+							bindMetadata(mInsertTile, 4, write.mTile.mMetadata);
+							mInsertTile.bindLong(7, write.mTile.mSaved);
+							mInsertTile.bindLong(8, write.mTime);
+							mInsertTile.executeInsert();
+							if (mUsedCacheSpace >= 0) {
+								mUsedCacheSpace += write.mTile.mData.length;
+							}
+							break;
+						case WRITE_METADATA:
+							bindMetadata(mUpdateMetadata, 1, write.mTile.mMetadata);
+							mUpdateMetadata.bindLong(4, write.mTile.mSaved);
+							mUpdateMetadata.bindLong(5, write.mTime);
+							mUpdateMetadata.bindLong(6, write.mIndex);
+							mUpdateMetadata.bindString(7, write.mProvider);
+							mUpdateMetadata.execute();
+							break;
+						case WRITE_ACCESS_TIME:
+							mUpdateAccessTime.bindLong(1, write.mTime);
+							mUpdateAccessTime.bindLong(2, write.mIndex);
+							mUpdateAccessTime.bindString(3, write.mProvider);
+							mUpdateAccessTime.execute();
+							break;
+						}
+					}
+					pDatabase.setTransactionSuccessful();
+				} finally {
+					pDatabase.endTransaction();
+				}
+			} catch (final SQLiteException e) {
+				//logger.warn("Error writing tiles", e);
+			}
+		}
+
+		/**
+		 * Delete the least recently used tiles until the cache is down to the trim size. The space
+		 * is reused by new tiles, the database file doesn't shrink.
+		 */
+		private void trim(final SQLiteDatabase pDatabase) {
+			//logger.info("Trimming tile cache from " + mUsedCacheSpace + " to "
+					//+ TILE_TRIM_CACHE_SIZE_BYTES);
+			try {
+				while (mUsedCacheSpace > TILE_TRIM_CACHE_SIZE_BYTES && !mWriter.isClosed()) {
+					final ArrayList<Long> rowIds = new ArrayList<Long>(TRIM_BATCH_SIZE);
+					long length = 0;
+					final Cursor cursor = pDatabase.rawQuery("SELECT rowid, LENGTH(" + COLUMN_TILE
+							+ ") FROM " + TABLE + " ORDER BY " + COLUMN_LAST_ACCESS + " LIMIT "
+							+ TRIM_BATCH_SIZE, null);
+					try {
+						while (cursor.moveToNext()
+								&& mUsedCacheSpace - length > TILE_TRIM_CACHE_SIZE_BYTES) {
+							rowIds.add(cursor.getLong(0));
+							length += cursor.getLong(1);
+						}
+					} finally {
+						cursor.close();
+					}
+					if (rowIds.isEmpty()) {
+						break;
+					}
+
+					final SQLiteStatement delete = pDatabase.compileStatement("DELETE FROM " + TABLE
+							+ " WHERE rowid=?");
+					pDatabase.beginTransaction();
+					try {
+						for (final Long rowId : rowIds) {
+							delete.bindLong(1, rowId);
+							delete.execute();
+						}
+						pDatabase.setTransactionSuccessful();
+					} finally {
+						pDatabase.endTransaction();
+						delete.close();
+					}
+					mUsedCacheSpace -= length;
+				}
+			} catch (final SQLiteException e) {
+				//logger.warn("Error trimming tile cache", e);
+			}
+			// replaced tiles were counted twice
+			mUsedCacheSpace = calculateUsedCacheSpace(pDatabase);
+		}
+	}
+
+	/**
+	 * Takes writes from a queue on a background thread and hands them on in batches of what has
+	 * queued up, so that each batch can go in one transaction. Once it's closed it refuses new
+	 * writes, hands on the ones that are still queued and then finishes.
+	 */
+	abstract static class BatchWriter<W> {
+
+		private final LinkedBlockingQueue<W> mQueue = new LinkedBlockingQueue<W>();
+		private final int mMaximumBatchSize;
+		private final Thread mThread;
+		private volatile boolean mClosed;
+
+		BatchWriter(final String pName, final int pMaximumBatchSize) {
+			mMaximumBatchSize = pMaximumBatchSize;
+			mThread = new Thread(pName) {
+				@Override
+				public void run() {
+					writeLoop();
+				}
+			};
+			mThread.setPriority(Thread.MIN_PRIORITY);
+		}
+
+		void start() {
+			mThread.start();
+		}
+
+		/**
+		 * Write a batch of at most the maximum batch size, on the writer thread.
+		 */
+		abstract void write(List<W> pBatch);
+
+		/**
+		 * Called on the writer thread once everything that was queued has been written.
+		 */
+		abstract void finish();
+
+		/**
+		 * @return whether the write was queued, false if the writer is closed
+		 */
+		boolean offer(final W pWrite) {
+			if (mClosed) {
+				return false;
+			}
+			mQueue.offer(pWrite);
+			return true;
+		}
+
+		boolean isClosed() {
+			return mClosed;
+		}
+
+		void close() {
+			mClosed = true;
+			mThread.interrupt();
+		}
+
+		/**
+		 * Wait for the writer thread to finish after {@link #close()}.
+		 *
+		 * @return whether it finished in time
+		 */
+		boolean join(final long pMillis) throws InterruptedException {
+			mThread.join(pMillis);
+			return !mThread.isAlive();
+		}
+
+		private void writeLoop() {
+			final ArrayList<W> batch = new ArrayList<W>(mMaximumBatchSize);
+			while (true) {
+				try {
+					if (mClosed) {
+						// write what's left without waiting
+						if (mQueue.isEmpty()) {
+							break;
+						}
+					} else {
+						batch.add(mQueue.take());
+					}
+				} catch (final InterruptedException e) {
+					continue;
+				}
+				mQueue.drainTo(batch, mMaximumBatchSize - batch.size());
+				try {
+					write(batch);
+				} catch (final RuntimeException e) {
+					//logger.warn("Error writing batch", e);
+				}
+				batch.clear();
+			}
+			finish();
+		}
+	}
+
+	private static class Write {
+		final int mType;
+		final String mProvider;
+		final long mIndex;
+		final CachedTile mTile;
+		final long mTime;
+
+		Write(final int pType, final String pProvider, final long pIndex, final CachedTile pTile,
+				final long pTime) {
+			mType = pType;
+			mProvider = pProvider;
+			mIndex = pIndex;
+			mTile = pTile;
+			mTime = pTime;
+		}
+	}
+}
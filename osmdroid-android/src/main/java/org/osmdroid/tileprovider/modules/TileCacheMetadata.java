@@ -0,0 +1,262 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.osmdroid.tileprovider.util.StreamUtils;
+
+/**
+ * The HTTP caching information of a cached tile: when it expires and the validators that are
+ * needed to revalidate it with a conditional request once it has. It's stored next to the tile in
+ * the file system cache, in a small text file with the {@link #FILE_EXTENSION} extension.
+ */
+public class TileCacheMetadata {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Appended to the file name of a tile to get the file name of its metadata */
+	public static final String FILE_EXTENSION = ".meta";
+
+	/** The tile doesn't say when it expires, the cache's default maximum age applies */
+	public static final long EXPIRES_UNKNOWN = 0;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final long mExpires;
+	private final String mETag;
+	private final String mLastModified;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pExpires
+	 *            the time in milliseconds when the tile expires, or {@link #EXPIRES_UNKNOWN}
+	 * @param pETag
+	 *            the value of the ETag header, or null
+	 * @param pLastModified
+	 *            the value of the Last-Modified header, or null
+	 */
+	public TileCacheMetadata(final long pExpires, final String pETag, final String pLastModified) {
+		mExpires = pExpires;
+		mETag = pETag;
+		mLastModified = pLastModified;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public long getExpires() {
+		return mExpires;
+	}
+
+	public String getETag() {
+		return mETag;
+	}
+
+	public String getLastModified() {
+		return mLastModified;
+	}
+
+	/**
+	 * Whether the tile can be revalidated with a conditional request.
+	 */
+	public boolean hasValidators() {
+		return mETag != null || mLastModified != null;
+	}
+
+	/**
+	 * Whether there's nothing worth storing: no expiry time and no validators.
+	 */
+	public boolean isEmpty() {
+		return mExpires == EXPIRES_UNKNOWN && !hasValidators();
+	}
+
+	/**
+	 * @param pLastSaved
+	 *            the time in milliseconds when the tile was saved or last revalidated, used with
+	 *            the default maximum age if the tile doesn't say when it expires
+	 * @param pDefaultMaximumAge
+	 *            the default maximum age in milliseconds
+	 */
+	public boolean isExpired(final long pNow, final long pLastSaved, final long pDefaultMaximumAge) {
+		if (mExpires == EXPIRES_UNKNOWN) {
+			return pLastSaved < pNow - pDefaultMaximumAge;
+		}
+		return mExpires <= pNow;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Add the If-None-Match and If-Modified-Since headers that revalidate this tile.
+	 */
+	public void addConditionalHeaders(final HttpRequest pRequest) {
+		if (mETag != null) {
+			pRequest.addHeader("If-None-Match", mETag);
+		}
+		if (mLastModified != null) {
+			pRequest.addHeader("If-Modified-Since", mLastModified);
+		}
+	}
+
+	/**
+	 * Get the caching information from the headers of a response. The expiry time is taken from
+	 * the Cache-Control max-age directive, or else from the Expires header. If the response has
+	 * neither, the default maximum age applies from now on, even to a 304 response: the previous
+	 * expiry time has passed, and keeping it would revalidate the tile every time it's shown.
+	 *
+	 * @param pResponse
+	 *            a 200 response, or a 304 response to a conditional request
+	 * @param pPrevious
+	 *            the metadata that was revalidated, whose validators are kept if the 304 response
+	 *            doesn't repeat them, or null
+	 * @param pNow
+	 *            the current time in milliseconds
+	 */
+	public static TileCacheMetadata fromResponse(final HttpResponse pResponse,
+			final TileCacheMetadata pPrevious, final long pNow) {
+		long expires = EXPIRES_UNKNOWN;
+		final long maxAge = getMaxAge(pResponse);
+		if (maxAge >= 0) {
+			expires = pNow + maxAge;
+		} else {
+			final Header header = pResponse.getFirstHeader("Expires");
+			if (header != null) {
+				try {
+					expires = DateUtils.parseDate(header.getValue()).getTime();
+				} catch (final DateParseException e) {
+					// invalid dates (like "0") mean already expired
+					expires = pNow;
+				}
+			}
+		}
+
+		String eTag = getHeaderValue(pResponse, "ETag");
+		String lastModified = getHeaderValue(pResponse, "Last-Modified");
+		if (pPrevious != null) {
+			if (eTag == null) {
+				eTag = pPrevious.mETag;
+			}
+			if (lastModified == null) {
+				lastModified = pPrevious.mLastModified;
+			}
+		}
+		return new TileCacheMetadata(expires, eTag, lastModified);
+	}
+
+	/**
+	 * @return the max-age in milliseconds, zero if the response mustn't be used without
+	 *         revalidation, or -1 if the response doesn't specify it
+	 */
+	private static long getMaxAge(final HttpResponse pResponse) {
+		long maxAge = -1;
+		for (final Header header : pResponse.getHeaders("Cache-Control")) {
+			for (final HeaderElement element : header.getElements()) {
+				final String name = element.getName();
+				if ("no-cache".equalsIgnoreCase(name) || "no-store".equalsIgnoreCase(name)) {
+					return 0;
+				}
+				if ("max-age".equalsIgnoreCase(name) && element.getValue() != null) {
+					try {
+						maxAge = Math.max(0, Long.parseLong(element.getValue().trim())) * 1000;
+					} catch (final NumberFormatException ignore) {
+					}
+				}
+			}
+		}
+		return maxAge;
+	}
+
+	private static String getHeaderValue(final HttpResponse pResponse, final String pName) {
+		final Header header = pResponse.getFirstHeader(pName);
+		return header != null ? header.getValue() : null;
+	}
+
+	/**
+	 * Get the file that holds the metadata of a tile file.
+	 */
+	public static File getFile(final File pTileFile) {
+		return new File(pTileFile.getPath() + FILE_EXTENSION);
+	}
+
+	/**
+	 * Read the metadata of a tile file.
+	 *
+	 * @return the metadata, or null if there isn't any
+	 */
+	public static TileCacheMetadata read(final File pTileFile) {
+		final File file = getFile(pTileFile);
+		// tiles cached without any, or before there was metadata, have no file, and checking
+		// for it is cheaper than failing to open it
+		if (!file.exists()) {
+			return null;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(file), 256);
+			final long expires = Long.parseLong(reader.readLine());
+			return new TileCacheMetadata(expires, emptyToNull(reader.readLine()),
+					emptyToNull(reader.readLine()));
+		} catch (final IOException e) {
+			return null;
+		} catch (final NumberFormatException e) {
+			return null;
+		} finally {
+			StreamUtils.closeStream(reader);
+		}
+	}
+
+	/**
+	 * Write the metadata of a tile file.
+	 *
+	 * @return the number of bytes written, or -1 if it failed
+	 */
+	public long write(final File pTileFile) {
+		final String contents = mExpires + "\n" + nullToEmpty(mETag) + "\n"
+				+ nullToEmpty(mLastModified) + "\n";
+		Writer writer = null;
+		try {
+			writer = new FileWriter(getFile(pTileFile));
+			writer.write(contents);
+		} catch (final IOException e) {
+			return -1;
+		} finally {
+			StreamUtils.closeStream(writer);
+		}
+		return contents.length();
+	}
+
+	private static String emptyToNull(final String pString) {
+		return pString == null || pString.length() == 0 ? null : pString;
+	}
+
+	private static String nullToEmpty(final String pString) {
+		return pString == null ? "" : pString;
+	}
+
+	@Override
+	public String toString() {
+		return "TileCacheMetadata [expires=" + new Date(mExpires) + ", eTag=" + mETag
+				+ ", lastModified=" + mLastModified + "]";
+	}
+}
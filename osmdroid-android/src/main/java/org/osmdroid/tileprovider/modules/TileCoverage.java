@@ -0,0 +1,235 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.osmdroid.tileprovider.MapTile;
+
+/**
+ * The tiles that an archive holds, as sorted runs of {@link MapTile#getKey()} keys. The keys of
+ * the tiles of a column at one zoom level follow each other, so an archive that covers a region
+ * has one run per column and zoom level: a few thousand runs even for a large region. Looking up a
+ * tile checks its zoom level against a bit mask and then does a binary search over the runs,
+ * without touching the archive.
+ */
+public class TileCoverage {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	public static final TileCoverage EMPTY = new TileCoverage(new long[0], new long[0]);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** The first key of each run, sorted, and the last key of the same run */
+	private final long[] mStarts;
+	private final long[] mEnds;
+
+	/** Bit z is set if there are tiles at zoom level z */
+	private final long mZoomLevels;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	private TileCoverage(final long[] pStarts, final long[] pEnds) {
+		mStarts = pStarts;
+		mEnds = pEnds;
+		long zoomLevels = 0;
+		for (final long start : pStarts) {
+			zoomLevels |= 1L << MapTile.getZoomLevel(start);
+		}
+		mZoomLevels = zoomLevels;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getRunCount() {
+		return mStarts.length;
+	}
+
+	public long getRunStart(final int pRun) {
+		return mStarts[pRun];
+	}
+
+	public long getRunEnd(final int pRun) {
+		return mEnds[pRun];
+	}
+
+	public long getTileCount() {
+		long count = 0;
+		for (int i = 0; i < mStarts.length; i++) {
+			count += mEnds[i] - mStarts[i] + 1;
+		}
+		return count;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	public boolean contains(final MapTile pTile) {
+		return contains(pTile.getZoomLevel(), pTile.getX(), pTile.getY());
+	}
+
+	public boolean contains(final int pZoomLevel, final int pX, final int pY) {
+		if (pZoomLevel < 0 || pZoomLevel >= 64 || (mZoomLevels >>> pZoomLevel & 1) == 0
+				|| pX < 0 || pY < 0) {
+			return false;
+		}
+		return contains(MapTile.getKey(pZoomLevel, pX, pY));
+	}
+
+	/**
+	 * @param pKey
+	 *            the key of a tile, see {@link MapTile#getKey(int, int, int)}
+	 */
+	public boolean contains(final long pKey) {
+		int run = Arrays.binarySearch(mStarts, pKey);
+		if (run >= 0) {
+			return true;
+		}
+		// the run that starts before the key
+		run = -run - 2;
+		return run >= 0 && pKey <= mEnds[run];
+	}
+
+	public void write(final DataOutput pOut) throws IOException {
+		pOut.writeInt(mStarts.length);
+		for (int i = 0; i < mStarts.length; i++) {
+			pOut.writeLong(mStarts[i]);
+			pOut.writeLong(mEnds[i]);
+		}
+	}
+
+	/**
+	 * Read a coverage that {@link #write(DataOutput)} wrote.
+	 */
+	public static TileCoverage read(final DataInput pIn) throws IOException {
+		final int count = pIn.readInt();
+		if (count < 0) {
+			throw new IOException("Invalid run count: " + count);
+		}
+		final long[] starts = new long[count];
+		final long[] ends = new long[count];
+		for (int i = 0; i < count; i++) {
+			starts[i] = pIn.readLong();
+			ends[i] = pIn.readLong();
+			if (ends[i] < starts[i] || (i > 0 && starts[i] <= ends[i - 1])) {
+				throw new IOException("Invalid run: " + i);
+			}
+		}
+		return new TileCoverage(starts, ends);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * Collects the tiles of an archive in any order. Tiles that are added in the order of their
+	 * keys, as a scan of most archives returns them, are merged into runs as they're added. The
+	 * others are merged whenever the arrays fill up, so the builder holds about as many runs as
+	 * the tiles so far make up rather than one per tile. A scan by row, for instance, never holds
+	 * many more than one run per column.
+	 */
+	public static class Builder {
+
+		private long[] mStarts = new long[64];
+		private long[] mEnds = new long[64];
+		private int mSize;
+
+		public Builder add(final int pZoomLevel, final int pX, final int pY) {
+			final long key = MapTile.getKey(pZoomLevel, pX, pY);
+			if (mSize > 0 && mEnds[mSize - 1] + 1 == key) {
+				mEnds[mSize - 1] = key;
+			} else if (mSize > 0 && mStarts[mSize - 1] - 1 == key) {
+				mStarts[mSize - 1] = key;
+			} else {
+				addRun(key, key);
+			}
+			return this;
+		}
+
+		/**
+		 * Add the tiles from pXMin to pXMax and from pYMin to pYMax, inclusive.
+		 */
+		public Builder addRange(final int pZoomLevel, final int pXMin, final int pYMin,
+				final int pXMax, final int pYMax) {
+			for (int x = pXMin; x <= pXMax; x++) {
+				addRun(MapTile.getKey(pZoomLevel, x, pYMin), MapTile.getKey(pZoomLevel, x, pYMax));
+			}
+			return this;
+		}
+
+		private void addRun(final long pStart, final long pEnd) {
+			if (mSize == mStarts.length) {
+				merge();
+				// grow only if merging didn't free half of the arrays, so merging stays amortized
+				if (mSize > mStarts.length / 2) {
+					final long[] starts = new long[mStarts.length * 2];
+					final long[] ends = new long[mStarts.length * 2];
+					System.arraycopy(mStarts, 0, starts, 0, mSize);
+					System.arraycopy(mEnds, 0, ends, 0, mSize);
+					mStarts = starts;
+					mEnds = ends;
+				}
+			}
+			mStarts[mSize] = pStart;
+			mEnds[mSize] = pEnd;
+			mSize++;
+		}
+
+		/**
+		 * Merge the runs that overlap or touch. Sorting the starts and the ends separately keeps
+		 * their pairing right for the union: there's a gap after the i-th end exactly when the
+		 * next start is past it.
+		 */
+		private void merge() {
+			if (mSize == 0) {
+				return;
+			}
+			Arrays.sort(mStarts, 0, mSize);
+			Arrays.sort(mEnds, 0, mSize);
+
+			int count = 0;
+			long start = mStarts[0];
+			for (int i = 0; i < mSize; i++) {
+				if (i + 1 < mSize && mStarts[i + 1] <= mEnds[i] + 1) {
+					continue;
+				}
+				mStarts[count] = start;
+				mEnds[count] = mEnds[i];
+				count++;
+				if (i + 1 < mSize) {
+					start = mStarts[i + 1];
+				}
+			}
+			mSize = count;
+		}
+
+		/** The number of runs that the builder has room for */
+		int getCapacity() {
+			return mStarts.length;
+		}
+
+		public TileCoverage build() {
+			if (mSize == 0) {
+				return EMPTY;
+			}
+			merge();
+			final long[] starts = new long[mSize];
+			final long[] ends = new long[mSize];
+			System.arraycopy(mStarts, 0, starts, 0, mSize);
+			System.arraycopy(mEnds, 0, ends, 0, mSize);
+			return new TileCoverage(starts, ends);
+		}
+	}
+}
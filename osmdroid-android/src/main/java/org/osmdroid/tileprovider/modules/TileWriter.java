@@ -1,15 +1,24 @@
 package org.osmdroid.tileprovider.modules;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
@@ -20,7 +29,13 @@ import org.osmdroid.tileprovider.util.StreamUtils;
 
 /**
  * An implementation of {@link IFilesystemCache}. It writes tiles to the file system cache. If the
- * cache exceeds 600 Mb then it will be trimmed to 500 Mb.
+ * cache exceeds 600 Mb then it will be trimmed to 500 Mb.<br />
+ * <br />
+ * The size of the cache is kept in a journal file, so it only has to be calculated by walking the
+ * tile tree the first time and then, when the cache is opened, if the tree hasn't been walked for
+ * a week (to notice tiles that were deleted by someone else). Trimming runs on a low priority
+ * background thread and deletes the least recently used tiles in batches, so that it never holds
+ * up a download.
  *
  * @author Neil Boyd
  *
@@ -33,12 +48,42 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 
 	//private static final Logger logger = LoggerFactory.getLogger(TileWriter.class);
 
+	/** Name of the file in {@link #TILE_PATH_BASE} that records the size of the cache */
+	public static final String JOURNAL_FILE_NAME = "cache.size";
+
+	/** Recalculate the size when the tile tree hasn't been walked for this long */
+	private static final long JOURNAL_MAXIMUM_AGE = ONE_WEEK;
+
+	/** Write the journal when the size has changed by this much since it was last written */
+	private static final long JOURNAL_WRITE_INTERVAL_BYTES = 1024 * 1024;
+
+	/** The maximum number of tiles deleted by a pass of the trimmer */
+	private static final int TRIM_BATCH_SIZE = 4096;
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
 
 	/** amount of disk space used by tile cache **/
-	private static long mUsedCacheSpace;
+	private static final AtomicLong mUsedCacheSpace = new AtomicLong();
+
+	/** the size that was last written to the journal **/
+	private static final AtomicLong mJournalCacheSpace = new AtomicLong();
+
+	/** only used on the background thread **/
+	private static final CacheJournal mJournal = new CacheJournal(new File(TILE_PATH_BASE,
+			JOURNAL_FILE_NAME));
+
+	/** whether the size is known, either from the journal or by walking the tile tree **/
+	private static volatile boolean mUsedCacheSpaceKnown;
+
+	private static final AtomicBoolean mTrimScheduled = new AtomicBoolean();
+	private static final AtomicBoolean mJournalScheduled = new AtomicBoolean();
+
+	/** runs the initialisation, trimming and journal writes one at a time **/
+	private static final ExecutorService mExecutor = new ThreadPoolExecutor(0, 1, ONE_MINUTE,
+			TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ConfigurablePriorityThreadFactory(Thread.MIN_PRIORITY, "TileWriter"));
 
 	// ===========================================================
 	// Constructors
@@ -46,22 +91,20 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 
 	public TileWriter() {
 
-		// do this in the background because it takes a long time
-		final Thread t = new Thread() {
-			
+		// do this in the background because it may take a long time
+		mExecutor.execute(new Runnable() {
 			public void run() {
-				mUsedCacheSpace = 0; // because it's static
-				calculateDirectorySize(TILE_PATH_BASE);
-				if (mUsedCacheSpace > TILE_MAX_CACHE_SIZE_BYTES) {
+				if (!mUsedCacheSpaceKnown) {
+					initialiseUsedCacheSpace();
+				}
+				if (mUsedCacheSpace.get() > TILE_MAX_CACHE_SIZE_BYTES) {
 					cutCurrentCache();
 				}
 				if (DEBUGMODE) {
 					//logger.debug("Finished init thread");
 				}
 			}
-		};
-		t.setPriority(Thread.MIN_PRIORITY);
-		t.start();
+		});
 	}
 
 	// ===========================================================
@@ -69,13 +112,13 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 	// ===========================================================
 
 	/**
-	 * Get the amount of disk space used by the tile cache. This will initially be zero since the
-	 * used space is calculated in the background.
+	 * Get the amount of disk space used by the tile cache. This may initially be zero since the
+	 * used space is read or calculated in the background.
 	 *
 	 * @return size in bytes
 	 */
 	public static long getUsedCacheSpace() {
-		return mUsedCacheSpace;
+		return mUsedCacheSpace.get();
 	}
 
 	// ===========================================================
@@ -85,25 +128,37 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 	
 	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
 			final InputStream pStream) {
+		return saveFile(pTileSource, pTile, pStream, null);
+	}
 
-		final File file = new File(TILE_PATH_BASE, pTileSource.getTileRelativeFilenameString(pTile)
-				+ TILE_PATH_EXTENSION);
+	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final InputStream pStream, final TileCacheMetadata pMetadata) {
+
+		final File file = getFile(pTileSource, pTile);
 
 		final File parent = file.getParentFile();
 		if (!parent.exists() && !createFolderAndCheckIfExists(parent)) {
 			return false;
 		}
 
+		// the tile may be replacing an earlier version
+		final File metadataFile = TileCacheMetadata.getFile(file);
+		final long previousLength = file.length() + metadataFile.length();
+
 		BufferedOutputStream outputStream = null;
 		try {
 			outputStream = new BufferedOutputStream(new FileOutputStream(file.getPath()),
 					StreamUtils.IO_BUFFER_SIZE);
-			final long length = StreamUtils.copy(pStream, outputStream);
+			long length = StreamUtils.copy(pStream, outputStream);
 
-			mUsedCacheSpace += length;
-			if (mUsedCacheSpace > TILE_MAX_CACHE_SIZE_BYTES) {
-				cutCurrentCache(); // TODO perhaps we should do this in the background
+			// the metadata of the previous version of the tile doesn't apply any more
+			if (pMetadata != null && !pMetadata.isEmpty()) {
+				length += Math.max(0, pMetadata.write(file));
+			} else {
+				metadataFile.delete();
 			}
+
+			onCacheSpaceChanged(length - previousLength);
 		} catch (final IOException e) {
 			return false;
 		} finally {
@@ -114,10 +169,37 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 		return true;
 	}
 
+	public TileCacheMetadata getMetadata(final ITileSource pTileSource, final MapTile pTile) {
+		final File file = getFile(pTileSource, pTile);
+		return file.exists() ? TileCacheMetadata.read(file) : null;
+	}
+
+	public boolean updateMetadata(final ITileSource pTileSource, final MapTile pTile,
+			final TileCacheMetadata pMetadata) {
+		final File file = getFile(pTileSource, pTile);
+		if (!file.exists()) {
+			return false;
+		}
+		final long previousLength = TileCacheMetadata.getFile(file).length();
+		final long length = pMetadata.write(file);
+		if (length < 0) {
+			return false;
+		}
+		onCacheSpaceChanged(length - previousLength);
+		// the tile has been used recently, keep it when trimming
+		file.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
 	// ===========================================================
 	// Methods
 	// ===========================================================
 
+	private File getFile(final ITileSource pTileSource, final MapTile pTile) {
+		return new File(TILE_PATH_BASE, pTileSource.getTileRelativeFilenameString(pTile)
+				+ TILE_PATH_EXTENSION);
+	}
+
 	private boolean createFolderAndCheckIfExists(final File pFile) {
 		if (pFile.mkdirs()) {
 			return true;
@@ -145,18 +227,75 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 		}
 	}
 
-	private void calculateDirectorySize(final File pDirectory) {
+	private static void onCacheSpaceChanged(final long pDelta) {
+		final long used = mUsedCacheSpace.addAndGet(pDelta);
+		if (!mUsedCacheSpaceKnown) {
+			return;
+		}
+		if (used > TILE_MAX_CACHE_SIZE_BYTES) {
+			if (mTrimScheduled.compareAndSet(false, true)) {
+				mExecutor.execute(new Runnable() {
+					public void run() {
+						mTrimScheduled.set(false);
+						cutCurrentCache();
+					}
+				});
+			}
+		} else if (Math.abs(used - mJournalCacheSpace.get()) >= JOURNAL_WRITE_INTERVAL_BYTES) {
+			if (mJournalScheduled.compareAndSet(false, true)) {
+				mExecutor.execute(new Runnable() {
+					public void run() {
+						mJournalScheduled.set(false);
+						writeJournal(false);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Read the size of the cache from the journal, or calculate it if the journal is missing or the
+	 * tile tree was last walked too long ago. Sizes recorded by other threads in the meantime are
+	 * kept.
+	 */
+	private static void initialiseUsedCacheSpace() {
+		final long size = mJournal.read(System.currentTimeMillis(), JOURNAL_MAXIMUM_AGE);
+		if (size < 0) {
+			mUsedCacheSpace.addAndGet(calculateDirectorySize(TILE_PATH_BASE));
+			mUsedCacheSpaceKnown = true;
+			writeJournal(true);
+		} else {
+			mUsedCacheSpace.addAndGet(size);
+			mJournalCacheSpace.set(size);
+			mUsedCacheSpaceKnown = true;
+		}
+	}
+
+	/**
+	 * @param pScanned
+	 *            whether the size was just corrected by walking the tile tree
+	 */
+	private static void writeJournal(final boolean pScanned) {
+		final long size = mUsedCacheSpace.get();
+		if (mJournal.write(size, pScanned ? System.currentTimeMillis() : -1)) {
+			mJournalCacheSpace.set(size);
+		}
+	}
+
+	private static long calculateDirectorySize(final File pDirectory) {
+		long size = 0;
 		final File[] z = pDirectory.listFiles();
 		if (z != null) {
 			for (final File file : z) {
 				if (file.isFile()) {
-					mUsedCacheSpace += file.length();
+					size += file.length();
 				}
 				if (file.isDirectory() && !isSymbolicDirectoryLink(pDirectory, file)) {
-					calculateDirectorySize(file); // *** recurse ***
+					size += calculateDirectorySize(file); // *** recurse ***
 				}
 			}
 		}
+		return size;
 	}
 
 	/**
@@ -167,7 +306,8 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 	 * return "true" expecting the calculateDirectorySize to now skip further processing since
 	 * something went goofy.
 	 */
-	private boolean isSymbolicDirectoryLink(final File pParentDirectory, final File pDirectory) {
+	private static boolean isSymbolicDirectoryLink(final File pParentDirectory,
+			final File pDirectory) {
 		try {
 			final String canonicalParentPath1 = pParentDirectory.getCanonicalPath();
 			final String canonicalParentPath2 = pDirectory.getCanonicalFile().getParent();
@@ -182,62 +322,177 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 
 	}
 
-	private List<File> getDirectoryFileList(final File aDirectory) {
-		final List<File> files = new ArrayList<File>();
-
-		final File[] z = aDirectory.listFiles();
+	/**
+	 * Walk the tile tree, adding up the size of the files and keeping the least recently used
+	 * tiles in a heap whose head is the most recently used of them.
+	 *
+	 * @return the size of the files in the directory
+	 */
+	private static long findOldestFiles(final File pDirectory,
+			final PriorityQueue<CachedFile> pOldest) {
+		long size = 0;
+		final File[] z = pDirectory.listFiles();
 		if (z != null) {
 			for (final File file : z) {
 				if (file.isFile()) {
-					files.add(file);
+					size += file.length();
+					// metadata files are deleted together with their tile
+					final String name = file.getName();
+					if (name.endsWith(TileCacheMetadata.FILE_EXTENSION)
+							|| name.equals(JOURNAL_FILE_NAME)) {
+						continue;
+					}
+					final long lastModified = file.lastModified();
+					if (pOldest.size() < TRIM_BATCH_SIZE) {
+						pOldest.add(new CachedFile(file, lastModified));
+					} else if (lastModified < pOldest.peek().mLastModified) {
+						pOldest.poll();
+						pOldest.add(new CachedFile(file, lastModified));
+					}
 				}
-				if (file.isDirectory()) {
-					files.addAll(getDirectoryFileList(file));
+				if (file.isDirectory() && !isSymbolicDirectoryLink(pDirectory, file)) {
+					size += findOldestFiles(file, pOldest); // *** recurse ***
 				}
 			}
 		}
-
-		return files;
+		return size;
 	}
 
 	/**
-	 * If the cache size is greater than the max then trim it down to the trim level. This method is
-	 * synchronized so that only one thread can run it at a time.
+	 * If the cache size is greater than the trim level then delete the least recently used tiles
+	 * until it isn't. Each pass walks the tile tree once, corrects the recorded size and deletes
+	 * at most {@link #TRIM_BATCH_SIZE} tiles. Only runs on the background thread.
 	 */
-	private void cutCurrentCache() {
+	private static void cutCurrentCache() {
+
+		boolean scanned = false;
+		while (mUsedCacheSpace.get() > TILE_TRIM_CACHE_SIZE_BYTES) {
+
+			//logger.info("Trimming tile cache from " + mUsedCacheSpace + " to "
+					//+ TILE_TRIM_CACHE_SIZE_BYTES);
+
+			final PriorityQueue<CachedFile> oldest = new PriorityQueue<CachedFile>(
+					TRIM_BATCH_SIZE, NEWEST_FIRST);
+			final long before = mUsedCacheSpace.get();
+			final long size = findOldestFiles(TILE_PATH_BASE, oldest);
+			scanned = true;
+
+			long deleted = 0;
+			final long excess = size - TILE_TRIM_CACHE_SIZE_BYTES;
+			// delete from the oldest to the newest
+			final CachedFile[] files = oldest.toArray(new CachedFile[oldest.size()]);
+			Arrays.sort(files, NEWEST_FIRST);
+			for (int i = files.length - 1; i >= 0 && deleted < excess; i--) {
+				final File file = files[i].mFile;
+				final long length = file.length();
+				if (file.delete()) {
+					deleted += length;
+				}
+				final File metadataFile = TileCacheMetadata.getFile(file);
+				final long metadataLength = metadataFile.length();
+				if (metadataFile.delete()) {
+					deleted += metadataLength;
+				}
+			}
 
-		synchronized (TILE_PATH_BASE) {
+			// the walk gives the real size, plus whatever was saved while walking
+			mUsedCacheSpace.addAndGet(size - deleted - before);
 
-			if (mUsedCacheSpace > TILE_TRIM_CACHE_SIZE_BYTES) {
+			if (deleted == 0) {
+				break;
+			}
+		}
+		writeJournal(scanned);
 
-				//logger.info("Trimming tile cache from " + mUsedCacheSpace + " to "
-						//+ TILE_TRIM_CACHE_SIZE_BYTES);
+		//logger.info("Finished trimming tile cache");
+	}
 
-				final List<File> z = getDirectoryFileList(TILE_PATH_BASE);
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
 
-				// order list by files day created from old to new
-				final File[] files = z.toArray(new File[0]);
-				Arrays.sort(files, new Comparator<File>() {
-					
-					public int compare(final File f1, final File f2) {
-						return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
-					}
-				});
+	/**
+	 * The journal file, with the size of the cache on the first line and the time the tile tree was
+	 * last walked on the second. The file is rewritten whenever the size has changed enough, so its
+	 * own age doesn't tell when the size was last checked.
+	 */
+	static final class CacheJournal {
 
-				for (final File file : files) {
-					if (mUsedCacheSpace <= TILE_TRIM_CACHE_SIZE_BYTES) {
-						break;
-					}
+		private final File mFile;
 
-					final long length = file.length();
-					if (file.delete()) {
-						mUsedCacheSpace -= length;
-					}
-				}
+		/** when the tile tree was last walked, or -1 if that isn't known **/
+		private long mScanTime = -1;
 
-				//logger.info("Finished trimming tile cache");
+		CacheJournal(final File pFile) {
+			mFile = pFile;
+		}
+
+		/**
+		 * @return the size in the journal, or -1 if it is missing, unreadable or the tile tree was
+		 *         last walked more than pMaximumAge before pNow
+		 */
+		long read(final long pNow, final long pMaximumAge) {
+			BufferedReader reader = null;
+			try {
+				reader = new BufferedReader(new FileReader(mFile), 64);
+				final long size = Long.parseLong(reader.readLine().trim());
+				final long scanTime = Long.parseLong(reader.readLine().trim());
+				mScanTime = scanTime;
+				return scanTime > pNow - pMaximumAge ? size : -1;
+			} catch (final IOException e) {
+				return -1;
+			} catch (final NumberFormatException e) {
+				return -1;
+			} catch (final NullPointerException e) {
+				// empty journal, or one without the scan time
+				return -1;
+			} finally {
+				StreamUtils.closeStream(reader);
 			}
 		}
+
+		/**
+		 * @param pScanTime
+		 *            when the tile tree was walked to get the size, or -1 to keep the time that is
+		 *            in the journal
+		 * @return whether the journal was written
+		 */
+		boolean write(final long pSize, final long pScanTime) {
+			if (pScanTime >= 0) {
+				mScanTime = pScanTime;
+			}
+			if (!mFile.getParentFile().exists()) {
+				return false;
+			}
+			Writer writer = null;
+			try {
+				writer = new FileWriter(mFile);
+				writer.write(pSize + "\n" + mScanTime);
+				return true;
+			} catch (final IOException e) {
+				//logger.warn("Error writing the cache size journal", e);
+				return false;
+			} finally {
+				StreamUtils.closeStream(writer);
+			}
+		}
+	}
+
+	private static class CachedFile {
+		final File mFile;
+		final long mLastModified;
+
+		CachedFile(final File pFile, final long pLastModified) {
+			mFile = pFile;
+			mLastModified = pLastModified;
+		}
 	}
 
+	private static final Comparator<CachedFile> NEWEST_FIRST = new Comparator<CachedFile>() {
+		public int compare(final CachedFile lhs, final CachedFile rhs) {
+			return lhs.mLastModified < rhs.mLastModified ? 1
+					: (lhs.mLastModified == rhs.mLastModified ? 0 : -1);
+		}
+	};
+
 }
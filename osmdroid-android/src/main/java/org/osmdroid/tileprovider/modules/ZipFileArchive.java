@@ -3,36 +3,90 @@ package org.osmdroid.tileprovider.modules;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.MappedZipFile;
 //////import org.slf4j.Logger;
 //////import org.slf4j.LoggerFactory;
 
-public class ZipFileArchive implements IArchiveFile {
+public class ZipFileArchive extends ArchiveFileBase {
 
 	//private static final Logger logger = LoggerFactory.getLogger(ZipFileArchive.class);
 
-	private final ZipFile mZipFile;
+	private final File mFile;
 
-	private ZipFileArchive(final ZipFile pZipFile) {
-		mZipFile = pZipFile;
+	/** The mapped file, whose index of the central directory is also the coverage */
+	private final MappedZipFile mZipFile;
+
+	/** The index of each tile source as a coverage, built the first time it's asked for */
+	private final ConcurrentHashMap<String, TileCoverage> mCoverages =
+			new ConcurrentHashMap<String, TileCoverage>();
+
+	/** The tile source that was looked up last, with its name in the index */
+	private volatile SourceName mSourceName;
+
+	/** For tile sources whose tiles aren't named like {@link MappedZipFile} expects */
+	private ZipFile mFallbackZipFile;
+
+	private ZipFileArchive(final File pFile) throws IOException {
+		mFile = pFile;
+		mZipFile = new MappedZipFile(pFile);
 	}
 
 	public static ZipFileArchive getZipFileArchive(final File pFile) throws ZipException, IOException {
-		return new ZipFileArchive(new ZipFile(pFile));
+		return new ZipFileArchive(pFile);
+	}
+
+	/**
+	 * @return the name of the tile source in the index, or null if its tiles aren't named the
+	 *         way {@link MappedZipFile#parseTile(String, int[])} expects
+	 */
+	private String getSourceName(final ITileSource pTileSource) {
+		// an archive is nearly always asked about the same tile source, so the name is only
+		// worked out again when the tile source changes
+		SourceName sourceName = mSourceName;
+		if (sourceName == null || sourceName.mTileSource != pTileSource) {
+			sourceName = new SourceName(pTileSource, parseSourceName(pTileSource));
+			mSourceName = sourceName;
+		}
+		return sourceName.mName;
+	}
+
+	private static String parseSourceName(final ITileSource pTileSource) {
+		final int[] zxy = new int[3];
+		final String name = MappedZipFile.parseTile(
+				pTileSource.getTileRelativeFilenameString(new MapTile(0, 0, 0)), zxy);
+		return zxy[0] == 0 && zxy[1] == 0 && zxy[2] == 0 ? name : null;
+	}
+
+	private synchronized ZipFile getFallbackZipFile() throws IOException {
+		if (mFallbackZipFile == null) {
+			mFallbackZipFile = new ZipFile(mFile);
+		}
+		return mFallbackZipFile;
 	}
 
 	
 	public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
+		final String name = getSourceName(pTileSource);
+		if (name != null) {
+			// a binary search of the index, and stored tiles are read from the mapped file
+			return mZipFile.getInputStream(name, pTile.getZoomLevel(), pTile.getX(), pTile.getY());
+		}
+
 		final String path = pTileSource.getTileRelativeFilenameString(pTile);
 		try {
-			final ZipEntry entry = mZipFile.getEntry(path);
+			final ZipFile zipFile = getFallbackZipFile();
+			final ZipEntry entry = zipFile.getEntry(path);
 			if (entry != null) {
-				return mZipFile.getInputStream(entry);
+				return zipFile.getInputStream(entry);
 			}
 		} catch (final IOException e) {
 			//logger.warn("Error getting zip stream: " + pTile, e);
@@ -41,8 +95,58 @@ public class ZipFileArchive implements IArchiveFile {
 	}
 
 	
+	public void getInputStreams(final ITileSource pTileSource, final Collection<MapTile> pTiles,
+			final Map<MapTile, InputStream> pResult) {
+		// the index is already in memory, one lookup per tile is as cheap as it gets
+		for (final MapTile tile : pTiles) {
+			final InputStream in = getInputStream(pTileSource, tile);
+			if (in != null) {
+				pResult.put(tile, in);
+			}
+		}
+	}
+
+	
+	public boolean mightContainTile(final ITileSource pTileSource, final MapTile pTile) {
+		final String name = getSourceName(pTileSource);
+		return name == null
+				|| mZipFile.contains(name, pTile.getZoomLevel(), pTile.getX(), pTile.getY());
+	}
+
+	
+	public TileCoverage getCoverage(final ITileSource pTileSource) {
+		final String name = getSourceName(pTileSource);
+		if (name == null) {
+			return null;
+		}
+		TileCoverage coverage = mCoverages.get(name);
+		if (coverage == null) {
+			// the keys of the index are sorted, so they're merged into runs as they're added
+			final TileCoverage.Builder builder = new TileCoverage.Builder();
+			final int count = mZipFile.getTileCount(name);
+			for (int i = 0; i < count; i++) {
+				final long key = mZipFile.getTileKey(name, i);
+				builder.add(MapTile.getZoomLevel(key), MapTile.getX(key), MapTile.getY(key));
+			}
+			coverage = builder.build();
+			mCoverages.put(name, coverage);
+		}
+		return coverage;
+	}
+
+	
 	public String toString() {
 		return "ZipFileArchive [mZipFile=" + mZipFile.getName() + "]";
 	}
 
+	private static class SourceName {
+		final ITileSource mTileSource;
+		final String mName;
+
+		SourceName(final ITileSource pTileSource, final String pName) {
+			mTileSource = pTileSource;
+			mName = pName;
+		}
+	}
+
 }
@@ -1,6 +1,7 @@
 package org.osmdroid.tileprovider.util;
 
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.views.MapView;
 
 import android.os.Handler;
 import android.os.Message;
@@ -18,7 +19,11 @@ public class SimpleInvalidationHandler extends Handler {
 	public void handleMessage(final Message msg) {
 		switch (msg.what) {
 		case MapTile.MAPTILE_SUCCESS_ID:
-			mView.invalidate();
+			if (mView instanceof MapView && msg.obj instanceof MapTile) {
+				((MapView) mView).invalidateMapTile((MapTile) msg.obj);
+			} else {
+				mView.invalidate();
+			}
 			break;
 		}
 	}
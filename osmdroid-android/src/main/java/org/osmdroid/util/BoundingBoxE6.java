@@ -5,7 +5,7 @@ import static org.osmdroid.util.MyMath.gudermann;
 import static org.osmdroid.util.MyMath.gudermannInverse;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.List;
 
 import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.views.util.constants.MapViewConstants;
@@ -200,7 +200,7 @@ public class BoundingBoxE6 implements Parcelable, Serializable, MapViewConstants
 				Math.max(this.mLonWestE6, Math.min(this.mLonEastE6, aLongitudeE6)));
 	}
 
-	public static BoundingBoxE6 fromGeoPoints(final ArrayList<? extends GeoPoint> partialPolyLine) {
+	public static BoundingBoxE6 fromGeoPoints(final List<? extends GeoPoint> partialPolyLine) {
 		int minLat = Integer.MAX_VALUE;
 		int minLon = Integer.MAX_VALUE;
 		int maxLat = Integer.MIN_VALUE;
@@ -0,0 +1,59 @@
+package org.osmdroid.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link InputStream} that reads the remaining bytes of a {@link ByteBuffer}, such as a view
+ * of a memory-mapped archive, without copying them first.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final ByteBuffer mBuffer;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public ByteBufferInputStream(final ByteBuffer pBuffer) {
+		mBuffer = pBuffer;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public int available() {
+		return mBuffer.remaining();
+	}
+
+	@Override
+	public int read() {
+		return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(final byte[] pBuffer, final int pOffset, final int pLength) {
+		if (pLength == 0) {
+			return 0;
+		}
+		if (!mBuffer.hasRemaining()) {
+			return -1;
+		}
+		final int length = Math.min(pLength, mBuffer.remaining());
+		mBuffer.get(pBuffer, pOffset, length);
+		return length;
+	}
+
+	@Override
+	public long skip(final long pByteCount) {
+		final int skipped = (int) Math.min(Math.max(0, pByteCount), mBuffer.remaining());
+		mBuffer.position(mBuffer.position() + skipped);
+		return skipped;
+	}
+}
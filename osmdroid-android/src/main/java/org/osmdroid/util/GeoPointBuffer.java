@@ -0,0 +1,125 @@
+package org.osmdroid.util;
+
+/**
+ * A growable list of points stored as latitude and longitude E6 pairs in one int array, with an
+ * optional time stamp for each point in a long array. A long path costs 8 bytes per point (16
+ * with time stamps) instead of an object per point, and adding to it doesn't create garbage.
+ */
+public class GeoPointBuffer {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** Latitude and longitude E6 of each point, one after the other */
+	private int[] mCoordinates = new int[INITIAL_CAPACITY * 2];
+
+	/** The time stamp of each point, or null if the buffer doesn't keep them */
+	private long[] mTimeStamps;
+
+	private int mSize;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public GeoPointBuffer() {
+		this(false);
+	}
+
+	/**
+	 * @param pWithTimeStamps
+	 *            whether to keep a time stamp for each point
+	 */
+	public GeoPointBuffer(final boolean pWithTimeStamps) {
+		if (pWithTimeStamps) {
+			mTimeStamps = new long[INITIAL_CAPACITY];
+		}
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean hasTimeStamps() {
+		return mTimeStamps != null;
+	}
+
+	public int getLatitudeE6(final int pIndex) {
+		return mCoordinates[pIndex * 2];
+	}
+
+	public int getLongitudeE6(final int pIndex) {
+		return mCoordinates[pIndex * 2 + 1];
+	}
+
+	/**
+	 * @return the time stamp of the point, or 0 if the buffer doesn't keep them
+	 */
+	public long getTimeStamp(final int pIndex) {
+		return mTimeStamps != null ? mTimeStamps[pIndex] : 0;
+	}
+
+	/**
+	 * Get the array the points are stored in, for projecting them in one go. It has the latitude
+	 * and longitude E6 of point i at 2 * i and 2 * i + 1, up to 2 * size(). Adding points may
+	 * replace it with a larger one.
+	 */
+	public int[] getCoordinatesE6() {
+		return mCoordinates;
+	}
+
+	/**
+	 * @return a new GeoPoint for the point
+	 */
+	public GeoPoint getGeoPoint(final int pIndex) {
+		return new GeoPoint(getLatitudeE6(pIndex), getLongitudeE6(pIndex));
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	public void add(final int pLatitudeE6, final int pLongitudeE6) {
+		add(pLatitudeE6, pLongitudeE6, 0);
+	}
+
+	/**
+	 * Add a point. The time stamp is dropped if the buffer doesn't keep them.
+	 */
+	public void add(final int pLatitudeE6, final int pLongitudeE6, final long pTimeStamp) {
+		if (mSize * 2 == mCoordinates.length) {
+			final int[] coordinates = new int[mCoordinates.length * 2];
+			System.arraycopy(mCoordinates, 0, coordinates, 0, mCoordinates.length);
+			mCoordinates = coordinates;
+			if (mTimeStamps != null) {
+				final long[] timeStamps = new long[mSize * 2];
+				System.arraycopy(mTimeStamps, 0, timeStamps, 0, mSize);
+				mTimeStamps = timeStamps;
+			}
+		}
+		mCoordinates[mSize * 2] = pLatitudeE6;
+		mCoordinates[mSize * 2 + 1] = pLongitudeE6;
+		if (mTimeStamps != null) {
+			mTimeStamps[mSize] = pTimeStamp;
+		}
+		mSize++;
+	}
+
+	/**
+	 * Remove all the points. The memory is kept for the next ones.
+	 */
+	public void clear() {
+		mSize = 0;
+	}
+}
@@ -0,0 +1,221 @@
+package org.osmdroid.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A hash map from long keys to values, such as from {@link org.osmdroid.tileprovider.MapTile}
+ * keys to tiles, that doesn't need a key object for a lookup. It uses open addressing with linear
+ * probing; a removed entry leaves a marker behind until the table is rebuilt, so a lookup never
+ * has to look past an entry that was moved.<br />
+ * <br />
+ * Changes must be serialized by the caller, but {@link #get(long)} and {@link #containsKey(long)}
+ * may run at the same time as a change without locking, and see the map as it was either before
+ * or after it.
+ */
+public class LongHashMap<V> {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int MINIMUM_CAPACITY = 16;
+
+	/** Marks a removed entry, which lookups skip and puts may reuse */
+	private static final Entry<Object> REMOVED = new Entry<Object>(0, null);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private volatile AtomicReferenceArray<Entry<V>> mTable;
+	private int mSize;
+
+	/** The number of slots that aren't empty, including removed entries */
+	private int mUsed;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public LongHashMap() {
+		this(MINIMUM_CAPACITY);
+	}
+
+	/**
+	 * @param pExpectedSize
+	 *            the number of entries to make room for
+	 */
+	public LongHashMap(final int pExpectedSize) {
+		mTable = new AtomicReferenceArray<Entry<V>>(tableLength(pExpectedSize));
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Spread the bits of a key over an int, so that keys that only differ in a few bits, like
+	 * those of neighbouring tiles, are far apart.
+	 */
+	public static int hash(final long pKey) {
+		final long hash = pKey * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * @return the value for the key, or null if there isn't one
+	 */
+	public V get(final long pKey) {
+		final AtomicReferenceArray<Entry<V>> table = mTable;
+		final int mask = table.length() - 1;
+		for (int i = hash(pKey) & mask;; i = (i + 1) & mask) {
+			final Entry<V> entry = table.get(i);
+			if (entry == null) {
+				return null;
+			}
+			if (entry != REMOVED && entry.mKey == pKey) {
+				return entry.mValue;
+			}
+		}
+	}
+
+	public boolean containsKey(final long pKey) {
+		return get(pKey) != null;
+	}
+
+	/**
+	 * Map the key to the value, which mustn't be null.
+	 *
+	 * @return the previous value for the key, or null if there wasn't one
+	 */
+	public V put(final long pKey, final V pValue) {
+		final AtomicReferenceArray<Entry<V>> table = mTable;
+		final int mask = table.length() - 1;
+		int free = -1;
+		int i = hash(pKey) & mask;
+		for (;; i = (i + 1) & mask) {
+			final Entry<V> entry = table.get(i);
+			if (entry == null) {
+				break;
+			}
+			if (entry == REMOVED) {
+				if (free < 0) {
+					free = i;
+				}
+			} else if (entry.mKey == pKey) {
+				table.set(i, new Entry<V>(pKey, pValue));
+				return entry.mValue;
+			}
+		}
+
+		if (free >= 0) {
+			table.set(free, new Entry<V>(pKey, pValue));
+		} else {
+			table.set(i, new Entry<V>(pKey, pValue));
+			mUsed++;
+		}
+		mSize++;
+		if (mUsed * 4 > table.length() * 3) {
+			rebuild(tableLength(mSize));
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value that was removed, or null if there wasn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final long pKey) {
+		final AtomicReferenceArray<Entry<V>> table = mTable;
+		final int mask = table.length() - 1;
+		for (int i = hash(pKey) & mask;; i = (i + 1) & mask) {
+			final Entry<V> entry = table.get(i);
+			if (entry == null) {
+				return null;
+			}
+			if (entry != REMOVED && entry.mKey == pKey) {
+				table.set(i, (Entry<V>) REMOVED);
+				mSize--;
+				return entry.mValue;
+			}
+		}
+	}
+
+	/**
+	 * Add all the values to a collection, in no particular order.
+	 */
+	public void getValues(final Collection<? super V> pValues) {
+		final AtomicReferenceArray<Entry<V>> table = mTable;
+		for (int i = 0; i < table.length(); i++) {
+			final Entry<V> entry = table.get(i);
+			if (entry != null && entry != REMOVED) {
+				pValues.add(entry.mValue);
+			}
+		}
+	}
+
+	public void clear() {
+		mTable = new AtomicReferenceArray<Entry<V>>(MINIMUM_CAPACITY);
+		mSize = 0;
+		mUsed = 0;
+	}
+
+	/**
+	 * Copy the entries into a new table without the removed ones, and publish it.
+	 */
+	private void rebuild(final int pLength) {
+		final AtomicReferenceArray<Entry<V>> table = mTable;
+		final AtomicReferenceArray<Entry<V>> rebuilt = new AtomicReferenceArray<Entry<V>>(pLength);
+		final int mask = pLength - 1;
+		for (int j = 0; j < table.length(); j++) {
+			final Entry<V> entry = table.get(j);
+			if (entry != null && entry != REMOVED) {
+				int i = hash(entry.mKey) & mask;
+				while (rebuilt.get(i) != null) {
+					i = (i + 1) & mask;
+				}
+				rebuilt.set(i, entry);
+			}
+		}
+		mUsed = mSize;
+		mTable = rebuilt;
+	}
+
+	/**
+	 * @return a power of two that keeps the table at most half full with the entries
+	 */
+	private static int tableLength(final int pSize) {
+		int length = MINIMUM_CAPACITY;
+		while (length < pSize * 2) {
+			length <<= 1;
+		}
+		return length;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static final class Entry<V> {
+		final long mKey;
+		final V mValue;
+
+		Entry(final long pKey, final V pValue) {
+			mKey = pKey;
+			mValue = pValue;
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package org.osmdroid.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Read-only GEMF archive that memory-maps its files. The ranges are indexed by zoom level, and
+ * tiles are returned as read-only {@link ByteBuffer} views of the mapped files, so looking up and
+ * reading a tile doesn't copy it or make any system calls. Unlike {@link GEMFFile} it can be used
+ * by several threads at once.
+ *
+ * Reference: https://sites.google.com/site/abudden/android-map-store
+ */
+public class MappedGEMFFile {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int VERSION = 4;
+	private static final int TILE_SIZE = 256;
+
+	private static final int U32_SIZE = 4;
+	private static final int U64_SIZE = 8;
+	private static final int TILE_RECORD_SIZE = U64_SIZE + U32_SIZE;
+
+	/** Files larger than this are mapped in segments of this size */
+	private static final long SEGMENT_SIZE = 1 << 30;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	// Path to first GEMF file (additional files as <basename>-1, <basename>-2, ...
+	private final String mLocation;
+
+	private final List<RandomAccessFile> mFiles = new ArrayList<RandomAccessFile>();
+
+	// The mapped segments of each file, and the offset of each file in the archive
+	private final ByteBuffer[][] mSegments;
+	private final long[] mFileOffsets;
+
+	// The ranges of each zoom level, sorted by xMin, with the largest xMax so far
+	private final Range[][] mRanges;
+	private final int[][] mMaximumXMax;
+
+	// List of tile sources within this archive
+	private final LinkedHashMap<Integer, String> mSources = new LinkedHashMap<Integer, String>();
+
+	// Fields to restrict to a single source for reading
+	private volatile boolean mSourceLimited = false;
+	private volatile int mCurrentSource = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MappedGEMFFile(final File pLocation) throws IOException {
+		this(pLocation.getAbsolutePath());
+	}
+
+	/**
+	 * @param pLocation
+	 *            path to the first GEMF archive file
+	 */
+	public MappedGEMFFile(final String pLocation) throws IOException {
+		mLocation = pLocation;
+
+		final File base = new File(pLocation);
+		mFiles.add(new RandomAccessFile(base, "r"));
+		for (int i = 1;; i++) {
+			final File nextFile = new File(pLocation + "-" + i);
+			if (!nextFile.exists()) {
+				break;
+			}
+			mFiles.add(new RandomAccessFile(nextFile, "r"));
+		}
+
+		try {
+			mSegments = new ByteBuffer[mFiles.size()][];
+			mFileOffsets = new long[mFiles.size() + 1];
+			for (int i = 0; i < mFiles.size(); i++) {
+				final FileChannel channel = mFiles.get(i).getChannel();
+				final long size = channel.size();
+				final int segmentCount = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+				mSegments[i] = new ByteBuffer[Math.max(1, segmentCount)];
+				for (int j = 0; j < mSegments[i].length; j++) {
+					final long position = j * SEGMENT_SIZE;
+					mSegments[i][j] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+							Math.min(SEGMENT_SIZE, size - position));
+				}
+				mFileOffsets[i + 1] = mFileOffsets[i] + size;
+			}
+
+			final List<Range> ranges = readHeader(getBuffer(0, 0, (int) Math.min(
+					mFileOffsets[1], SEGMENT_SIZE)));
+			int maxZoom = -1;
+			for (final Range range : ranges) {
+				maxZoom = Math.max(maxZoom, range.zoom);
+			}
+			mRanges = new Range[maxZoom + 1][];
+			mMaximumXMax = new int[maxZoom + 1][];
+			indexRanges(ranges);
+		} catch (final IOException e) {
+			close();
+			throw e;
+		} catch (final RuntimeException e) {
+			// truncated header
+			close();
+			throw new IOException("Bad GEMF header: " + e);
+		}
+	}
+
+	// ===========================================================
+	// Private Methods
+	// ===========================================================
+
+	private List<Range> readHeader(final ByteBuffer pHeader) throws IOException {
+		final int version = pHeader.getInt();
+		if (version != VERSION) {
+			throw new IOException("Bad file version: " + version);
+		}
+
+		final int tileSize = pHeader.getInt();
+		if (tileSize != TILE_SIZE) {
+			throw new IOException("Bad tile size: " + tileSize);
+		}
+
+		final int sourceCount = pHeader.getInt();
+		for (int i = 0; i < sourceCount; i++) {
+			final int sourceIndex = pHeader.getInt();
+			final byte[] nameData = new byte[pHeader.getInt()];
+			pHeader.get(nameData);
+			mSources.put(sourceIndex, new String(nameData));
+		}
+
+		final int rangeCount = pHeader.getInt();
+		final List<Range> ranges = new ArrayList<Range>(rangeCount);
+		for (int i = 0; i < rangeCount; i++) {
+			final Range range = new Range();
+			range.order = i;
+			range.zoom = pHeader.getInt();
+			range.xMin = pHeader.getInt();
+			range.xMax = pHeader.getInt();
+			range.yMin = pHeader.getInt();
+			range.yMax = pHeader.getInt();
+			range.sourceIndex = pHeader.getInt();
+			range.offset = pHeader.getLong();
+			if (range.zoom < 0) {
+				throw new IOException("Bad zoom level: " + range.zoom);
+			}
+			ranges.add(range);
+		}
+		return ranges;
+	}
+
+	private void indexRanges(final List<Range> pRanges) {
+		final List<List<Range>> byZoom = new ArrayList<List<Range>>();
+		for (int i = 0; i < mRanges.length; i++) {
+			byZoom.add(new ArrayList<Range>());
+		}
+		for (final Range range : pRanges) {
+			byZoom.get(range.zoom).add(range);
+		}
+
+		for (int zoom = 0; zoom < mRanges.length; zoom++) {
+			final Range[] ranges = byZoom.get(zoom).toArray(new Range[0]);
+			Arrays.sort(ranges, X_MIN_ORDER);
+			final int[] maximumXMax = new int[ranges.length];
+			int max = Integer.MIN_VALUE;
+			for (int i = 0; i < ranges.length; i++) {
+				max = Math.max(max, ranges[i].xMax);
+				maximumXMax[i] = max;
+			}
+			mRanges[zoom] = ranges;
+			mMaximumXMax[zoom] = maximumXMax;
+		}
+	}
+
+	/**
+	 * Find the range that contains the tile. If ranges overlap the first one in the archive wins,
+	 * as it does in {@link GEMFFile}.
+	 */
+	private Range findRange(final int pX, final int pY, final int pZ) {
+		if (pZ < 0 || pZ >= mRanges.length) {
+			return null;
+		}
+		final Range[] ranges = mRanges[pZ];
+		final int[] maximumXMax = mMaximumXMax[pZ];
+		final boolean sourceLimited = mSourceLimited;
+		final int currentSource = mCurrentSource;
+
+		// the last range that starts at or before pX
+		int low = 0;
+		int high = ranges.length - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			if (ranges[middle].xMin <= pX) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		// the ranges before it can only contain pX as long as their xMax reaches it
+		Range result = null;
+		for (int i = high; i >= 0 && maximumXMax[i] >= pX; i--) {
+			final Range range = ranges[i];
+			if (pX <= range.xMax && pY >= range.yMin && pY <= range.yMax
+					&& (!sourceLimited || range.sourceIndex == currentSource)
+					&& (result == null || range.order < result.order)) {
+				result = range;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get a view of part of a file. If it spans two segments it's copied.
+	 */
+	private ByteBuffer getBuffer(final int pFile, final long pPosition, final int pLength) {
+		final ByteBuffer[] segments = mSegments[pFile];
+		final int segment = (int) (pPosition / SEGMENT_SIZE);
+		final int position = (int) (pPosition % SEGMENT_SIZE);
+		final ByteBuffer buffer = segments[segment].duplicate();
+		if (position + pLength <= buffer.capacity()) {
+			buffer.limit(position + pLength);
+			buffer.position(position);
+			return buffer.slice();
+		}
+
+		final ByteBuffer copy = ByteBuffer.allocate(pLength);
+		buffer.position(position);
+		copy.put(buffer);
+		final ByteBuffer next = segments[segment + 1].duplicate();
+		next.limit(copy.remaining());
+		copy.put(next);
+		copy.flip();
+		return copy;
+	}
+
+	// ===========================================================
+	// Public Methods
+	// ===========================================================
+
+	/**
+	 * Close the files. The mapped memory is released when it's garbage collected, so buffers that
+	 * have been returned remain valid.
+	 */
+	public void close() throws IOException {
+		for (final RandomAccessFile file : mFiles) {
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the base name of the first file in the GEMF archive.
+	 */
+	public String getName() {
+		return mLocation;
+	}
+
+	/**
+	 * Returns a LinkedHashMap of the sources in this archive, as names and indexes.
+	 */
+	public LinkedHashMap<Integer, String> getSources() {
+		return mSources;
+	}
+
+	/**
+	 * Set single source for getByteBuffer() to use. Otherwise, first tile found with specified
+	 * Z/X/Y coordinates will be returned.
+	 */
+	public void selectSource(final int pSource) {
+		if (mSources.containsKey(pSource)) {
+			mCurrentSource = pSource;
+			mSourceLimited = true;
+		}
+	}
+
+	/**
+	 * Allow getByteBuffer() to use any source in the archive.
+	 */
+	public void acceptAnySource() {
+		mSourceLimited = false;
+	}
+
+	/**
+	 * Return list of zoom levels contained within this archive.
+	 */
+	public Set<Integer> getZoomLevels() {
+		final Set<Integer> zoomLevels = new TreeSet<Integer>();
+		for (int zoom = 0; zoom < mRanges.length; zoom++) {
+			if (mRanges[zoom].length > 0) {
+				zoomLevels.add(zoom);
+			}
+		}
+		return zoomLevels;
+	}
+
+	/**
+	 * Return the ranges of a source in the order of the archive, each as its zoom level, xMin,
+	 * xMax, yMin and yMax, to go through its tiles without looking each one up.
+	 */
+	public List<int[]> getRanges(final int pSource) {
+		int count = 0;
+		for (final Range[] zoomRanges : mRanges) {
+			count += zoomRanges.length;
+		}
+		final Range[] ranges = new Range[count];
+		for (final Range[] zoomRanges : mRanges) {
+			for (final Range range : zoomRanges) {
+				ranges[range.order] = range;
+			}
+		}
+		final List<int[]> result = new ArrayList<int[]>();
+		for (final Range range : ranges) {
+			if (range.sourceIndex == pSource) {
+				result.add(new int[] { range.zoom, range.xMin, range.xMax, range.yMin,
+						range.yMax });
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the tile data specified by the Z/X/Y coordinates.
+	 *
+	 * @return a read-only buffer of the tile data, or null if not found
+	 */
+	public ByteBuffer getByteBuffer(final int pX, final int pY, final int pZ) {
+		final Range range = findRange(pX, pY, pZ);
+		if (range == null) {
+			return null;
+		}
+
+		// Determine offset to requested tile record in the header
+		final long numY = range.yMax + 1 - range.yMin;
+		final long recordOffset = range.offset + ((pX - range.xMin) * numY + (pY - range.yMin))
+				* TILE_RECORD_SIZE;
+		if (recordOffset + TILE_RECORD_SIZE > mFileOffsets[1]) {
+			return null;
+		}
+		final ByteBuffer record = getBuffer(0, recordOffset, TILE_RECORD_SIZE);
+		final long dataOffset = record.getLong();
+		final int dataLength = record.getInt();
+
+		// Find the file that contains the data, an empty record is a tile the archive doesn't have
+		int file = Arrays.binarySearch(mFileOffsets, dataOffset);
+		if (file < 0) {
+			file = -file - 2;
+		}
+		if (file < 0 || file >= mSegments.length || dataLength <= 0
+				|| dataOffset + dataLength > mFileOffsets[file + 1]) {
+			return null;
+		}
+		return getBuffer(file, dataOffset - mFileOffsets[file], dataLength).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Whether a range of the archive holds the tile specified by the Z/X/Y coordinates. This only
+	 * looks at the ranges in memory.
+	 */
+	public boolean contains(final int pX, final int pY, final int pZ) {
+		return findRange(pX, pY, pZ) != null;
+	}
+
+	/**
+	 * Get an InputStream for the tile data specified by the Z/X/Y coordinates.
+	 *
+	 * @return InputStream of tile data, or null if not found.
+	 */
+	public InputStream getInputStream(final int pX, final int pY, final int pZ) {
+		final ByteBuffer buffer = getByteBuffer(pX, pY, pZ);
+		return buffer != null ? new ByteBufferInputStream(buffer) : null;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	// Class to represent a range of stored tiles within the archive.
+	private static class Range {
+		int order;
+		int zoom;
+		int xMin;
+		int xMax;
+		int yMin;
+		int yMax;
+		int sourceIndex;
+		long offset;
+	}
+
+	private static final Comparator<Range> X_MIN_ORDER = new Comparator<Range>() {
+		public int compare(final Range lhs, final Range rhs) {
+			return lhs.xMin < rhs.xMin ? -1 : (lhs.xMin == rhs.xMin ? 0 : 1);
+		}
+	};
+}
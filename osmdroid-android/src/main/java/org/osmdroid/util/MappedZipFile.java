@@ -0,0 +1,564 @@
+package org.osmdroid.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.osmdroid.tileprovider.MapTile;
+
+/**
+ * Read-only zip archive of tiles that memory-maps its file. The central directory is parsed once
+ * into a sorted index of the tiles of each tile source, keyed by {@link MapTile#getKey()}, with
+ * the offset, size and compression method of each entry in primitive arrays. Looking up a tile
+ * is a binary search that doesn't lock, and a tile that is stored uncompressed is returned as a
+ * read-only {@link ByteBuffer} view of the mapped file, without copying it. Compressed tiles are
+ * inflated from the mapped file. Unlike {@link java.util.zip.ZipFile}, which serializes its
+ * reads, it can be used by several threads at once.
+ *
+ * Entries are named like tiles as {@link #parseTile(String, int[])} describes, other entries are
+ * ignored. Zip64 archives are supported, encrypted entries and archives spanning several files
+ * are not.
+ */
+public class MappedZipFile {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** Compression methods */
+	public static final int STORED = 0;
+	public static final int DEFLATED = 8;
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_END_SIZE = 56;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int MAXIMUM_COMMENT_SIZE = 0xffff;
+
+	private static final long U16_MASK = 0xffffL;
+	private static final long U32_MASK = 0xffffffffL;
+
+	private static final int ENCRYPTED_FLAG = 1;
+
+	/** The largest zoom level, x and y that fit a {@link MapTile#getKey()} key */
+	private static final int MAXIMUM_ZOOM_LEVEL = 29;
+	private static final int MAXIMUM_COORDINATE = (1 << 29) - 1;
+
+	/** Files larger than this are mapped in segments of this size */
+	private static final long SEGMENT_SIZE = 1 << 30;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String mName;
+	private final RandomAccessFile mFile;
+
+	/** The mapped segments of the file, in little endian order */
+	private final ByteBuffer[] mSegments;
+	private final long mLength;
+
+	/** The index of each tile source, never changed once the file is open */
+	private final Map<String, Index> mIndexes;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MappedZipFile(final File pFile) throws IOException {
+		mName = pFile.getAbsolutePath();
+		mFile = new RandomAccessFile(pFile, "r");
+		try {
+			final FileChannel channel = mFile.getChannel();
+			mLength = channel.size();
+			final int segmentCount = (int) ((mLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			mSegments = new ByteBuffer[Math.max(1, segmentCount)];
+			for (int i = 0; i < mSegments.length; i++) {
+				final long position = i * SEGMENT_SIZE;
+				mSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(SEGMENT_SIZE, mLength - position));
+			}
+			mIndexes = readCentralDirectory();
+		} catch (final IOException e) {
+			close();
+			throw e;
+		} catch (final RuntimeException e) {
+			// truncated directory
+			close();
+			throw new IOException("Bad zip central directory: " + e);
+		}
+	}
+
+	// ===========================================================
+	// Private Methods
+	// ===========================================================
+
+	private Map<String, Index> readCentralDirectory() throws IOException {
+		final long end = findEnd();
+		final ByteBuffer record = getBuffer(end, END_SIZE);
+		long count = record.getShort(10) & U16_MASK;
+		long size = record.getInt(12) & U32_MASK;
+		long offset = record.getInt(16) & U32_MASK;
+
+		if (end >= ZIP64_LOCATOR_SIZE && (count == U16_MASK || size == U32_MASK
+				|| offset == U32_MASK)) {
+			final ByteBuffer locator = getBuffer(end - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+			if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+				final long zip64End = locator.getLong(8);
+				if (zip64End < 0 || zip64End + ZIP64_END_SIZE > mLength) {
+					throw new IOException("Bad zip64 end of central directory offset");
+				}
+				final ByteBuffer zip64Record = getBuffer(zip64End, ZIP64_END_SIZE);
+				if (zip64Record.getInt(0) != ZIP64_END_SIGNATURE) {
+					throw new IOException("Bad zip64 end of central directory");
+				}
+				count = zip64Record.getLong(32);
+				size = zip64Record.getLong(40);
+				offset = zip64Record.getLong(48);
+			}
+		}
+		if (offset < 0 || size < 0 || offset + size > mLength) {
+			throw new IOException("Bad central directory offset: " + offset);
+		}
+
+		final HashMap<String, Index.Builder> builders = new HashMap<String, Index.Builder>();
+		final int[] zxy = new int[3];
+		long position = offset;
+		for (long i = 0; i < count; i++) {
+			final ByteBuffer header = getBuffer(position, CENTRAL_HEADER_SIZE);
+			if (header.getInt(0) != CENTRAL_HEADER_SIGNATURE) {
+				throw new IOException("Bad central directory entry: " + i);
+			}
+			final int flags = header.getShort(8) & 0xffff;
+			final int method = header.getShort(10) & 0xffff;
+			long compressedSize = header.getInt(20) & U32_MASK;
+			long entrySize = header.getInt(24) & U32_MASK;
+			final int nameLength = header.getShort(28) & 0xffff;
+			final int extraLength = header.getShort(30) & 0xffff;
+			final int commentLength = header.getShort(32) & 0xffff;
+			long localOffset = header.getInt(42) & U32_MASK;
+
+			final ByteBuffer variable = getBuffer(position + CENTRAL_HEADER_SIZE, nameLength
+					+ extraLength);
+			final byte[] nameBytes = new byte[nameLength];
+			variable.get(nameBytes);
+			final String source = parseTile(new String(nameBytes, UTF_8), zxy);
+
+			if (compressedSize == U32_MASK || entrySize == U32_MASK || localOffset == U32_MASK) {
+				// the zip64 extra field has the values that don't fit, in this order
+				final int extraEnd = nameLength + extraLength;
+				int extra = nameLength;
+				while (extra + 4 <= extraEnd) {
+					final int id = variable.getShort(extra) & 0xffff;
+					final int length = variable.getShort(extra + 2) & 0xffff;
+					if (id == ZIP64_EXTRA_ID) {
+						int field = extra + 4;
+						if (entrySize == U32_MASK && field + 8 <= extraEnd) {
+							entrySize = variable.getLong(field);
+							field += 8;
+						}
+						if (compressedSize == U32_MASK && field + 8 <= extraEnd) {
+							compressedSize = variable.getLong(field);
+							field += 8;
+						}
+						if (localOffset == U32_MASK && field + 8 <= extraEnd) {
+							localOffset = variable.getLong(field);
+						}
+						break;
+					}
+					extra += 4 + length;
+				}
+			}
+
+			if (source != null && (flags & ENCRYPTED_FLAG) == 0
+					&& (method == STORED || method == DEFLATED)
+					&& compressedSize <= Integer.MAX_VALUE && entrySize <= Integer.MAX_VALUE
+					&& localOffset >= 0 && localOffset < offset
+					&& zxy[0] <= MAXIMUM_ZOOM_LEVEL && zxy[1] <= MAXIMUM_COORDINATE
+					&& zxy[2] <= MAXIMUM_COORDINATE) {
+				Index.Builder builder = builders.get(source);
+				if (builder == null) {
+					builder = new Index.Builder();
+					builders.put(source, builder);
+				}
+				builder.add(MapTile.getKey(zxy[0], zxy[1], zxy[2]), localOffset,
+						(int) compressedSize, (int) entrySize, method);
+			}
+			position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+
+		final HashMap<String, Index> indexes = new HashMap<String, Index>();
+		for (final Map.Entry<String, Index.Builder> entry : builders.entrySet()) {
+			indexes.put(entry.getKey(), entry.getValue().build());
+		}
+		return indexes;
+	}
+
+	/**
+	 * Find the end of central directory record, which is followed by the archive comment.
+	 */
+	private long findEnd() throws IOException {
+		if (mLength < END_SIZE) {
+			throw new IOException("Not a zip file: " + mName);
+		}
+		final long first = Math.max(0, mLength - END_SIZE - MAXIMUM_COMMENT_SIZE);
+		final ByteBuffer tail = getBuffer(first, (int) (mLength - first));
+		for (int position = tail.capacity() - END_SIZE; position >= 0; position--) {
+			if (tail.getInt(position) == END_SIGNATURE
+					&& position + END_SIZE + (tail.getShort(position + 20) & 0xffff) == tail
+							.capacity()) {
+				return first + position;
+			}
+		}
+		throw new IOException("No end of central directory: " + mName);
+	}
+
+	/**
+	 * Get a little endian view of part of the file. If it spans two segments it's copied.
+	 */
+	private ByteBuffer getBuffer(final long pPosition, final int pLength) {
+		final int segment = (int) (pPosition / SEGMENT_SIZE);
+		final int position = (int) (pPosition % SEGMENT_SIZE);
+		final ByteBuffer buffer = mSegments[segment].duplicate();
+		if (position + pLength <= buffer.capacity()) {
+			buffer.limit(position + pLength);
+			buffer.position(position);
+			return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		final ByteBuffer copy = ByteBuffer.allocate(pLength);
+		buffer.position(position);
+		copy.put(buffer);
+		final ByteBuffer next = mSegments[segment + 1].duplicate();
+		next.limit(copy.remaining());
+		copy.put(next);
+		copy.flip();
+		return copy.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return the index of the tile in the index of the source, or -1
+	 */
+	private static int find(final Index pIndex, final int pZoomLevel, final int pX, final int pY) {
+		if (pIndex == null || pZoomLevel < 0 || pZoomLevel > MAXIMUM_ZOOM_LEVEL || pX < 0
+				|| pX > MAXIMUM_COORDINATE || pY < 0 || pY > MAXIMUM_COORDINATE) {
+			return -1;
+		}
+		final int i = Arrays.binarySearch(pIndex.mKeys, MapTile.getKey(pZoomLevel, pX, pY));
+		return i >= 0 ? i : -1;
+	}
+
+	/**
+	 * Get the compressed data of an entry, which follows its local header.
+	 */
+	private ByteBuffer getData(final Index pIndex, final int pEntry) {
+		final long localOffset = pIndex.mOffsets[pEntry];
+		if (localOffset + LOCAL_HEADER_SIZE > mLength) {
+			return null;
+		}
+		final ByteBuffer header = getBuffer(localOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			return null;
+		}
+		final long dataOffset = localOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff)
+				+ (header.getShort(28) & 0xffff);
+		final int length = pIndex.mCompressedSizes[pEntry];
+		if (dataOffset + length > mLength) {
+			return null;
+		}
+		return getBuffer(dataOffset, length).asReadOnlyBuffer();
+	}
+
+	// ===========================================================
+	// Public Methods
+	// ===========================================================
+
+	/**
+	 * Split the name of a tile's entry, such as "Mapnik/15/16624/12443.png", into the zoom level,
+	 * x and y of the tile and the rest, such as "Mapnik/.png", which names the tile source.
+	 *
+	 * @return the name of the tile source, or null if the entry isn't named like a tile
+	 */
+	public static String parseTile(final String pEntryName, final int[] pZXY) {
+		final int ySlash = pEntryName.lastIndexOf('/');
+		final int xSlash = ySlash > 0 ? pEntryName.lastIndexOf('/', ySlash - 1) : -1;
+		final int zSlash = xSlash > 0 ? pEntryName.lastIndexOf('/', xSlash - 1) : -1;
+		if (zSlash < 0) {
+			return null;
+		}
+		int yEnd = ySlash + 1;
+		while (yEnd < pEntryName.length() && Character.isDigit(pEntryName.charAt(yEnd))) {
+			yEnd++;
+		}
+		try {
+			pZXY[0] = Integer.parseInt(pEntryName.substring(zSlash + 1, xSlash));
+			pZXY[1] = Integer.parseInt(pEntryName.substring(xSlash + 1, ySlash));
+			pZXY[2] = Integer.parseInt(pEntryName.substring(ySlash + 1, yEnd));
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+		if (pZXY[0] < 0 || pZXY[1] < 0 || pZXY[2] < 0) {
+			return null;
+		}
+		return pEntryName.substring(0, zSlash + 1) + pEntryName.substring(yEnd);
+	}
+
+	/**
+	 * Close the file. The mapped memory is released when it's garbage collected, so buffers that
+	 * have been returned remain valid.
+	 */
+	public void close() throws IOException {
+		mFile.close();
+	}
+
+	/**
+	 * Returns the path of the file.
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * Returns the names of the tile sources in this archive, as {@link #parseTile(String, int[])}
+	 * returns them.
+	 */
+	public Set<String> getSources() {
+		return Collections.unmodifiableSet(mIndexes.keySet());
+	}
+
+	public int getTileCount(final String pSource) {
+		final Index index = mIndexes.get(pSource);
+		return index != null ? index.mKeys.length : 0;
+	}
+
+	/**
+	 * Get a tile of the source by its position in the index, to go through all of its tiles.
+	 *
+	 * @param pIndex
+	 *            from 0 to {@link #getTileCount(String)} - 1, in the order of the keys
+	 * @return the key of the tile, see {@link MapTile#getKey(int, int, int)}
+	 */
+	public long getTileKey(final String pSource, final int pIndex) {
+		return mIndexes.get(pSource).mKeys[pIndex];
+	}
+
+	/**
+	 * Whether the archive has the tile of the source. This only looks at the index in memory.
+	 */
+	public boolean contains(final String pSource, final int pZoomLevel, final int pX,
+			final int pY) {
+		return find(mIndexes.get(pSource), pZoomLevel, pX, pY) >= 0;
+	}
+
+	/**
+	 * @return the compression method of the tile, {@link #STORED} or {@link #DEFLATED}, or -1 if
+	 *         the archive doesn't have it
+	 */
+	public int getMethod(final String pSource, final int pZoomLevel, final int pX, final int pY) {
+		final Index index = mIndexes.get(pSource);
+		final int entry = find(index, pZoomLevel, pX, pY);
+		return entry >= 0 ? index.mMethods[entry] : -1;
+	}
+
+	/**
+	 * Get the data of a tile that is stored uncompressed.
+	 *
+	 * @return a read-only buffer of the tile data, or null if not found or compressed
+	 */
+	public ByteBuffer getByteBuffer(final String pSource, final int pZoomLevel, final int pX,
+			final int pY) {
+		final Index index = mIndexes.get(pSource);
+		final int entry = find(index, pZoomLevel, pX, pY);
+		if (entry < 0 || index.mMethods[entry] != STORED) {
+			return null;
+		}
+		return getData(index, entry);
+	}
+
+	/**
+	 * Get an InputStream for the data of a tile. A stored tile is read straight from the mapped
+	 * file, a compressed one is inflated from it.
+	 *
+	 * @return InputStream of tile data, or null if not found.
+	 */
+	public InputStream getInputStream(final String pSource, final int pZoomLevel, final int pX,
+			final int pY) {
+		final Index index = mIndexes.get(pSource);
+		final int entry = find(index, pZoomLevel, pX, pY);
+		if (entry < 0) {
+			return null;
+		}
+		final ByteBuffer data = getData(index, entry);
+		if (data == null) {
+			return null;
+		}
+		if (index.mMethods[entry] == STORED) {
+			return new ByteBufferInputStream(data);
+		}
+		return new EntryInflaterInputStream(new ByteBufferInputStream(data),
+				index.mSizes[entry]);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * The entries of one tile source, sorted by key.
+	 */
+	private static class Index {
+		final long[] mKeys;
+		final long[] mOffsets;
+		final int[] mCompressedSizes;
+		final int[] mSizes;
+		final byte[] mMethods;
+
+		Index(final int pCount) {
+			mKeys = new long[pCount];
+			mOffsets = new long[pCount];
+			mCompressedSizes = new int[pCount];
+			mSizes = new int[pCount];
+			mMethods = new byte[pCount];
+		}
+
+		/**
+		 * Collects the entries in the order of the central directory.
+		 */
+		static class Builder {
+			private Index mIndex = new Index(64);
+			private int mSize;
+
+			void add(final long pKey, final long pOffset, final int pCompressedSize,
+					final int pSize, final int pMethod) {
+				if (mSize == mIndex.mKeys.length) {
+					mIndex = copy(mIndex, mSize, mSize * 2);
+				}
+				mIndex.mKeys[mSize] = pKey;
+				mIndex.mOffsets[mSize] = pOffset;
+				mIndex.mCompressedSizes[mSize] = pCompressedSize;
+				mIndex.mSizes[mSize] = pSize;
+				mIndex.mMethods[mSize] = (byte) pMethod;
+				mSize++;
+			}
+
+			/**
+			 * Sort the keys on their own, and then put each entry where its key is. If a tile is
+			 * in the archive twice the first entry is used.
+			 */
+			Index build() {
+				final long[] keys = new long[mSize];
+				System.arraycopy(mIndex.mKeys, 0, keys, 0, mSize);
+				Arrays.sort(keys);
+				int count = 0;
+				for (int i = 0; i < mSize; i++) {
+					if (i == 0 || keys[i] != keys[count - 1]) {
+						keys[count++] = keys[i];
+					}
+				}
+
+				final Index index = new Index(count);
+				System.arraycopy(keys, 0, index.mKeys, 0, count);
+				Arrays.fill(index.mOffsets, -1);
+				for (int i = 0; i < mSize; i++) {
+					final int j = Arrays.binarySearch(index.mKeys, mIndex.mKeys[i]);
+					if (index.mOffsets[j] < 0) {
+						index.mOffsets[j] = mIndex.mOffsets[i];
+						index.mCompressedSizes[j] = mIndex.mCompressedSizes[i];
+						index.mSizes[j] = mIndex.mSizes[i];
+						index.mMethods[j] = mIndex.mMethods[i];
+					}
+				}
+				return index;
+			}
+
+			private static Index copy(final Index pIndex, final int pSize, final int pCount) {
+				final Index copy = new Index(pCount);
+				System.arraycopy(pIndex.mKeys, 0, copy.mKeys, 0, pSize);
+				System.arraycopy(pIndex.mOffsets, 0, copy.mOffsets, 0, pSize);
+				System.arraycopy(pIndex.mCompressedSizes, 0, copy.mCompressedSizes, 0, pSize);
+				System.arraycopy(pIndex.mSizes, 0, copy.mSizes, 0, pSize);
+				System.arraycopy(pIndex.mMethods, 0, copy.mMethods, 0, pSize);
+				return copy;
+			}
+		}
+	}
+
+	/**
+	 * Inflates a raw deflated entry. Like {@link java.util.zip.ZipFile} it gives the inflater an
+	 * extra byte at the end of the data, which it may need to finish, and it releases the
+	 * inflater's native memory when it's closed.
+	 */
+	private static class EntryInflaterInputStream extends InflaterInputStream {
+
+		private final int mSize;
+		private int mRead;
+		private boolean mEndOfData;
+		private boolean mClosed;
+
+		EntryInflaterInputStream(final InputStream pIn, final int pSize) {
+			super(pIn, new Inflater(true), Math.max(64, Math.min(pSize, 8192)));
+			mSize = pSize;
+		}
+
+		@Override
+		protected void fill() throws IOException {
+			if (mEndOfData) {
+				throw new EOFException("Unexpected end of deflated entry");
+			}
+			len = in.read(buf, 0, buf.length);
+			if (len == -1) {
+				buf[0] = 0;
+				len = 1;
+				mEndOfData = true;
+			}
+			inf.setInput(buf, 0, len);
+		}
+
+		@Override
+		public int read(final byte[] pBuffer, final int pOffset, final int pLength)
+				throws IOException {
+			final int read = super.read(pBuffer, pOffset, pLength);
+			if (read > 0) {
+				mRead += read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return mClosed || inf.finished() ? 0 : Math.max(0, mSize - mRead);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!mClosed) {
+				mClosed = true;
+				super.close();
+				inf.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package org.osmdroid.util;
+
+import java.util.Arrays;
+
+/**
+ * A read-only R-tree over points with non-negative integer coordinates, such as the
+ * {@link org.osmdroid.views.util.constants.MapViewConstants#MAXIMUM_ZOOMLEVEL} pixel coordinates
+ * of overlay items. It's bulk loaded with the Sort-Tile-Recursive algorithm and stored in a few
+ * flat arrays, so it's cheap to build and to keep around, and a rectangle query only visits the
+ * nodes that intersect the rectangle.<br />
+ * <br />
+ * Points are identified by their index in the arrays that the tree was built from. The tree is
+ * immutable once built, so it can be queried from several threads.
+ */
+public class PackedRTree {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** The maximum number of children of a node, and of points in a leaf */
+	private static final int NODE_CAPACITY = 16;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** The points in leaf order */
+	private final int[] mX;
+	private final int[] mY;
+
+	/** The index of each point in leaf order in the arrays the tree was built from */
+	private final int[] mIndexes;
+
+	/**
+	 * The bounds of the nodes of each level as left, top, right, bottom. Level 0 are the leaves,
+	 * the last level is the root. The children of node i are nodes (or points)
+	 * i * {@link #NODE_CAPACITY} to (i + 1) * {@link #NODE_CAPACITY} - 1 of the level below.
+	 */
+	private final int[][] mBounds;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * Build a tree over the first pCount points of the arrays. The arrays aren't kept.
+	 */
+	public PackedRTree(final int[] pX, final int[] pY, final int pCount) {
+		mX = new int[pCount];
+		mY = new int[pCount];
+		mIndexes = new int[pCount];
+
+		// sort into vertical slices by x, then each slice by y, and cut the slices into leaves
+		final int leafCount = (pCount + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		final int sliceCount = (int) Math.ceil(Math.sqrt(leafCount));
+		final int sliceSize = sliceCount == 0 ? 0 : (leafCount + sliceCount - 1) / sliceCount
+				* NODE_CAPACITY;
+
+		final long[] keys = new long[pCount];
+		for (int i = 0; i < pCount; i++) {
+			keys[i] = (long) pX[i] << 32 | i;
+		}
+		Arrays.sort(keys);
+		for (int start = 0; start < pCount; start += sliceSize) {
+			final int end = Math.min(pCount, start + sliceSize);
+			for (int i = start; i < end; i++) {
+				final int index = (int) keys[i];
+				keys[i] = (long) pY[index] << 32 | index;
+			}
+			Arrays.sort(keys, start, end);
+		}
+		for (int i = 0; i < pCount; i++) {
+			final int index = (int) keys[i];
+			mIndexes[i] = index;
+			mX[i] = pX[index];
+			mY[i] = pY[index];
+		}
+
+		// the leaves, then group consecutive nodes up to the root
+		int levels = 1;
+		for (int count = leafCount; count > 1; count = (count + NODE_CAPACITY - 1)
+				/ NODE_CAPACITY) {
+			levels++;
+		}
+		mBounds = new int[pCount == 0 ? 0 : levels][];
+		if (pCount == 0) {
+			return;
+		}
+
+		int[] bounds = new int[leafCount * 4];
+		for (int leaf = 0; leaf < leafCount; leaf++) {
+			int left = Integer.MAX_VALUE;
+			int top = Integer.MAX_VALUE;
+			int right = Integer.MIN_VALUE;
+			int bottom = Integer.MIN_VALUE;
+			final int end = Math.min(pCount, (leaf + 1) * NODE_CAPACITY);
+			for (int i = leaf * NODE_CAPACITY; i < end; i++) {
+				left = Math.min(left, mX[i]);
+				top = Math.min(top, mY[i]);
+				right = Math.max(right, mX[i]);
+				bottom = Math.max(bottom, mY[i]);
+			}
+			bounds[leaf * 4] = left;
+			bounds[leaf * 4 + 1] = top;
+			bounds[leaf * 4 + 2] = right;
+			bounds[leaf * 4 + 3] = bottom;
+		}
+		mBounds[0] = bounds;
+
+		for (int level = 1; level < levels; level++) {
+			final int[] children = mBounds[level - 1];
+			final int childCount = children.length / 4;
+			final int count = (childCount + NODE_CAPACITY - 1) / NODE_CAPACITY;
+			bounds = new int[count * 4];
+			for (int node = 0; node < count; node++) {
+				int left = Integer.MAX_VALUE;
+				int top = Integer.MAX_VALUE;
+				int right = Integer.MIN_VALUE;
+				int bottom = Integer.MIN_VALUE;
+				final int end = Math.min(childCount, (node + 1) * NODE_CAPACITY);
+				for (int child = node * NODE_CAPACITY; child < end; child++) {
+					left = Math.min(left, children[child * 4]);
+					top = Math.min(top, children[child * 4 + 1]);
+					right = Math.max(right, children[child * 4 + 2]);
+					bottom = Math.max(bottom, children[child * 4 + 3]);
+				}
+				bounds[node * 4] = left;
+				bounds[node * 4 + 1] = top;
+				bounds[node * 4 + 2] = right;
+				bounds[node * 4 + 3] = bottom;
+			}
+			mBounds[level] = bounds;
+		}
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int size() {
+		return mIndexes.length;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Find the points inside a rectangle, edges included.
+	 *
+	 * @param pResult
+	 *            receives the indexes of the points, in no particular order. It isn't cleared
+	 *            first, so several rectangles can be collected into one result.
+	 */
+	public void query(final int pLeft, final int pTop, final int pRight, final int pBottom,
+			final Result pResult) {
+		if (mBounds.length > 0) {
+			query(mBounds.length - 1, 0, pLeft, pTop, pRight, pBottom, pResult);
+		}
+	}
+
+	private void query(final int pLevel, final int pNode, final int pLeft, final int pTop,
+			final int pRight, final int pBottom, final Result pResult) {
+		final int[] bounds = mBounds[pLevel];
+		final int childCount = pLevel == 0 ? mIndexes.length : mBounds[pLevel - 1].length / 4;
+		final int end = Math.min(childCount, (pNode + 1) * NODE_CAPACITY);
+		if (bounds[pNode * 4] > pRight || bounds[pNode * 4 + 2] < pLeft
+				|| bounds[pNode * 4 + 1] > pBottom || bounds[pNode * 4 + 3] < pTop) {
+			return;
+		}
+
+		if (pLevel == 0) {
+			for (int i = pNode * NODE_CAPACITY; i < end; i++) {
+				if (mX[i] >= pLeft && mX[i] <= pRight && mY[i] >= pTop && mY[i] <= pBottom) {
+					pResult.add(mIndexes[i]);
+				}
+			}
+		} else {
+			for (int child = pNode * NODE_CAPACITY; child < end; child++) {
+				query(pLevel - 1, child, pLeft, pTop, pRight, pBottom, pResult);
+			}
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * A growable list of point indexes that can be reused across queries without allocating.
+	 */
+	public static class Result {
+
+		private int[] mIndexes = new int[64];
+		private int mSize;
+
+		public int size() {
+			return mSize;
+		}
+
+		public int get(final int pPosition) {
+			return mIndexes[pPosition];
+		}
+
+		public void clear() {
+			mSize = 0;
+		}
+
+		void add(final int pIndex) {
+			if (mSize == mIndexes.length) {
+				final int[] indexes = new int[mSize * 2];
+				System.arraycopy(mIndexes, 0, indexes, 0, mSize);
+				mIndexes = indexes;
+			}
+			mIndexes[mSize++] = pIndex;
+		}
+
+		/**
+		 * Sort the indexes in ascending order and drop the duplicates that querying overlapping
+		 * rectangles produces.
+		 */
+		public void sortUnique() {
+			Arrays.sort(mIndexes, 0, mSize);
+			int size = 0;
+			for (int i = 0; i < mSize; i++) {
+				if (size == 0 || mIndexes[i] != mIndexes[size - 1]) {
+					mIndexes[size++] = mIndexes[i];
+				}
+			}
+			mSize = size;
+		}
+	}
+}
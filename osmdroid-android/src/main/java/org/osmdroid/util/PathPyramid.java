@@ -0,0 +1,252 @@
+package org.osmdroid.util;
+
+/**
+ * A polyline with non-negative integer coordinates, such as the
+ * {@link org.osmdroid.views.util.constants.MapViewConstants#MAXIMUM_ZOOMLEVEL} pixel coordinates
+ * of a path, split into chunks of {@link #CHUNK_SIZE} segments that each have a bounding box and
+ * Douglas-Peucker simplifications at every tolerance that's a power of two. Drawing it only has to
+ * look at the chunks that intersect the screen, and only at the points that matter at the zoom
+ * level.<br />
+ * <br />
+ * Points can be added at any time. A chunk is simplified once all its points are known; the last
+ * chunk of the path is kept as it is until then, so adding a point never costs more than a chunk.
+ * The simplifications of a chunk are made the first time they're needed, from the significance of
+ * each point: the largest tolerance at which Douglas-Peucker keeps it.<br />
+ * <br />
+ * Chunk i has the points i * {@link #CHUNK_SIZE} to (i + 1) * {@link #CHUNK_SIZE}, so consecutive
+ * chunks share a point and their simplifications join up.
+ */
+public class PathPyramid {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** The number of segments in a chunk */
+	public static final int CHUNK_SIZE = 256;
+
+	/** The number of tolerances, 2 to the power of 0 to 31 */
+	private static final int TOLERANCE_COUNT = 32;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private int[] mX = new int[CHUNK_SIZE + 1];
+	private int[] mY = new int[CHUNK_SIZE + 1];
+	private int mSize;
+
+	/** The largest tolerance at which Douglas-Peucker keeps each point of the complete chunks */
+	private int[] mSignificance = new int[CHUNK_SIZE + 1];
+
+	/** The bounds of the chunks as left, top, right, bottom */
+	private int[] mBounds = new int[4];
+
+	/** The simplifications of each complete chunk, by power of two of the tolerance */
+	private int[][][] mSimplified = new int[1][][];
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int size() {
+		return mSize;
+	}
+
+	public int getX(final int pIndex) {
+		return mX[pIndex];
+	}
+
+	public int getY(final int pIndex) {
+		return mY[pIndex];
+	}
+
+	public int getChunkCount() {
+		return mSize < 2 ? 0 : (mSize - 2) / CHUNK_SIZE + 1;
+	}
+
+	public int getChunkStart(final int pChunk) {
+		return pChunk * CHUNK_SIZE;
+	}
+
+	/**
+	 * @return the index of the last point of the chunk, which is the first of the next one
+	 */
+	public int getChunkEnd(final int pChunk) {
+		return Math.min((pChunk + 1) * CHUNK_SIZE, mSize - 1);
+	}
+
+	/**
+	 * Whether all the points of a chunk are known, so that it's simplified.
+	 */
+	public boolean isChunkComplete(final int pChunk) {
+		return (pChunk + 1) * CHUNK_SIZE < mSize;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	public void add(final int pX, final int pY) {
+		if (mSize == mX.length) {
+			mX = grow(mX, mSize * 2);
+			mY = grow(mY, mSize * 2);
+		}
+		mX[mSize] = pX;
+		mY[mSize] = pY;
+		mSize++;
+		if (mSize < 2) {
+			return;
+		}
+
+		final int index = mSize - 1;
+		final int chunk = (index - 1) / CHUNK_SIZE;
+		if (index - 1 == chunk * CHUNK_SIZE) {
+			// the first segment of a chunk
+			if (mBounds.length < (chunk + 1) * 4) {
+				mBounds = grow(mBounds, mBounds.length * 2);
+			}
+			mBounds[chunk * 4] = mX[index - 1];
+			mBounds[chunk * 4 + 1] = mY[index - 1];
+			mBounds[chunk * 4 + 2] = mX[index - 1];
+			mBounds[chunk * 4 + 3] = mY[index - 1];
+		}
+		mBounds[chunk * 4] = Math.min(mBounds[chunk * 4], pX);
+		mBounds[chunk * 4 + 1] = Math.min(mBounds[chunk * 4 + 1], pY);
+		mBounds[chunk * 4 + 2] = Math.max(mBounds[chunk * 4 + 2], pX);
+		mBounds[chunk * 4 + 3] = Math.max(mBounds[chunk * 4 + 3], pY);
+
+		if (index == (chunk + 1) * CHUNK_SIZE) {
+			// the chunk is complete
+			computeSignificance(chunk * CHUNK_SIZE, index);
+		}
+	}
+
+	public void clear() {
+		mSize = 0;
+		mSimplified = new int[1][][];
+	}
+
+	/**
+	 * Whether the bounding box of a chunk intersects a rectangle, edges included.
+	 */
+	public boolean intersects(final int pChunk, final int pLeft, final int pTop, final int pRight,
+			final int pBottom) {
+		return mBounds[pChunk * 4] <= pRight && mBounds[pChunk * 4 + 2] >= pLeft
+				&& mBounds[pChunk * 4 + 1] <= pBottom && mBounds[pChunk * 4 + 3] >= pTop;
+	}
+
+	/**
+	 * Get the points of a chunk that Douglas-Peucker keeps when no point may be further than
+	 * 2^pToleranceShift from the simplified line. For a path in MAXIMUM_ZOOMLEVEL pixels, a shift
+	 * of MAXIMUM_ZOOMLEVEL minus the zoom level is a tolerance of one screen pixel.
+	 *
+	 * @return the indexes of the points in ascending order, from the start to the end of the chunk;
+	 *         or null if the chunk isn't complete and all its points have to be used. The array is
+	 *         cached and mustn't be changed.
+	 */
+	public int[] getSimplified(final int pChunk, final int pToleranceShift) {
+		if (!isChunkComplete(pChunk)) {
+			return null;
+		}
+		if (mSimplified.length <= pChunk) {
+			final int[][][] simplified = new int[Math.max(pChunk + 1, mSimplified.length * 2)][][];
+			System.arraycopy(mSimplified, 0, simplified, 0, mSimplified.length);
+			mSimplified = simplified;
+		}
+		if (mSimplified[pChunk] == null) {
+			mSimplified[pChunk] = new int[TOLERANCE_COUNT][];
+		}
+		final int shift = Math.max(0, Math.min(pToleranceShift, TOLERANCE_COUNT - 1));
+		int[] points = mSimplified[pChunk][shift];
+		if (points == null) {
+			points = simplify(getChunkStart(pChunk), getChunkEnd(pChunk), 1L << shift);
+			mSimplified[pChunk][shift] = points;
+		}
+		return points;
+	}
+
+	private int[] simplify(final int pStart, final int pEnd, final long pTolerance) {
+		int count = 0;
+		for (int i = pStart; i <= pEnd; i++) {
+			if (mSignificance[i] > pTolerance) {
+				count++;
+			}
+		}
+		final int[] points = new int[count];
+		count = 0;
+		for (int i = pStart; i <= pEnd; i++) {
+			if (mSignificance[i] > pTolerance) {
+				points[count++] = i;
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Run Douglas-Peucker over a chunk without a tolerance, recording for each point the distance
+	 * that split its range, capped by the ones above it. Douglas-Peucker with tolerance t then
+	 * keeps exactly the points whose significance is more than t.
+	 */
+	private void computeSignificance(final int pStart, final int pEnd) {
+		if (mSignificance.length < mX.length) {
+			mSignificance = grow(mSignificance, mX.length);
+		}
+		mSignificance[pStart] = Integer.MAX_VALUE;
+		mSignificance[pEnd] = Integer.MAX_VALUE;
+
+		// ranges to split as start, end, and the significance of the range that contained them
+		final int[] stack = new int[3 * (CHUNK_SIZE + 1)];
+		int top = 0;
+		stack[top++] = pStart;
+		stack[top++] = pEnd;
+		stack[top++] = Integer.MAX_VALUE;
+		while (top > 0) {
+			final int cap = stack[--top];
+			final int end = stack[--top];
+			final int start = stack[--top];
+			if (end - start < 2) {
+				continue;
+			}
+
+			int farthest = start + 1;
+			double maximum = -1;
+			for (int i = start + 1; i < end; i++) {
+				final double distance = distance(i, start, end);
+				if (distance > maximum) {
+					maximum = distance;
+					farthest = i;
+				}
+			}
+			final int significance = (int) Math.min(cap, Math.ceil(maximum));
+			mSignificance[farthest] = significance;
+			stack[top++] = start;
+			stack[top++] = farthest;
+			stack[top++] = significance;
+			stack[top++] = farthest;
+			stack[top++] = end;
+			stack[top++] = significance;
+		}
+	}
+
+	/**
+	 * The distance from a point to the segment between two others.
+	 */
+	private double distance(final int pPoint, final int pStart, final int pEnd) {
+		final double x = mX[pPoint] - (double) mX[pStart];
+		final double y = mY[pPoint] - (double) mY[pStart];
+		final double dx = mX[pEnd] - (double) mX[pStart];
+		final double dy = mY[pEnd] - (double) mY[pStart];
+		final double length = dx * dx + dy * dy;
+		final double t = length == 0 ? 0 : Math.max(0, Math.min(1, (x * dx + y * dy) / length));
+		final double ex = x - t * dx;
+		final double ey = y - t * dy;
+		return Math.sqrt(ex * ex + ey * ey);
+	}
+
+	private static int[] grow(final int[] pArray, final int pLength) {
+		final int[] array = new int[pLength];
+		System.arraycopy(pArray, 0, array, 0, pArray.length);
+		return array;
+	}
+}
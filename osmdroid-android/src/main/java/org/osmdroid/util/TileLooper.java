@@ -30,8 +30,7 @@ public abstract class TileLooper {
 				// Construct a MapTile to request from the tile provider.
 				final int tileY = MyMath.mod(y, mapTileUpperBound);
 				final int tileX = MyMath.mod(x, mapTileUpperBound);
-				final MapTile tile = new MapTile(pZoomLevel, tileX, tileY);
-				handleTile(pCanvas, pTileSizePx, tile, x, y);
+				handleTile(pCanvas, pTileSizePx, MapTile.getKey(pZoomLevel, tileX, tileY), x, y);
 			}
 		}
 
@@ -42,5 +41,15 @@ public abstract class TileLooper {
 
 	public abstract void handleTile(Canvas pCanvas, int pTileSizePx, MapTile pTile, int pX, int pY);
 
+	/**
+	 * Handle a tile given by its key (see {@link MapTile#getKey(int, int, int)}). This
+	 * implementation makes a MapTile and passes it on; loopers that run on every frame override it
+	 * so that they don't have to.
+	 */
+	public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey,
+			final int pX, final int pY) {
+		handleTile(pCanvas, pTileSizePx, MapTile.fromKey(pTileKey), pX, pY);
+	}
+
 	public abstract void finaliseLoop();
 }
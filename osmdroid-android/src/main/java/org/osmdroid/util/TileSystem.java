@@ -49,6 +49,30 @@ public final class TileSystem {
 				levelOfDetail, reuse);
 	}
 
+	/**
+	 * Unlike the single point version the coordinates aren't wrapped, they have to be within
+	 * -90 to 90 and -180 to 180.
+	 *
+	 * @see microsoft.mappoint.TileSystem#LatLongToPixelXY(int[], int, int, int, int[], int)
+	 */
+	public static void LatLongToPixelXY(final int[] latLongE6, final int offset, final int count,
+			final int levelOfDetail, final int[] out, final int outOffset) {
+		microsoft.mappoint.TileSystem.LatLongToPixelXY(latLongE6, offset, count, levelOfDetail,
+				out, outOffset);
+	}
+
+	/**
+	 * Unlike the single point version the coordinates aren't wrapped, they have to be within
+	 * -90 to 90 and -180 to 180.
+	 *
+	 * @see microsoft.mappoint.TileSystem#LatLongToPixelXY(double[], int, int, int, int[], int)
+	 */
+	public static void LatLongToPixelXY(final double[] latLong, final int offset,
+			final int count, final int levelOfDetail, final int[] out, final int outOffset) {
+		microsoft.mappoint.TileSystem.LatLongToPixelXY(latLong, offset, count, levelOfDetail, out,
+				outOffset);
+	}
+
 	/** @see microsoft.mappoint.TileSystem#PixelXYToLatLong(int, int, int, GeoPoint) */
 	public static GeoPoint PixelXYToLatLong(
 			final int pixelX, final int pixelY, final int levelOfDetail, final GeoPoint reuse) {
@@ -122,6 +122,7 @@ public class MapController implements IMapController, MapViewConstants {
 			final int yStart = mMapView.getScrollY();
 			mMapView.getScroller().startScroll(xStart, yStart, x - xStart, y - yStart,
 					ANIMATION_DURATION_DEFAULT);
+			mMapView.prefetchTiles(x, y, mMapView.getZoomLevel(false));
 			mMapView.postInvalidate();
 		}
 	}
@@ -200,6 +201,9 @@ public class MapController implements IMapController, MapViewConstants {
 				return false;
 			} else {
 				mMapView.mTargetZoomLevel.set(mMapView.getZoomLevel(false) + 1);
+				// the fixed point stays put while everything else moves away from it
+				mMapView.prefetchTiles(mMapView.getScrollX() + xPixel, mMapView.getScrollY()
+						+ yPixel, mMapView.mTargetZoomLevel.get());
 				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
 					mCurrentAnimator = mZoomInAnimation;
 					mZoomInAnimation.start();
@@ -231,6 +235,8 @@ public class MapController implements IMapController, MapViewConstants {
 				return false;
 			} else {
 				mMapView.mTargetZoomLevel.set(mMapView.getZoomLevel(false) - 1);
+				mMapView.prefetchTiles(mMapView.getScrollX() - xPixel / 2, mMapView.getScrollY()
+						- yPixel / 2, mMapView.mTargetZoomLevel.get());
 				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
 					mCurrentAnimator = mZoomOutAnimation;
 					mZoomOutAnimation.start();
@@ -21,6 +21,7 @@ import org.osmdroid.api.IProjection;
 import org.osmdroid.events.MapListener;
 import org.osmdroid.events.ScrollEvent;
 import org.osmdroid.events.ZoomEvent;
+import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.MapTileProviderArray;
 import org.osmdroid.tileprovider.MapTileProviderBase;
 import org.osmdroid.tileprovider.MapTileProviderBasic;
@@ -37,6 +38,7 @@ import org.osmdroid.views.overlay.Overlay;
 import org.osmdroid.views.overlay.OverlayManager;
 import org.osmdroid.views.overlay.TilesOverlay;
 import org.osmdroid.views.safecanvas.ISafeCanvas;
+import org.osmdroid.views.util.FrameStats;
 import org.osmdroid.views.util.constants.MapViewConstants;
 
 import android.content.Context;
@@ -82,6 +84,11 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 
 	private Projection mProjection;
 
+	/** How far beyond the screen the projections reach, while overlays record their cache */
+	private int mProjectionMargin;
+
+	private final FrameStats mFrameStats = new FrameStats();
+
 	private final TilesOverlay mMapOverlay;
 
 	private final GestureDetector mGestureDetector;
@@ -90,6 +97,10 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 	private final Scroller mScroller;
 	protected boolean mIsFlinging;
 
+	/** The number of tiles around the destination of a fling, animation or zoom to prefetch */
+	private int mTilePrefetchRing = 1;
+	private final Rect mPrefetchRect = new Rect();
+
 	protected final AtomicInteger mTargetZoomLevel = new AtomicInteger();
 	protected final AtomicBoolean mIsAnimating = new AtomicBoolean(false);
 
@@ -230,6 +241,26 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		return mTileRequestCompleteHandler;
 	}
 
+	/**
+	 * Tell the tiles overlays that a tile has changed, and redraw. This is what the default tile
+	 * request complete handler does for each MAPTILE_SUCCESS_ID message; a custom handler should
+	 * do the same for tiles overlays that draw from an offscreen layer.
+	 *
+	 * @see TilesOverlay#setOffscreenLayerEnabled(boolean)
+	 */
+	public void invalidateMapTile(final MapTile pTile) {
+		final TilesOverlay tilesOverlay = getOverlayManager().getTilesOverlay();
+		if (tilesOverlay != null) {
+			tilesOverlay.invalidateTile(pTile);
+		}
+		for (final Overlay overlay : getOverlayManager()) {
+			if (overlay instanceof TilesOverlay) {
+				((TilesOverlay) overlay).invalidateTile(pTile);
+			}
+		}
+		invalidate();
+	}
+
 	
 	public int getLatitudeSpan() {
 		return this.getBoundingBox().getLatitudeSpanE6();
@@ -245,9 +276,15 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 	}
 
 	public BoundingBoxE6 getBoundingBox(final int pViewWidth, final int pViewHeight) {
+		return getBoundingBox(getScreenRect(null));
+	}
 
+	/**
+	 * @param screenRect
+	 *            a rect in <I>screen coordinates</I>, which is modified
+	 */
+	private BoundingBoxE6 getBoundingBox(final Rect screenRect) {
 		final int world_2 = TileSystem.MapSize(mZoomLevel) / 2;
-		final Rect screenRect = getScreenRect(null);
 		screenRect.offset(world_2, world_2);
 
 		final IGeoPoint neGeoPoint = TileSystem.PixelXYToLatLong(screenRect.right, screenRect.top,
@@ -275,6 +312,32 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		return out;
 	}
 
+	/**
+	 * Ask the tile provider for the tiles the map is going to show when it's scrolled to the
+	 * given position at the given zoom level, plus the prefetch ring. This replaces the tiles
+	 * asked for by the previous call.
+	 */
+	void prefetchTiles(final int pScrollX, final int pScrollY, final int pZoomLevel) {
+		if (mTilePrefetchRing < 0) {
+			return;
+		}
+		final Rect rect = mPrefetchRect;
+		rect.set(pScrollX - getWidth() / 2, pScrollY - getHeight() / 2, pScrollX + getWidth() / 2,
+				pScrollY + getHeight() / 2);
+		if (this.getMapOrientation() != 0 && this.getMapOrientation() != 180) {
+			GeometryMath.getBoundingBoxForRotatatedRectangle(rect, pScrollX, pScrollY,
+					this.getMapOrientation(), rect);
+		}
+		final int world_2 = TileSystem.MapSize(pZoomLevel) / 2;
+		final double tileSize = TileSystem.getTileSize();
+		final int left = (int) Math.floor((rect.left + world_2) / tileSize);
+		final int top = (int) Math.floor((rect.top + world_2) / tileSize);
+		final int right = (int) Math.floor((rect.right + world_2) / tileSize);
+		final int bottom = (int) Math.floor((rect.bottom + world_2) / tileSize);
+		mTileProvider.prefetchTiles(pZoomLevel, left - mTilePrefetchRing, top - mTilePrefetchRing,
+				right + mTilePrefetchRing, bottom + mTilePrefetchRing);
+	}
+
 	public Rect getIntrinsicScreenRect(final Rect reuse) {
 		final Rect out = reuse == null ? new Rect() : reuse;
 		out.set(getScrollX() - getWidth() / 2, getScrollY() - getHeight() / 2, getScrollX()
@@ -292,12 +355,22 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 	 */
 	
 	public Projection getProjection() {
-		if (mProjection == null) {
+		if (mProjection == null || !mProjection.isCurrent()) {
 			mProjection = new Projection();
 		}
 		return mProjection;
 	}
 
+	/**
+	 * Widen the screen rect and bounding box of the projections that {@link #getProjection()}
+	 * returns by the margin on each side, so that overlays that only draw what's on the screen
+	 * draw what's around it too. Used while overlays record their drawing cache, and reset to 0
+	 * right after.
+	 */
+	public void setProjectionMargin(final int pMargin) {
+		mProjectionMargin = pMargin;
+	}
+
 	void setMapCenter(final IGeoPoint aCenter) {
 		getController().animateTo(aCenter);
 	}
@@ -356,7 +429,6 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 
 		// snap for all snappables
 		final Point snapPoint = new Point();
-		mProjection = new Projection();
 		if (this.getOverlayManager().onSnapToItem(getScrollX(), getScrollY(), snapPoint, this)) {
 			scrollTo(snapPoint.x, snapPoint.y);
 		}
@@ -545,6 +617,22 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		return mapOrientation;
 	}
 
+	public int getTilePrefetchRing() {
+		return mTilePrefetchRing;
+	}
+
+	/**
+	 * Set how many tiles around the destination of a fling, an animation or a zoom are loaded
+	 * before the map gets there, on top of the tiles of the destination itself. A negative value
+	 * turns prefetching off.
+	 */
+	public void setTilePrefetchRing(final int pTilePrefetchRing) {
+		mTilePrefetchRing = pTilePrefetchRing;
+		if (pTilePrefetchRing < 0) {
+			mTileProvider.cancelPrefetch();
+		}
+	}
+
 	/**
 	 * Whether to use the network connection if it's available.
 	 */
@@ -982,9 +1070,9 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 
 	
 	protected void dispatchDraw(final Canvas c) {
-		final long startMs = System.currentTimeMillis();
+		final long start = System.nanoTime();
 
-		mProjection = new Projection();
+		final Projection projection = getProjection();
 
 		// Save the current canvas matrix
 		c.save();
@@ -994,7 +1082,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 				mMultiTouchScalePoint.y);
 
 		/* rotate Canvas */
-		c.rotate(mapOrientation, mProjection.getScreenRect().exactCenterX(), mProjection
+		c.rotate(mapOrientation, projection.getScreenRect().exactCenterX(), projection
 				.getScreenRect().exactCenterY());
 
 		/* Draw background */
@@ -1005,11 +1093,21 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 
 		// Restore the canvas matrix
 		c.restore();
+		mFrameStats.add(System.nanoTime() - start);
 
 		super.dispatchDraw(c);
 
 	}
 
+	/**
+	 * The time it took to draw the tiles and the overlays in the last frames.
+	 *
+	 * @see OverlayManager#getOverlayFrameStats()
+	 */
+	public FrameStats getFrameStats() {
+		return mFrameStats;
+	}
+
 	/**
 	 * Returns true if the safe drawing canvas is being used.
 	 *
@@ -1084,7 +1182,8 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 				Matrix m = new Matrix();
 				m.setScale(1 / mMultiTouchScale, 1 / mMultiTouchScale, mMultiTouchScalePoint.x,
 						mMultiTouchScalePoint.y);
-				m.postRotate(-mapOrientation, mProjection.getScreenRect().centerX(), mProjection
+				final Projection projection = getProjection();
+				m.postRotate(-mapOrientation, projection.getScreenRect().centerX(), projection
 						.getScreenRect().centerY());
 				float[] pts = new float[2];
 				pts[0] = getScrollX();
@@ -1178,6 +1277,11 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 	 * Projection from MapView.getProjection(). You should not hold on to this object for more than
 	 * one draw, since the projection of the map could change. <br />
 	 * <br />
+	 * A Projection is a snapshot of the map's zoom level, scroll position, orientation and size.
+	 * MapView keeps handing out the same one until one of them changes, so anything an overlay
+	 * computes from it can be reused for as long as it's the same object. The batch methods project
+	 * arrays of coordinates into arrays the caller provides, without creating any objects.<br />
+	 * <br />
 	 * <I>Screen coordinates</I> are in the coordinate system of the screen's Canvas. The origin is
 	 * in the center of the plane. <I>Screen coordinates</I> are appropriate for using to draw to
 	 * the screen.<br />
@@ -1197,9 +1301,13 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 
 		private final int viewWidth_2 = getWidth() / 2;
 		private final int viewHeight_2 = getHeight() / 2;
-		private final int worldSize_2 = TileSystem.MapSize(mZoomLevel) / 2;
+		private final int worldSize = TileSystem.MapSize(mZoomLevel);
+		private final int worldSize_2 = worldSize / 2;
 		private final int offsetX = -worldSize_2;
 		private final int offsetY = -worldSize_2;
+		private final int scrollX = MapView.this.getScrollX();
+		private final int scrollY = MapView.this.getScrollY();
+		private final int margin = MapView.this.mProjectionMargin;
 
 		private final BoundingBoxE6 mBoundingBoxProjection;
 		private final int mZoomLevelProjection;
@@ -1213,12 +1321,26 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			 * Do some calculations and drag attributes to local variables to save some performance.
 			 */
 			mZoomLevelProjection = MapView.this.mZoomLevel;
-			mBoundingBoxProjection = MapView.this.getBoundingBox();
 			mScreenRectProjection = MapView.this.getScreenRect(null);
+			mScreenRectProjection.inset(-margin, -margin);
+			mBoundingBoxProjection = MapView.this.getBoundingBox(new Rect(mScreenRectProjection));
 			mIntrinsicScreenRectProjection = MapView.this.getIntrinsicScreenRect(null);
 			mMapOrientation = MapView.this.getMapOrientation();
 		}
 
+		/**
+		 * Whether the map still has the zoom level, scroll position, orientation and size that
+		 * this projection was made for.
+		 */
+		private boolean isCurrent() {
+			return mZoomLevelProjection == MapView.this.mZoomLevel
+					&& scrollX == MapView.this.getScrollX() && scrollY == MapView.this.getScrollY()
+					&& mMapOrientation == MapView.this.getMapOrientation()
+					&& margin == MapView.this.mProjectionMargin
+					&& viewWidth_2 == MapView.this.getWidth() / 2
+					&& viewHeight_2 == MapView.this.getHeight() / 2;
+		}
+
 		public int getZoomLevel() {
 			return mZoomLevelProjection;
 		}
@@ -1285,7 +1407,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		public Point fromMapPixels(final int x, final int y, final Point reuse) {
 			final Point out = reuse != null ? reuse : new Point();
 			out.set(x - viewWidth_2, y - viewHeight_2);
-			out.offset(getScrollX(), getScrollY());
+			out.offset(scrollX, scrollY);
 			return out;
 		}
 
@@ -1304,24 +1426,74 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 							in.getLatitudeE6() / 1E6,
 							in.getLongitudeE6() / 1E6,
 							getZoomLevel(), out);
-			out.offset(offsetX, offsetY);
-			if (Math.abs(out.x - getScrollX()) >
-					Math.abs(out.x - TileSystem.MapSize(getZoomLevel()) - getScrollX())) {
-				out.x -= TileSystem.MapSize(getZoomLevel());
-			}
-			if (Math.abs(out.x - getScrollX()) >
-					Math.abs(out.x + TileSystem.MapSize(getZoomLevel()) - getScrollX())) {
-				out.x += TileSystem.MapSize(getZoomLevel());
+			out.set(wrapToScroll(out.x + offsetX, scrollX),
+					wrapToScroll(out.y + offsetY, scrollY));
+			return out;
+		}
+
+		/**
+		 * Converts an array of points to their <I>screen coordinates</I>, like
+		 * {@link #toMapPixels(IGeoPoint, Point)} does for one.
+		 *
+		 * @param latLongE6
+		 *            latitude and longitude E6 of each point, one after the other
+		 * @param offset
+		 *            the index in latLongE6 of the latitude of the first point
+		 * @param count
+		 *            the number of points
+		 * @param out
+		 *            receives the x and y of each point, one after the other. It may be latLongE6.
+		 * @param outOffset
+		 *            the index in out of the x of the first point
+		 */
+		public void toMapPixels(final int[] latLongE6, final int offset, final int count,
+				final int[] out, final int outOffset) {
+			TileSystem.LatLongToPixelXY(latLongE6, offset, count, mZoomLevelProjection, out,
+					outOffset);
+			wrapToScroll(out, outOffset, count);
+		}
+
+		/**
+		 * Converts an array of points given in degrees to their <I>screen coordinates</I>, like
+		 * {@link #toMapPixels(IGeoPoint, Point)} does for one.
+		 *
+		 * @param latLong
+		 *            latitude and longitude of each point, one after the other
+		 * @param offset
+		 *            the index in latLong of the latitude of the first point
+		 * @param count
+		 *            the number of points
+		 * @param out
+		 *            receives the x and y of each point, one after the other
+		 * @param outOffset
+		 *            the index in out of the x of the first point
+		 */
+		public void toMapPixels(final double[] latLong, final int offset, final int count,
+				final int[] out, final int outOffset) {
+			TileSystem.LatLongToPixelXY(latLong, offset, count, mZoomLevelProjection, out,
+					outOffset);
+			wrapToScroll(out, outOffset, count);
+		}
+
+		private void wrapToScroll(final int[] pixels, final int offset, final int count) {
+			for (int i = offset; i < offset + count * 2; i += 2) {
+				pixels[i] = wrapToScroll(pixels[i] + offsetX, scrollX);
+				pixels[i + 1] = wrapToScroll(pixels[i + 1] + offsetY, scrollY);
 			}
-			if (Math.abs(out.y - getScrollY()) >
-					Math.abs(out.y - TileSystem.MapSize(getZoomLevel()) - getScrollY())) {
-				out.y -= TileSystem.MapSize(getZoomLevel());
+		}
+
+		/**
+		 * Move a <I>screen coordinate</I> by a world size if that brings it closer to the center
+		 * of the screen.
+		 */
+		private int wrapToScroll(int value, final int scroll) {
+			if (Math.abs(value - scroll) > Math.abs(value - worldSize - scroll)) {
+				value -= worldSize;
 			}
-			if (Math.abs(out.y - getScrollY()) >
-					Math.abs(out.y + TileSystem.MapSize(getZoomLevel()) - getScrollY())) {
-				out.y += TileSystem.MapSize(getZoomLevel());
+			if (Math.abs(value - scroll) > Math.abs(value + worldSize - scroll)) {
+				value += worldSize;
 			}
-			return out;
+			return value;
 		}
 
 		/**
@@ -1345,6 +1517,29 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			return out;
 		}
 
+		/**
+		 * Performs the computationally heavy part of the projection for an array of points, like
+		 * {@link #toMapPixelsProjected(int, int, Point)} does for one. The results don't depend on
+		 * the projection, so they can be kept for as long as the points don't change.
+		 *
+		 * @param latLongE6
+		 *            latitude and longitude E6 of each point, one after the other
+		 * @param offset
+		 *            the index in latLongE6 of the latitude of the first point
+		 * @param count
+		 *            the number of points
+		 * @param out
+		 *            receives the intermediate x and y of each point, one after the other. It may be
+		 *            latLongE6.
+		 * @param outOffset
+		 *            the index in out of the x of the first point
+		 */
+		public void toMapPixelsProjected(final int[] latLongE6, final int offset, final int count,
+				final int[] out, final int outOffset) {
+			TileSystem.LatLongToPixelXY(latLongE6, offset, count, MAXIMUM_ZOOMLEVEL, out,
+					outOffset);
+		}
+
 		/**
 		 * Performs the second computationally light part of the projection. Returns results in
 		 * <I>screen coordinates</I>.
@@ -1364,6 +1559,31 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			return out;
 		}
 
+		/**
+		 * Performs the computationally light part of the projection for an array of points, like
+		 * {@link #toMapPixelsTranslated(Point, Point)} does for one.
+		 *
+		 * @param projected
+		 *            the intermediate x and y of each point, one after the other
+		 * @param offset
+		 *            the index in projected of the x of the first point
+		 * @param count
+		 *            the number of points
+		 * @param out
+		 *            receives the x and y <I>screen coordinates</I> of each point, one after the
+		 *            other. It may be projected.
+		 * @param outOffset
+		 *            the index in out of the x of the first point
+		 */
+		public void toMapPixelsTranslated(final int[] projected, final int offset,
+				final int count, final int[] out, final int outOffset) {
+			final int zoomDifference = MAXIMUM_ZOOMLEVEL - mZoomLevelProjection;
+			for (int i = 0; i < count * 2; i += 2) {
+				out[outOffset + i] = (projected[offset + i] >> zoomDifference) + offsetX;
+				out[outOffset + i + 1] = (projected[offset + i + 1] >> zoomDifference) + offsetY;
+			}
+		}
+
 		/**
 		 * Translates a rectangle from <I>screen coordinates</I> to <I>intermediate coordinates</I>.
 		 *
@@ -1457,6 +1677,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			if (mIsFlinging) {
 				mScroller.abortAnimation();
 				mIsFlinging = false;
+				mTileProvider.cancelPrefetch();
 			}
 
 			if (MapView.this.getOverlayManager().onDown(e, MapView.this)) {
@@ -1479,6 +1700,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			mIsFlinging = true;
 			mScroller.fling(getScrollX(), getScrollY(), (int) -velocityX, (int) -velocityY,
 					-worldSize, worldSize, -worldSize, worldSize);
+			prefetchTiles(mScroller.getFinalX(), mScroller.getFinalY(), getZoomLevel(false));
 			return true;
 		}
 
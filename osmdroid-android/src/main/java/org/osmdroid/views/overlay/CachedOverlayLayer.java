@@ -0,0 +1,128 @@
+package org.osmdroid.views.overlay;
+
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.MapView.Projection;
+
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.Rect;
+
+/**
+ * What an overlay draws at one zoom level and orientation, recorded into a {@link Picture} for
+ * an area around the screen so that it can be replayed as long as the map is only panned within
+ * it. The recording is in coordinates relative to the top left corner of the area, so it keeps
+ * its precision at high zoom levels like the safe canvas does.
+ *
+ * @see Overlay#setDrawingCacheEnabled(boolean)
+ */
+class CachedOverlayLayer {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final Picture mShadowPicture = new Picture();
+	private final Picture mPicture = new Picture();
+	private boolean mShadowRecorded;
+	private boolean mRecorded;
+
+	/** The recorded area in <I>screen coordinates</I>, empty if nothing is recorded */
+	private final Rect mRect = new Rect();
+	private int mZoomLevel;
+	private float mMapOrientation;
+	private int mGeneration;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Draw the overlay from the recording, recording it first if it's missing or out of date.
+	 */
+	void draw(final Canvas c, final MapView pMapView, final Overlay pOverlay, final boolean pShadow) {
+		final Projection pj = pMapView.getProjection();
+		final Rect screenRect = pj.getScreenRect();
+		if (mRect.isEmpty() || mZoomLevel != pj.getZoomLevel()
+				|| mMapOrientation != pj.getMapOrientation()
+				|| mGeneration != pOverlay.getDrawingCacheGeneration()
+				|| !mRect.contains(screenRect)) {
+			reset(pMapView, pOverlay);
+		}
+
+		final Picture picture = pShadow ? mShadowPicture : mPicture;
+		if (pShadow ? !mShadowRecorded : !mRecorded) {
+			record(picture, pMapView, pOverlay, pShadow);
+			if (pShadow) {
+				mShadowRecorded = true;
+			} else {
+				mRecorded = true;
+			}
+		}
+
+		c.save();
+		final float orientation = mMapOrientation;
+		if (orientation != 0) {
+			// like SafeDrawOverlay, rotate around a point close to the origin to keep precision
+			c.rotate(-orientation, screenRect.exactCenterX(), screenRect.exactCenterY());
+		}
+		SafeDrawOverlay.translate(c, pMapView, mRect.left, mRect.top);
+		if (orientation != 0) {
+			c.rotate(orientation, screenRect.exactCenterX() - mRect.left, screenRect.exactCenterY()
+					- mRect.top);
+		}
+		c.drawPicture(picture);
+		c.restore();
+	}
+
+	/**
+	 * Forget the recording, and pick the area around the screen for the next one.
+	 */
+	private void reset(final MapView pMapView, final Overlay pOverlay) {
+		// read before recording, so that a change while recording is recorded again
+		mGeneration = pOverlay.getDrawingCacheGeneration();
+		pMapView.setProjectionMargin(getMargin(pMapView));
+		try {
+			final Projection pj = pMapView.getProjection();
+			mRect.set(pj.getScreenRect());
+			mZoomLevel = pj.getZoomLevel();
+			mMapOrientation = pj.getMapOrientation();
+		} finally {
+			pMapView.setProjectionMargin(0);
+		}
+		mShadowRecorded = false;
+		mRecorded = false;
+	}
+
+	private void record(final Picture pPicture, final MapView pMapView, final Overlay pOverlay,
+			final boolean pShadow) {
+		final Canvas canvas = pPicture.beginRecording(mRect.width(), mRect.height());
+		pMapView.setProjectionMargin(getMargin(pMapView));
+		try {
+			pOverlay.drawForCache(canvas, pMapView, pShadow, mRect);
+		} finally {
+			pMapView.setProjectionMargin(0);
+			pPicture.endRecording();
+		}
+	}
+
+	/**
+	 * Forget the recording, to free its memory.
+	 */
+	void clear() {
+		mShadowPicture.beginRecording(0, 0);
+		mShadowPicture.endRecording();
+		mPicture.beginRecording(0, 0);
+		mPicture.endRecording();
+		mRect.setEmpty();
+		mShadowRecorded = false;
+		mRecorded = false;
+	}
+
+	/**
+	 * Record half a screen beyond each side of the screen, so that the map can be panned by that
+	 * much before recording again.
+	 */
+	private static int getMargin(final MapView pMapView) {
+		return Math.max(pMapView.getWidth(), pMapView.getHeight()) / 2;
+	}
+}
@@ -0,0 +1,699 @@
+package org.osmdroid.views.overlay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.osmdroid.ResourceProxy;
+import org.osmdroid.tileprovider.modules.ConfigurablePriorityThreadFactory;
+import org.osmdroid.util.BoundingBoxE6;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.PackedRTree;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.MapView.Projection;
+import org.osmdroid.views.safecanvas.ISafeCanvas;
+import org.osmdroid.views.safecanvas.SafePaint;
+import org.osmdroid.views.util.constants.MapViewConstants;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.view.MotionEvent;
+
+/**
+ * An {@link ItemizedIconOverlay} that groups its items into clusters when the map is zoomed out,
+ * and draws each cluster as a single marker with the number of items in it. The clusters of a zoom
+ * level are the items that fall into the same cell of a grid of 64 pixel squares. From
+ * {@link #getMaximumClusteringZoomLevel()} upwards the items are drawn one by one.<br />
+ * <br />
+ * The clusters are computed in the background when the items change, a zoom level at a time as
+ * it's shown, and kept until the items change again. Only the clusters and items near the screen
+ * are drawn, so drawing costs the same for any number of items.<br />
+ * <br />
+ * Tapping a cluster passes it to the listener set with
+ * {@link #setOnClusterGestureListener(OnItemGestureListener)}. If there's none, or it doesn't
+ * handle the tap, the map zooms to the bounds of the cluster. Tapping a cluster of a single item
+ * is a tap on the item.
+ *
+ * @param <Item>
+ */
+public class ItemizedClusterOverlay<Item extends OverlayItem> extends ItemizedIconOverlay<Item> {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	public static final int DEFAULT_MAXIMUM_CLUSTERING_ZOOM_LEVEL = 16;
+
+	/** The size of a grid cell is 2 to the power of this, in screen pixels */
+	private static final int CELL_SIZE_BITS = 6;
+
+	/** The radius of a cluster marker in density independent pixels */
+	private static final float CLUSTER_RADIUS = 16;
+
+	private static final ExecutorService sExecutor = new ThreadPoolExecutor(0, 1, 60,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ConfigurablePriorityThreadFactory(Thread.MIN_PRIORITY, "ItemizedClusterOverlay"));
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private int mMaximumClusteringZoomLevel = DEFAULT_MAXIMUM_CLUSTERING_ZOOM_LEVEL;
+	private OnItemGestureListener<Cluster<Item>> mOnClusterGestureListener;
+
+	/** The clustering of the current items, replaced when they change */
+	private volatile Clustering mClustering;
+
+	/** The map that's invalidated when clusters become available */
+	private volatile MapView mMapView;
+
+	private int mMaximumMarkerSize;
+	private final float mClusterRadius;
+	private final SafePaint mClusterPaint = new SafePaint();
+	private final SafePaint mTextPaint = new SafePaint();
+
+	private final PackedRTree.Result mQueryResult = new PackedRTree.Result();
+	private final Rect mQueryRect = new Rect();
+	private final Rect mTouchRect = new Rect();
+	private final Point mScreenCoords = new Point();
+	private final Point mTouchCoords = new Point();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public ItemizedClusterOverlay(final List<Item> pList, final Drawable pDefaultMarker,
+			final OnItemGestureListener<Item> pOnItemGestureListener,
+			final ResourceProxy pResourceProxy) {
+		super(pList, pDefaultMarker, pOnItemGestureListener, pResourceProxy);
+
+		mClusterRadius = CLUSTER_RADIUS * mScale;
+		mClusterPaint.setColor(Color.argb(200, 0x33, 0x66, 0xcc));
+		mClusterPaint.setStyle(Paint.Style.FILL);
+		mClusterPaint.setAntiAlias(true);
+		mTextPaint.setColor(Color.WHITE);
+		mTextPaint.setTextAlign(Paint.Align.CENTER);
+		mTextPaint.setTextSize(mClusterRadius * 0.8f);
+		mTextPaint.setTypeface(Typeface.DEFAULT_BOLD);
+		mTextPaint.setAntiAlias(true);
+
+		// populate() ran in the super constructor, before the fields were ready
+		cluster();
+	}
+
+	public ItemizedClusterOverlay(final List<Item> pList,
+			final OnItemGestureListener<Item> pOnItemGestureListener,
+			final ResourceProxy pResourceProxy) {
+		this(pList, pResourceProxy.getDrawable(ResourceProxy.bitmap.marker_default),
+				pOnItemGestureListener, pResourceProxy);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getMaximumClusteringZoomLevel() {
+		return mMaximumClusteringZoomLevel;
+	}
+
+	/**
+	 * Set the highest zoom level at which items are clustered. Above it they're drawn one by one.
+	 */
+	public void setMaximumClusteringZoomLevel(final int pZoomLevel) {
+		mMaximumClusteringZoomLevel = Math.max(0, Math.min(pZoomLevel,
+				MapViewConstants.MAXIMUM_ZOOMLEVEL));
+		cluster();
+	}
+
+	/**
+	 * Set the listener for taps on clusters of more than one item. The index that's passed to it
+	 * is the position of the cluster among the clusters of its zoom level.
+	 */
+	public void setOnClusterGestureListener(
+			final OnItemGestureListener<Cluster<Item>> pOnClusterGestureListener) {
+		mOnClusterGestureListener = pOnClusterGestureListener;
+	}
+
+	public SafePaint getClusterPaint() {
+		return mClusterPaint;
+	}
+
+	public SafePaint getClusterTextPaint() {
+		return mTextPaint;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	protected void onPopulated() {
+		// the constructor clusters once the fields are ready
+		if (mClusterRadius > 0) {
+			cluster();
+		}
+	}
+
+	@Override
+	protected void drawSafe(final ISafeCanvas canvas, final MapView mapView, final boolean shadow) {
+		mMapView = mapView;
+		if (shadow || !isClustered(mapView)) {
+			super.drawSafe(canvas, mapView, shadow);
+			return;
+		}
+
+		final Clustering clustering = mClustering;
+		final Projection pj = mapView.getProjection();
+		final Level level = clustering.getLevel(pj.getZoomLevel());
+		if (level == null) {
+			// drawn again when it's ready
+			return;
+		}
+
+		mQueryResult.clear();
+		queryIndex(level.mIndex, pj, pj.getScreenRect(), Math.max(mMaximumMarkerSize,
+				(int) Math.ceil(mClusterRadius)), mQueryRect, mQueryResult);
+		for (int i = mQueryResult.size() - 1; i >= 0; i--) {
+			final int cluster = mQueryResult.get(i);
+			final int start = level.mStart[cluster];
+			if (level.mStart[cluster + 1] - start == 1) {
+				final int index = clustering.mOrder[start];
+				if (index < size()) {
+					final Item item = getItem(index);
+					pj.toMapPixels(item.getPoint(), mScreenCoords);
+					onDrawItem(canvas, item, mScreenCoords, mapView.getMapOrientation());
+				}
+			} else {
+				toScreenCoords(pj, mapView, level.mX[cluster], level.mY[cluster], mScreenCoords);
+				onDrawCluster(canvas, level.mStart[cluster + 1] - start, mScreenCoords,
+						mapView.getMapOrientation());
+			}
+		}
+	}
+
+	@Override
+	protected PackedRTree.Result getItemsOnScreen(final Projection pj) {
+		final PackedRTree index = mClustering.mItemIndex;
+		mQueryResult.clear();
+		if (index != null) {
+			queryIndex(index, pj, pj.getScreenRect(), mMaximumMarkerSize, mQueryRect,
+					mQueryResult);
+		}
+		return mQueryResult;
+	}
+
+	@Override
+	protected PackedRTree.Result getItemsNear(final Projection pj, final int pX, final int pY) {
+		final PackedRTree index = mClustering.mItemIndex;
+		mQueryResult.clear();
+		if (index != null) {
+			mTouchRect.set(pX, pY, pX, pY);
+			queryIndex(index, pj, mTouchRect, mMaximumMarkerSize, mQueryRect, mQueryResult);
+		}
+		return mQueryResult;
+	}
+
+	@Override
+	public boolean onSingleTapConfirmed(final MotionEvent event, final MapView mapView) {
+		if (!isClustered(mapView)) {
+			return super.onSingleTapConfirmed(event, mapView);
+		}
+
+		final Cluster<Item> cluster = getClusterAt(event, mapView);
+		if (cluster == null) {
+			return false;
+		}
+		if (cluster.getSize() == 1) {
+			return mOnItemGestureListener != null
+					&& onSingleTapUpHelper(cluster.getItemIndex(0), cluster.getItem(0), mapView);
+		}
+		return onClusterSingleTapUp(cluster, mapView);
+	}
+
+	@Override
+	public boolean onLongPress(final MotionEvent event, final MapView mapView) {
+		if (!isClustered(mapView)) {
+			return super.onLongPress(event, mapView);
+		}
+
+		final Cluster<Item> cluster = getClusterAt(event, mapView);
+		if (cluster == null) {
+			return false;
+		}
+		if (cluster.getSize() == 1) {
+			return mOnItemGestureListener != null
+					&& onLongPressHelper(cluster.getItemIndex(0), cluster.getItem(0));
+		}
+		return mOnClusterGestureListener != null
+				&& mOnClusterGestureListener.onItemLongPress(cluster.getIndex(), cluster);
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Handle a tap on a cluster of more than one item. By default the cluster is passed to the
+	 * cluster listener, and if that doesn't handle it the map zooms to the bounds of the cluster.
+	 *
+	 * @return true if the tap was handled
+	 */
+	protected boolean onClusterSingleTapUp(final Cluster<Item> pCluster, final MapView pMapView) {
+		if (mOnClusterGestureListener != null
+				&& mOnClusterGestureListener.onItemSingleTapUp(pCluster.getIndex(), pCluster)) {
+			return true;
+		}
+		pMapView.zoomToBoundingBox(pCluster.getBoundingBox());
+		return true;
+	}
+
+	/**
+	 * Draw the marker of a cluster of more than one item: a circle with the number of items.
+	 *
+	 * @param pScreenCoords
+	 *            the center of the cluster in <I>screen coordinates</I>
+	 */
+	protected void onDrawCluster(final ISafeCanvas canvas, final int pSize,
+			final Point pScreenCoords, final float pMapOrientation) {
+		final String text = pSize < 1000 ? Integer.toString(pSize) : (pSize / 1000) + "k";
+		final float radius = text.length() > 2 ? mClusterRadius * 1.25f : mClusterRadius;
+		canvas.save();
+		canvas.rotate(-pMapOrientation, pScreenCoords.x, pScreenCoords.y);
+		canvas.drawCircle(pScreenCoords.x, pScreenCoords.y, radius, mClusterPaint);
+		canvas.drawText(text, pScreenCoords.x, pScreenCoords.y
+				- (mTextPaint.ascent() + mTextPaint.descent()) / 2, mTextPaint);
+		canvas.restore();
+	}
+
+	private boolean isClustered(final MapView pMapView) {
+		return pMapView.getZoomLevel() <= mClustering.mMaximumZoomLevel;
+	}
+
+	/**
+	 * Start clustering the current items in the background.
+	 */
+	private void cluster() {
+		final Clustering previous = mClustering;
+		if (previous != null) {
+			previous.mCancelled = true;
+		}
+
+		final int size = size();
+		final ArrayList<Item> items = new ArrayList<Item>(size);
+		for (int i = 0; i < size; i++) {
+			items.add(getItem(i));
+		}
+		mMaximumMarkerSize = getMaximumMarkerSize();
+		mClustering = new Clustering(items, mMaximumClusteringZoomLevel);
+		sExecutor.execute(mClustering);
+	}
+
+	private void invalidate() {
+		invalidateDrawingCache();
+		final MapView mapView = mMapView;
+		if (mapView != null) {
+			mapView.postInvalidate();
+		}
+	}
+
+	/**
+	 * Convert {@link MapViewConstants#MAXIMUM_ZOOMLEVEL} pixel coordinates to <I>screen
+	 * coordinates</I>, in the copy of the world that's closest to the center of the screen like
+	 * Projection.toMapPixels does.
+	 */
+	private static void toScreenCoords(final Projection pj, final MapView pMapView, final int pX,
+			final int pY, final Point pReuse) {
+		final int zoomDifference = MapViewConstants.MAXIMUM_ZOOMLEVEL - pj.getZoomLevel();
+		final int worldSize = TileSystem.MapSize(pj.getZoomLevel());
+		final int worldSize_2 = worldSize / 2;
+		pReuse.set((pX >> zoomDifference) - worldSize_2, (pY >> zoomDifference) - worldSize_2);
+		if (pReuse.x - pMapView.getScrollX() > worldSize_2) {
+			pReuse.x -= worldSize;
+		} else if (pReuse.x - pMapView.getScrollX() < -worldSize_2) {
+			pReuse.x += worldSize;
+		}
+	}
+
+	/**
+	 * Find the cluster under a touch: the closest cluster marker, or the first single item whose
+	 * marker is hit.
+	 */
+	private Cluster<Item> getClusterAt(final MotionEvent pEvent, final MapView pMapView) {
+		final Clustering clustering = mClustering;
+		final Projection pj = pMapView.getProjection();
+		final Level level = clustering.getLevel(pj.getZoomLevel());
+		if (level == null) {
+			return null;
+		}
+
+		pj.fromMapPixels((int) pEvent.getX(), (int) pEvent.getY(), mTouchCoords);
+		mTouchRect.set(mTouchCoords.x, mTouchCoords.y, mTouchCoords.x, mTouchCoords.y);
+		mQueryResult.clear();
+		queryIndex(level.mIndex, pj, mTouchRect, Math.max(mMaximumMarkerSize,
+				(int) Math.ceil(mClusterRadius)), mQueryRect, mQueryResult);
+
+		int closest = -1;
+		long closestDistance = Long.MAX_VALUE;
+		for (int i = 0; i < mQueryResult.size(); i++) {
+			final int cluster = mQueryResult.get(i);
+			final int start = level.mStart[cluster];
+			if (level.mStart[cluster + 1] - start == 1) {
+				final int index = clustering.mOrder[start];
+				if (index < size()) {
+					final Item item = getItem(index);
+					final Drawable marker = (item.getMarker(0) == null) ? this.mDefaultMarker
+							: item.getMarker(0);
+					boundToHotspot(marker, item.getMarkerHotspot());
+					pj.toMapPixels(item.getPoint(), mScreenCoords);
+					if (hitTest(item, marker, mTouchCoords.x - mScreenCoords.x, mTouchCoords.y
+							- mScreenCoords.y)) {
+						return new Cluster<Item>(clustering, level, cluster);
+					}
+				}
+			} else {
+				toScreenCoords(pj, pMapView, level.mX[cluster], level.mY[cluster],
+						mScreenCoords);
+				final long dx = mTouchCoords.x - mScreenCoords.x;
+				final long dy = mTouchCoords.y - mScreenCoords.y;
+				final long distance = dx * dx + dy * dy;
+				if (distance <= mClusterRadius * mClusterRadius && distance < closestDistance) {
+					closest = cluster;
+					closestDistance = distance;
+				}
+			}
+		}
+		return closest < 0 ? null : new Cluster<Item>(clustering, level, closest);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * A group of items that are drawn as one marker at a zoom level.
+	 */
+	public static class Cluster<Item extends OverlayItem> {
+
+		private final ItemizedClusterOverlay<Item>.Clustering mClustering;
+		private final int mIndex;
+		private final int mStart;
+		private final int mEnd;
+		private final GeoPoint mPoint;
+		private final BoundingBoxE6 mBoundingBox;
+
+		private Cluster(final ItemizedClusterOverlay<Item>.Clustering pClustering,
+				final Level pLevel, final int pIndex) {
+			mClustering = pClustering;
+			mIndex = pIndex;
+			mStart = pLevel.mStart[pIndex];
+			mEnd = pLevel.mStart[pIndex + 1];
+			mPoint = TileSystem.PixelXYToLatLong(pLevel.mX[pIndex], pLevel.mY[pIndex],
+					MapViewConstants.MAXIMUM_ZOOMLEVEL, null);
+			final GeoPoint northWest = TileSystem.PixelXYToLatLong(pLevel.mLeft[pIndex],
+					pLevel.mTop[pIndex], MapViewConstants.MAXIMUM_ZOOMLEVEL, null);
+			final GeoPoint southEast = TileSystem.PixelXYToLatLong(pLevel.mRight[pIndex],
+					pLevel.mBottom[pIndex], MapViewConstants.MAXIMUM_ZOOMLEVEL, null);
+			mBoundingBox = new BoundingBoxE6(northWest.getLatitudeE6(),
+					southEast.getLongitudeE6(), southEast.getLatitudeE6(),
+					northWest.getLongitudeE6());
+		}
+
+		/**
+		 * The position of the cluster among the clusters of its zoom level.
+		 */
+		public int getIndex() {
+			return mIndex;
+		}
+
+		public int getSize() {
+			return mEnd - mStart;
+		}
+
+		/**
+		 * The center of the items.
+		 */
+		public GeoPoint getPoint() {
+			return mPoint;
+		}
+
+		public BoundingBoxE6 getBoundingBox() {
+			return mBoundingBox;
+		}
+
+		/**
+		 * @param pPosition
+		 *            the position of the item in the cluster, from 0 to getSize() - 1
+		 */
+		public Item getItem(final int pPosition) {
+			return mClustering.mItems.get(getItemIndex(pPosition));
+		}
+
+		/**
+		 * @param pPosition
+		 *            the position of the item in the cluster, from 0 to getSize() - 1
+		 * @return the index of the item in the overlay
+		 */
+		public int getItemIndex(final int pPosition) {
+			return mClustering.mOrder[mStart + pPosition];
+		}
+
+		public List<Item> getItems() {
+			final ArrayList<Item> items = new ArrayList<Item>(getSize());
+			for (int i = 0; i < getSize(); i++) {
+				items.add(getItem(i));
+			}
+			return items;
+		}
+	}
+
+	/**
+	 * The clusters of a zoom level. Cluster i contains the items from mStart[i] to
+	 * mStart[i + 1] - 1 in the order of {@link Clustering#mOrder}, and its position is the
+	 * average of theirs. Positions and bounds are in {@link MapViewConstants#MAXIMUM_ZOOMLEVEL}
+	 * pixel coordinates.
+	 */
+	static final class Level {
+		final int[] mStart;
+		final int[] mX;
+		final int[] mY;
+		final int[] mLeft;
+		final int[] mTop;
+		final int[] mRight;
+		final int[] mBottom;
+		final PackedRTree mIndex;
+
+		Level(final int[] pStart, final int[] pX, final int[] pY, final int[] pLeft,
+				final int[] pTop, final int[] pRight, final int[] pBottom) {
+			mStart = pStart;
+			mX = pX;
+			mY = pY;
+			mLeft = pLeft;
+			mTop = pTop;
+			mRight = pRight;
+			mBottom = pBottom;
+			mIndex = new PackedRTree(pX, pY, pX.length);
+		}
+
+		/**
+		 * Compute the clusters of a zoom level with a single pass over the sorted items.
+		 *
+		 * @param pKeys
+		 *            the sort keys of the items, see {@link #interleave(int, int)}, in ascending
+		 *            order
+		 * @param pX
+		 *            the x coordinates of the items, in the same order
+		 * @param pY
+		 *            the y coordinates of the items, in the same order
+		 * @param pShift
+		 *            the number of low bits of the keys that are ignored, 2 for each zoom level
+		 *            below the one the keys were made for, as a cell is 4 cells of the next level
+		 */
+		static Level compute(final long[] pKeys, final int[] pX, final int[] pY,
+				final int pShift) {
+			final int size = pKeys.length;
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (i == 0 || pKeys[i] >>> pShift != pKeys[i - 1] >>> pShift) {
+					count++;
+				}
+			}
+
+			final int[] start = new int[count + 1];
+			final int[] x = new int[count];
+			final int[] y = new int[count];
+			final int[] left = new int[count];
+			final int[] top = new int[count];
+			final int[] right = new int[count];
+			final int[] bottom = new int[count];
+			int cluster = -1;
+			long sumX = 0;
+			long sumY = 0;
+			for (int i = 0; i <= size; i++) {
+				if (i == size || i == 0 || pKeys[i] >>> pShift != pKeys[i - 1] >>> pShift) {
+					if (cluster >= 0) {
+						final int items = i - start[cluster];
+						x[cluster] = (int) (sumX / items);
+						y[cluster] = (int) (sumY / items);
+					}
+					if (i == size) {
+						break;
+					}
+					cluster++;
+					start[cluster] = i;
+					left[cluster] = Integer.MAX_VALUE;
+					top[cluster] = Integer.MAX_VALUE;
+					right[cluster] = Integer.MIN_VALUE;
+					bottom[cluster] = Integer.MIN_VALUE;
+					sumX = 0;
+					sumY = 0;
+				}
+				sumX += pX[i];
+				sumY += pY[i];
+				left[cluster] = Math.min(left[cluster], pX[i]);
+				top[cluster] = Math.min(top[cluster], pY[i]);
+				right[cluster] = Math.max(right[cluster], pX[i]);
+				bottom[cluster] = Math.max(bottom[cluster], pY[i]);
+			}
+			start[count] = size;
+			return new Level(start, x, y, left, top, right, bottom);
+		}
+
+		/**
+		 * Interleave the bits of x and y, so that sorting by the result keeps the items of each
+		 * grid cell together at every zoom level.
+		 */
+		static long interleave(final int pX, final int pY) {
+			return spread(pX) | spread(pY) << 1;
+		}
+
+		private static long spread(final int pValue) {
+			long value = pValue & 0xffffffffL;
+			value = (value | value << 16) & 0x0000ffff0000ffffL;
+			value = (value | value << 8) & 0x00ff00ff00ff00ffL;
+			value = (value | value << 4) & 0x0f0f0f0f0f0f0f0fL;
+			value = (value | value << 2) & 0x3333333333333333L;
+			value = (value | value << 1) & 0x5555555555555555L;
+			return value;
+		}
+	}
+
+	/**
+	 * The clustering of a snapshot of the items. It first sorts the items so that the items of a
+	 * grid cell are next to each other at every zoom level, then computes the clusters of each
+	 * zoom level with a single pass over them when the level is first needed. Everything runs on
+	 * {@link #sExecutor}, one task at a time.
+	 */
+	final class Clustering implements Runnable {
+
+		final ArrayList<Item> mItems;
+		final int mMaximumZoomLevel;
+		volatile boolean mCancelled;
+
+		/** The index of the items by position, built by run() */
+		volatile PackedRTree mItemIndex;
+
+		/** The overlay indexes of the items in sorted order, and their sort keys and positions */
+		int[] mOrder;
+		long[] mKeys;
+		int[] mX;
+		int[] mY;
+
+		private final AtomicReferenceArray<Level> mLevels;
+		private final boolean[] mRequested;
+
+		Clustering(final ArrayList<Item> pItems, final int pMaximumZoomLevel) {
+			mItems = pItems;
+			mMaximumZoomLevel = pMaximumZoomLevel;
+			mLevels = new AtomicReferenceArray<Level>(pMaximumZoomLevel + 1);
+			mRequested = new boolean[pMaximumZoomLevel + 1];
+		}
+
+		/**
+		 * Get the clusters of a zoom level, or start computing them if they aren't ready. The
+		 * neighbouring zoom levels are computed next, ready for zooming.
+		 *
+		 * @return the clusters, or null if they aren't ready yet
+		 */
+		Level getLevel(final int pZoomLevel) {
+			final int zoomLevel = Math.max(0, Math.min(pZoomLevel, mMaximumZoomLevel));
+			final Level level = mLevels.get(zoomLevel);
+			request(zoomLevel);
+			request(zoomLevel - 1);
+			request(zoomLevel + 1);
+			return level;
+		}
+
+		private synchronized void request(final int pZoomLevel) {
+			if (pZoomLevel < 0 || pZoomLevel > mMaximumZoomLevel || mRequested[pZoomLevel]) {
+				return;
+			}
+			mRequested[pZoomLevel] = true;
+			sExecutor.execute(new Runnable() {
+				public void run() {
+					if (!mCancelled) {
+						mLevels.set(pZoomLevel, Level.compute(mKeys, mX, mY,
+								2 * (mMaximumZoomLevel - pZoomLevel)));
+						invalidate();
+					}
+				}
+			});
+		}
+
+		public void run() {
+			if (mCancelled) {
+				return;
+			}
+
+			final int size = mItems.size();
+			final int[] x = new int[size];
+			final int[] y = new int[size];
+			final long[] keys = new long[size];
+			final Integer[] order = new Integer[size];
+			final Point projected = new Point();
+			final int shift = CELL_SIZE_BITS + MapViewConstants.MAXIMUM_ZOOMLEVEL
+					- mMaximumZoomLevel;
+			for (int i = 0; i < size; i++) {
+				final GeoPoint point = mItems.get(i).getPoint();
+				TileSystem.LatLongToPixelXY(point.getLatitudeE6() / 1E6,
+						point.getLongitudeE6() / 1E6, MapViewConstants.MAXIMUM_ZOOMLEVEL,
+						projected);
+				x[i] = projected.x;
+				y[i] = projected.y;
+				keys[i] = Level.interleave(projected.x >>> shift, projected.y >>> shift);
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(final Integer lhs, final Integer rhs) {
+					final long left = keys[lhs];
+					final long right = keys[rhs];
+					return left < right ? -1 : (left == right ? 0 : 1);
+				}
+			});
+
+			mOrder = new int[size];
+			mKeys = new long[size];
+			mX = new int[size];
+			mY = new int[size];
+			for (int i = 0; i < size; i++) {
+				final int index = order[i];
+				mOrder[i] = index;
+				mKeys[i] = keys[index];
+				mX[i] = x[index];
+				mY[i] = y[index];
+			}
+			mItemIndex = new PackedRTree(x, y, size);
+			invalidate();
+		}
+	}
+}
@@ -6,6 +6,7 @@ import org.osmdroid.DefaultResourceProxyImpl;
 import org.osmdroid.ResourceProxy;
 import org.osmdroid.ResourceProxy.bitmap;
 import org.osmdroid.api.IMapView;
+import org.osmdroid.util.PackedRTree;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.MapView.Projection;
 
@@ -167,7 +168,12 @@ public class ItemizedIconOverlay<Item extends OverlayItem> extends ItemizedOverl
 		/* These objects are created to avoid construct new ones every cycle. */
 		pj.fromMapPixels(eventX, eventY, mTouchScreenPoint);
 
-		for (int i = 0; i < this.mItemList.size(); ++i) {
+		final PackedRTree.Result touched = getItemsNear(pj, mTouchScreenPoint.x,
+				mTouchScreenPoint.y);
+		final int size = touched != null ? touched.size() : this.mItemList.size();
+
+		for (int j = 0; j < size; ++j) {
+			final int i = touched != null ? touched.get(j) : j;
 			final Item item = getItem(i);
 			final Drawable marker = (item.getMarker(0) == null) ? this.mDefaultMarker : item
 					.getMarker(0);
@@ -4,11 +4,15 @@ package org.osmdroid.views.overlay;
 import java.util.ArrayList;
 
 import org.osmdroid.ResourceProxy;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.PackedRTree;
+import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.MapView.Projection;
 import org.osmdroid.views.overlay.OverlayItem.HotspotPlace;
 import org.osmdroid.views.safecanvas.ISafeCanvas;
 import org.osmdroid.views.safecanvas.ISafeCanvas.UnsafeCanvasHandler;
+import org.osmdroid.views.util.constants.MapViewConstants;
 
 import android.graphics.Canvas;
 import android.graphics.Point;
@@ -48,6 +52,16 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends SafeDraw
 	private boolean mPendingFocusChangedEvent = false;
 	private OnFocusChangeListener mOnFocusChangeListener;
 
+	/** Whether populate() builds {@link #mSpatialIndex} */
+	private boolean mUseSpatialIndex = false;
+	/** The items in {@link MapViewConstants#MAXIMUM_ZOOMLEVEL} pixel coordinates, or null */
+	private PackedRTree mSpatialIndex;
+	/** The largest width or height of a marker, in screen pixels */
+	private int mMaximumMarkerSize;
+	private final PackedRTree.Result mQueryResult = new PackedRTree.Result();
+	private final Rect mQueryRect = new Rect();
+	private final Rect mTouchRect = new Rect();
+
 	// ===========================================================
 	// Abstract methods
 	// ===========================================================
@@ -118,11 +132,12 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends SafeDraw
 		mPendingFocusChangedEvent = false;
 
 		final Projection pj = mapView.getProjection();
-		final int size = this.mInternalItemList.size() - 1;
+		final PackedRTree.Result visible = getItemsOnScreen(pj);
+		final int size = (visible != null ? visible.size() : this.mInternalItemList.size()) - 1;
 
 		/* Draw in backward cycle, so the items with the least index are on the front. */
-		for (int i = size; i >= 0; i--) {
-			final Item item = getItem(i);
+		for (int j = size; j >= 0; j--) {
+			final Item item = getItem(visible != null ? visible.get(j) : j);
 			pj.toMapPixels(item.getPoint(), mCurScreenCoords);
 
 			onDrawItem(canvas, item, mCurScreenCoords, mapView.getMapOrientation());
@@ -145,6 +160,133 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends SafeDraw
 		for (int a = 0; a < size; a++) {
 			mInternalItemList.add(createItem(a));
 		}
+		buildSpatialIndex();
+		onPopulated();
+		invalidateDrawingCache();
+	}
+
+	/**
+	 * Called by populate() once the items have been created. Override to keep derived data up to
+	 * date with the items.
+	 */
+	protected void onPopulated() {
+		// Do nothing by default
+	}
+
+	/**
+	 * Whether populate() indexes the positions of the items, so that drawing and hit testing only
+	 * look at the items near the screen or the touch instead of projecting every item. Worth it for
+	 * overlays with thousands of items. Items must not move while they are indexed.
+	 */
+	public void setUseSpatialIndex(final boolean pUseSpatialIndex) {
+		mUseSpatialIndex = pUseSpatialIndex;
+		buildSpatialIndex();
+	}
+
+	public boolean isUsingSpatialIndex() {
+		return mUseSpatialIndex;
+	}
+
+	private void buildSpatialIndex() {
+		if (!mUseSpatialIndex) {
+			mSpatialIndex = null;
+			return;
+		}
+
+		final int size = mInternalItemList.size();
+		final int[] x = new int[size];
+		final int[] y = new int[size];
+		final Point projected = new Point();
+		for (int i = 0; i < size; i++) {
+			final GeoPoint point = mInternalItemList.get(i).getPoint();
+			TileSystem.LatLongToPixelXY(point.getLatitudeE6() / 1E6, point.getLongitudeE6() / 1E6,
+					MapViewConstants.MAXIMUM_ZOOMLEVEL, projected);
+			x[i] = projected.x;
+			y[i] = projected.y;
+		}
+		mMaximumMarkerSize = getMaximumMarkerSize();
+		mSpatialIndex = new PackedRTree(x, y, size);
+	}
+
+	/**
+	 * @return the largest width or height of the default marker and the markers of the items, in
+	 *         screen pixels
+	 */
+	protected int getMaximumMarkerSize() {
+		int maximumMarkerSize = getMarkerSize(mDefaultMarker);
+		for (final Item item : mInternalItemList) {
+			maximumMarkerSize = Math.max(maximumMarkerSize, getMarkerSize(item.getMarker(0)));
+			maximumMarkerSize = Math.max(maximumMarkerSize,
+					getMarkerSize(item.getMarker(OverlayItem.ITEM_STATE_FOCUSED_MASK)));
+		}
+		return maximumMarkerSize;
+	}
+
+	private static int getMarkerSize(final Drawable pMarker) {
+		return pMarker == null ? 0 : Math.max(pMarker.getIntrinsicWidth(),
+				pMarker.getIntrinsicHeight());
+	}
+
+	/**
+	 * Get the items to draw. By default these are all of the items, or the ones whose markers may
+	 * be on the screen if the overlay uses a spatial index.
+	 *
+	 * @return the indexes of the items in ascending order, or null to draw every item. The result
+	 *         may be reused by the next call.
+	 */
+	protected PackedRTree.Result getItemsOnScreen(final Projection pj) {
+		if (mSpatialIndex == null) {
+			return null;
+		}
+		mQueryResult.clear();
+		queryIndex(mSpatialIndex, pj, pj.getScreenRect(), mMaximumMarkerSize, mQueryRect,
+				mQueryResult);
+		return mQueryResult;
+	}
+
+	/**
+	 * Find the points of an index of {@link MapViewConstants#MAXIMUM_ZOOMLEVEL} pixel coordinates
+	 * that are near a rectangle.
+	 *
+	 * @param pScreenRect
+	 *            the rectangle in <I>screen coordinates</I>
+	 * @param pMargin
+	 *            how far outside of the rectangle points are found, in screen pixels
+	 * @param pReuse
+	 *            a rectangle to work in
+	 * @param pResult
+	 *            receives the indexes of the points in ascending order
+	 */
+	static void queryIndex(final PackedRTree pIndex, final Projection pj,
+			final Rect pScreenRect, final int pMargin, final Rect pReuse,
+			final PackedRTree.Result pResult) {
+		pReuse.set(pScreenRect);
+		pReuse.inset(-pMargin, -pMargin);
+
+		// like Projection.fromPixelsToProjected, but zoomed out the rectangle can be wider than
+		// the world and overflow an int
+		final int zoomDifference = MapViewConstants.MAXIMUM_ZOOMLEVEL - pj.getZoomLevel();
+		final long worldSize_2 = TileSystem.MapSize(pj.getZoomLevel()) / 2;
+		final long left = pReuse.left + worldSize_2 << zoomDifference;
+		final long right = pReuse.right + worldSize_2 << zoomDifference;
+		final int worldSize = TileSystem.MapSize(MapViewConstants.MAXIMUM_ZOOMLEVEL);
+		final int top = (int) Math.max(0, pReuse.top + worldSize_2 << zoomDifference);
+		final int bottom = (int) Math.min(worldSize, pReuse.bottom + worldSize_2
+				<< zoomDifference);
+
+		if (right - left >= worldSize) {
+			pIndex.query(0, top, worldSize, bottom, pResult);
+		} else {
+			// the rectangle can reach across the date line, into the neighbouring worlds
+			for (long offset = -worldSize; offset <= worldSize; offset += worldSize) {
+				final long worldLeft = Math.max(0, left + offset);
+				final long worldRight = Math.min(worldSize, right + offset);
+				if (worldLeft <= worldRight) {
+					pIndex.query((int) worldLeft, top, (int) worldRight, bottom, pResult);
+				}
+			}
+		}
+		pResult.sortUnique();
 	}
 
 	/**
@@ -220,9 +362,12 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends SafeDraw
 	public boolean onSingleTapConfirmed(MotionEvent e, MapView mapView) {
 		final Projection pj = mapView.getProjection();
 		final Rect screenRect = pj.getIntrinsicScreenRect();
-		final int size = this.size();
+		final PackedRTree.Result touched = getItemsNear(pj, screenRect.left + (int) e.getX(),
+				screenRect.top + (int) e.getY());
+		final int size = touched != null ? touched.size() : this.size();
 
-		for (int i = 0; i < size; i++) {
+		for (int j = 0; j < size; j++) {
+			final int i = touched != null ? touched.get(j) : j;
 			final Item item = getItem(i);
 			pj.toMapPixels(item.getPoint(), mCurScreenCoords);
 
@@ -244,6 +389,27 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends SafeDraw
 		return super.onSingleTapConfirmed(e, mapView);
 	}
 
+	/**
+	 * Find the items whose markers may contain a point, using the spatial index.
+	 *
+	 * @param pX
+	 *            the x of the point in <I>screen coordinates</I>
+	 * @param pY
+	 *            the y of the point in <I>screen coordinates</I>
+	 * @return the indexes of the items in ascending order, or null if the overlay isn't indexed and
+	 *         every item has to be tested. The result is reused by the next call.
+	 */
+	protected PackedRTree.Result getItemsNear(final Projection pj, final int pX, final int pY) {
+		if (mSpatialIndex == null) {
+			return null;
+		}
+		mTouchRect.set(pX, pY, pX, pY);
+		mQueryResult.clear();
+		// a marker can be anywhere around its hotspot
+		queryIndex(mSpatialIndex, pj, mTouchRect, mMaximumMarkerSize, mQueryRect, mQueryResult);
+		return mQueryResult;
+	}
+
 	/**
 	 * Override this method to handle a "tap" on an item. This could be from a touchscreen tap on an
 	 * onscreen Item, or from a trackball click on a centered, selected Item. By default, does
@@ -262,6 +428,7 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends SafeDraw
 	 */
 	public void setDrawFocusedItem(final boolean drawFocusedItem) {
 		mDrawFocusedItem = drawFocusedItem;
+		invalidateDrawingCache();
 	}
 
 	/**
@@ -273,6 +440,7 @@ public abstract class ItemizedOverlay<Item extends OverlayItem> extends SafeDraw
 	public void setFocus(final Item item) {
 		mPendingFocusChangedEvent = item != mFocusedItem;
 		mFocusedItem = item;
+		invalidateDrawingCache();
 	}
 
 	/**
@@ -105,10 +105,12 @@ public class ItemizedOverlayWithFocus<Item extends OverlayItem> extends Itemized
 
 	public void setFocusedItem(final int pIndex) {
 		this.mFocusedItemIndex = pIndex;
+		invalidateDrawingCache();
 	}
 
 	public void unSetFocusedItem() {
 		this.mFocusedItemIndex = NOT_SET;
+		invalidateDrawingCache();
 	}
 
 	public void setFocusedItem(final Item pItem) {
@@ -51,6 +51,12 @@ public abstract class Overlay implements OverlayConstants {
 	private static final Rect mRect = new Rect();
 	private boolean mEnabled = true;
 
+	/** Records and replays what the overlay draws, or null if it's drawn every frame */
+	private CachedOverlayLayer mDrawingCache;
+
+	/** Changed whenever what the overlay draws changes, so that the recording is redone */
+	private final AtomicInteger mDrawingCacheGeneration = new AtomicInteger();
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -87,6 +93,43 @@ public abstract class Overlay implements OverlayConstants {
 		return this.mEnabled;
 	}
 
+	/**
+	 * Sets whether what the overlay draws is recorded once and replayed while the map is panned
+	 * or pinched, instead of being drawn every frame. The recording reaches beyond the screen,
+	 * and is redone when the map is zoomed or rotated, when it's panned out of the recorded
+	 * area, or after {@link #invalidateDrawingCache()}. Worth it
+	 * for overlays that cost a lot to draw but rarely change, such as many markers or long paths.
+	 * Overlays that draw relative to the screen or animate must not enable it. Off by default.
+	 */
+	public void setDrawingCacheEnabled(final boolean pEnabled) {
+		if (pEnabled && mDrawingCache == null) {
+			mDrawingCache = new CachedOverlayLayer();
+		} else if (!pEnabled) {
+			mDrawingCache = null;
+		}
+	}
+
+	public boolean isDrawingCacheEnabled() {
+		return mDrawingCache != null;
+	}
+
+	/**
+	 * Makes the overlay record what it draws again on the next frame, if the drawing cache is
+	 * enabled. Subclasses call this when the data they draw changes, and so must callers that
+	 * change the overlay's data or paints directly. Can be called from any thread.
+	 */
+	public void invalidateDrawingCache() {
+		mDrawingCacheGeneration.incrementAndGet();
+	}
+
+	CachedOverlayLayer getDrawingCache() {
+		return mDrawingCache;
+	}
+
+	int getDrawingCacheGeneration() {
+		return mDrawingCacheGeneration.get();
+	}
+
 	/**
 	 * Since the menu-chain will pass through several independent Overlays, menu IDs cannot be fixed
 	 * at compile time. Overlays should use this method to obtain and store a menu id for each menu
@@ -123,6 +166,16 @@ public abstract class Overlay implements OverlayConstants {
 	// Methods
 	// ===========================================================
 
+	/**
+	 * Draw the overlay into the drawing cache, with the top left corner of the given rect in
+	 * <I>screen coordinates</I> at the origin of the canvas.
+	 */
+	void drawForCache(final Canvas c, final MapView osmv, final boolean shadow,
+			final Rect origin) {
+		c.translate(-origin.left, -origin.top);
+		draw(c, osmv, shadow);
+	}
+
 	/**
 	 * Override to perform clean up of resources before shutdown. By default does nothing.
 	 */
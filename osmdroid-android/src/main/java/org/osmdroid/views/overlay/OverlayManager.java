@@ -8,6 +8,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import org.osmdroid.api.IMapView;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Overlay.Snappable;
+import org.osmdroid.views.util.FrameStats;
 
 import android.graphics.Canvas;
 import android.graphics.Point;
@@ -23,6 +24,8 @@ public class OverlayManager extends AbstractList<Overlay> {
 
 	private final CopyOnWriteArrayList<Overlay> mOverlayList;
 
+	private final FrameStats mOverlayFrameStats = new FrameStats();
+
 	public OverlayManager(final TilesOverlay tilesOverlay) {
 		setTilesOverlay(tilesOverlay);
 		mOverlayList = new CopyOnWriteArrayList<Overlay>();
@@ -95,6 +98,14 @@ public class OverlayManager extends AbstractList<Overlay> {
 		}
 	}
 
+	/**
+	 * The time it took to draw the overlays other than the tiles overlay in the last frames, to
+	 * compare drawing them with and without {@link Overlay#setDrawingCacheEnabled(boolean)}.
+	 */
+	public FrameStats getOverlayFrameStats() {
+		return mOverlayFrameStats;
+	}
+
 	public Iterable<Overlay> overlaysReversed() {
 		return new Iterable<Overlay>() {
 			
@@ -130,18 +141,29 @@ public class OverlayManager extends AbstractList<Overlay> {
 			mTilesOverlay.draw(c, pMapView, false);
 		}
 
+		final long start = System.nanoTime();
 		for (final Overlay overlay : mOverlayList) {
 			if (overlay.isEnabled()) {
-				overlay.draw(c, pMapView, true);
+				draw(overlay, c, pMapView, true);
 			}
 		}
 
 		for (final Overlay overlay : mOverlayList) {
 			if (overlay.isEnabled()) {
-				overlay.draw(c, pMapView, false);
+				draw(overlay, c, pMapView, false);
 			}
 		}
+		mOverlayFrameStats.add(System.nanoTime() - start);
+	}
 
+	private static void draw(final Overlay pOverlay, final Canvas c, final MapView pMapView,
+			final boolean pShadow) {
+		final CachedOverlayLayer cache = pOverlay.getDrawingCache();
+		if (cache != null) {
+			cache.draw(c, pMapView, pOverlay, pShadow);
+		} else {
+			pOverlay.draw(c, pMapView, pShadow);
+		}
 	}
 
 	public void onDetach(final MapView pMapView) {
@@ -150,6 +172,10 @@ public class OverlayManager extends AbstractList<Overlay> {
 		}
 
 		for (final Overlay overlay : this.overlaysReversed()) {
+			final CachedOverlayLayer cache = overlay.getDrawingCache();
+			if (cache != null) {
+				cache.clear();
+			}
 			overlay.onDetach(pMapView);
 		}
 	}
@@ -1,14 +1,16 @@
 package org.osmdroid.views.overlay;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.osmdroid.DefaultResourceProxyImpl;
 import org.osmdroid.ResourceProxy;
 import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.GeoPointBuffer;
+import org.osmdroid.util.PathPyramid;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.MapView.Projection;
+import org.osmdroid.views.util.constants.MapViewConstants;
 
 import android.content.Context;
 import android.graphics.Canvas;
@@ -34,9 +36,14 @@ public class PathOverlay extends Overlay {
 	// ===========================================================
 
 	/**
-	 * Stores points, converted to the map projection.
+	 * Stores points as latitude and longitude E6.
 	 */
-	private ArrayList<Point> mPoints;
+	private final GeoPointBuffer mPoints = new GeoPointBuffer();
+
+	/**
+	 * The points converted to the map projection, with their simplifications.
+	 */
+	private final PathPyramid mProjectedPoints = new PathPyramid();
 
 	/**
 	 * Number of points that have precomputed values.
@@ -52,9 +59,12 @@ public class PathOverlay extends Overlay {
 
 	private final Point mTempPoint1 = new Point();
 	private final Point mTempPoint2 = new Point();
+	private final Point mTempPoint3 = new Point();
 
-	// bounding rectangle for the current line segment.
-	private final Rect mLineBounds = new Rect();
+	/**
+	 * Receives the projection of new points.
+	 */
+	private final int[] mProjectedBatch = new int[2 * PathPyramid.CHUNK_SIZE];
 
 	// ===========================================================
 	// Constructors
@@ -83,10 +93,12 @@ public class PathOverlay extends Overlay {
 
 	public void setColor(final int color) {
 		this.mPaint.setColor(color);
+		invalidateDrawingCache();
 	}
 
 	public void setAlpha(final int a) {
 		this.mPaint.setAlpha(a);
+		invalidateDrawingCache();
 	}
 
 	/**
@@ -151,11 +163,14 @@ public class PathOverlay extends Overlay {
 			throw new IllegalArgumentException("pPaint argument cannot be null");
 		}
 		mPaint = pPaint;
+		invalidateDrawingCache();
 	}
 
 	public void clearPath() {
-		this.mPoints = new ArrayList<Point>();
+		this.mPoints.clear();
+		this.mProjectedPoints.clear();
 		this.mPointsPrecomputed = 0;
+		invalidateDrawingCache();
 	}
 
 	public void addPoint(final IGeoPoint aPoint) {
@@ -163,7 +178,8 @@ public class PathOverlay extends Overlay {
 	}
 
 	public void addPoint(final int aLatitudeE6, final int aLongitudeE6) {
-		mPoints.add(new Point(aLatitudeE6, aLongitudeE6));
+		mPoints.add(aLatitudeE6, aLongitudeE6);
+		invalidateDrawingCache();
 	}
 
 	public void addPoints(final IGeoPoint... aPoints) {
@@ -184,7 +200,8 @@ public class PathOverlay extends Overlay {
 
 	/**
 	 * This method draws the line. Note - highly optimized to handle long paths, proceed with care.
-	 * Should be fine up to 10K points.
+	 * Only the chunks of the path that intersect the screen are drawn, simplified so that no point
+	 * is more than a pixel away from the line.
 	 */
 	@Override
 	protected void draw(final Canvas canvas, final MapView mapView, final boolean shadow) {
@@ -201,59 +218,64 @@ public class PathOverlay extends Overlay {
 
 		final Projection pj = mapView.getProjection();
 
-		// precompute new points to the intermediate projection.
+		// precompute new points to the intermediate projection, a batch at a time.
 		while (this.mPointsPrecomputed < size) {
-			final Point pt = this.mPoints.get(this.mPointsPrecomputed);
-			pj.toMapPixelsProjected(pt.x, pt.y, pt);
+			final int count = Math.min(size - this.mPointsPrecomputed,
+					this.mProjectedBatch.length / 2);
+			pj.toMapPixelsProjected(this.mPoints.getCoordinatesE6(), this.mPointsPrecomputed * 2,
+					count, this.mProjectedBatch, 0);
+			for (int i = 0; i < count; i++) {
+				this.mProjectedPoints.add(this.mProjectedBatch[i * 2],
+						this.mProjectedBatch[i * 2 + 1]);
+			}
 
-			this.mPointsPrecomputed++;
+			this.mPointsPrecomputed += count;
 		}
 
-		Point screenPoint0 = null; // points on screen
-		Point screenPoint1;
-		Point projectedPoint0; // points from the points list
-		Point projectedPoint1;
-
 		// clipping rectangle in the intermediate projection, to avoid performing projection.
 		final Rect clipBounds = pj.fromPixelsToProjected(pj.getScreenRect());
 
+		// one pixel on screen is 2^zoomDifference in the intermediate projection
+		final int zoomDifference = MapViewConstants.MAXIMUM_ZOOMLEVEL - pj.getZoomLevel();
+
 		mPath.rewind();
-		projectedPoint0 = this.mPoints.get(size - 1);
-		mLineBounds.set(projectedPoint0.x, projectedPoint0.y, projectedPoint0.x, projectedPoint0.y);
-
-		for (int i = size - 2; i >= 0; i--) {
-			// compute next points
-			projectedPoint1 = this.mPoints.get(i);
-			mLineBounds.union(projectedPoint1.x, projectedPoint1.y);
-
-			if (!Rect.intersects(clipBounds, mLineBounds)) {
-				// skip this line, move to next point
-				projectedPoint0 = projectedPoint1;
-				screenPoint0 = null;
+		final PathPyramid points = this.mProjectedPoints;
+		boolean connected = false; // whether the path goes on from the previous chunk
+		Point screenPoint0 = null;
+		for (int chunk = points.getChunkCount() - 1; chunk >= 0; chunk--) {
+			if (!points.intersects(chunk, clipBounds.left, clipBounds.top, clipBounds.right,
+					clipBounds.bottom)) {
+				// skip this chunk, the next one starts a new line
+				connected = false;
 				continue;
 			}
 
-			// the starting point may be not calculated, because previous segment was out of clip
-			// bounds
-			if (screenPoint0 == null) {
-				screenPoint0 = pj.toMapPixelsTranslated(projectedPoint0, this.mTempPoint1);
-				mPath.moveTo(screenPoint0.x, screenPoint0.y);
+			final int[] simplified = points.getSimplified(chunk, zoomDifference);
+			final int start = points.getChunkStart(chunk);
+			final int end = points.getChunkEnd(chunk);
+			final int count = simplified != null ? simplified.length : end - start + 1;
+
+			// walk backwards, the end of this chunk is the start of the one drawn before it
+			for (int j = connected ? count - 2 : count - 1; j >= 0; j--) {
+				final int i = simplified != null ? simplified[j] : start + j;
+				mTempPoint1.set(points.getX(i), points.getY(i));
+				final Point screenPoint1 = pj.toMapPixelsTranslated(mTempPoint1, mTempPoint2);
+				if (!connected) {
+					mPath.moveTo(screenPoint1.x, screenPoint1.y);
+					screenPoint0 = mTempPoint3;
+					connected = true;
+				} else if (j > 0 && Math.abs(screenPoint1.x - screenPoint0.x)
+						+ Math.abs(screenPoint1.y - screenPoint0.y) <= 1) {
+					// skip this point, too close to previous point
+					continue;
+				} else {
+					mPath.lineTo(screenPoint1.x, screenPoint1.y);
+				}
+
+				// update starting point to next position
+				screenPoint0.x = screenPoint1.x;
+				screenPoint0.y = screenPoint1.y;
 			}
-
-			screenPoint1 = pj.toMapPixelsTranslated(projectedPoint1, this.mTempPoint2);
-
-			// skip this point, too close to previous point
-			if (Math.abs(screenPoint1.x - screenPoint0.x) + Math.abs(screenPoint1.y - screenPoint0.y) <= 1) {
-				continue;
-			}
-
-			mPath.lineTo(screenPoint1.x, screenPoint1.y);
-
-			// update starting point to next position
-			projectedPoint0 = projectedPoint1;
-			screenPoint0.x = screenPoint1.x;
-			screenPoint0.y = screenPoint1.y;
-			mLineBounds.set(projectedPoint0.x, projectedPoint0.y, projectedPoint0.x, projectedPoint0.y);
 		}
 
 		canvas.drawPath(mPath, this.mPaint);
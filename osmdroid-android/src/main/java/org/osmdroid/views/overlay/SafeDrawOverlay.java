@@ -23,6 +23,9 @@ public abstract class SafeDrawOverlay extends Overlay {
 	private static final Matrix sMatrix = new Matrix();
 	private boolean mUseSafeCanvas = true;
 
+	/** The origin of the drawing cache while it's recorded, null otherwise */
+	private Rect mCacheOrigin;
+
 	protected abstract void drawSafe(final ISafeCanvas c, final MapView osmv, final boolean shadow);
 
 	public SafeDrawOverlay(Context ctx) {
@@ -38,6 +41,18 @@ public abstract class SafeDrawOverlay extends Overlay {
 
 		sSafeCanvas.setCanvas(c);
 
+		if (this.isUsingSafeCanvas() && mCacheOrigin != null) {
+			// The cache's canvas is only translated by minus the origin, so translating it back is
+			// exact. Draw relative to the origin, the cache replays it rotated and translated.
+			c.save();
+			c.translate(mCacheOrigin.left, mCacheOrigin.top);
+			sSafeCanvas.xOffset = -mCacheOrigin.left;
+			sSafeCanvas.yOffset = -mCacheOrigin.top;
+			this.drawSafe(sSafeCanvas, osmv, shadow);
+			c.restore();
+			return;
+		}
+
 		if (this.isUsingSafeCanvas()) {
 
 			// Find the screen offset
@@ -54,23 +69,8 @@ public abstract class SafeDrawOverlay extends Overlay {
 						screenRect.exactCenterY());
 			}
 
-			// Since the translate calls still take a float, there can be rounding errors
-			// Let's calculate the error, and adjust for it.
-			final int floatErrorX = screenRect.left - (int) (float) screenRect.left;
-			final int floatErrorY = screenRect.top - (int) (float) screenRect.top;
-
 			// Translate the coordinates
-			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-				final float scaleX = osmv.getScaleX();
-				final float scaleY = osmv.getScaleY();
-				c.translate(screenRect.left * scaleX, screenRect.top * scaleY);
-				c.translate(floatErrorX, floatErrorY);
-			} else {
-				c.getMatrix(sMatrix);
-				sMatrix.preTranslate(screenRect.left, screenRect.top);
-				sMatrix.preTranslate(floatErrorX, floatErrorY);
-				c.setMatrix(sMatrix);
-			}
+			translate(c, osmv, screenRect.left, screenRect.top);
 
 			if (osmv.getMapOrientation() != 0) {
 				// Safely re-rotate the maps
@@ -94,6 +94,43 @@ public abstract class SafeDrawOverlay extends Overlay {
 	}
 
 	public void setUseSafeCanvas(boolean useSafeCanvas) {
+		if (useSafeCanvas != mUseSafeCanvas) {
+			invalidateDrawingCache();
+		}
 		mUseSafeCanvas = useSafeCanvas;
 	}
+
+	@Override
+	void drawForCache(final Canvas c, final MapView osmv, final boolean shadow,
+			final Rect origin) {
+		mCacheOrigin = origin;
+		try {
+			super.drawForCache(c, osmv, shadow, origin);
+		} finally {
+			mCacheOrigin = null;
+		}
+	}
+
+	/**
+	 * Translate the canvas by the given <I>screen coordinates</I>, which can be too large for a
+	 * float to hold exactly.
+	 */
+	static void translate(final Canvas c, final MapView osmv, final int x, final int y) {
+		// Since the translate calls still take a float, there can be rounding errors
+		// Let's calculate the error, and adjust for it.
+		final int floatErrorX = x - (int) (float) x;
+		final int floatErrorY = y - (int) (float) y;
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			final float scaleX = osmv.getScaleX();
+			final float scaleY = osmv.getScaleY();
+			c.translate(x * scaleX, y * scaleY);
+			c.translate(floatErrorX, floatErrorY);
+		} else {
+			c.getMatrix(sMatrix);
+			sMatrix.preTranslate(x, y);
+			sMatrix.preTranslate(floatErrorX, floatErrorY);
+			c.setMatrix(sMatrix);
+		}
+	}
 }
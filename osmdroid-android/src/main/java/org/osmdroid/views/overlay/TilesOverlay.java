@@ -1,12 +1,16 @@
 package org.osmdroid.views.overlay;
 
+import java.util.Arrays;
+
 import org.osmdroid.DefaultResourceProxyImpl;
 import org.osmdroid.ResourceProxy;
+import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.MapTileProviderBase;
 import org.osmdroid.tileprovider.ReusableBitmapDrawable;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.util.MyMath;
 import org.osmdroid.util.TileLooper;
 import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.MapView;
@@ -21,6 +25,8 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
@@ -65,6 +71,10 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	/** For overshooting the tile cache **/
 	private int mOvershootTileCache = 0;
 
+	/** Whether to draw the tiles through an offscreen layer **/
+	private boolean mOffscreenLayerEnabled = false;
+	private OffscreenLayer mOffscreenLayer;
+
 	public TilesOverlay(final MapTileProviderBase aTileProvider, final Context aContext) {
 		this(aTileProvider, new DefaultResourceProxyImpl(aContext));
 	}
@@ -80,7 +90,9 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 
 	
 	public void onDetach(final MapView pMapView) {
+		this.mTileProvider.clearInterestRegion(this);
 		this.mTileProvider.detach();
+		mOffscreenLayer = null;
 	}
 
 	public int getMinimumZoomLevel() {
@@ -132,6 +144,18 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 		mViewPort.offset(mWorldSize_2, mWorldSize_2);
 
 		// Draw the tiles!
+		if (mOffscreenLayerEnabled) {
+			if (mOffscreenLayer == null) {
+				mOffscreenLayer = new OffscreenLayer();
+			}
+			if (mOffscreenLayer.draw(c.getSafeCanvas(), zoomLevel, TileSystem.getTileSize(),
+					mViewPort)) {
+				return;
+			}
+			// there wasn't enough memory for the layer
+			mOffscreenLayer = null;
+			mOffscreenLayerEnabled = false;
+		}
 		drawTiles(c.getSafeCanvas(), pj.getZoomLevel(), TileSystem.getTileSize(), mViewPort);
 	}
 
@@ -158,15 +182,23 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	}
 
 	private final TileLooper mTileLooper = new TileLooper() {
+
+		private int mZoomLevel;
 		
 		public void initialiseLoop(final int pZoomLevel, final int pTileSizePx) {
+			mZoomLevel = pZoomLevel;
 			// make sure the cache is big enough for all the tiles
 			final int numNeeded = (mLowerRight.y - mUpperLeft.y + 1) * (mLowerRight.x - mUpperLeft.x + 1);
 			mTileProvider.ensureCapacity(numNeeded + mOvershootTileCache);
 		}
 		
 		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final MapTile pTile, final int pX, final int pY) {
-			Drawable currentMapTile = mTileProvider.getMapTile(pTile);
+			handleTile(pCanvas, pTileSizePx, pTile.getKey(), pX, pY);
+		}
+
+		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey,
+				final int pX, final int pY) {
+			Drawable currentMapTile = mTileProvider.getMapTile(pTileKey);
 			boolean isReusable = currentMapTile instanceof ReusableBitmapDrawable;
 			if (currentMapTile == null) {
 				currentMapTile = getLoadingTile();
@@ -193,7 +225,7 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 				mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx, pY
 						* pTileSizePx + pTileSizePx);
 				mTileRect.offset(-mWorldSize_2, -mWorldSize_2);
-				pCanvas.drawText(pTile.toString(), mTileRect.left + 1,
+				pCanvas.drawText(MapTile.fromKey(pTileKey).toString(), mTileRect.left + 1,
 						mTileRect.top + mDebugPaint.getTextSize(), mDebugPaint);
 				pCanvas.drawLine(mTileRect.left, mTileRect.top, mTileRect.right, mTileRect.top,
 						mDebugPaint);
@@ -203,9 +235,22 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 		}
 		
 		public void finaliseLoop() {
+			// let the provider drop requests for tiles that are no longer visible
+			mTileProvider.setInterestRegion(TilesOverlay.this, mZoomLevel, mUpperLeft.x,
+					mUpperLeft.y, mLowerRight.x, mLowerRight.y);
 		}
 	};
 
+	/**
+	 * Draw the tile again the next time the overlay is drawn from the offscreen layer, because
+	 * the tile provider has a new drawable for it. Nothing happens if the tile isn't visible.
+	 */
+	public void invalidateTile(final MapTile pTile) {
+		if (mOffscreenLayer != null) {
+			mOffscreenLayer.invalidateTile(pTile);
+		}
+	}
+
 	protected void onTileReadyToDraw(final Canvas c, final Drawable currentMapTile,
 			final Rect tileRect) {
 		tileRect.offset(-mWorldSize_2, -mWorldSize_2);
@@ -342,6 +387,9 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	private void clearLoadingTile() {
 		final BitmapDrawable bitmapDrawable = mLoadingTile;
 		mLoadingTile = null;
+		if (mOffscreenLayer != null) {
+			mOffscreenLayer.clear();
+		}
 		// Only recycle if we are running on a project less than 2.3.3 Gingerbread.
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
 			if (bitmapDrawable != null) {
@@ -371,4 +419,220 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 	public int getOvershootTileCache() {
 		return mOvershootTileCache;
 	}
+
+	public boolean isOffscreenLayerEnabled() {
+		return mOffscreenLayerEnabled;
+	}
+
+	/**
+	 * Set whether to draw the tiles into an offscreen layer and draw the layer to the screen,
+	 * instead of drawing every visible tile on every frame. Tiles are then only drawn when they
+	 * come into view or change, which makes scrolling cheaper at the cost of a bitmap a little
+	 * bigger than the screen. The layer learns about changed tiles through
+	 * {@link #invalidateTile(MapTile)}, which {@link MapView} calls for each MAPTILE_SUCCESS_ID
+	 * message; if there isn't enough memory for the layer the tiles are drawn directly again.
+	 */
+	public void setOffscreenLayerEnabled(final boolean pOffscreenLayerEnabled) {
+		mOffscreenLayerEnabled = pOffscreenLayerEnabled;
+		if (!pOffscreenLayerEnabled) {
+			mOffscreenLayer = null;
+		}
+	}
+
+	/**
+	 * The visible tiles drawn into a bitmap with room for one more tile than fits on the screen
+	 * in each direction. Tile (x, y) is kept in cell (x mod columns, y mod rows), so when the map
+	 * scrolls the tiles that stay visible stay where they are, only the cells of the tiles that
+	 * come into view are drawn, and the bitmap is drawn to the screen in at most four pieces.
+	 * A cell is drawn again when its tile changes; cells that are still showing the loading tile
+	 * or an expired tile look the tile up in the cache on each frame, which also keeps it
+	 * requested.
+	 */
+	private class OffscreenLayer {
+
+		/** The key of an empty cell, which no tile has */
+		private static final long NO_TILE = -1;
+
+		private Bitmap mBitmap;
+		private Canvas mCanvas;
+		private int mColumns;
+		private int mRows;
+		private int mTileSizePx;
+		private ITileSource mTileSource;
+
+		/** The tile key of each cell, and its coordinates before wrapping around the world */
+		private long[] mTileKeys;
+		private int[] mX;
+		private int[] mY;
+
+		/** The drawable each cell was drawn from, or null if it has the loading tile */
+		private Drawable[] mDrawables;
+		private boolean[] mDirty;
+
+		private final Paint mClearPaint = new Paint();
+		private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		private final Rect mCellRect = new Rect();
+		private final Rect mSource = new Rect();
+		private final Rect mDestination = new Rect();
+
+		OffscreenLayer() {
+			mClearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+		}
+
+		/**
+		 * @return false if there isn't enough memory for the layer
+		 */
+		boolean draw(final Canvas pCanvas, final int pZoomLevel, final int pTileSizePx,
+				final Rect pViewPort) {
+			if (!ensureCapacity(pViewPort.width() / pTileSizePx + 2,
+					pViewPort.height() / pTileSizePx + 2, pTileSizePx)) {
+				return false;
+			}
+			if (mTileSource != mTileProvider.getTileSource()) {
+				mTileSource = mTileProvider.getTileSource();
+				clear();
+			}
+
+			final int left = (int) Math.floor((double) pViewPort.left / pTileSizePx);
+			final int top = (int) Math.floor((double) pViewPort.top / pTileSizePx);
+			final int right = (int) Math.floor((double) pViewPort.right / pTileSizePx);
+			final int bottom = (int) Math.floor((double) pViewPort.bottom / pTileSizePx);
+			mTileProvider.ensureCapacity((right - left + 1) * (bottom - top + 1)
+					+ mOvershootTileCache);
+
+			final int worldTiles = 1 << pZoomLevel;
+			for (int y = top; y <= bottom; y++) {
+				final int row = MyMath.mod(y, mRows);
+				for (int x = left; x <= right; x++) {
+					final int column = MyMath.mod(x, mColumns);
+					final int cell = row * mColumns + column;
+					final long tileKey = MapTile.getKey(pZoomLevel, MyMath.mod(x, worldTiles),
+							MyMath.mod(y, worldTiles));
+					if (mTileKeys[cell] != tileKey || mX[cell] != x || mY[cell] != y) {
+						mTileKeys[cell] = tileKey;
+						mX[cell] = x;
+						mY[cell] = y;
+						drawCell(cell, column, row, mTileProvider.getMapTile(tileKey));
+					} else if (mDirty[cell] || mDrawables[cell] == null
+							|| ExpirableBitmapDrawable.isDrawableExpired(mDrawables[cell])) {
+						final Drawable drawable = mTileProvider.getMapTile(tileKey);
+						if (mDirty[cell] || drawable != mDrawables[cell]) {
+							drawCell(cell, column, row, drawable);
+						}
+					}
+				}
+			}
+
+			// copy the cells to the screen, splitting where they wrap around the bitmap
+			for (int y = top; y <= bottom;) {
+				final int row = MyMath.mod(y, mRows);
+				final int rows = Math.min(bottom - y + 1, mRows - row);
+				for (int x = left; x <= right;) {
+					final int column = MyMath.mod(x, mColumns);
+					final int columns = Math.min(right - x + 1, mColumns - column);
+					mSource.set(column * mTileSizePx, row * mTileSizePx, (column + columns)
+							* mTileSizePx, (row + rows) * mTileSizePx);
+					mDestination.set(x * mTileSizePx, y * mTileSizePx, (x + columns) * mTileSizePx,
+							(y + rows) * mTileSizePx);
+					mDestination.offset(-mWorldSize_2, -mWorldSize_2);
+					pCanvas.drawBitmap(mBitmap, mSource, mDestination, mBitmapPaint);
+					x += columns;
+				}
+				y += rows;
+			}
+
+			// let the provider drop requests for tiles that are no longer visible
+			mTileProvider.setInterestRegion(TilesOverlay.this, pZoomLevel, left, top, right,
+					bottom);
+			return true;
+		}
+
+		private void drawCell(final int pCell, final int pColumn, final int pRow,
+				final Drawable pDrawable) {
+			mDirty[pCell] = false;
+			mCellRect.set(pColumn * mTileSizePx, pRow * mTileSizePx, (pColumn + 1) * mTileSizePx,
+					(pRow + 1) * mTileSizePx);
+			mCanvas.drawRect(mCellRect, mClearPaint);
+
+			Drawable drawable = pDrawable;
+			final ReusableBitmapDrawable reusable = drawable instanceof ReusableBitmapDrawable
+					? (ReusableBitmapDrawable) drawable
+					: null;
+			if (reusable != null) {
+				reusable.beginUsingDrawable();
+			}
+			try {
+				if (reusable != null && !reusable.isBitmapValid()) {
+					drawable = null;
+				}
+				mDrawables[pCell] = drawable;
+				if (drawable == null) {
+					drawable = getLoadingTile();
+				}
+				if (drawable != null) {
+					// onTileReadyToDraw expects the tile in world coordinates
+					mTileRect.set(mCellRect);
+					mTileRect.offset(mWorldSize_2, mWorldSize_2);
+					onTileReadyToDraw(mCanvas, drawable, mTileRect);
+				}
+			} finally {
+				if (reusable != null) {
+					reusable.finishUsingDrawable();
+				}
+			}
+		}
+
+		void invalidateTile(final MapTile pTile) {
+			if (mTileKeys != null) {
+				final long tileKey = pTile.getKey();
+				for (int i = 0; i < mTileKeys.length; i++) {
+					if (mTileKeys[i] == tileKey) {
+						mDirty[i] = true;
+					}
+				}
+			}
+		}
+
+		void clear() {
+			if (mTileKeys != null) {
+				Arrays.fill(mTileKeys, NO_TILE);
+				Arrays.fill(mDrawables, null);
+			}
+		}
+
+		/**
+		 * Make sure the bitmap has at least the given number of cells of the given size.
+		 *
+		 * @return false if there isn't enough memory for it
+		 */
+		private boolean ensureCapacity(final int pColumns, final int pRows, final int pTileSizePx) {
+			if (mBitmap != null && mColumns >= pColumns && mRows >= pRows
+					&& mTileSizePx == pTileSizePx) {
+				return true;
+			}
+			final int columns = Math.max(pColumns, mTileSizePx == pTileSizePx ? mColumns : 0);
+			final int rows = Math.max(pRows, mTileSizePx == pTileSizePx ? mRows : 0);
+			mBitmap = null;
+			mCanvas = null;
+			try {
+				mBitmap = Bitmap.createBitmap(columns * pTileSizePx, rows * pTileSizePx,
+						Bitmap.Config.ARGB_8888);
+			} catch (final OutOfMemoryError e) {
+				//logger.error("OutOfMemoryError creating the offscreen layer");
+				System.gc();
+				return false;
+			}
+			mCanvas = new Canvas(mBitmap);
+			mColumns = columns;
+			mRows = rows;
+			mTileSizePx = pTileSizePx;
+			mTileKeys = new long[columns * rows];
+			Arrays.fill(mTileKeys, NO_TILE);
+			mX = new int[columns * rows];
+			mY = new int[columns * rows];
+			mDrawables = new Drawable[columns * rows];
+			mDirty = new boolean[columns * rows];
+			return true;
+		}
+	}
 }
@@ -0,0 +1,137 @@
+package org.osmdroid.views.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the durations of the last frames drawn, to measure how long drawing takes with one
+ * setting or another. Adding a frame doesn't allocate, so it can be done on every frame.
+ */
+public class FrameStats {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	public static final int DEFAULT_CAPACITY = 120;
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** The durations in nanoseconds, a ring buffer that's full once mCount reaches its length */
+	private final long[] mDurations;
+	private int mNext;
+	private int mCount;
+	private long mTotalCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public FrameStats() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param pCapacity
+	 *            the number of frames to keep
+	 */
+	public FrameStats(final int pCapacity) {
+		if (pCapacity <= 0) {
+			throw new IllegalArgumentException("pCapacity must be positive");
+		}
+		mDurations = new long[pCapacity];
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return the number of frames kept, at most the capacity
+	 */
+	public synchronized int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * @return the number of frames added since the last reset
+	 */
+	public synchronized long getTotalCount() {
+		return mTotalCount;
+	}
+
+	/**
+	 * @return the average duration of the frames kept, or 0 if there aren't any
+	 */
+	public synchronized double getAverageMillis() {
+		if (mCount == 0) {
+			return 0;
+		}
+		long total = 0;
+		for (int i = 0; i < mCount; i++) {
+			total += mDurations[i];
+		}
+		return total / NANOS_PER_MILLI / mCount;
+	}
+
+	/**
+	 * @param pPercentile
+	 *            between 0 and 100
+	 * @return the duration that the given percentage of the frames kept took at most, or 0 if
+	 *         there aren't any
+	 */
+	public synchronized double getPercentileMillis(final double pPercentile) {
+		if (mCount == 0) {
+			return 0;
+		}
+		final long[] sorted = new long[mCount];
+		System.arraycopy(mDurations, 0, sorted, 0, mCount);
+		Arrays.sort(sorted);
+		final int index = (int) Math.ceil(pPercentile / 100 * mCount) - 1;
+		return sorted[Math.max(0, Math.min(index, mCount - 1))] / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @return the longest duration of the frames kept, or 0 if there aren't any
+	 */
+	public synchronized double getMaximumMillis() {
+		long maximum = 0;
+		for (int i = 0; i < mCount; i++) {
+			maximum = Math.max(maximum, mDurations[i]);
+		}
+		return maximum / NANOS_PER_MILLI;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d frames: average %.2f ms, 90%% %.2f ms, maximum %.2f ms",
+				mCount, getAverageMillis(), getPercentileMillis(90), getMaximumMillis());
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Add the duration of a frame, replacing the oldest one once the capacity is reached.
+	 */
+	public synchronized void add(final long pNanos) {
+		mDurations[mNext] = pNanos;
+		mNext = (mNext + 1) % mDurations.length;
+		mCount = Math.min(mCount + 1, mDurations.length);
+		mTotalCount++;
+	}
+
+	public synchronized void reset() {
+		mNext = 0;
+		mCount = 0;
+		mTotalCount = 0;
+	}
+}
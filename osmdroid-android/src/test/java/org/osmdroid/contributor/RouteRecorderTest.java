@@ -0,0 +1,46 @@
+package org.osmdroid.contributor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.osmdroid.contributor.util.RecordedGeoPoint;
+import org.osmdroid.util.GeoPoint;
+
+public class RouteRecorderTest {
+
+	@Test
+	public void test_view() {
+		final RouteRecorder recorder = new RouteRecorder();
+		final List<RecordedGeoPoint> points = recorder.getRecordedGeoPoints();
+		assertEquals(0, points.size());
+
+		for (int i = 0; i < 100; i++) {
+			recorder.add(new GeoPoint(i, -i), i % 12);
+		}
+		assertEquals("the view grows with the recording", 100, points.size());
+		assertSame(points, recorder.getRecordedGeoPoints());
+
+		final RecordedGeoPoint point = points.get(70);
+		assertEquals(70, point.getLatitudeE6());
+		assertEquals(-70, point.getLongitudeE6());
+		assertEquals(10, point.getNumSatellites());
+		assertEquals(10, recorder.getNumSatellites(70));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void test_read_only() {
+		final RouteRecorder recorder = new RouteRecorder();
+		recorder.add(new GeoPoint(1, 1), 4);
+		recorder.getRecordedGeoPoints().remove(0);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void test_out_of_bounds() {
+		final RouteRecorder recorder = new RouteRecorder();
+		recorder.add(new GeoPoint(1, 1), 4);
+		recorder.getRecordedGeoPoints().get(1);
+	}
+}
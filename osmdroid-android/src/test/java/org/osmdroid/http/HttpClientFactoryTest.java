@@ -0,0 +1,225 @@
+package org.osmdroid.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Downloads 1000 tiles from a local server with the shared client and counts the connections the
+ * server accepted.
+ */
+public class HttpClientFactoryTest {
+
+	private static final int TILES = 1000;
+	private static final int THREADS = 2;
+	private static final byte[] TILE = new byte[1024];
+
+	/** How long the download may take before the test fails rather than waiting forever */
+	private static final int DOWNLOAD_TIMEOUT = 60000;
+
+	private TileServer mServer;
+	private String mBaseUrl;
+
+	@Before
+	public void startServer() throws IOException {
+		mServer = new TileServer();
+		mServer.start();
+		mBaseUrl = "http://127.0.0.1:" + mServer.getPort() + "/";
+	}
+
+	@After
+	public void stopServer() {
+		mServer.close();
+	}
+
+	@Test
+	public void test_shared_client() throws Exception {
+		final HttpClient client = HttpClientFactory.acquireSharedHttpClient();
+		try {
+			download(client);
+		} finally {
+			HttpClientFactory.releaseSharedHttpClient();
+		}
+		final int connections = mServer.getConnectionCount();
+		assertTrue("connections are kept alive and reused, opened " + connections,
+				connections <= HttpClientFactory.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+	}
+
+	@Test
+	public void test_shared_client_is_recreated_after_release() {
+		final HttpClient first = HttpClientFactory.acquireSharedHttpClient();
+		assertTrue("same instance while in use",
+				first == HttpClientFactory.acquireSharedHttpClient());
+		HttpClientFactory.releaseSharedHttpClient();
+		HttpClientFactory.releaseSharedHttpClient();
+		final HttpClient second = HttpClientFactory.acquireSharedHttpClient();
+		HttpClientFactory.releaseSharedHttpClient();
+		assertTrue("new instance after the pool was shut down", first != second);
+	}
+
+	private void download(final HttpClient pClient) throws Exception {
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					int tile;
+					while ((tile = next.getAndIncrement()) < TILES) {
+						try {
+							final HttpResponse response = pClient.execute(new HttpGet(mBaseUrl
+									+ "10/" + tile + "/0.png"));
+							// read the tile to the end, as the downloader does, which gives
+							// the connection back to the pool
+							final HttpEntity entity = response.getEntity();
+							if (entity != null) {
+								EntityUtils.toByteArray(entity);
+							}
+						} catch (final IOException e) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		final long deadline = System.currentTimeMillis() + DOWNLOAD_TIMEOUT;
+		for (final Thread thread : threads) {
+			thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+			assertFalse("the download finished in time", thread.isAlive());
+		}
+		assertEquals("all tiles downloaded", 0, failures.get());
+	}
+
+	/**
+	 * Answers every request on a connection with a tile and keeps the connection open until the
+	 * client closes it, so that a kept-alive request is never left without a response.
+	 */
+	private static class TileServer extends Thread {
+
+		private final ServerSocket mServerSocket;
+		private final AtomicInteger mConnectionCount = new AtomicInteger();
+		private final List<Socket> mSockets = new ArrayList<Socket>();
+
+		TileServer() throws IOException {
+			super("TileServer");
+			mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+			setDaemon(true);
+		}
+
+		int getPort() {
+			return mServerSocket.getLocalPort();
+		}
+
+		int getConnectionCount() {
+			return mConnectionCount.get();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				final Socket socket;
+				try {
+					socket = mServerSocket.accept();
+					socket.setSoTimeout(DOWNLOAD_TIMEOUT);
+				} catch (final IOException e) {
+					// closed
+					return;
+				}
+				mConnectionCount.incrementAndGet();
+				synchronized (mSockets) {
+					mSockets.add(socket);
+				}
+				final Thread connection = new Thread("TileServer connection") {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				};
+				connection.setDaemon(true);
+				connection.start();
+			}
+		}
+
+		private static void serve(final Socket pSocket) {
+			try {
+				final InputStream in = new BufferedInputStream(pSocket.getInputStream());
+				final OutputStream out = pSocket.getOutputStream();
+				final byte[] header = ("HTTP/1.1 200 OK\r\nContent-Type: image/png\r\n"
+						+ "Content-Length: " + TILE.length + "\r\n\r\n").getBytes("US-ASCII");
+				// one write per response, so that it doesn't wait for a delayed ACK
+				final byte[] response = new byte[header.length + TILE.length];
+				System.arraycopy(header, 0, response, 0, header.length);
+				System.arraycopy(TILE, 0, response, header.length, TILE.length);
+				// a GET has no body, so a request ends with its first empty line
+				while (readRequest(in)) {
+					out.write(response);
+					out.flush();
+				}
+			} catch (final IOException e) {
+				// the client went away
+			} finally {
+				try {
+					pSocket.close();
+				} catch (final IOException ignore) {
+				}
+			}
+		}
+
+		/**
+		 * @return false if the client closed the connection instead of sending a request
+		 */
+		private static boolean readRequest(final InputStream pIn) throws IOException {
+			int lineLength = 0;
+			int b;
+			while ((b = pIn.read()) != -1) {
+				if (b == '\n') {
+					if (lineLength == 0) {
+						return true;
+					}
+					lineLength = 0;
+				} else if (b != '\r') {
+					lineLength++;
+				}
+			}
+			return false;
+		}
+
+		void close() {
+			try {
+				mServerSocket.close();
+			} catch (final IOException ignore) {
+			}
+			synchronized (mSockets) {
+				for (final Socket socket : mSockets) {
+					try {
+						socket.close();
+					} catch (final IOException ignore) {
+					}
+				}
+			}
+		}
+	}
+}
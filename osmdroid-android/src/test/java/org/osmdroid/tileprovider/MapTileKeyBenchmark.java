@@ -0,0 +1,139 @@
+package org.osmdroid.tileprovider;
+
+import java.util.HashMap;
+
+import org.osmdroid.util.LongHashMap;
+
+/**
+ * Compares the per-frame cost of looking up the visible tiles in the tile cache by MapTile, as
+ * TileLooper used to with a new MapTile per tile, against looking them up by packed key in a
+ * {@link LongHashMap}. The MapTile lookups are run with the old 17 * (37 + zoom) * (37 + x) *
+ * (37 + y) hash code and with the current one. The cache holds three screens of tiles around the
+ * viewport, and the viewport scrolls by a few pixels each frame, so the same tiles are looked up
+ * again and again as they are while the map is dragged.<br />
+ * <br />
+ * Not a unit test, run it with <code>java ... MapTileKeyBenchmark</code>.
+ */
+public class MapTileKeyBenchmark {
+
+	private static final int TILE_SIZE = 256;
+	private static final int ZOOM_LEVEL = 15;
+	private static final int[][] SCREENS = { { 480, 800 }, { 1080, 1920 }, { 2560, 1600 } };
+	private static final int FRAMES = 20000;
+
+	private static int mSink;
+
+	public static void main(final String[] args) {
+		System.out.println(String.format("%12s %8s %14s %14s %14s", "screen", "tiles",
+				"old MapTile", "MapTile", "packed key"));
+		for (final int[] screen : SCREENS) {
+			run(screen[0], screen[1]);
+		}
+	}
+
+	private static void run(final int pWidth, final int pHeight) {
+		// Palma at zoom level 15
+		final int centerX = 16624 * TILE_SIZE;
+		final int centerY = 12443 * TILE_SIZE;
+		final int columns = pWidth / TILE_SIZE + 2;
+		final int rows = pHeight / TILE_SIZE + 2;
+
+		// the cache: the tiles of three screens in each direction around the viewport
+		final HashMap<OldMapTile, Object> oldCache = new HashMap<OldMapTile, Object>();
+		final HashMap<MapTile, Object> cache = new HashMap<MapTile, Object>();
+		final LongHashMap<Object> keyCache = new LongHashMap<Object>();
+		final int left = centerX / TILE_SIZE - columns;
+		final int top = centerY / TILE_SIZE - rows;
+		for (int y = top; y < top + rows * 3; y++) {
+			for (int x = left; x < left + columns * 3; x++) {
+				final Object drawable = new Object();
+				oldCache.put(new OldMapTile(ZOOM_LEVEL, x, y), drawable);
+				cache.put(new MapTile(ZOOM_LEVEL, x, y), drawable);
+				keyCache.put(MapTile.getKey(ZOOM_LEVEL, x, y), drawable);
+			}
+		}
+
+		final double[] times = new double[3];
+		for (int pass = 0; pass < 3; pass++) {
+			// the first passes warm up
+			long start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				final int frameLeft = (centerX - pWidth / 2 + frame % 512) / TILE_SIZE;
+				final int frameTop = (centerY - pHeight / 2 + frame % 256) / TILE_SIZE;
+				for (int y = frameTop; y < frameTop + rows; y++) {
+					for (int x = frameLeft; x < frameLeft + columns; x++) {
+						if (oldCache.get(new OldMapTile(ZOOM_LEVEL, x, y)) != null) {
+							mSink++;
+						}
+					}
+				}
+			}
+			times[0] = (System.nanoTime() - start) / (double) FRAMES;
+
+			start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				final int frameLeft = (centerX - pWidth / 2 + frame % 512) / TILE_SIZE;
+				final int frameTop = (centerY - pHeight / 2 + frame % 256) / TILE_SIZE;
+				for (int y = frameTop; y < frameTop + rows; y++) {
+					for (int x = frameLeft; x < frameLeft + columns; x++) {
+						if (cache.get(new MapTile(ZOOM_LEVEL, x, y)) != null) {
+							mSink++;
+						}
+					}
+				}
+			}
+			times[1] = (System.nanoTime() - start) / (double) FRAMES;
+
+			start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				final int frameLeft = (centerX - pWidth / 2 + frame % 512) / TILE_SIZE;
+				final int frameTop = (centerY - pHeight / 2 + frame % 256) / TILE_SIZE;
+				for (int y = frameTop; y < frameTop + rows; y++) {
+					for (int x = frameLeft; x < frameLeft + columns; x++) {
+						if (keyCache.get(MapTile.getKey(ZOOM_LEVEL, x, y)) != null) {
+							mSink++;
+						}
+					}
+				}
+			}
+			times[2] = (System.nanoTime() - start) / (double) FRAMES;
+		}
+
+		System.out.println(String.format("%12s %8d %11.0f ns %11.0f ns %11.0f ns %s", pWidth + "x"
+				+ pHeight, columns * rows, times[0], times[1], times[2], mSink > 0 ? ""
+				: "(no hits)"));
+	}
+
+	/**
+	 * A MapTile with the hash code MapTile used to have.
+	 */
+	private static final class OldMapTile {
+		private final int x;
+		private final int y;
+		private final int zoomLevel;
+
+		OldMapTile(final int zoomLevel, final int tileX, final int tileY) {
+			this.zoomLevel = zoomLevel;
+			this.x = tileX;
+			this.y = tileY;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof OldMapTile)) {
+				return false;
+			}
+			final OldMapTile rhs = (OldMapTile) obj;
+			return zoomLevel == rhs.zoomLevel && x == rhs.x && y == rhs.y;
+		}
+
+		@Override
+		public int hashCode() {
+			int code = 17;
+			code *= 37 + zoomLevel;
+			code *= 37 + x;
+			code *= 37 + y;
+			return code;
+		}
+	}
+}
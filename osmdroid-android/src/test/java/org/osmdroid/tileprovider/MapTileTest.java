@@ -0,0 +1,43 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class MapTileTest {
+
+	@Test
+	public void test_key_round_trip() {
+		final int[][] tiles = { { 0, 0, 0 }, { 1, 1, 0 }, { 18, 131071, 262143 },
+				{ 22, (1 << 22) - 1, 1234567 }, { 29, (1 << 29) - 1, (1 << 29) - 1 } };
+		for (final int[] tile : tiles) {
+			final long key = MapTile.getKey(tile[0], tile[1], tile[2]);
+			assertEquals(tile[0], MapTile.getZoomLevel(key));
+			assertEquals(tile[1], MapTile.getX(key));
+			assertEquals(tile[2], MapTile.getY(key));
+			assertEquals(new MapTile(tile[0], tile[1], tile[2]), MapTile.fromKey(key));
+			assertEquals(key, new MapTile(tile[0], tile[1], tile[2]).getKey());
+		}
+	}
+
+	@Test
+	public void test_keys_differ() {
+		assertFalse(MapTile.getKey(1, 0, 1) == MapTile.getKey(1, 1, 0));
+		assertFalse(MapTile.getKey(1, 0, 0) == MapTile.getKey(2, 0, 0));
+	}
+
+	@Test
+	public void test_neighbours_hash_apart() {
+		// a block of tiles on the diagonal, where (x, y) and (y, x) used to collide
+		final HashSet<Integer> hashCodes = new HashSet<Integer>();
+		for (int y = 0; y < 32; y++) {
+			for (int x = 0; x < 32; x++) {
+				hashCodes.add(new MapTile(10, 500 + x, 500 + y).hashCode());
+			}
+		}
+		assertEquals(32 * 32, hashCodes.size());
+	}
+}
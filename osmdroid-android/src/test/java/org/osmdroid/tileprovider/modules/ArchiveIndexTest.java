@@ -0,0 +1,92 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+public class ArchiveIndexTest {
+
+	@Test
+	public void test_routes_to_first_archive() {
+		final TestArchive first = new TestArchive(new TileCoverage.Builder()
+				.addRange(10, 0, 0, 9, 9).build());
+		final TestArchive second = new TestArchive(new TileCoverage.Builder()
+				.addRange(10, 5, 5, 14, 14).addRange(11, 0, 0, 3, 3).build());
+		final ArchiveFileBase[] archives = new ArchiveFileBase[] { first, second };
+		final ArchiveIndex index = new ArchiveIndex(archives, null);
+
+		assertTrue(index.isComplete());
+		assertTrue(index.isFor(archives, null));
+		assertFalse(index.isStale());
+		assertEquals(0, index.find(new MapTile(10, 0, 0)));
+		assertEquals("the first archive wins where they overlap", 0,
+				index.find(new MapTile(10, 7, 7)));
+		assertEquals(1, index.find(new MapTile(10, 7, 12)));
+		assertEquals(1, index.find(new MapTile(10, 14, 14)));
+		assertEquals(1, index.find(new MapTile(11, 3, 0)));
+		assertEquals(-1, index.find(new MapTile(10, 15, 0)));
+		assertEquals(-1, index.find(new MapTile(12, 0, 0)));
+		final MapTile overlap = new MapTile(10, 7, 7);
+		assertFalse(index.mightContain(1, index.find(overlap), overlap));
+		assertEquals("the archives are never asked", 0, first.mAsked + second.mAsked);
+
+		// columns 5 to 9 of the second archive are split around the first one
+		assertEquals(10 + 5 + 5 + 4, index.getRunCount());
+	}
+
+	@Test
+	public void test_unknown_coverage_is_asked() {
+		final TestArchive unknown = new TestArchive(null);
+		final TestArchive known = new TestArchive(new TileCoverage.Builder().add(3, 1, 1).build());
+		final ArchiveIndex index = new ArchiveIndex(new ArchiveFileBase[] { unknown, known },
+				null);
+
+		assertFalse(index.isComplete());
+		final MapTile tile = new MapTile(3, 1, 1);
+		final int found = index.find(tile);
+		assertEquals(1, found);
+		assertTrue(index.mightContain(0, found, tile));
+		assertEquals(1, unknown.mAsked);
+		assertTrue(index.mightContain(1, found, tile));
+		assertFalse(index.mightContain(1, index.find(new MapTile(3, 1, 2)), new MapTile(3, 1, 2)));
+
+		assertFalse(index.isStale());
+		unknown.mCoverage = TileCoverage.EMPTY;
+		assertTrue("built again once the coverage is loaded", index.isStale());
+	}
+
+	private static class TestArchive extends ArchiveFileBase {
+
+		TileCoverage mCoverage;
+		int mAsked;
+
+		TestArchive(final TileCoverage pCoverage) {
+			mCoverage = pCoverage;
+		}
+
+		public InputStream getInputStream(final ITileSource pTileSource, final MapTile pTile) {
+			return null;
+		}
+
+		public void getInputStreams(final ITileSource pTileSource, final Collection<MapTile> pTiles,
+				final Map<MapTile, InputStream> pResult) {
+		}
+
+		public boolean mightContainTile(final ITileSource pTileSource, final MapTile pTile) {
+			mAsked++;
+			return mCoverage == null || mCoverage.contains(pTile);
+		}
+
+		public TileCoverage getCoverage(final ITileSource pTileSource) {
+			return mCoverage;
+		}
+	}
+}
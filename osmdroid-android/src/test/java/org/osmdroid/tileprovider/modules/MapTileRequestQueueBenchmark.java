@@ -0,0 +1,159 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+
+/**
+ * Compares {@link MapTileRequestQueue} with the LinkedHashMap scheduling it replaced. Each
+ * operation models the steady state of a full queue while the map is panned: two new requests
+ * arrive (the second one evicting the oldest waiting request), a worker completes its tile and
+ * takes the newest request.<br />
+ * <br />
+ * Not a unit test, run it with <code>java ... MapTileRequestQueueBenchmark</code>.
+ */
+public class MapTileRequestQueueBenchmark {
+
+	private static final int[] QUEUE_SIZES = { 40, 400, 4000 };
+	private static final int WORKERS = 2;
+	private static final int WARMUP_OPERATIONS = 100000;
+	private static final int MEASURED_OPERATIONS = 100000;
+	private static final int REQUESTS_PER_OPERATION = 2;
+
+	private interface Scheduler {
+		void put(MapTileRequestState pState);
+
+		MapTileRequestState poll();
+
+		void remove(MapTile pTile);
+	}
+
+	private static class QueueScheduler implements Scheduler {
+		private final MapTileRequestQueue mQueue;
+
+		QueueScheduler(final int pSize) {
+			mQueue = new MapTileRequestQueue(pSize);
+		}
+
+		public void put(final MapTileRequestState pState) {
+			mQueue.put(pState);
+		}
+
+		public MapTileRequestState poll() {
+			return mQueue.poll();
+		}
+
+		public void remove(final MapTile pTile) {
+			mQueue.remove(pTile);
+		}
+	}
+
+	/** The scheduling that MapTileModuleProviderBase used before MapTileRequestQueue */
+	private static class LegacyScheduler implements Scheduler {
+		private final HashMap<MapTile, MapTileRequestState> mWorking;
+		private final LinkedHashMap<MapTile, MapTileRequestState> mPending;
+
+		LegacyScheduler(final int pSize) {
+			mWorking = new HashMap<MapTile, MapTileRequestState>();
+			mPending = new LinkedHashMap<MapTile, MapTileRequestState>(pSize + 2, 0.1f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						final Map.Entry<MapTile, MapTileRequestState> pEldest) {
+					if (size() > pSize) {
+						MapTile result = null;
+						final Iterator<MapTile> iterator = mPending.keySet().iterator();
+						while (result == null && iterator.hasNext()) {
+							final MapTile tile = iterator.next();
+							if (!mWorking.containsKey(tile)) {
+								result = tile;
+							}
+						}
+						if (result != null) {
+							remove(result);
+						}
+					}
+					return false;
+				}
+			};
+		}
+
+		public void put(final MapTileRequestState pState) {
+			mPending.put(pState.getMapTile(), pState);
+		}
+
+		public MapTileRequestState poll() {
+			MapTile result = null;
+			final Iterator<MapTile> iterator = mPending.keySet().iterator();
+			while (iterator.hasNext()) {
+				final MapTile tile = iterator.next();
+				if (!mWorking.containsKey(tile)) {
+					result = tile;
+				}
+			}
+			if (result != null) {
+				mWorking.put(result, mPending.get(result));
+			}
+			return (result != null ? mPending.get(result) : null);
+		}
+
+		public void remove(final MapTile pTile) {
+			mPending.remove(pTile);
+			mWorking.remove(pTile);
+		}
+	}
+
+	public static void main(final String[] args) {
+		for (final int size : QUEUE_SIZES) {
+			final double legacy = measure(new LegacyScheduler(size), size);
+			final double queue = measure(new QueueScheduler(size), size);
+			System.out.println(String.format("queue size %5d: LinkedHashMap %10.1f ns/op,"
+					+ " MapTileRequestQueue %8.1f ns/op", size, legacy, queue));
+		}
+	}
+
+	private static double measure(final Scheduler pScheduler, final int pSize) {
+		// every request is new, as they are when panning
+		final MapTileRequestState[] requests = new MapTileRequestState[pSize
+				+ (WARMUP_OPERATIONS + MEASURED_OPERATIONS) * REQUESTS_PER_OPERATION];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = new MapTileRequestState(new MapTile(18, i, i * 7),
+					new MapTileModuleProviderBase[0], null);
+		}
+
+		// fill the queue and keep some requests in progress
+		for (int i = 0; i < pSize; i++) {
+			pScheduler.put(requests[i]);
+		}
+		final MapTileRequestState[] working = new MapTileRequestState[WORKERS];
+		for (int i = 0; i < WORKERS; i++) {
+			working[i] = pScheduler.poll();
+		}
+
+		run(pScheduler, requests, working, pSize, WARMUP_OPERATIONS);
+		final long start = System.nanoTime();
+		run(pScheduler, requests, working, pSize + WARMUP_OPERATIONS * REQUESTS_PER_OPERATION,
+				MEASURED_OPERATIONS);
+		return (System.nanoTime() - start) / (double) MEASURED_OPERATIONS;
+	}
+
+	private static void run(final Scheduler pScheduler, final MapTileRequestState[] pRequests,
+			final MapTileRequestState[] pWorking, final int pFirstRequest, final int pOperations) {
+		int next = pFirstRequest;
+		for (int i = 0; i < pOperations; i++) {
+			for (int j = 0; j < REQUESTS_PER_OPERATION; j++) {
+				pScheduler.put(pRequests[next++]);
+			}
+			final int worker = i % WORKERS;
+			if (pWorking[worker] != null) {
+				pScheduler.remove(pWorking[worker].getMapTile());
+			}
+			pWorking[worker] = pScheduler.poll();
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRegion;
+import org.osmdroid.tileprovider.MapTileRequestState;
+
+public class MapTileRequestQueueTest {
+
+	private static MapTileRequestState state(final int x) {
+		return state(x, x);
+	}
+
+	private static MapTileRequestState state(final int x, final int y) {
+		return new MapTileRequestState(new MapTile(10, x, y), new MapTileModuleProviderBase[0],
+				null);
+	}
+
+	@Test
+	public void test_put_twice() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state = state(1);
+		queue.put(state);
+		queue.put(state);
+		assertEquals("One tile pending", 1, queue.size());
+	}
+
+	@Test
+	public void test_newest_first() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState state2 = state(2);
+		final MapTileRequestState state3 = state(3);
+		queue.put(state1);
+		queue.put(state2);
+		queue.put(state3);
+		assertSame("newest first", state3, queue.poll());
+		assertSame("then the next newest", state2, queue.poll());
+		assertSame("oldest last", state1, queue.poll());
+		assertNull("nothing left waiting", queue.poll());
+		assertEquals("working tiles still count", 3, queue.size());
+		assertEquals("all working", 3, queue.getWorkingCount());
+	}
+
+	@Test
+	public void test_jump_queue() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState state2 = state(2);
+		queue.put(state1);
+		queue.put(state2);
+		queue.put(state1);
+		assertSame("re-requested tile jumps the queue", state1, queue.poll());
+		assertSame(state2, queue.poll());
+	}
+
+	@Test
+	public void test_working_tile_not_requeued() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = state(1);
+		queue.put(state1);
+		assertSame(state1, queue.poll());
+		queue.put(state1);
+		assertTrue(queue.isWorking(state1.getMapTile()));
+		assertNull("working tile isn't handed out again", queue.poll());
+	}
+
+	@Test
+	public void test_waiting_tiles() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState state2 = state(2);
+		final MapTileRequestState state3 = state(3);
+		queue.put(state1);
+		queue.put(state2);
+		queue.put(state3);
+		assertSame(state3, queue.poll());
+
+		final ArrayList<MapTile> tiles = new ArrayList<MapTile>();
+		queue.getWaitingTiles(tiles, 10);
+		assertEquals("working tile isn't waiting", 2, tiles.size());
+		assertEquals("newest first", state2.getMapTile(), tiles.get(0));
+		assertEquals(state1.getMapTile(), tiles.get(1));
+
+		tiles.clear();
+		queue.getWaitingTiles(tiles, 1);
+		assertEquals("limited to the maximum", 1, tiles.size());
+		assertSame("still waiting", state2, queue.poll());
+	}
+
+	@Test
+	public void test_overflow_evicts_oldest_waiting() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(3);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState state2 = state(2);
+		final MapTileRequestState state3 = state(3);
+		final MapTileRequestState state4 = state(4);
+		queue.put(state1);
+		assertSame(state1, queue.poll());
+		queue.put(state2);
+		queue.put(state3);
+		assertSame("oldest non-working tile is evicted", state2, queue.put(state4));
+		assertEquals(3, queue.size());
+		assertTrue("working tile is kept", queue.contains(state1.getMapTile()));
+		assertFalse(queue.contains(state2.getMapTile()));
+	}
+
+	@Test
+	public void test_overflow_when_all_working() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(1);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState state2 = state(2);
+		queue.put(state1);
+		queue.poll();
+		assertSame("new tile is evicted if everything else is working", state2,
+				queue.put(state2));
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void test_remove() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState state2 = state(2);
+		queue.put(state1);
+		queue.put(state2);
+		queue.poll();
+		queue.remove(state2.getMapTile());
+		queue.remove(state1.getMapTile());
+		assertEquals(0, queue.size());
+		assertEquals(0, queue.getWorkingCount());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void test_retain_region() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState center = state(5, 5);
+		final MapTileRequestState edge = state(3, 5);
+		final MapTileRequestState outside = state(9, 5);
+		final MapTileRequestState working = state(0, 0);
+		queue.put(working);
+		queue.poll();
+		queue.put(center);
+		queue.put(outside);
+		queue.put(edge);
+
+		final ArrayList<MapTileRequestState> dropped = new ArrayList<MapTileRequestState>();
+		queue.retainRegion(new MapTileRegion(10, 3, 3, 7, 7), dropped);
+
+		assertEquals("tile outside the region is dropped", 1, dropped.size());
+		assertSame(outside, dropped.get(0));
+		assertTrue("working tile is kept", queue.contains(working.getMapTile()));
+		assertSame("center is served first", center, queue.poll());
+		assertSame(edge, queue.poll());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void test_retain_regions() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState map = state(5, 5);
+		final MapTileRequestState minimap = new MapTileRequestState(new MapTile(6, 1, 1),
+				new MapTileModuleProviderBase[0], null);
+		final MapTileRequestState outside = state(9, 5);
+		queue.put(map);
+		queue.put(minimap);
+		queue.put(outside);
+
+		final ArrayList<MapTileRequestState> dropped = new ArrayList<MapTileRequestState>();
+		queue.retainRegions(Arrays.asList(new MapTileRegion(10, 3, 3, 7, 7), new MapTileRegion(
+				6, 0, 0, 1, 1)), dropped);
+
+		assertEquals("tile outside of all the regions is dropped", 1, dropped.size());
+		assertSame(outside, dropped.get(0));
+		assertTrue("tile of the other region is kept", queue.contains(minimap.getMapTile()));
+		assertTrue(queue.contains(map.getMapTile()));
+
+		queue.retainRegions(new ArrayList<MapTileRegion>(), dropped);
+		assertEquals("nothing is dropped without regions", 2, queue.size());
+	}
+
+	private static MapTileRequestState prefetch(final int x) {
+		final MapTileRequestState state = state(x);
+		state.setPrefetch(true);
+		return state;
+	}
+
+	@Test
+	public void test_prefetch_served_last() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState prefetch2 = prefetch(2);
+		final MapTileRequestState state3 = state(3);
+		queue.put(state1);
+		queue.put(prefetch2);
+		queue.put(state3);
+		assertSame(state3, queue.poll());
+		assertSame("older visible tile before the newer prefetch", state1, queue.poll());
+		assertSame(prefetch2, queue.poll());
+		assertEquals(1, queue.getPrefetchWorkingCount());
+	}
+
+	@Test
+	public void test_prefetch_working_limit() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10, 1);
+		final MapTileRequestState prefetch1 = prefetch(1);
+		final MapTileRequestState prefetch2 = prefetch(2);
+		queue.put(prefetch1);
+		queue.put(prefetch2);
+		assertSame(prefetch2, queue.poll());
+		assertNull("only one prefetch at a time", queue.poll());
+
+		final MapTileRequestState state3 = state(3);
+		queue.put(state3);
+		assertSame("visible tiles aren't limited", state3, queue.poll());
+
+		queue.remove(prefetch2.getMapTile());
+		assertEquals(0, queue.getPrefetchWorkingCount());
+		assertSame(prefetch1, queue.poll());
+	}
+
+	@Test
+	public void test_prefetch_promoted() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10, 1);
+		final MapTileRequestState prefetch1 = prefetch(1);
+		final MapTileRequestState prefetch2 = prefetch(2);
+		queue.put(prefetch1);
+		queue.put(prefetch2);
+		assertSame(prefetch2, queue.poll());
+
+		prefetch2.setPrefetch(false);
+		queue.put(prefetch2);
+		assertEquals("promoted while working", 0, queue.getPrefetchWorkingCount());
+
+		prefetch1.setPrefetch(false);
+		queue.put(prefetch1);
+		final MapTileRequestState prefetch3 = prefetch(3);
+		queue.put(prefetch3);
+		assertSame("promoted before the newer prefetch", prefetch1, queue.poll());
+		assertSame(prefetch3, queue.poll());
+
+		final MapTileRequestState state4 = state(4);
+		queue.put(state4);
+		queue.put(prefetch(4));
+		assertSame("a prefetch doesn't demote a visible tile", state4, queue.poll());
+		assertEquals(1, queue.getPrefetchWorkingCount());
+	}
+
+	@Test
+	public void test_overflow_evicts_prefetch_first() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(3);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState prefetch2 = prefetch(2);
+		final MapTileRequestState prefetch3 = prefetch(3);
+		queue.put(state1);
+		queue.put(prefetch2);
+		queue.put(prefetch3);
+		assertSame("oldest prefetch is evicted", prefetch2, queue.put(state(4)));
+		assertSame(prefetch3, queue.put(state(5)));
+
+		final MapTileRequestState prefetch6 = prefetch(6);
+		assertSame("a prefetch never evicts a visible tile", prefetch6, queue.put(prefetch6));
+		assertTrue(queue.contains(state1.getMapTile()));
+	}
+
+	@Test
+	public void test_clear_prefetch() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = state(1);
+		final MapTileRequestState prefetch2 = prefetch(2);
+		final MapTileRequestState prefetch3 = prefetch(3);
+		queue.put(state1);
+		queue.put(prefetch2);
+		queue.put(prefetch3);
+		assertSame(state1, queue.poll());
+		assertSame(prefetch3, queue.poll());
+
+		final ArrayList<MapTileRequestState> dropped = new ArrayList<MapTileRequestState>();
+		queue.retainRegion(new MapTileRegion(10, 8, 8, 9, 9), dropped);
+		assertTrue("prefetch isn't limited to the region", queue.contains(prefetch2.getMapTile()));
+
+		queue.clearPrefetch(dropped);
+		assertEquals(1, dropped.size());
+		assertSame(prefetch2, dropped.get(0));
+		assertEquals("working tiles are kept", 2, queue.size());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void test_retain_region_wraps_around_the_world() {
+		final MapTileRegion region = new MapTileRegion(2, -1, 0, 0, 3);
+		assertTrue("tile -1 is tile 3", region.contains(new MapTile(2, 3, 1)));
+		assertTrue(region.contains(new MapTile(2, 0, 1)));
+		assertFalse(region.contains(new MapTile(2, 1, 1)));
+		assertFalse("other zoom level", region.contains(new MapTile(3, 0, 1)));
+	}
+}
@@ -0,0 +1,149 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests the batching of {@link SqlTileWriter} and the sharing of its databases, which don't need
+ * a database to be opened.
+ */
+public class SqlTileWriterTest {
+
+	private static final int BATCH_SIZE = 8;
+
+	@Test
+	public void test_batches() throws InterruptedException {
+		final TestWriter writer = new TestWriter();
+		writer.start();
+		assertTrue(writer.offer(0));
+		writer.mWriting.await();
+
+		// these queue up while the first batch is written
+		for (int i = 1; i <= 20; i++) {
+			assertTrue(writer.offer(i));
+		}
+		writer.mRelease.countDown();
+		writer.close();
+		assertTrue(writer.join(5000));
+
+		assertEquals("written in order", expected(21), writer.mWritten);
+		assertEquals(1, writer.mBatchSizes.get(0).intValue());
+		assertEquals("what queued up goes in full batches", BATCH_SIZE,
+				writer.mBatchSizes.get(1).intValue());
+		for (final int size : writer.mBatchSizes) {
+			assertTrue(size <= BATCH_SIZE);
+		}
+		assertTrue(writer.mFinished);
+	}
+
+	@Test
+	public void test_close_writes_queued() throws InterruptedException {
+		final TestWriter writer = new TestWriter();
+		writer.start();
+		assertTrue(writer.offer(0));
+		writer.mWriting.await();
+		for (int i = 1; i < 100; i++) {
+			writer.offer(i);
+		}
+
+		writer.close();
+		assertTrue(writer.isClosed());
+		assertFalse("closed writers refuse writes", writer.offer(100));
+		writer.mRelease.countDown();
+		assertTrue(writer.join(5000));
+
+		assertEquals("everything queued before closing is written", expected(100),
+				writer.mWritten);
+		assertEquals("finished after the last write", 100, writer.mWrittenWhenFinished);
+	}
+
+	@Test
+	public void test_close_unused() throws InterruptedException {
+		final TestWriter writer = new TestWriter();
+		writer.start();
+		writer.close();
+		assertTrue(writer.join(5000));
+		assertTrue(writer.mWritten.isEmpty());
+		assertTrue(writer.mFinished);
+	}
+
+	@Test
+	public void test_shared_per_file() throws IOException {
+		final File file = File.createTempFile("cache", ".db");
+		file.delete();
+		final SqlTileWriter first = new SqlTileWriter(file);
+		final SqlTileWriter second = new SqlTileWriter(new File(file.getPath()));
+		final SqlTileWriter other = new SqlTileWriter(new File(file.getPath() + "-other"));
+		assertSame("one connection and writer per file", first.getTileDatabase(),
+				second.getTileDatabase());
+		assertNotSame(first.getTileDatabase(), other.getTileDatabase());
+
+		first.close();
+		first.close();
+		assertFalse("still used by the second writer", second.getTileDatabase().isClosed());
+		second.close();
+		assertTrue(second.getTileDatabase().isClosed());
+
+		final SqlTileWriter third = new SqlTileWriter(file);
+		assertNotSame("opened again", first.getTileDatabase(), third.getTileDatabase());
+		assertFalse(third.getTileDatabase().isClosed());
+		third.close();
+		other.close();
+	}
+
+	private static List<Integer> expected(final int pCount) {
+		final ArrayList<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < pCount; i++) {
+			expected.add(i);
+		}
+		return expected;
+	}
+
+	/** Blocks in the first batch until it's released, to let writes queue up */
+	private static class TestWriter extends SqlTileWriter.BatchWriter<Integer> {
+
+		final CountDownLatch mWriting = new CountDownLatch(1);
+		final CountDownLatch mRelease = new CountDownLatch(1);
+		final List<Integer> mWritten = new ArrayList<Integer>();
+		final List<Integer> mBatchSizes = new ArrayList<Integer>();
+		volatile boolean mFinished;
+		volatile int mWrittenWhenFinished = -1;
+
+		TestWriter() {
+			super("TestWriter", BATCH_SIZE);
+		}
+
+		@Override
+		void write(final List<Integer> pBatch) {
+			mWriting.countDown();
+			while (true) {
+				try {
+					// closing interrupts the writer thread, as it would a database write
+					mRelease.await();
+					break;
+				} catch (final InterruptedException e) {
+					continue;
+				}
+			}
+			mWritten.addAll(pBatch);
+			mBatchSizes.add(pBatch.size());
+		}
+
+		@Override
+		void finish() {
+			mWrittenWhenFinished = mWritten.size();
+			mFinished = true;
+		}
+	}
+}
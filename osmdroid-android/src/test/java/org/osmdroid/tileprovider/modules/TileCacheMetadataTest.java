@@ -0,0 +1,128 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class TileCacheMetadataTest {
+
+	private static final long NOW = 1400000000000L;
+	private static final long DEFAULT_AGE = 1000000L;
+
+	private static HttpResponse response(final int pStatus, final String... pHeaders) {
+		final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, pStatus, null);
+		for (int i = 0; i < pHeaders.length; i += 2) {
+			response.addHeader(pHeaders[i], pHeaders[i + 1]);
+		}
+		return response;
+	}
+
+	@Test
+	public void test_max_age() {
+		final TileCacheMetadata metadata = TileCacheMetadata.fromResponse(
+				response(200, "Cache-Control", "public, max-age=3600", "ETag", "\"abc\""), null,
+				NOW);
+		assertEquals("Expires after max-age", NOW + 3600 * 1000, metadata.getExpires());
+		assertEquals("ETag", "\"abc\"", metadata.getETag());
+		assertNull("No Last-Modified", metadata.getLastModified());
+		assertFalse("Fresh", metadata.isExpired(NOW + 3599 * 1000, NOW, DEFAULT_AGE));
+		assertTrue("Expired", metadata.isExpired(NOW + 3600 * 1000, NOW, DEFAULT_AGE));
+	}
+
+	@Test
+	public void test_max_age_wins_over_expires() {
+		final TileCacheMetadata metadata = TileCacheMetadata.fromResponse(
+				response(200, "Expires", "Thu, 01 Jan 1970 00:00:00 GMT", "Cache-Control",
+						"max-age=60"), null, NOW);
+		assertEquals("Expires after max-age", NOW + 60 * 1000, metadata.getExpires());
+	}
+
+	@Test
+	public void test_expires() {
+		final TileCacheMetadata metadata = TileCacheMetadata.fromResponse(
+				response(200, "Expires", "Tue, 13 May 2014 16:53:20 GMT"), null, NOW);
+		assertEquals("Expires header", 1400000000000L, metadata.getExpires());
+
+		final TileCacheMetadata invalid = TileCacheMetadata.fromResponse(
+				response(200, "Expires", "0"), null, NOW);
+		assertTrue("Invalid Expires is expired", invalid.isExpired(NOW, NOW, DEFAULT_AGE));
+	}
+
+	@Test
+	public void test_no_cache() {
+		final TileCacheMetadata metadata = TileCacheMetadata.fromResponse(
+				response(200, "Cache-Control", "no-cache, max-age=3600"), null, NOW);
+		assertTrue("Must revalidate", metadata.isExpired(NOW, NOW, DEFAULT_AGE));
+	}
+
+	@Test
+	public void test_default_age() {
+		final TileCacheMetadata metadata = TileCacheMetadata.fromResponse(
+				response(200, "Last-Modified", "Tue, 13 May 2014 16:53:20 GMT"), null, NOW);
+		assertEquals("Unknown expiry", TileCacheMetadata.EXPIRES_UNKNOWN, metadata.getExpires());
+		assertFalse("Fresh until the default age", metadata.isExpired(NOW + DEFAULT_AGE, NOW,
+				DEFAULT_AGE));
+		assertTrue("Expired after the default age", metadata.isExpired(NOW + DEFAULT_AGE + 1, NOW,
+				DEFAULT_AGE));
+		assertTrue("Empty", TileCacheMetadata.fromResponse(response(200), null, NOW).isEmpty());
+	}
+
+	@Test
+	public void test_not_modified_keeps_validators() {
+		final TileCacheMetadata cached = new TileCacheMetadata(NOW - 1, "\"abc\"",
+				"Tue, 13 May 2014 16:53:20 GMT");
+		final TileCacheMetadata revalidated = TileCacheMetadata.fromResponse(
+				response(304, "Cache-Control", "max-age=60"), cached, NOW);
+		assertEquals("New expiry", NOW + 60 * 1000, revalidated.getExpires());
+		assertEquals("ETag kept", cached.getETag(), revalidated.getETag());
+		assertEquals("Last-Modified kept", cached.getLastModified(),
+				revalidated.getLastModified());
+
+		final TileCacheMetadata unchanged = TileCacheMetadata.fromResponse(response(304), cached,
+				NOW);
+		assertEquals("Default age", TileCacheMetadata.EXPIRES_UNKNOWN, unchanged.getExpires());
+		assertEquals("ETag kept", cached.getETag(), unchanged.getETag());
+		assertFalse("Fresh after revalidating", unchanged.isExpired(NOW + 1, NOW, DEFAULT_AGE));
+	}
+
+	@Test
+	public void test_conditional_headers() {
+		final HttpGet request = new HttpGet("http://localhost/1/2/3.png");
+		new TileCacheMetadata(NOW, "\"abc\"", "Tue, 13 May 2014 16:53:20 GMT")
+				.addConditionalHeaders(request);
+		assertEquals("If-None-Match", "\"abc\"", request.getFirstHeader("If-None-Match")
+				.getValue());
+		assertEquals("If-Modified-Since", "Tue, 13 May 2014 16:53:20 GMT", request.getFirstHeader(
+				"If-Modified-Since").getValue());
+	}
+
+	@Test
+	public void test_read_write() throws IOException {
+		final File tile = File.createTempFile("tile", ".png.tile");
+		final File metadataFile = TileCacheMetadata.getFile(tile);
+		try {
+			assertNull("No metadata", TileCacheMetadata.read(tile));
+
+			final TileCacheMetadata metadata = new TileCacheMetadata(NOW, "W/\"abc\"", null);
+			final long written = metadata.write(tile);
+			assertEquals("Bytes written", metadataFile.length(), written);
+			final TileCacheMetadata read = TileCacheMetadata.read(tile);
+			assertEquals("Expires", metadata.getExpires(), read.getExpires());
+			assertEquals("ETag", metadata.getETag(), read.getETag());
+			assertNull("Last-Modified", read.getLastModified());
+		} finally {
+			tile.delete();
+			metadataFile.delete();
+		}
+	}
+}
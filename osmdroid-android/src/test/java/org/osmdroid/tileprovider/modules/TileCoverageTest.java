@@ -0,0 +1,188 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+
+public class TileCoverageTest {
+
+	@Test
+	public void test_same_as_set() {
+		final Random random = new Random(1);
+		final HashSet<Long> tiles = new HashSet<Long>();
+		final TileCoverage.Builder builder = new TileCoverage.Builder();
+		for (int i = 0; i < 5000; i++) {
+			final int z = 10 + random.nextInt(3);
+			final int x = random.nextInt(40);
+			final int y = random.nextInt(40);
+			tiles.add(MapTile.getKey(z, x, y));
+			builder.add(z, x, y);
+		}
+		final TileCoverage coverage = builder.build();
+
+		assertEquals(tiles.size(), coverage.getTileCount());
+		for (int z = 9; z <= 13; z++) {
+			for (int x = 0; x < 41; x++) {
+				for (int y = 0; y < 41; y++) {
+					assertEquals(tiles.contains(MapTile.getKey(z, x, y)),
+							coverage.contains(z, x, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_region_is_a_run_per_column() {
+		final TileCoverage.Builder builder = new TileCoverage.Builder();
+		// scanned by column, as the archives return them, and one column backwards
+		for (int x = 100; x < 110; x++) {
+			if (x == 105) {
+				for (int y = 219; y >= 200; y--) {
+					builder.add(15, x, y);
+				}
+			} else {
+				for (int y = 200; y < 220; y++) {
+					builder.add(15, x, y);
+				}
+			}
+		}
+		builder.addRange(15, 102, 210, 104, 230);
+		final TileCoverage coverage = builder.build();
+
+		assertEquals(10, coverage.getRunCount());
+		assertEquals(200 + 3 * 11, coverage.getTileCount());
+		assertTrue(coverage.contains(15, 100, 200));
+		assertTrue(coverage.contains(15, 103, 230));
+		assertFalse(coverage.contains(15, 100, 220));
+		assertFalse(coverage.contains(15, 110, 210));
+		assertFalse("other zoom level", coverage.contains(14, 100, 200));
+		assertFalse(coverage.contains(15, -1, 200));
+	}
+
+	@Test
+	public void test_row_order_is_merged() {
+		// scanned by row, so no tile follows the previous one's key
+		final TileCoverage.Builder builder = new TileCoverage.Builder();
+		for (int y = 0; y < 256; y++) {
+			for (int x = 0; x < 64; x++) {
+				builder.add(14, 1000 + x, 2000 + y);
+			}
+		}
+
+		// runs are merged as the arrays fill up, not kept one per tile until the end
+		assertTrue(builder.getCapacity() <= 4 * 64);
+		final TileCoverage coverage = builder.build();
+		assertEquals(64, coverage.getRunCount());
+		assertEquals(64 * 256, coverage.getTileCount());
+		assertTrue(coverage.contains(14, 1063, 2255));
+		assertFalse(coverage.contains(14, 1064, 2000));
+
+		final ArrayList<Long> keys = new ArrayList<Long>();
+		for (int i = 0; i < coverage.getTileCount(); i++) {
+			keys.add(MapTile.getKey(14, 1000 + i % 64, 2000 + i / 64));
+		}
+		Collections.shuffle(keys, new Random(1));
+		final TileCoverage.Builder shuffled = new TileCoverage.Builder();
+		for (final long key : keys) {
+			shuffled.add(MapTile.getZoomLevel(key), MapTile.getX(key), MapTile.getY(key));
+		}
+		assertEquals("any order", 64, shuffled.build().getRunCount());
+	}
+
+	@Test
+	public void test_empty() {
+		assertSame(TileCoverage.EMPTY, new TileCoverage.Builder().build());
+		assertFalse(TileCoverage.EMPTY.contains(0, 0, 0));
+	}
+
+	@Test
+	public void test_archive_coverage_file() throws IOException {
+		final File archive = File.createTempFile("coverage", ".zip");
+		final File file = new File(archive.getPath() + ArchiveCoverage.FILE_EXTENSION);
+		try {
+			final AtomicInteger scans = new AtomicInteger();
+			final ArchiveCoverage.Scanner scanner = new ArchiveCoverage.Scanner() {
+				public void scan(final Map<String, TileCoverage.Builder> pBuilders) {
+					scans.incrementAndGet();
+					ArchiveCoverage.getBuilder(pBuilders, "Mapnik/.png").addRange(3, 0, 0, 7, 7);
+				}
+			};
+
+			final ArchiveCoverage created = new ArchiveCoverage(archive, scanner);
+			created.load();
+			TileCoverage coverage = created.get("Mapnik/.png");
+			assertEquals(1, scans.get());
+			assertEquals(64, coverage.getTileCount());
+			assertTrue(file.exists());
+
+			final ArchiveCoverage reopened = new ArchiveCoverage(archive, scanner);
+			reopened.load();
+			coverage = reopened.get("Mapnik/.png");
+			assertEquals("read from the file", 1, scans.get());
+			assertTrue(coverage.contains(3, 7, 7));
+			assertSame("no tiles of another source", TileCoverage.EMPTY, reopened.get("Other/"));
+
+			assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+			new ArchiveCoverage(archive, scanner).load();
+			assertEquals("scanned again after a change", 2, scans.get());
+
+			file.delete();
+			final ArchiveCoverage unreadable = new ArchiveCoverage(archive,
+					new ArchiveCoverage.Scanner() {
+						public void scan(final Map<String, TileCoverage.Builder> pBuilders)
+								throws IOException {
+							throw new IOException();
+						}
+					});
+			unreadable.load();
+			assertNull(unreadable.get("Mapnik/.png"));
+		} finally {
+			archive.delete();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void test_archive_coverage_in_background() throws Exception {
+		final File archive = File.createTempFile("coverage", ".zip");
+		final File file = new File(archive.getPath() + ArchiveCoverage.FILE_EXTENSION);
+		try {
+			final CountDownLatch scanning = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final ArchiveCoverage coverage = new ArchiveCoverage(archive,
+					new ArchiveCoverage.Scanner() {
+						public void scan(final Map<String, TileCoverage.Builder> pBuilders)
+								throws InterruptedException {
+							scanning.countDown();
+							release.await();
+							ArchiveCoverage.getBuilder(pBuilders, "").add(1, 1, 1);
+						}
+					});
+
+			// the scan runs without being asked for, and doesn't hold up lookups
+			scanning.await();
+			assertNull("not known while it's scanned", coverage.get(""));
+			release.countDown();
+			coverage.load();
+			assertTrue(coverage.get("").contains(1, 1, 1));
+		} finally {
+			archive.delete();
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the cache size journal of {@link TileWriter}, which doesn't need the tile tree.
+ */
+public class TileWriterTest {
+
+	private static final long NOW = 1400000000000L;
+	private static final long ONE_DAY = 24 * 60 * 60 * 1000L;
+	private static final long MAXIMUM_AGE = 7 * ONE_DAY;
+
+	private File mFile;
+
+	@Before
+	public void createFile() throws IOException {
+		mFile = File.createTempFile("cache", ".size");
+		mFile.delete();
+	}
+
+	@After
+	public void deleteFile() {
+		mFile.delete();
+	}
+
+	@Test
+	public void test_resumed_size() {
+		assertEquals("no journal yet", -1, new TileWriter.CacheJournal(mFile).read(NOW,
+				MAXIMUM_AGE));
+
+		final TileWriter.CacheJournal journal = new TileWriter.CacheJournal(mFile);
+		assertTrue(journal.write(1000, NOW));
+		assertTrue(journal.write(3000, -1));
+
+		final TileWriter.CacheJournal resumed = new TileWriter.CacheJournal(mFile);
+		assertEquals(3000, resumed.read(NOW + ONE_DAY, MAXIMUM_AGE));
+		assertTrue(resumed.write(5000, -1));
+		assertEquals("the scan time is kept", 5000,
+				new TileWriter.CacheJournal(mFile).read(NOW + 6 * ONE_DAY, MAXIMUM_AGE));
+	}
+
+	@Test
+	public void test_rescan() throws IOException {
+		final TileWriter.CacheJournal journal = new TileWriter.CacheJournal(mFile);
+		assertTrue(journal.write(1000, NOW));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(journal.write(2000 + i, -1));
+		}
+
+		// the journal was just written, but the tree was last walked more than a week ago
+		final TileWriter.CacheJournal resumed = new TileWriter.CacheJournal(mFile);
+		assertEquals(-1, resumed.read(NOW + 8 * ONE_DAY, MAXIMUM_AGE));
+		assertTrue(resumed.write(1500, NOW + 8 * ONE_DAY));
+		assertEquals("fresh after walking the tree", 1500,
+				new TileWriter.CacheJournal(mFile).read(NOW + 9 * ONE_DAY, MAXIMUM_AGE));
+
+		// a journal without the scan time
+		final FileWriter writer = new FileWriter(mFile);
+		writer.write("1000");
+		writer.close();
+		assertEquals(-1, new TileWriter.CacheJournal(mFile).read(NOW, MAXIMUM_AGE));
+	}
+}
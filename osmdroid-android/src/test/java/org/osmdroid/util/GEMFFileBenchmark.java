@@ -0,0 +1,231 @@
+package org.osmdroid.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares random tile reads from {@link MappedGEMFFile} with {@link GEMFFile} on a synthetic
+ * archive that is split into 1 GB parts like the ones GEMFFile writes. GEMFFile isn't thread-safe,
+ * so it's only measured on a single thread.<br />
+ * <br />
+ * Not a unit test, run it with
+ * <code>java ... GEMFFileBenchmark [archive size in MB, default 2048] [directory]
+ * [part size in MB, default 1024]</code>. The archive is deleted afterwards.
+ */
+public class GEMFFileBenchmark {
+
+	private static long mPartSize = 1024L * 1024 * 1024;
+	private static final int MAXIMUM_ZOOM = 8;
+	private static final int COLUMNS_PER_RANGE = 16;
+	private static final int READS = 200000;
+	private static final int THREADS = 8;
+
+	public static void main(final String[] args) throws Exception {
+		final long size = (args.length > 0 ? Long.parseLong(args[0]) : 2048) * 1024 * 1024;
+		final File directory = new File(args.length > 1 ? args[1]
+				: System.getProperty("java.io.tmpdir"));
+		final File archive = new File(directory, "benchmark.gemf");
+		if (args.length > 2) {
+			mPartSize = Long.parseLong(args[2]) * 1024 * 1024;
+		}
+
+		System.out.println("Writing " + (size >> 20) + " MB archive " + archive);
+		final int parts = write(archive, size);
+		try {
+			final int[][] tiles = randomTiles();
+
+			final GEMFFile gemfFile = new GEMFFile(archive);
+			final MappedGEMFFile mappedFile = new MappedGEMFFile(archive);
+
+			// warm up
+			readGEMFFile(gemfFile, tiles, READS / 10);
+			readMappedFile(mappedFile, tiles, 0, READS / 10);
+
+			long start = System.nanoTime();
+			final long gemfBytes = readGEMFFile(gemfFile, tiles, READS);
+			final double gemf = (System.nanoTime() - start) / (double) READS;
+
+			start = System.nanoTime();
+			final long mappedBytes = readMappedFile(mappedFile, tiles, 0, READS);
+			final double mapped = (System.nanoTime() - start) / (double) READS;
+
+			if (gemfBytes != mappedBytes) {
+				// GEMFFile can't read a tile that starts exactly at the beginning of a part
+				System.out.println("Read " + gemfBytes + " bytes with GEMFFile and "
+						+ mappedBytes + " with MappedGEMFFile");
+			}
+
+			start = System.nanoTime();
+			final Thread[] threads = new Thread[THREADS];
+			for (int i = 0; i < THREADS; i++) {
+				final int first = i * READS / THREADS;
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						readMappedFile(mappedFile, tiles, first, READS / THREADS);
+					}
+				};
+				threads[i].start();
+			}
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+			final double concurrent = (System.nanoTime() - start) / (double) READS;
+
+			gemfFile.close();
+			mappedFile.close();
+
+			System.out.println(String.format("%d tiles in %d parts, %d random reads", tileCount(),
+					parts, READS));
+			System.out.println(String.format("GEMFFile       %8.0f ns/tile", gemf));
+			System.out.println(String.format("MappedGEMFFile %8.0f ns/tile", mapped));
+			System.out.println(String.format("MappedGEMFFile %8.0f ns/tile with %d threads",
+					concurrent, THREADS));
+		} finally {
+			archive.delete();
+			for (int i = 1; i < parts; i++) {
+				new File(archive.getPath() + "-" + i).delete();
+			}
+		}
+	}
+
+	private static int tileCount() {
+		int count = 0;
+		for (int z = 0; z <= MAXIMUM_ZOOM; z++) {
+			count += 1 << (2 * z);
+		}
+		return count;
+	}
+
+	private static int[][] randomTiles() {
+		final Random random = new Random(1);
+		final int[][] tiles = new int[READS][];
+		for (int i = 0; i < READS; i++) {
+			final int z = random.nextInt(MAXIMUM_ZOOM + 1);
+			tiles[i] = new int[] { random.nextInt(1 << z), random.nextInt(1 << z), z };
+		}
+		return tiles;
+	}
+
+	private static long readGEMFFile(final GEMFFile pFile, final int[][] pTiles, final int pCount)
+			throws IOException {
+		final byte[] buffer = new byte[64 * 1024];
+		long bytes = 0;
+		for (int i = 0; i < pCount; i++) {
+			final int[] tile = pTiles[i];
+			final InputStream in = pFile.getInputStream(tile[0], tile[1], tile[2]);
+			int read;
+			while (in.available() > 0 && (read = in.read(buffer, 0, buffer.length)) > 0) {
+				bytes += read;
+			}
+			in.close();
+		}
+		return bytes;
+	}
+
+	private static long readMappedFile(final MappedGEMFFile pFile, final int[][] pTiles,
+			final int pFirst, final int pCount) {
+		final byte[] buffer = new byte[64 * 1024];
+		long bytes = 0;
+		for (int i = pFirst; i < pFirst + pCount; i++) {
+			final int[] tile = pTiles[i];
+			final ByteBuffer data = pFile.getByteBuffer(tile[0], tile[1], tile[2]);
+			bytes += data.remaining();
+			data.get(buffer, 0, data.remaining());
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write an archive with every tile from zoom level 0 to {@link #MAXIMUM_ZOOM}, in ranges of
+	 * {@link #COLUMNS_PER_RANGE} columns.
+	 *
+	 * @return the number of files
+	 */
+	private static int write(final File pArchive, final long pSize) throws IOException {
+		final int tileCount = tileCount();
+		final int tileSize = (int) (pSize / tileCount);
+
+		// ranges
+		final List<int[]> ranges = new ArrayList<int[]>();
+		for (int z = 0; z <= MAXIMUM_ZOOM; z++) {
+			final int n = 1 << z;
+			for (int xMin = 0; xMin < n; xMin += COLUMNS_PER_RANGE) {
+				ranges.add(new int[] { z, xMin, Math.min(n, xMin + COLUMNS_PER_RANGE) - 1, 0,
+						n - 1 });
+			}
+		}
+
+		final String source = "benchmark";
+		final long headerSize = 4 + 4 + 4 + 4 + 4 + source.length() + 4 + ranges.size()
+				* (6 * 4 + 8) + (long) tileCount * (8 + 4);
+
+		final DataOutputStream header = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(pArchive), 64 * 1024));
+		header.writeInt(4);
+		header.writeInt(256);
+		header.writeInt(1);
+		header.writeInt(0);
+		header.writeInt(source.length());
+		header.write(source.getBytes());
+		header.writeInt(ranges.size());
+		long recordOffset = header.size() + ranges.size() * (6 * 4 + 8);
+		for (final int[] range : ranges) {
+			for (final int value : range) {
+				header.writeInt(value);
+			}
+			header.writeInt(0);
+			header.writeLong(recordOffset);
+			recordOffset += (long) (range[2] - range[1] + 1) * (range[4] - range[3] + 1) * 12;
+		}
+
+		// tile records, a tile doesn't span two parts
+		long partStart = 0;
+		long partSize = headerSize;
+		int parts = 1;
+		for (final int[] range : ranges) {
+			for (int x = range[1]; x <= range[2]; x++) {
+				for (int y = range[3]; y <= range[4]; y++) {
+					if (partSize + tileSize > mPartSize) {
+						partStart += partSize;
+						partSize = 0;
+						parts++;
+					}
+					header.writeLong(partStart + partSize);
+					header.writeInt(tileSize);
+					partSize += tileSize;
+				}
+			}
+		}
+
+		// tile data
+		final byte[] data = new byte[tileSize];
+		final Random random = new Random(1);
+		OutputStream out = header;
+		partSize = headerSize;
+		int part = 0;
+		for (int i = 0; i < tileCount; i++) {
+			if (partSize + tileSize > mPartSize) {
+				out.close();
+				part++;
+				out = new BufferedOutputStream(new FileOutputStream(pArchive.getPath() + "-"
+						+ part), 64 * 1024);
+				partSize = 0;
+			}
+			random.nextBytes(data);
+			out.write(data);
+			partSize += tileSize;
+		}
+		out.close();
+		return parts;
+	}
+}
@@ -0,0 +1,50 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GeoPointBufferTest {
+
+	@Test
+	public void test_grows() {
+		final GeoPointBuffer buffer = new GeoPointBuffer(true);
+		assertTrue(buffer.hasTimeStamps());
+		for (int i = 0; i < 1000; i++) {
+			buffer.add(i, -i, 1000L * i);
+		}
+		assertEquals(1000, buffer.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, buffer.getLatitudeE6(i));
+			assertEquals(-i, buffer.getLongitudeE6(i));
+			assertEquals(1000L * i, buffer.getTimeStamp(i));
+		}
+	}
+
+	@Test
+	public void test_without_time_stamps() {
+		final GeoPointBuffer buffer = new GeoPointBuffer();
+		assertFalse(buffer.hasTimeStamps());
+		buffer.add(39570000, 2650000, 1234);
+		assertEquals(39570000, buffer.getLatitudeE6(0));
+		assertEquals(2650000, buffer.getLongitudeE6(0));
+		assertEquals("time stamps aren't kept", 0, buffer.getTimeStamp(0));
+	}
+
+	@Test
+	public void test_clear() {
+		final GeoPointBuffer buffer = new GeoPointBuffer(true);
+		for (int i = 0; i < 100; i++) {
+			buffer.add(i, i, i);
+		}
+		buffer.clear();
+		assertEquals(0, buffer.size());
+		buffer.add(5, 6, 7);
+		assertEquals(1, buffer.size());
+		assertEquals(5, buffer.getLatitudeE6(0));
+		assertEquals(6, buffer.getLongitudeE6(0));
+		assertEquals(7, buffer.getTimeStamp(0));
+	}
+}
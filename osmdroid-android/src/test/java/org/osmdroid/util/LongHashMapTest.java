@@ -0,0 +1,62 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongHashMapTest {
+
+	@Test
+	public void test_put_get_remove() {
+		final LongHashMap<String> map = new LongHashMap<String>();
+		assertNull(map.put(1, "one"));
+		assertNull(map.put(-1, "minus one"));
+		assertEquals("one", map.put(1, "uno"));
+		assertEquals(2, map.size());
+		assertEquals("uno", map.get(1));
+		assertEquals("minus one", map.get(-1));
+		assertNull(map.get(2));
+
+		assertEquals("uno", map.remove(1));
+		assertNull(map.remove(1));
+		assertFalse(map.containsKey(1));
+		assertTrue(map.containsKey(-1));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(-1));
+	}
+
+	@Test
+	public void test_same_as_hash_map() {
+		final Random random = new Random(1);
+		final LongHashMap<Long> map = new LongHashMap<Long>();
+		final HashMap<Long, Long> expected = new HashMap<Long, Long>();
+		for (int i = 0; i < 100000; i++) {
+			// a small key range, so that there are lots of removals of keys that are there
+			final long key = random.nextInt(2000) * 0x100000001L;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (int key = 0; key < 2000; key++) {
+			assertEquals(expected.get(key * 0x100000001L), map.get(key * 0x100000001L));
+		}
+
+		final ArrayList<Long> values = new ArrayList<Long>();
+		map.getValues(values);
+		assertEquals(expected.size(), values.size());
+		assertTrue(values.containsAll(expected.values()));
+	}
+}
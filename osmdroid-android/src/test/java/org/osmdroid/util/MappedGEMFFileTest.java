@@ -0,0 +1,213 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedGEMFFileTest {
+
+	private File mDirectory;
+	private GEMFFile mGEMFFile;
+	private MappedGEMFFile mMappedFile;
+
+	@Before
+	public void createArchive() throws IOException {
+		mDirectory = File.createTempFile("gemf", "");
+		mDirectory.delete();
+		mDirectory.mkdirs();
+
+		// two sources that overlap, with gaps so that there are several ranges per zoom level
+		final List<File> sources = new ArrayList<File>();
+		sources.add(createSource("a", 1));
+		sources.add(createSource("b", 2));
+		final File archive = new File(mDirectory, "test.gemf");
+		mGEMFFile = new GEMFFile(archive.getPath(), sources);
+		mMappedFile = new MappedGEMFFile(archive);
+	}
+
+	private File createSource(final String pName, final int pSeed) throws IOException {
+		final File source = new File(mDirectory, pName);
+		final Random random = new Random(pSeed);
+		for (int z = 1; z <= 4; z++) {
+			final int n = 1 << z;
+			for (int x = 0; x < n; x++) {
+				final File xDir = new File(source, z + "/" + x);
+				for (int y = 0; y < n; y++) {
+					if (!hasTile(pSeed, n, x, y)) {
+						continue;
+					}
+					xDir.mkdirs();
+					final byte[] data = new byte[1 + random.nextInt(200)];
+					random.nextBytes(data);
+					final FileOutputStream out = new FileOutputStream(new File(xDir, y + ".png"));
+					out.write(data);
+					out.close();
+				}
+			}
+		}
+		return source;
+	}
+
+	/**
+	 * GEMFFile can only write sources where all the columns with the same set of rows are next to
+	 * each other.
+	 */
+	private static boolean hasTile(final int pSeed, final int n, final int x, final int y) {
+		if (pSeed == 1) {
+			// a gap in the rows of the left half, and the top rows of the right half
+			return x < n / 2 ? y != 1 : y < n / 2;
+		}
+		return x <= n / 2 && y >= n / 4;
+	}
+
+	@After
+	public void deleteArchive() throws IOException {
+		mGEMFFile.close();
+		mMappedFile.close();
+		delete(mDirectory);
+	}
+
+	private static void delete(final File pFile) {
+		final File[] files = pFile.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				delete(file);
+			}
+		}
+		pFile.delete();
+	}
+
+	private static byte[] read(final InputStream pStream) throws IOException {
+		if (pStream == null) {
+			return null;
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int b;
+		while (pStream.available() > 0 && (b = pStream.read()) != -1) {
+			out.write(b);
+		}
+		pStream.close();
+		return out.toByteArray();
+	}
+
+	private void assertSameTiles() throws IOException {
+		for (int z = 0; z <= 5; z++) {
+			for (int x = -1; x <= (1 << z); x++) {
+				for (int y = -1; y <= (1 << z); y++) {
+					final byte[] expected = read(mGEMFFile.getInputStream(x, y, z));
+					final byte[] actual = read(mMappedFile.getInputStream(x, y, z));
+					assertArrayEquals("Tile " + z + "/" + x + "/" + y, expected, actual);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_same_tiles_as_GEMFFile() throws IOException {
+		assertEquals("Sources", mGEMFFile.getSources(), mMappedFile.getSources());
+		assertEquals("Zoom levels", mGEMFFile.getZoomLevels(), mMappedFile.getZoomLevels());
+		assertSameTiles();
+	}
+
+	@Test
+	public void test_select_source() throws IOException {
+		mGEMFFile.selectSource(1);
+		mMappedFile.selectSource(1);
+		assertSameTiles();
+
+		mGEMFFile.acceptAnySource();
+		mMappedFile.acceptAnySource();
+		assertSameTiles();
+	}
+
+	@Test
+	public void test_ranges() {
+		for (int source = 0; source < 2; source++) {
+			mMappedFile.selectSource(source);
+			int count = 0;
+			for (final int[] range : mMappedFile.getRanges(source)) {
+				for (int x = range[1]; x <= range[2]; x++) {
+					for (int y = range[3]; y <= range[4]; y++) {
+						assertNotNull("Tile " + range[0] + "/" + x + "/" + y,
+								mMappedFile.getByteBuffer(x, y, range[0]));
+						count++;
+					}
+				}
+			}
+
+			int expected = 0;
+			for (int z = 1; z <= 4; z++) {
+				final int n = 1 << z;
+				for (int x = 0; x < n; x++) {
+					for (int y = 0; y < n; y++) {
+						expected += hasTile(source + 1, n, x, y) ? 1 : 0;
+					}
+				}
+			}
+			assertEquals("Tiles of source " + source, expected, count);
+		}
+	}
+
+	@Test
+	public void test_missing_tile() {
+		assertNull("Outside of the world", mMappedFile.getByteBuffer(100, 100, 4));
+		assertNull("Zoom level not in archive", mMappedFile.getByteBuffer(0, 0, 20));
+		assertNull("Negative zoom level", mMappedFile.getByteBuffer(0, 0, -1));
+	}
+
+	@Test
+	public void test_concurrent_reads() throws Exception {
+		final int tiles = 1 << 4;
+		final byte[][] expected = new byte[tiles * tiles][];
+		for (int x = 0; x < tiles; x++) {
+			for (int y = 0; y < tiles; y++) {
+				expected[x * tiles + y] = read(mGEMFFile.getInputStream(x, y, 4));
+			}
+		}
+
+		final AtomicInteger failures = new AtomicInteger();
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			final Random random = new Random(i);
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 20000; j++) {
+						final int index = random.nextInt(expected.length);
+						final ByteBuffer buffer = mMappedFile.getByteBuffer(index / tiles, index
+								% tiles, 4);
+						byte[] actual = null;
+						if (buffer != null) {
+							actual = new byte[buffer.remaining()];
+							buffer.get(actual);
+						}
+						if (!java.util.Arrays.equals(expected[index], actual)) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals("All reads returned the right tile", 0, failures.get());
+	}
+}
@@ -0,0 +1,179 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.osmdroid.tileprovider.MapTile;
+
+public class MappedZipFileTest {
+
+	private File mFile;
+	private MappedZipFile mZipFile;
+	private final Map<String, byte[]> mTiles = new HashMap<String, byte[]>();
+
+	@Before
+	public void createArchive() throws IOException {
+		mFile = File.createTempFile("tiles", ".zip");
+		final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mFile));
+		out.setComment("tiles");
+		final Random random = new Random(1);
+		// in no particular order, one source stored and one deflated
+		for (int z = 4; z >= 0; z--) {
+			final int n = 1 << z;
+			for (int x = n - 1; x >= 0; x--) {
+				for (int y = 0; y < n; y++) {
+					final byte[] data = new byte[1 + random.nextInt(300)];
+					random.nextBytes(data);
+					put(out, "Mapnik/" + z + "/" + x + "/" + y + ".png", data, true);
+					// compressible, so that it's really deflated
+					put(out, "Cycle/" + z + "/" + x + "/" + y + ".png.tile", new byte[data.length],
+							false);
+				}
+			}
+		}
+		put(out, "Mapnik/readme.txt", new byte[] { 1 }, false);
+		// an empty tile of another source
+		out.putNextEntry(new ZipEntry("Mapnik/0/0/0.png.bak"));
+		out.closeEntry();
+		out.close();
+		mZipFile = new MappedZipFile(mFile);
+	}
+
+	private void put(final ZipOutputStream pOut, final String pName, final byte[] pData,
+			final boolean pStored) throws IOException {
+		final ZipEntry entry = new ZipEntry(pName);
+		if (pStored) {
+			final CRC32 crc = new CRC32();
+			crc.update(pData);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(pData.length);
+			entry.setCrc(crc.getValue());
+		}
+		pOut.putNextEntry(entry);
+		pOut.write(pData);
+		pOut.closeEntry();
+		mTiles.put(pName, pData);
+	}
+
+	@After
+	public void deleteArchive() throws IOException {
+		mZipFile.close();
+		mFile.delete();
+	}
+
+	@Test
+	public void test_parse_tile() {
+		final int[] zxy = new int[3];
+		assertEquals("Mapnik/.png", MappedZipFile.parseTile("Mapnik/15/16624/12443.png", zxy));
+		assertArrayEquals(new int[] { 15, 16624, 12443 }, zxy);
+		assertEquals("/.jpg", MappedZipFile.parseTile("/1/2/3.jpg", zxy));
+		assertNull(MappedZipFile.parseTile("Mapnik/readme.txt", zxy));
+		assertNull(MappedZipFile.parseTile("Mapnik/a/1/2.png", zxy));
+	}
+
+	@Test
+	public void test_index() {
+		assertEquals(3, mZipFile.getSources().size());
+		assertEquals(341, mZipFile.getTileCount("Mapnik/.png"));
+		assertEquals(341, mZipFile.getTileCount("Cycle/.png.tile"));
+		assertTrue(mZipFile.contains("Mapnik/.png", 4, 15, 15));
+		assertFalse(mZipFile.contains("Mapnik/.png", 4, 16, 15));
+		assertFalse(mZipFile.contains("Mapnik/.png", 5, 0, 0));
+		assertFalse(mZipFile.contains("Other/.png", 0, 0, 0));
+		assertEquals(MappedZipFile.STORED, mZipFile.getMethod("Mapnik/.png", 2, 1, 3));
+		assertEquals(MappedZipFile.DEFLATED, mZipFile.getMethod("Cycle/.png.tile", 2, 1, 3));
+		assertEquals(MapTile.getKey(0, 0, 0), mZipFile.getTileKey("Mapnik/.png", 0));
+		assertEquals(MapTile.getKey(4, 15, 15), mZipFile.getTileKey("Mapnik/.png", 340));
+	}
+
+	@Test
+	public void test_stored_and_deflated_tiles() throws IOException {
+		for (int z = 0; z <= 4; z++) {
+			final int n = 1 << z;
+			for (int x = 0; x < n; x++) {
+				for (int y = 0; y < n; y++) {
+					final String tile = z + "/" + x + "/" + y;
+					assertArrayEquals(mTiles.get("Mapnik/" + tile + ".png"),
+							read(mZipFile.getInputStream("Mapnik/.png", z, x, y)));
+					assertArrayEquals(mTiles.get("Cycle/" + tile + ".png.tile"),
+							read(mZipFile.getInputStream("Cycle/.png.tile", z, x, y)));
+				}
+			}
+		}
+		assertNull(mZipFile.getInputStream("Mapnik/.png", 1, 2, 0));
+	}
+
+	@Test
+	public void test_stored_tiles_are_views() {
+		final ByteBuffer buffer = mZipFile.getByteBuffer("Mapnik/.png", 3, 5, 6);
+		assertTrue(buffer.isReadOnly());
+		final byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		assertArrayEquals(mTiles.get("Mapnik/3/5/6.png"), data);
+		assertNull("deflated", mZipFile.getByteBuffer("Cycle/.png.tile", 3, 5, 6));
+	}
+
+	@Test
+	public void test_several_threads() throws InterruptedException {
+		final Thread[] threads = new Thread[4];
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads.length; i++) {
+			final int seed = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					final Random random = new Random(seed);
+					try {
+						for (int j = 0; j < 2000; j++) {
+							final int x = random.nextInt(16);
+							final int y = random.nextInt(16);
+							final String source = random.nextBoolean() ? "Mapnik/" : "Cycle/";
+							final String extension = source.equals("Mapnik/") ? ".png"
+									: ".png.tile";
+							assertArrayEquals(mTiles.get(source + "4/" + x + "/" + y + extension),
+									read(mZipFile.getInputStream(source + extension, 4, x, y)));
+						}
+					} catch (final Throwable t) {
+						failure[0] = t;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(String.valueOf(failure[0]), failure[0]);
+	}
+
+	private static byte[] read(final InputStream pIn) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[100];
+		int read;
+		while ((read = pIn.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		pIn.close();
+		return out.toByteArray();
+	}
+}
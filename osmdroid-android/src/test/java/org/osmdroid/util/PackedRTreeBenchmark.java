@@ -0,0 +1,174 @@
+package org.osmdroid.util;
+
+import java.util.Random;
+
+/**
+ * Compares the per-frame cost of the two ways ItemizedOverlay finds the items to draw and to hit
+ * test: projecting every item like Projection.toMapPixels does, or querying a {@link PackedRTree}
+ * of the items in MAXIMUM_ZOOMLEVEL pixels and projecting only the ones it returns. The items are
+ * spread over an island, the screen is a 1080x1920 phone at zoom level 15 over its main town.
+ * Drawing the markers themselves costs the same either way per drawn item, so it isn't
+ * included.<br />
+ * <br />
+ * Not a unit test, run it with <code>java ... PackedRTreeBenchmark</code>. The projection is
+ * repeated here because android.graphics.Point can't be used outside of Android.
+ */
+public class PackedRTreeBenchmark {
+
+	private static final int MAXIMUM_ZOOMLEVEL = 22;
+	private static final int ZOOM_LEVEL = 15;
+	private static final int SCREEN_WIDTH = 1080;
+	private static final int SCREEN_HEIGHT = 1920;
+	private static final int MARKER_SIZE = 48;
+	private static final int[] COUNTS = { 1000, 10000, 100000, 1000000 };
+	private static final int FRAMES = 200;
+
+	private static int mSink;
+
+	public static void main(final String[] args) {
+		System.out.println(String.format("%8s %12s %12s %12s %12s %8s", "items", "draw all",
+				"draw index", "tap all", "tap index", "visible"));
+		for (final int count : COUNTS) {
+			run(count);
+		}
+	}
+
+	private static void run(final int pCount) {
+		final Random random = new Random(1);
+		final double[] latitudes = new double[pCount];
+		final double[] longitudes = new double[pCount];
+		final int[] x = new int[pCount];
+		final int[] y = new int[pCount];
+		final int[] point = new int[2];
+		for (int i = 0; i < pCount; i++) {
+			// Mallorca, with half of the items in Palma
+			if (i % 2 == 0) {
+				latitudes[i] = 39.55 + random.nextGaussian() * 0.03;
+				longitudes[i] = 2.65 + random.nextGaussian() * 0.04;
+			} else {
+				latitudes[i] = 39.3 + random.nextDouble() * 0.65;
+				longitudes[i] = 2.3 + random.nextDouble() * 1.2;
+			}
+			project(latitudes[i], longitudes[i], MAXIMUM_ZOOMLEVEL, point);
+			x[i] = point[0];
+			y[i] = point[1];
+		}
+
+		final long buildStart = System.nanoTime();
+		final PackedRTree tree = new PackedRTree(x, y, pCount);
+		final long build = System.nanoTime() - buildStart;
+
+		// the screen around Palma, in pixels at the zoom level
+		project(39.57, 2.65, ZOOM_LEVEL, point);
+		final int left = point[0] - SCREEN_WIDTH / 2;
+		final int top = point[1] - SCREEN_HEIGHT / 2;
+		final int right = left + SCREEN_WIDTH;
+		final int bottom = top + SCREEN_HEIGHT;
+
+		final PackedRTree.Result result = new PackedRTree.Result();
+		int visible = 0;
+		double[] times = new double[4];
+		for (int pass = 0; pass < 2; pass++) {
+			// the first pass warms up
+			long start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				visible = drawAll(latitudes, longitudes, pCount, left, top, right, bottom, point);
+			}
+			times[0] = (System.nanoTime() - start) / (double) FRAMES;
+
+			start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				drawIndexed(tree, result, latitudes, longitudes, left, top, right, bottom, point);
+			}
+			times[1] = (System.nanoTime() - start) / (double) FRAMES;
+
+			start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				final int tapX = left + (frame * 37) % SCREEN_WIDTH;
+				final int tapY = top + (frame * 53) % SCREEN_HEIGHT;
+				drawAll(latitudes, longitudes, pCount, tapX - MARKER_SIZE, tapY - MARKER_SIZE,
+						tapX + MARKER_SIZE, tapY + MARKER_SIZE, point);
+			}
+			times[2] = (System.nanoTime() - start) / (double) FRAMES;
+
+			start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++) {
+				final int tapX = left + (frame * 37) % SCREEN_WIDTH;
+				final int tapY = top + (frame * 53) % SCREEN_HEIGHT;
+				drawIndexed(tree, result, latitudes, longitudes, tapX - MARKER_SIZE, tapY
+						- MARKER_SIZE, tapX + MARKER_SIZE, tapY + MARKER_SIZE, point);
+			}
+			times[3] = (System.nanoTime() - start) / (double) FRAMES;
+		}
+
+		System.out.println(String.format("%8d %9.3f ms %9.3f ms %9.3f ms %9.3f ms %8d", pCount,
+				times[0] / 1E6, times[1] / 1E6, times[2] / 1E6, times[3] / 1E6, visible));
+		System.out.println(String.format("%8s index built in %.1f ms", "", build / 1E6));
+	}
+
+	/**
+	 * Project every item and keep the ones whose markers intersect the rectangle.
+	 */
+	private static int drawAll(final double[] pLatitudes, final double[] pLongitudes,
+			final int pCount, final int pLeft, final int pTop, final int pRight,
+			final int pBottom, final int[] pPoint) {
+		final int mapSize = 256 << ZOOM_LEVEL;
+		final int scrollX = (pLeft + pRight) / 2;
+		final int scrollY = (pTop + pBottom) / 2;
+		int visible = 0;
+		for (int i = 0; i < pCount; i++) {
+			project(pLatitudes[i], pLongitudes[i], ZOOM_LEVEL, pPoint);
+			// the world wrapping of Projection.toMapPixels
+			if (Math.abs(pPoint[0] - scrollX) > Math.abs(pPoint[0] - mapSize - scrollX)) {
+				pPoint[0] -= mapSize;
+			}
+			if (Math.abs(pPoint[0] - scrollX) > Math.abs(pPoint[0] + mapSize - scrollX)) {
+				pPoint[0] += mapSize;
+			}
+			if (Math.abs(pPoint[1] - scrollY) > Math.abs(pPoint[1] - mapSize - scrollY)) {
+				pPoint[1] -= mapSize;
+			}
+			if (Math.abs(pPoint[1] - scrollY) > Math.abs(pPoint[1] + mapSize - scrollY)) {
+				pPoint[1] += mapSize;
+			}
+			if (pPoint[0] + MARKER_SIZE >= pLeft && pPoint[0] - MARKER_SIZE <= pRight
+					&& pPoint[1] + MARKER_SIZE >= pTop && pPoint[1] - MARKER_SIZE <= pBottom) {
+				visible++;
+			}
+		}
+		mSink += visible;
+		return visible;
+	}
+
+	/**
+	 * Query the index with the rectangle grown by the marker size and project the items found.
+	 */
+	private static int drawIndexed(final PackedRTree pTree, final PackedRTree.Result pResult,
+			final double[] pLatitudes, final double[] pLongitudes, final int pLeft,
+			final int pTop, final int pRight, final int pBottom, final int[] pPoint) {
+		final int shift = MAXIMUM_ZOOMLEVEL - ZOOM_LEVEL;
+		pResult.clear();
+		pTree.query(pLeft - MARKER_SIZE << shift, pTop - MARKER_SIZE << shift,
+				pRight + MARKER_SIZE << shift, pBottom + MARKER_SIZE << shift, pResult);
+		pResult.sortUnique();
+		for (int i = pResult.size() - 1; i >= 0; i--) {
+			final int index = pResult.get(i);
+			project(pLatitudes[index], pLongitudes[index], ZOOM_LEVEL, pPoint);
+		}
+		mSink += pResult.size();
+		return pResult.size();
+	}
+
+	/**
+	 * microsoft.mappoint.TileSystem.LatLongToPixelXY
+	 */
+	private static void project(final double pLatitude, final double pLongitude,
+			final int pZoomLevel, final int[] pPoint) {
+		final double x = (pLongitude + 180) / 360;
+		final double sinLatitude = Math.sin(pLatitude * Math.PI / 180);
+		final double y = 0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI);
+		final int mapSize = 256 << pZoomLevel;
+		pPoint[0] = (int) Math.min(Math.max(x * mapSize + 0.5, 0), mapSize - 1);
+		pPoint[1] = (int) Math.min(Math.max(y * mapSize + 0.5, 0), mapSize - 1);
+	}
+}
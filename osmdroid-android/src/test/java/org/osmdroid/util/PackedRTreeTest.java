@@ -0,0 +1,87 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PackedRTreeTest {
+
+	@Test
+	public void test_empty() {
+		final PackedRTree tree = new PackedRTree(new int[0], new int[0], 0);
+		final PackedRTree.Result result = new PackedRTree.Result();
+		tree.query(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, result);
+		assertEquals(0, result.size());
+	}
+
+	@Test
+	public void test_edges_included() {
+		final PackedRTree tree = new PackedRTree(new int[] { 10, 20, 30 },
+				new int[] { 10, 20, 30 }, 3);
+		final PackedRTree.Result result = new PackedRTree.Result();
+		tree.query(10, 10, 20, 20, result);
+		result.sortUnique();
+		assertEquals(2, result.size());
+		assertEquals(0, result.get(0));
+		assertEquals(1, result.get(1));
+	}
+
+	@Test
+	public void test_only_first_points() {
+		final PackedRTree tree = new PackedRTree(new int[] { 1, 2, 3 }, new int[] { 1, 2, 3 }, 2);
+		final PackedRTree.Result result = new PackedRTree.Result();
+		tree.query(0, 0, 10, 10, result);
+		assertEquals("the third point isn't indexed", 2, result.size());
+	}
+
+	@Test
+	public void test_overlapping_queries_unique() {
+		final PackedRTree tree = new PackedRTree(new int[] { 5 }, new int[] { 5 }, 1);
+		final PackedRTree.Result result = new PackedRTree.Result();
+		tree.query(0, 0, 10, 10, result);
+		tree.query(5, 5, 5, 5, result);
+		assertEquals(2, result.size());
+		result.sortUnique();
+		assertEquals("duplicates dropped", 1, result.size());
+	}
+
+	@Test
+	public void test_same_as_brute_force() {
+		final Random random = new Random(1);
+		for (final int count : new int[] { 1, 15, 16, 17, 255, 256, 257, 5000 }) {
+			final int[] x = new int[count];
+			final int[] y = new int[count];
+			for (int i = 0; i < count; i++) {
+				// clustered, with duplicates
+				x[i] = random.nextInt(1000) * (i % 3 + 1);
+				y[i] = random.nextInt(1000);
+			}
+			final PackedRTree tree = new PackedRTree(x, y, count);
+			assertEquals(count, tree.size());
+
+			final PackedRTree.Result result = new PackedRTree.Result();
+			for (int query = 0; query < 200; query++) {
+				final int left = random.nextInt(3000);
+				final int top = random.nextInt(1000);
+				final int right = left + random.nextInt(500);
+				final int bottom = top + random.nextInt(500);
+
+				result.clear();
+				tree.query(left, top, right, bottom, result);
+				result.sortUnique();
+
+				int expected = 0;
+				for (int i = 0; i < count; i++) {
+					if (x[i] >= left && x[i] <= right && y[i] >= top && y[i] <= bottom) {
+						assertEquals("count " + count + ", query " + query, i,
+								result.get(expected));
+						expected++;
+					}
+				}
+				assertEquals("count " + count + ", query " + query, expected, result.size());
+			}
+		}
+	}
+}
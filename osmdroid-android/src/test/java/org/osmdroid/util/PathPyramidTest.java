@@ -0,0 +1,128 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PathPyramidTest {
+
+	@Test
+	public void test_chunks() {
+		final PathPyramid path = new PathPyramid();
+		path.add(0, 0);
+		assertEquals(0, path.getChunkCount());
+
+		for (int i = 1; i < PathPyramid.CHUNK_SIZE; i++) {
+			path.add(i, 0);
+		}
+		assertEquals(1, path.getChunkCount());
+		assertFalse("the chunk has room for another point", path.isChunkComplete(0));
+		assertNull(path.getSimplified(0, 0));
+
+		path.add(PathPyramid.CHUNK_SIZE, 0);
+		assertEquals(1, path.getChunkCount());
+		assertTrue(path.isChunkComplete(0));
+
+		path.add(PathPyramid.CHUNK_SIZE, 100);
+		assertEquals(2, path.getChunkCount());
+		assertTrue(path.isChunkComplete(0));
+		assertEquals(PathPyramid.CHUNK_SIZE, path.getChunkEnd(0));
+		assertEquals("chunks share a point", PathPyramid.CHUNK_SIZE, path.getChunkStart(1));
+		assertEquals(PathPyramid.CHUNK_SIZE + 1, path.getChunkEnd(1));
+
+		assertTrue(path.intersects(0, 10, 0, 20, 0));
+		assertFalse(path.intersects(0, 10, 1, 20, 1));
+		assertTrue(path.intersects(1, PathPyramid.CHUNK_SIZE, 50, PathPyramid.CHUNK_SIZE, 50));
+	}
+
+	@Test
+	public void test_straight_line() {
+		final PathPyramid path = new PathPyramid();
+		for (int i = 0; i <= PathPyramid.CHUNK_SIZE + 1; i++) {
+			path.add(i * 10, i * 5);
+		}
+		assertArrayEquals(new int[] { 0, PathPyramid.CHUNK_SIZE }, path.getSimplified(0, 0));
+	}
+
+	@Test
+	public void test_clear() {
+		final PathPyramid path = new PathPyramid();
+		for (int i = 0; i <= PathPyramid.CHUNK_SIZE + 1; i++) {
+			path.add(i, i % 2);
+		}
+		path.getSimplified(0, 0);
+		path.clear();
+		assertEquals(0, path.size());
+		for (int i = 0; i <= PathPyramid.CHUNK_SIZE + 1; i++) {
+			path.add(i, 0);
+		}
+		assertEquals("nothing left from before", 2, path.getSimplified(0, 0).length);
+	}
+
+	@Test
+	public void test_same_as_douglas_peucker() {
+		final Random random = new Random(1);
+		final PathPyramid path = new PathPyramid();
+		final int count = PathPyramid.CHUNK_SIZE * 5 + 1;
+		final int[] x = new int[count];
+		final int[] y = new int[count];
+		for (int i = 0; i < count; i++) {
+			// a random walk, like a recorded ride
+			x[i] = i == 0 ? 1 << 20 : x[i - 1] + random.nextInt(2001) - 1000;
+			y[i] = i == 0 ? 1 << 20 : y[i - 1] + random.nextInt(2001) - 1000;
+			path.add(x[i], y[i]);
+		}
+
+		for (int chunk = 0; chunk < path.getChunkCount() - 1; chunk++) {
+			for (int shift = 0; shift < 14; shift++) {
+				final ArrayList<Integer> expected = new ArrayList<Integer>();
+				expected.add(path.getChunkStart(chunk));
+				douglasPeucker(x, y, path.getChunkStart(chunk), path.getChunkEnd(chunk),
+						1 << shift, expected);
+				expected.add(path.getChunkEnd(chunk));
+
+				final int[] simplified = path.getSimplified(chunk, shift);
+				assertEquals("chunk " + chunk + ", shift " + shift, expected.size(),
+						simplified.length);
+				for (int i = 0; i < simplified.length; i++) {
+					assertEquals((int) expected.get(i), simplified[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The recursive textbook version, adding the kept points between the ends in order.
+	 */
+	private static void douglasPeucker(final int[] pX, final int[] pY, final int pStart,
+			final int pEnd, final double pTolerance, final ArrayList<Integer> pResult) {
+		double maximum = -1;
+		int farthest = -1;
+		for (int i = pStart + 1; i < pEnd; i++) {
+			final double dx = pX[pEnd] - (double) pX[pStart];
+			final double dy = pY[pEnd] - (double) pY[pStart];
+			final double px = pX[i] - (double) pX[pStart];
+			final double py = pY[i] - (double) pY[pStart];
+			final double length = dx * dx + dy * dy;
+			final double t = length == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy)
+					/ length));
+			final double distance = Math.hypot(px - t * dx, py - t * dy);
+			if (distance > maximum) {
+				maximum = distance;
+				farthest = i;
+			}
+		}
+		if (maximum > pTolerance) {
+			douglasPeucker(pX, pY, pStart, farthest, pTolerance, pResult);
+			pResult.add(farthest);
+			douglasPeucker(pX, pY, farthest, pEnd, pTolerance, pResult);
+		}
+	}
+}
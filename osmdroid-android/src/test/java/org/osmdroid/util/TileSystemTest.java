@@ -0,0 +1,61 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TileSystemTest {
+
+	@Test
+	public void test_batch_known_points() {
+		final int mapSize = TileSystem.MapSize(10);
+		final int[] latLongE6 = { 0, 0, 90000000, -180000000, -90000000, 180000000 };
+		final int[] out = new int[6];
+		TileSystem.LatLongToPixelXY(latLongE6, 0, 3, 10, out, 0);
+
+		assertEquals(mapSize / 2, out[0]);
+		assertEquals(mapSize / 2, out[1]);
+		assertEquals("clipped to the top left", 0, out[2]);
+		assertEquals(0, out[3]);
+		assertEquals("clipped to the bottom right", mapSize - 1, out[4]);
+		assertEquals(mapSize - 1, out[5]);
+	}
+
+	@Test
+	public void test_batch_offsets_in_place() {
+		final int[] points = { -1, -1, 39570000, 2650000, 39600000, 2700000 };
+		final int[] expected = new int[4];
+		TileSystem.LatLongToPixelXY(points, 2, 2, 22, expected, 0);
+
+		TileSystem.LatLongToPixelXY(points, 2, 2, 22, points, 2);
+		assertEquals("not touched", -1, points[0]);
+		assertEquals(-1, points[1]);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(expected[i], points[i + 2]);
+		}
+	}
+
+	@Test
+	public void test_batch_degrees_same_as_e6() {
+		final Random random = new Random(1);
+		final int count = 1000;
+		final int[] latLongE6 = new int[count * 2];
+		final double[] latLong = new double[count * 2];
+		for (int i = 0; i < count; i++) {
+			latLongE6[i * 2] = random.nextInt(170000000) - 85000000;
+			latLongE6[i * 2 + 1] = random.nextInt(360000000) - 180000000;
+			latLong[i * 2] = latLongE6[i * 2] / 1E6;
+			latLong[i * 2 + 1] = latLongE6[i * 2 + 1] / 1E6;
+		}
+
+		final int[] fromE6 = new int[count * 2];
+		final int[] fromDegrees = new int[count * 2];
+		TileSystem.LatLongToPixelXY(latLongE6, 0, count, 22, fromE6, 0);
+		TileSystem.LatLongToPixelXY(latLong, 0, count, 22, fromDegrees, 0);
+		for (int i = 0; i < count * 2; i++) {
+			assertEquals(fromE6[i], fromDegrees[i]);
+		}
+	}
+}
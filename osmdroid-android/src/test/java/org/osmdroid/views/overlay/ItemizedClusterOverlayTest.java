@@ -0,0 +1,104 @@
+package org.osmdroid.views.overlay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.osmdroid.views.overlay.ItemizedClusterOverlay.Level;
+
+public class ItemizedClusterOverlayTest {
+
+	@Test
+	public void test_interleave() {
+		assertEquals(0, Level.interleave(0, 0));
+		assertEquals(1, Level.interleave(1, 0));
+		assertEquals(2, Level.interleave(0, 1));
+		assertEquals(3, Level.interleave(1, 1));
+		assertEquals(0x15, Level.interleave(7, 0));
+		assertEquals(0x2a, Level.interleave(0, 7));
+		assertEquals("all 64 bits are used", -1L, Level.interleave(-1, -1));
+		assertEquals(0x5555555555555555L, Level.interleave(-1, 0));
+	}
+
+	@Test
+	public void test_interleave_keeps_cells_together() {
+		// sorting by the keys keeps the items of every cell together, at every cell size
+		final Random random = new Random(42);
+		final int size = 1000;
+		final int[] x = new int[size];
+		final int[] y = new int[size];
+		final long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			x[i] = random.nextInt(1 << 10);
+			y[i] = random.nextInt(1 << 10);
+			keys[i] = Level.interleave(x[i], y[i]);
+		}
+		Arrays.sort(keys);
+		for (int bits = 0; bits <= 10; bits++) {
+			final int shift = 2 * bits;
+			for (int i = 1; i < size; i++) {
+				final long previous = keys[i - 1] >>> shift;
+				final long current = keys[i] >>> shift;
+				assertTrue("cells are in order", previous <= current);
+			}
+		}
+	}
+
+	@Test
+	public void test_compute_empty() {
+		final Level level = Level.compute(new long[0], new int[0], new int[0], 0);
+		assertEquals(0, level.mX.length);
+		assertArrayEquals(new int[] { 0 }, level.mStart);
+	}
+
+	@Test
+	public void test_compute() {
+		// two items in cell (0, 0), one in (1, 0) and one in (2, 2), sorted by key
+		final int[] cellX = { 0, 0, 1, 2 };
+		final int[] cellY = { 0, 0, 0, 2 };
+		final int[] x = { 10, 30, 100, 130 };
+		final int[] y = { 20, 40, 20, 140 };
+		final long[] keys = new long[4];
+		for (int i = 0; i < 4; i++) {
+			keys[i] = Level.interleave(cellX[i], cellY[i]);
+		}
+
+		final Level level = Level.compute(keys, x, y, 0);
+		assertArrayEquals(new int[] { 0, 2, 3, 4 }, level.mStart);
+		assertArrayEquals("positions are the averages", new int[] { 20, 100, 130 }, level.mX);
+		assertArrayEquals(new int[] { 30, 20, 140 }, level.mY);
+		assertArrayEquals(new int[] { 10, 100, 130 }, level.mLeft);
+		assertArrayEquals(new int[] { 20, 20, 140 }, level.mTop);
+		assertArrayEquals(new int[] { 30, 100, 130 }, level.mRight);
+		assertArrayEquals(new int[] { 40, 20, 140 }, level.mBottom);
+	}
+
+	@Test
+	public void test_compute_zoomed_out() {
+		final int[] cellX = { 0, 0, 1, 2 };
+		final int[] cellY = { 0, 0, 0, 2 };
+		final int[] x = { 10, 30, 100, 130 };
+		final int[] y = { 20, 40, 20, 140 };
+		final long[] keys = new long[4];
+		for (int i = 0; i < 4; i++) {
+			keys[i] = Level.interleave(cellX[i], cellY[i]);
+		}
+
+		// a zoom level out the first three items share a cell
+		Level level = Level.compute(keys, x, y, 2);
+		assertArrayEquals(new int[] { 0, 3, 4 }, level.mStart);
+		assertArrayEquals(new int[] { 46, 130 }, level.mX);
+		assertArrayEquals(new int[] { 10, 130 }, level.mLeft);
+		assertArrayEquals(new int[] { 40, 140 }, level.mBottom);
+
+		// two levels out everything is one cluster
+		level = Level.compute(keys, x, y, 4);
+		assertArrayEquals(new int[] { 0, 4 }, level.mStart);
+		assertArrayEquals(new int[] { 67 }, level.mX);
+		assertArrayEquals(new int[] { 55 }, level.mY);
+	}
+}
@@ -0,0 +1,49 @@
+package org.osmdroid.views.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FrameStatsTest {
+
+	private static final long MILLI = 1000000;
+
+	@Test
+	public void test_empty() {
+		final FrameStats stats = new FrameStats();
+		assertEquals(0, stats.getCount());
+		assertEquals(0, stats.getAverageMillis(), 0);
+		assertEquals(0, stats.getPercentileMillis(90), 0);
+		assertEquals(0, stats.getMaximumMillis(), 0);
+	}
+
+	@Test
+	public void test_statistics() {
+		final FrameStats stats = new FrameStats(10);
+		for (int i = 1; i <= 10; i++) {
+			stats.add(i * MILLI);
+		}
+		assertEquals(10, stats.getCount());
+		assertEquals(5.5, stats.getAverageMillis(), 1E-9);
+		assertEquals(9, stats.getPercentileMillis(90), 1E-9);
+		assertEquals(1, stats.getPercentileMillis(0), 1E-9);
+		assertEquals(10, stats.getMaximumMillis(), 1E-9);
+	}
+
+	@Test
+	public void test_keeps_last_frames() {
+		final FrameStats stats = new FrameStats(4);
+		for (int i = 1; i <= 10; i++) {
+			stats.add(i * MILLI);
+		}
+		assertEquals(4, stats.getCount());
+		assertEquals(10, stats.getTotalCount());
+		assertEquals("frames 7 to 10", 8.5, stats.getAverageMillis(), 1E-9);
+
+		stats.reset();
+		assertEquals(0, stats.getCount());
+		assertEquals(0, stats.getTotalCount());
+		stats.add(2 * MILLI);
+		assertEquals(2, stats.getAverageMillis(), 1E-9);
+	}
+}